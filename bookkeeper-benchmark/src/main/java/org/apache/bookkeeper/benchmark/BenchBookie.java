@@ -23,10 +23,10 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import org.apache.bookkeeper.client.BKException;
@@ -43,13 +43,13 @@ import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.EventLoopUtil;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.PosixParser;
-import org.apache.commons.lang3.SystemUtils;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -139,6 +139,12 @@ public class BenchBookie {
         options.addOption("warmupCount", true, "Number of messages in warmup phase (default 999)");
         options.addOption("latencyCount", true, "Number of messages in latency phase (default 5000)");
         options.addOption("throughputCount", true, "Number of messages in throughput phase (default 50000)");
+        options.addOption("transport", true, "Netty transport of the client: nio, epoll or io_uring (default epoll)."
+                + " Epoll is used if the transport is not available");
+        options.addOption("busyWait", false, "Busy-wait on the client IO threads, pinned to isolated cores");
+        options.addOption("busyWaitSpinIterations", true, "Number of empty polls after which a busy-waiting IO"
+                + " thread blocks until the next event, with the epoll transport (default 0, never)");
+        options.addOption("ioThreads", true, "Number of client IO threads (default 2 * number of cores)");
         options.addOption("help", false, "This message");
 
         CommandLineParser parser = new PosixParser();
@@ -157,18 +163,23 @@ public class BenchBookie {
         int warmUpCount = Integer.parseInt(cmd.getOptionValue("warmupCount", "999"));
         int latencyCount = Integer.parseInt(cmd.getOptionValue("latencyCount", "5000"));
         int throughputCount = Integer.parseInt(cmd.getOptionValue("throughputCount", "50000"));
+        String transport = cmd.getOptionValue("transport", "epoll");
+
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setBusyWaitEnabled(cmd.hasOption("busyWait"));
+        conf.setBusyWaitSpinIterations(Integer.parseInt(cmd.getOptionValue("busyWaitSpinIterations", "0")));
+        conf.setIoUringEnabled("io_uring".equals(transport));
+        if (cmd.hasOption("ioThreads")) {
+            conf.setNumIOThreads(Integer.parseInt(cmd.getOptionValue("ioThreads")));
+        }
 
         EventLoopGroup eventLoop;
-        if (SystemUtils.IS_OS_LINUX) {
-            try {
-                eventLoop = new EpollEventLoopGroup();
-            } catch (Throwable t) {
-                LOG.warn("Could not use Netty Epoll event loop for benchmark {}", t.getMessage());
-                eventLoop = new NioEventLoopGroup();
-            }
+        if ("nio".equals(transport)) {
+            eventLoop = new NioEventLoopGroup(conf.getNumIOThreads(), new DefaultThreadFactory("BenchBookieIO"));
         } else {
-            eventLoop = new NioEventLoopGroup();
+            eventLoop = EventLoopUtil.getClientEventLoopGroup(conf, new DefaultThreadFactory("BenchBookieIO"));
         }
+        LOG.info("Using {}, busy-wait {}", eventLoop.getClass().getSimpleName(), conf.isBusyWaitEnabled());
 
         OrderedExecutor executor = OrderedExecutor.newBuilder()
                 .name("BenchBookieClientScheduler")
@@ -177,7 +188,6 @@ public class BenchBookie {
         ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
                 new DefaultThreadFactory("BookKeeperClientScheduler"));
 
-        ClientConfiguration conf = new ClientConfiguration();
         BookieClient bc = new BookieClientImpl(conf, eventLoop, PooledByteBufAllocator.DEFAULT, executor, scheduler,
                 NullStatsLogger.INSTANCE, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
         LatencyCallback lc = new LatencyCallback();
@@ -201,8 +211,9 @@ public class BenchBookie {
 
         ledger = getValidLedgerId(servers);
         LOG.info("Benchmarking latency");
+        long[] latencies = new long[latencyCount];
         long startTime = System.nanoTime();
-        for (long entry = 0; entry < latencyCount; entry++) {
+        for (int entry = 0; entry < latencyCount; entry++) {
             ByteBuf toSend = Unpooled.buffer(size);
             toSend.resetReaderIndex();
             toSend.resetWriterIndex();
@@ -210,13 +221,21 @@ public class BenchBookie {
             toSend.writeLong(entry);
             toSend.writerIndex(toSend.capacity());
             lc.resetComplete();
+            long addStartTime = System.nanoTime();
             bc.addEntry(new BookieSocketAddress(addr, port).toBookieId(), ledger, new byte[20],
                         entry, ByteBufList.get(toSend), lc, null,
                         BookieProtocol.FLAG_NONE, false, WriteFlag.NONE);
             lc.waitForComplete();
+            latencies[entry] = System.nanoTime() - addStartTime;
         }
         long endTime = System.nanoTime();
         LOG.info("Latency: " + (((double) (endTime - startTime)) / ((double) latencyCount)) / 1000000.0);
+        if (latencyCount > 0) {
+            Arrays.sort(latencies);
+            LOG.info("Latency percentiles (us): p50 {} p99 {} p99.9 {} max {}",
+                    latencies[(int) (latencyCount * 0.5)] / 1000, latencies[(int) (latencyCount * 0.99)] / 1000,
+                    latencies[(int) (latencyCount * 0.999)] / 1000, latencies[latencyCount - 1] / 1000);
+        }
 
         ledger = getValidLedgerId(servers);
         LOG.info("Benchmarking throughput");
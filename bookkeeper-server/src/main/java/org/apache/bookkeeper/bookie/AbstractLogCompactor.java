@@ -22,10 +22,17 @@
 package org.apache.bookkeeper.bookie;
 
 import com.google.common.util.concurrent.RateLimiter;
+import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 
 /**
  * Abstract entry log compactor used for compaction.
@@ -34,6 +41,7 @@ public abstract class AbstractLogCompactor {
 
     protected final ServerConfiguration conf;
     protected final Throttler throttler;
+    protected final boolean useEntryLocationIndex;
 
     /**
      * LogRemovalListener.
@@ -45,9 +53,19 @@ public abstract class AbstractLogCompactor {
     protected final LogRemovalListener logRemovalListener;
 
     public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener) {
+        this(conf, logRemovalListener, new Throttler(conf));
+    }
+
+    /**
+     * Create a compactor that paces its reads with the given throttler, which may be shared with
+     * the compactors of other ledger directories.
+     */
+    public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener,
+                                Throttler throttler) {
         this.conf = conf;
-        this.throttler = new Throttler(conf);
+        this.throttler = throttler;
         this.logRemovalListener = logRemovalListener;
+        this.useEntryLocationIndex = conf.isCompactionUseEntryLocationIndex();
     }
 
     /**
@@ -62,6 +80,64 @@ public abstract class AbstractLogCompactor {
      */
     public void cleanUpAndRecover() {}
 
+    /**
+     * Get the locations of the entries of the active ledgers of an entry log from the entry location
+     * index of the ledger storage, sorted by their position in the entry log.
+     *
+     * @return the locations, or null if the live entries cannot be found through the index
+     */
+    protected List<EntryLocation> getLiveEntryLocations(CompactableLedgerStorage ledgerStorage,
+                                                        EntryLogMetadata entryLogMeta) throws IOException {
+        if (!useEntryLocationIndex || !ledgerStorage.supportsEntriesLocationsLookup()) {
+            return null;
+        }
+
+        List<EntryLocation> locations = new ArrayList<>();
+        for (long ledgerId : entryLogMeta.getLedgersMap().keys()) {
+            int previousSize = locations.size();
+            ledgerStorage.getEntriesLocationsInEntryLog(entryLogMeta.getEntryLogId(), ledgerId, locations);
+            if (locations.size() == previousSize) {
+                // The ledger has data in the entry log that the index does not know about
+                return null;
+            }
+        }
+        locations.sort(Comparator.comparingLong(EntryLocation::getLocation));
+        return locations;
+    }
+
+    /**
+     * Read the given live entries of an entry log, in the order of the log, and pass them to the scanner.
+     *
+     * @return false if the entries read do not account for all the data of the active ledgers of the
+     *         entry log, in which case the entry log still has to be scanned
+     */
+    protected boolean readLiveEntries(EntryLogger entryLogger, EntryLogMetadata entryLogMeta,
+                                      List<EntryLocation> locations, EntryLogScanner scanner) throws IOException {
+        ConcurrentLongLongHashMap ledgersMap = entryLogMeta.getLedgersMap();
+        ConcurrentLongLongHashMap liveSizes = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems((int) ledgersMap.size())
+                .concurrencyLevel(1)
+                .build();
+
+        for (EntryLocation location : locations) {
+            ByteBuf entry = entryLogger.readEntry(location.ledger, location.entry, location.location);
+            try {
+                // Each entry is prefixed by its size in the entry log
+                liveSizes.addAndGet(location.ledger, entry.readableBytes() + Integer.BYTES);
+                scanner.process(location.ledger, location.location & 0xFFFFFFFFL, entry);
+            } finally {
+                entry.release();
+            }
+        }
+
+        for (long ledgerId : ledgersMap.keys()) {
+            if (liveSizes.get(ledgerId) != ledgersMap.get(ledgerId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * class Throttler.
      */
@@ -76,6 +152,18 @@ public abstract class AbstractLogCompactor {
                 ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
         }
 
+        private Throttler(RateLimiter rateLimiter, boolean isThrottleByBytes) {
+            this.isThrottleByBytes = isThrottleByBytes;
+            this.rateLimiter = rateLimiter;
+        }
+
+        /**
+         * Create a throttler sharing the rate limiter of this one, which is cancelled on its own.
+         */
+        Throttler share() {
+            return new Throttler(rateLimiter, isThrottleByBytes);
+        }
+
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
         boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
             return rateLimiter.tryAcquire(this.isThrottleByBytes ? permits : 1, timeout, unit);
@@ -70,6 +70,8 @@ public interface BookKeeperServerStats {
     String GET_BOOKIE_INFO = "GET_BOOKIE_INFO";
     String GET_LIST_OF_ENTRIES_OF_LEDGER = "GET_LIST_OF_ENTRIES_OF_LEDGER";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST = "GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST";
+    String REQUEST_DISPATCH_BATCH_SIZE = "REQUEST_DISPATCH_BATCH_SIZE";
+    String REQUEST_DISPATCH_TASKS_SAVED = "REQUEST_DISPATCH_TASKS_SAVED";
 
     // Ensemble Stats
     String WATCHER_SCOPE = "bookie_watcher";
@@ -136,6 +138,14 @@ public interface BookKeeperServerStats {
     // Counters
     String JOURNAL_WRITE_BYTES = "JOURNAL_WRITE_BYTES";
     String JOURNAL_QUEUE_SIZE = "JOURNAL_QUEUE_SIZE";
+    String JOURNAL_REPLAY_RECORDS = "JOURNAL_REPLAY_RECORDS";
+    String JOURNAL_REPLAY_BYTES = "JOURNAL_REPLAY_BYTES";
+    String JOURNAL_REPLAY_QUEUE_SIZE = "JOURNAL_REPLAY_QUEUE_SIZE";
+    String JOURNAL_GROUP_COMMIT_WAIT = "JOURNAL_GROUP_COMMIT_WAIT";
+    String JOURNAL_GROUP_COMMIT_BATCH_ENTRIES = "JOURNAL_GROUP_COMMIT_BATCH_ENTRIES";
+    String JOURNAL_GROUP_COMMIT_FSYNC_LATENCY = "JOURNAL_GROUP_COMMIT_FSYNC_LATENCY";
+    String JOURNAL_GROUP_COMMIT_ARRIVAL_RATE = "JOURNAL_GROUP_COMMIT_ARRIVAL_RATE";
+    String JOURNAL_LEDGER_REASSIGNMENTS = "JOURNAL_LEDGER_REASSIGNMENTS";
     String READ_BYTES = "READ_BYTES";
     String WRITE_BYTES = "WRITE_BYTES";
 
@@ -20,6 +20,7 @@ package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.List;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.util.Watcher;
@@ -43,6 +44,17 @@ public interface Bookie {
     // TODO: replace ackBeforeSync with flags
     void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
+    /**
+     * Add entries that arrived together, possibly of several ledgers. The entries written to the same
+     * journal are queued to it as a single item, and acknowledged together with the given context.
+     * Like with {@link #addEntry}, the entries are released by the bookie, and the entries that fail
+     * are not acknowledged.
+     *
+     * @return the exception {@link #addEntry} would have thrown for each entry that was not added, at
+     *         the index of the entry, or null if all the entries were added
+     */
+    Exception[] addEntries(List<ByteBuf> entries, List<WriteCallback> cbs, List<byte[]> masterKeys,
+                           boolean ackBeforeSync, Object ctx);
     void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx);
@@ -86,6 +98,11 @@ public interface Bookie {
     // TODO: Should be constructed and passed in as a parameter
     LedgerStorage getLedgerStorage();
 
+    /**
+     * Get the progress of the replay of each journal on startup, empty until the replay starts.
+     */
+    List<JournalReplayProgress> getJournalReplayProgress();
+
     // TODO: Move this exceptions somewhere else
     /**
      * Exception is thrown when no such a ledger is found in this bookie.
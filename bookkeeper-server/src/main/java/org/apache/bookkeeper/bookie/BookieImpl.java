@@ -33,6 +33,7 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -42,6 +43,7 @@ import java.nio.ByteBuffer;
 import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +51,9 @@ import java.util.Optional;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -97,6 +102,8 @@ public class BookieImpl implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    // Assigns the ledgers to the journals by load, null to assign them by ledger id
+    private final JournalLoadBalancer journalLoadBalancer;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -113,6 +120,9 @@ public class BookieImpl implements Bookie {
 
     private int exitCode = ExitCode.OK;
 
+    // Progress of the replay of each journal, empty until the journals are replayed on startup
+    private volatile List<JournalReplayProgress> journalReplayProgress = Collections.emptyList();
+
     private final ConcurrentLongHashMap<byte[]> masterKeyCache =
             ConcurrentLongHashMap.<byte[]>newBuilder().autoShrink(true).build();
 
@@ -442,7 +452,16 @@ public class BookieImpl implements Bookie {
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
         }
 
+        if (conf.getJournalLoadAwareAssignment() && journals.size() > 1) {
+            journalLoadBalancer = new JournalLoadBalancer(journals, conf.getJournalLoadAwareIdleTimeMs(),
+                    statsLogger.scope(JOURNAL_SCOPE));
+        } else {
+            journalLoadBalancer = null;
+        }
+
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
+        // The checkpoint covers all the journals at once, so it stays correct when the entries of
+        // a ledger are spread over several journals
         CheckpointSource checkpointSource = new CheckpointSourceList(journals);
 
         this.ledgerStorage = storage;
@@ -615,21 +634,69 @@ public class BookieImpl implements Bookie {
             }
         };
 
+        List<JournalReplayProgress> progress = new ArrayList<>(journals.size());
         for (Journal journal : journals) {
-            replay(journal, scanner);
+            progress.add(new JournalReplayProgress(journal.getJournalDirectory()));
+        }
+        journalReplayProgress = Collections.unmodifiableList(progress);
+
+        if (conf.isJournalReplayParallelEnabled() && journals.size() > 1) {
+            replayConcurrently(scanner);
+        } else {
+            for (int i = 0; i < journals.size(); i++) {
+                replay(i, scanner);
+            }
         }
         long elapsedTs = System.currentTimeMillis() - startTs;
         LOG.info("Finished replaying journal in {} ms.", elapsedTs);
     }
 
+    /**
+     * Replay the journals at the same time, each on its own thread.
+     */
+    private void replayConcurrently(JournalScanner scanner) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(journals.size(),
+                new DefaultThreadFactory("JournalReplay"));
+        try {
+            List<Future<Void>> replays = new ArrayList<>(journals.size());
+            for (int i = 0; i < journals.size(); i++) {
+                final int journalIndex = i;
+                replays.add(executor.submit(() -> {
+                    replay(journalIndex, scanner);
+                    return null;
+                }));
+            }
+            for (Future<Void> replay : replays) {
+                try {
+                    replay.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Failed to replay journal", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying journals", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Replay journal files and updates journal's in-memory lastLogMark object.
      *
-     * @param journal Journal object corresponding to a journalDir
+     * <p>When parallel replay is enabled, the records are applied by other threads than the one
+     * reading the journal, and the lastLogMark is only moved once they are applied.
+     *
+     * @param journalIndex index of the journal object corresponding to a journalDir
      * @param scanner Scanner to process replayed entries.
      * @throws IOException
      */
-    private void replay(Journal journal, JournalScanner scanner) throws IOException {
+    private void replay(int journalIndex, JournalScanner scanner) throws IOException {
+        final Journal journal = journals.get(journalIndex);
+        final JournalReplayProgress progress = journalReplayProgress.get(journalIndex);
         final LogMark markedLog = journal.getLastLogMark().getCurMark();
         List<Long> logs = Journal.listJournalIds(journal.getJournalDirectory(), journalId ->
             journalId >= markedLog.getLogFileId());
@@ -642,21 +709,38 @@ public class BookieImpl implements Bookie {
             }
         }
 
+        int applyThreads = conf.isJournalReplayParallelEnabled() ? conf.getJournalReplayApplyThreads() : 0;
+        progress.start(logs.size());
         // TODO: When reading in the journal logs that need to be synced, we
         // should use BufferedChannels instead to minimize the amount of
         // system calls done.
-        for (Long id : logs) {
-            long logPosition = 0L;
-            if (id == markedLog.getLogFileId()) {
-                logPosition = markedLog.getLogFileOffset();
+        try (JournalReplayPipeline pipeline = new JournalReplayPipeline("JournalReplay-" + journalIndex, scanner,
+                applyThreads, conf.getJournalReplayQueueSize(), progress, journal.getJournalStats())) {
+            for (Long id : logs) {
+                long logPosition = 0L;
+                if (id == markedLog.getLogFileId()) {
+                    logPosition = markedLog.getLogFileOffset();
+                }
+                LOG.info("Replaying journal {} from position {}", id, logPosition);
+                progress.startJournalFile(id);
+                long scanOffset = journal.scanJournal(id, logPosition, pipeline,
+                        conf.isSkipReplayJournalInvalidRecord());
+                pipeline.awaitApplied();
+                // Update LastLogMark after completely replaying journal
+                // scanOffset will point to EOF position
+                // After LedgerStorage flush, SyncThread should persist this to disk
+                journal.setLastLogMark(id, scanOffset);
+                progress.completeJournalFile();
             }
-            LOG.info("Replaying journal {} from position {}", id, logPosition);
-            long scanOffset = journal.scanJournal(id, logPosition, scanner, conf.isSkipReplayJournalInvalidRecord());
-            // Update LastLogMark after completely replaying journal
-            // scanOffset will point to EOF position
-            // After LedgerStorage flush, SyncThread should persist this to disk
-            journal.setLastLogMark(id, scanOffset);
         }
+        progress.complete();
+        LOG.info("Replayed {} records, {} bytes, from journal {} in {} ms", progress.getAppliedRecords(),
+                progress.getReadBytes(), journal.getJournalDirectory(), progress.getElapsedMillis());
+    }
+
+    @Override
+    public List<JournalReplayProgress> getJournalReplayProgress() {
+        return journalReplayProgress;
     }
 
     @Override
@@ -944,6 +1028,35 @@ public class BookieImpl implements Bookie {
         return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
     }
 
+    /**
+     * Get the journal to write a record of the ledger to.
+     *
+     * <p>With the load aware assignment, the ledger may be moved to another journal when idle. The
+     * master key of the ledger is then logged to that journal first, so that the journal can be
+     * replayed on its own. The entries acknowledged before the sync, of ledgers with deferred sync,
+     * stay on the journal chosen by ledger id, which {@link #forceLedger} syncs.
+     */
+    private Journal getJournalForWrite(long ledgerId, boolean ackBeforeSync) throws InterruptedException {
+        if (journalLoadBalancer == null || ackBeforeSync) {
+            return getJournal(ledgerId);
+        }
+        JournalLoadBalancer.Assignment assignment = journalLoadBalancer.assign(ledgerId);
+        Journal journal = journals.get(assignment.getJournalIndex());
+        if (!assignment.isMasterKeyLogged()) {
+            byte[] masterKey = masterKeyCache.get(ledgerId);
+            if (masterKey != null) {
+                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
+                try {
+                    journal.logAddEntry(masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
+                } finally {
+                    ReferenceCountUtil.release(masterKeyEntry);
+                }
+                assignment.setMasterKeyLogged();
+            }
+        }
+        return journal;
+    }
+
     @VisibleForTesting
     public ByteBuf createMasterKeyEntry(long ledgerId, byte[] masterKey) {
         // new handle, we should add the key to journal ensure we can rebuild
@@ -962,6 +1075,32 @@ public class BookieImpl implements Bookie {
                                   boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException {
         long ledgerId = handle.getLedgerId();
+        long entryId = addEntryToLedgerStorage(handle, entry, ackBeforeSync, masterKey);
+
+        if (!writeDataToJournal) {
+            cb.writeComplete(0, ledgerId, entryId, null, ctx);
+            if (ctx instanceof BookieRequestHandler) {
+                ((BookieRequestHandler) ctx).flushPendingResponse();
+            }
+            return;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Adding {}@{}", entryId, ledgerId);
+        }
+        getJournalForWrite(ledgerId, ackBeforeSync).logAddEntry(entry, ackBeforeSync, cb, ctx);
+    }
+
+    /**
+     * Add an entry to the ledger storage, logging the master key of the ledger to the journal the
+     * first time.
+     *
+     * @return the id of the entry
+     */
+    private long addEntryToLedgerStorage(LedgerDescriptor handle, ByteBuf entry, boolean ackBeforeSync,
+                                         byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long ledgerId = handle.getLedgerId();
         long entryId = handle.addEntry(entry);
 
         bookieStats.getWriteBytes().addCount(entry.readableBytes());
@@ -971,7 +1110,10 @@ public class BookieImpl implements Bookie {
         if (masterKeyCache.get(ledgerId) == null) {
             // Force the load into masterKey cache
             byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
-            if (oldValue == null) {
+            if (oldValue == null && journalLoadBalancer != null && !ackBeforeSync) {
+                // Logged to the journal the ledger is assigned to
+                getJournalForWrite(ledgerId, false);
+            } else if (oldValue == null) {
                 ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
                 try {
                     getJournal(ledgerId).logAddEntry(
@@ -981,19 +1123,113 @@ public class BookieImpl implements Bookie {
                 }
             }
         }
+        return entryId;
+    }
 
-        if (!writeDataToJournal) {
-            cb.writeComplete(0, ledgerId, entryId, null, ctx);
-            if (ctx instanceof BookieRequestHandler) {
-                ((BookieRequestHandler) ctx).flushPendingResponse();
+    @Override
+    public Exception[] addEntries(List<ByteBuf> entries, List<WriteCallback> cbs, List<byte[]> masterKeys,
+                                  boolean ackBeforeSync, Object ctx) {
+        int numEntries = entries.size();
+        Exception[] failures = null;
+        // Batch of the entries to write to each journal, usually a single one
+        List<Journal> batchJournals = new ArrayList<>(1);
+        List<Journal.AddBatch> batches = new ArrayList<>(1);
+        int[] entryBatches = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf entry = entries.get(i);
+            entryBatches[i] = -1;
+            long requestNanos = MathUtils.nowInNano();
+            boolean success = false;
+            int entrySize = 0;
+            try {
+                LedgerDescriptor handle = getLedgerForEntry(entry, masterKeys.get(i));
+                synchronized (handle) {
+                    if (handle.isFenced()) {
+                        throw BookieException
+                                .create(BookieException.Code.LedgerFencedException);
+                    }
+                    entrySize = entry.readableBytes();
+                    long ledgerId = handle.getLedgerId();
+                    long entryId = addEntryToLedgerStorage(handle, entry, ackBeforeSync, masterKeys.get(i));
+                    if (writeDataToJournal) {
+                        Journal journal = getJournalForWrite(ledgerId, ackBeforeSync);
+                        int index = batchJournals.indexOf(journal);
+                        if (index < 0) {
+                            index = batchJournals.size();
+                            batchJournals.add(journal);
+                            batches.add(Journal.AddBatch.create());
+                        }
+                        batches.get(index).add(ledgerId, entryId, entry, cbs.get(i));
+                        entryBatches[i] = index;
+                    } else {
+                        cbs.get(i).writeComplete(0, ledgerId, entryId, null, ctx);
+                    }
+                }
+                success = true;
+            } catch (NoWritableLedgerDirException e) {
+                stateManager.transitionToReadOnlyMode();
+                failures = addFailure(failures, numEntries, i, new IOException(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures = addFailure(failures, numEntries, i, e);
+            } catch (IOException | BookieException e) {
+                failures = addFailure(failures, numEntries, i, e);
+            } catch (RuntimeException e) {
+                // Still add the other entries and queue the batches built so far, else their callbacks never run
+                LOG.error("Unexpected exception while adding entry {} of {}", i, numEntries, e);
+                failures = addFailure(failures, numEntries, i, e);
+            } finally {
+                long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+                if (success) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entrySize);
+                } else {
+                    bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerFailedValue(entrySize);
+                }
+
+                ReferenceCountUtil.release(entry);
             }
-            return;
         }
 
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Adding {}@{}", entryId, ledgerId);
+        if (!writeDataToJournal && ctx instanceof BookieRequestHandler) {
+            ((BookieRequestHandler) ctx).flushPendingResponse();
+        }
+        for (int b = 0; b < batches.size(); b++) {
+            Journal.AddBatch batch = batches.get(b);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Adding a batch of {} entries", batch.size());
+            }
+            try {
+                batchJournals.get(b).logAddEntries(batch, ackBeforeSync, ctx);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures = failBatch(failures, batch, b, entryBatches, e);
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected exception while adding a batch of {} entries", batch.size(), e);
+                failures = failBatch(failures, batch, b, entryBatches, e);
+            }
         }
-        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
+        return failures;
+    }
+
+    private static Exception[] failBatch(Exception[] failures, Journal.AddBatch batch, int batchIndex,
+                                         int[] entryBatches, Exception e) {
+        batch.release();
+        for (int i = 0; i < entryBatches.length; i++) {
+            if (entryBatches[i] == batchIndex) {
+                failures = addFailure(failures, entryBatches.length, i, e);
+            }
+        }
+        return failures;
+    }
+
+    private static Exception[] addFailure(Exception[] failures, int numEntries, int index, Exception e) {
+        if (failures == null) {
+            failures = new Exception[numEntries];
+        }
+        failures[index] = e;
+        return failures;
     }
 
     /**
@@ -1052,7 +1288,8 @@ public class BookieImpl implements Bookie {
                 handle.setExplicitLac(entry);
                 entry.resetReaderIndex();
                 explicitLACEntry = createExplicitLACEntry(ledgerId, entry);
-                getJournal(ledgerId).logAddEntry(explicitLACEntry, false /* ackBeforeSync */, writeCallback, ctx);
+                getJournalForWrite(ledgerId, false).logAddEntry(explicitLACEntry, false /* ackBeforeSync */,
+                        writeCallback, ctx);
             }
         } catch (NoWritableLedgerDirException e) {
             stateManager.transitionToReadOnlyMode();
@@ -1136,7 +1373,14 @@ public class BookieImpl implements Bookie {
     public CompletableFuture<Boolean> fenceLedger(long ledgerId, byte[] masterKey)
             throws IOException, BookieException {
         LedgerDescriptor handle = handles.getHandle(ledgerId, masterKey, false);
-        return handle.fenceAndLogInJournal(getJournal(ledgerId));
+        Journal journal;
+        try {
+            journal = getJournalForWrite(ledgerId, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while logging the master key of ledger " + ledgerId, e);
+        }
+        return handle.fenceAndLogInJournal(journal);
     }
 
     public ByteBuf readEntry(long ledgerId, long entryId)
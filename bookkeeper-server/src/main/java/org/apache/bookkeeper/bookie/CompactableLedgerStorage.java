@@ -22,6 +22,7 @@
 package org.apache.bookkeeper.bookie;
 
 import java.io.IOException;
+import java.util.List;
 /**
  * Interface that identifies LedgerStorage implementations using EntryLogger and running periodic entries compaction.
  */
@@ -51,4 +52,28 @@ public interface CompactableLedgerStorage extends LedgerStorage {
      * @throws IOException
      */
     void flushEntriesLocationsIndex() throws IOException;
+
+    /**
+     * Whether the storage can list the entries of a ledger that are stored in an entry log,
+     * through {@link #getEntriesLocationsInEntryLog(long, long, List)}.
+     *
+     * @return true if the entries locations can be looked up
+     */
+    default boolean supportsEntriesLocationsLookup() {
+        return false;
+    }
+
+    /**
+     * Add to the list the locations of the entries of a ledger that are stored in an entry log,
+     * according to the entries locations index.
+     *
+     * @param entryLogId the entry log
+     * @param ledgerId the ledger
+     * @param locations the list to add the locations to
+     * @throws IOException
+     */
+    default void getEntriesLocationsInEntryLog(long entryLogId, long ledgerId, List<EntryLocation> locations)
+            throws IOException {
+        throw new UnsupportedOperationException("Entries locations lookup is not supported");
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Coordinates the compaction workers of the ledger directories of a bookie.
+ *
+ * <p>Each {@link GarbageCollectorThread} compacts the entry logs of its own directory. The scheduler
+ * bounds how many of them compact at the same time, handing out a slot for each compacted entry log
+ * so that the directories take turns, and optionally provides a single throttler shared by all of
+ * them, so that the compaction rate applies to the whole bookie.
+ */
+public class CompactionScheduler {
+
+    private static final long WORKER_POLL_MILLIS = 100;
+
+    private final ServerConfiguration conf;
+    private final int maxWorkers;
+    // Null when the number of workers is not limited
+    private final Semaphore workerSlots;
+    // Null when each directory is throttled independently
+    private final AbstractLogCompactor.Throttler sharedThrottler;
+    private final boolean costBenefitSelection;
+    private final AtomicInteger activeWorkers = new AtomicInteger(0);
+
+    public CompactionScheduler(ServerConfiguration conf) {
+        this.conf = conf;
+        this.maxWorkers = conf.getCompactionMaxConcurrentWorkers();
+        this.workerSlots = maxWorkers > 0 ? new Semaphore(maxWorkers, true) : null;
+        this.sharedThrottler = conf.isCompactionGlobalThrottle() ? new AbstractLogCompactor.Throttler(conf) : null;
+        this.costBenefitSelection = conf.isCompactionCostBenefitSelection();
+    }
+
+    /**
+     * Get a throttler for the compaction of a directory, which shares its rate with the other
+     * directories when the compaction rate is global. Each directory cancels its own throttlers on
+     * shutdown, without stopping the compaction of the other directories.
+     */
+    AbstractLogCompactor.Throttler newThrottler() {
+        return sharedThrottler != null ? sharedThrottler.share() : new AbstractLogCompactor.Throttler(conf);
+    }
+
+    /**
+     * Wait for a compaction slot.
+     *
+     * @param running checked while waiting, the wait is abandoned once it returns false
+     * @return true if a slot was acquired and must be released with {@link #releaseWorker()}
+     */
+    boolean acquireWorker(BooleanSupplier running) throws InterruptedException {
+        if (workerSlots != null) {
+            while (!workerSlots.tryAcquire(WORKER_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!running.getAsBoolean()) {
+                    return false;
+                }
+            }
+        }
+        activeWorkers.incrementAndGet();
+        return true;
+    }
+
+    void releaseWorker() {
+        activeWorkers.decrementAndGet();
+        if (workerSlots != null) {
+            workerSlots.release();
+        }
+    }
+
+    /**
+     * Get the number of directories compacting an entry log right now.
+     */
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    /**
+     * Get the maximum number of directories compacting at the same time, or 0 if not limited.
+     */
+    public int getMaxWorkers() {
+        return Math.max(maxWorkers, 0);
+    }
+
+    boolean isCostBenefitSelection() {
+        return costBenefitSelection;
+    }
+
+    /**
+     * Score an entry log for compaction, a higher score meaning a better victim.
+     *
+     * <p>The benefit of compacting a log is the space it frees, {@code 1 - usage}, weighted by how long
+     * the space stays free, which is estimated by the age of the log since old data is less likely to
+     * be deleted soon. The cost is reading the log and rewriting its live data, {@code 1 + usage}.
+     *
+     * @param usage the fraction of live data in the entry log
+     * @param age the age of the entry log, in any unit as long as it is the same for all the logs
+     */
+    static double costBenefitScore(double usage, long age) {
+        return (1.0d - usage) * Math.max(age, 1L) / (1.0d + usage);
+    }
+}
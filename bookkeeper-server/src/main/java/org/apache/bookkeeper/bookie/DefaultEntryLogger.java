@@ -25,6 +25,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
 import io.netty.buffer.ByteBuf;
@@ -289,6 +291,12 @@ public class DefaultEntryLogger implements EntryLogger {
 
     final ServerConfiguration conf;
 
+    // Sealed entry logs mapped in memory, when reads are served from memory mappings. The cache drops the
+    // least recently used mappings, which are unmapped once the entries read from them are released.
+    private final boolean mmapReadEnabled;
+    private final Cache<Long, MappedEntryLog> mappedLogs;
+    private final Set<Long> unmappableLogIds = ConcurrentHashMap.newKeySet();
+
     /**
      * Entry Log Listener.
      */
@@ -322,6 +330,12 @@ public class DefaultEntryLogger implements EntryLogger {
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
         entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
+        this.mmapReadEnabled = conf.isEntryLogMmapReadEnabled();
+        this.mappedLogs = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumSize(Math.max(1, conf.getEntryLogMmapMaxMappedLogs()))
+                .<Long, MappedEntryLog>removalListener(notification -> notification.getValue().release())
+                .build();
         if (listener != null) {
             addListener(listener);
         }
@@ -519,19 +533,29 @@ public class DefaultEntryLogger implements EntryLogger {
     @Override
     public boolean removeEntryLog(long entryLogId) {
         removeFromChannelsAndClose(entryLogId);
-        File entryLogFile;
-        try {
-            entryLogFile = findFile(entryLogId);
-        } catch (FileNotFoundException e) {
-            LOG.error("Trying to delete an entryLog file that could not be found: "
-                    + entryLogId + ".log");
+        // Holding the mappings lock until the file is deleted prevents a concurrent read from mapping it again.
+        // Entries already read from the mapping stay valid until they are released.
+        synchronized (mappedLogs) {
+            unmapEntryLog(entryLogId);
+            File entryLogFile;
+            try {
+                entryLogFile = findFile(entryLogId);
+            } catch (FileNotFoundException e) {
+                LOG.error("Trying to delete an entryLog file that could not be found: "
+                        + entryLogId + ".log");
+                return true;
+            }
+            if (!entryLogFile.delete()) {
+                LOG.warn("Could not delete entry log file {}", entryLogFile);
+                return false;
+            }
             return true;
         }
-        if (!entryLogFile.delete()) {
-            LOG.warn("Could not delete entry log file {}", entryLogFile);
-            return false;
-        }
-        return true;
+    }
+
+    private void unmapEntryLog(long entryLogId) {
+        unmappableLogIds.remove(entryLogId);
+        mappedLogs.invalidate(entryLogId);
     }
 
     private long getLastLogIdFromFile(File dir) {
@@ -842,6 +866,12 @@ public class DefaultEntryLogger implements EntryLogger {
         long entryLogId = logIdForOffset(location);
         long pos = posForOffset(location);
 
+        if (mmapReadEnabled) {
+            ByteBuf entry = readMappedEntry(ledgerId, entryId, entryLogId, pos, validateEntry);
+            if (entry != null) {
+                return entry;
+            }
+        }
 
         BufferedReadChannel fc = null;
         int entrySize = -1;
@@ -871,6 +901,94 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    /**
+     * Read an entry from the memory mapping of a sealed entry log, without copying it.
+     *
+     * @return the entry, or null if it has to be read through the log channel. That is the case when the log
+     *         cannot be mapped, and also when the entry is not valid, so that the regular path reports the error.
+     */
+    private ByteBuf readMappedEntry(long ledgerId, long entryId, long entryLogId, long pos, boolean validateEntry) {
+        MappedEntryLog mappedLog = getMappedLog(entryLogId);
+        if (mappedLog == null) {
+            return null;
+        }
+
+        boolean valid = false;
+        try {
+            if (pos < 4 || pos > mappedLog.size()) {
+                return null;
+            }
+            int entrySize = mappedLog.getInt((int) pos - 4);
+            if (entrySize < MIN_SANE_ENTRY_SIZE || pos + entrySize > mappedLog.size()) {
+                return null;
+            }
+            if (validateEntry && (mappedLog.getLong((int) pos) != ledgerId
+                    || mappedLog.getLong((int) pos + 8) != entryId)) {
+                return null;
+            }
+            valid = true;
+            // The returned buffer owns the reference taken on the mapped log
+            return mappedLog.slice(allocator, (int) pos, entrySize);
+        } finally {
+            if (!valid) {
+                mappedLog.release();
+            }
+        }
+    }
+
+    /**
+     * Get the mapping of an entry log, mapping it on first access once the log is sealed and flushed.
+     *
+     * <p>A log that cannot be mapped, because it is too big or because the mapping fails, is read through
+     * its channel until it is removed.
+     *
+     * @return the mapped log, with a reference taken for the caller, or null if the log cannot be mapped
+     */
+    private MappedEntryLog getMappedLog(long entryLogId) {
+        MappedEntryLog mappedLog = mappedLogs.getIfPresent(entryLogId);
+        if (mappedLog == null) {
+            if (unmappableLogIds.contains(entryLogId)
+                    || !entryLoggerAllocator.isSealed(entryLogId)
+                    || entryLogManager.getCurrentLogIfPresent(entryLogId) != null
+                    || !recentlyCreatedEntryLogsStatus.isFlushedLogId(entryLogId)) {
+                return null;
+            }
+
+            synchronized (mappedLogs) {
+                mappedLog = mappedLogs.getIfPresent(entryLogId);
+                if (mappedLog == null) {
+                    File file;
+                    try {
+                        file = findFile(entryLogId);
+                    } catch (FileNotFoundException e) {
+                        return null;
+                    }
+                    // A private mapping needs a channel opened for writing, though nothing is ever written to the file
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                        mappedLog = MappedEntryLog.map(entryLogId, raf.getChannel());
+                    } catch (IOException e) {
+                        LOG.warn("Failed to map entry log {}, reading it through its channel", entryLogId, e);
+                        unmappableLogIds.add(entryLogId);
+                        return null;
+                    }
+                    if (mappedLog == null) {
+                        LOG.info("Entry log {} is too big to be mapped, reading it through its channel", entryLogId);
+                        unmappableLogIds.add(entryLogId);
+                        return null;
+                    }
+                    mappedLogs.put(entryLogId, mappedLog);
+                }
+            }
+        }
+        return mappedLog.tryRetain() ? mappedLog : null;
+    }
+
+    @VisibleForTesting
+    long getMappedLogsCount() {
+        mappedLogs.cleanUp();
+        return mappedLogs.size();
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -1220,6 +1338,10 @@ public class DefaultEntryLogger implements EntryLogger {
                 IOUtils.close(LOG, compactionLogChannel);
             }
         }
+        synchronized (mappedLogs) {
+            unmappableLogIds.clear();
+            mappedLogs.invalidateAll();
+        }
         // shutdown the pre-allocation thread
         entryLoggerAllocator.stop();
     }
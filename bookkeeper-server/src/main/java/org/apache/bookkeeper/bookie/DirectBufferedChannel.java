@@ -0,0 +1,169 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * BufferedChannel that writes the buffered data with direct I/O, bypassing the page cache.
+ *
+ * <p>Direct I/O requires the memory, the offset and the size of the writes to be aligned, so the write
+ * buffer is aligned and the buffered data is written in whole blocks. When the data does not end on a
+ * block boundary, the rest of the last block is zeroed, like the unwritten part of a preallocated file,
+ * and the block is kept in the buffer to be written again with the next data. Writers that pad their
+ * data to the alignment before flushing, like the journal with {@code journalAlignmentSize}, never
+ * rewrite a block.
+ *
+ * <p>The file channel is still used to read, and to force the writes to the disk.
+ */
+class DirectBufferedChannel extends BufferedChannel {
+
+    static final int ALIGNMENT = 4096;
+
+    private final NativeIO nativeIO;
+    private final String path;
+    private final int fd;
+    private final long bufferAddress;
+    // Bytes at the start of the buffer that are already on disk
+    private int writtenBytes;
+    private boolean closed = false;
+
+    /**
+     * Open the given file for direct writes, appending at the position of the file channel.
+     *
+     * @throws IOException if the file cannot be opened for direct I/O, in which case nothing needs
+     *                     to be released by the caller
+     */
+    static DirectBufferedChannel open(ByteBufAllocator allocator, NativeIO nativeIO, File file, FileChannel fc,
+                                      int capacity) throws IOException {
+        int alignedCapacity = Math.max(alignUp(capacity), ALIGNMENT);
+        ByteBuf buffer = allocator.directBuffer(alignedCapacity + ALIGNMENT);
+        if (!buffer.hasMemoryAddress()) {
+            buffer.release();
+            throw new IOException("Direct I/O requires buffers with a memory address");
+        }
+        int alignOffset = (int) ((ALIGNMENT - (buffer.memoryAddress() & (ALIGNMENT - 1))) & (ALIGNMENT - 1));
+
+        int fd;
+        try {
+            fd = nativeIO.open(file.getPath(), NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+        } catch (NativeIOException e) {
+            buffer.release();
+            throw new IOException("Failed to open " + file + " for direct I/O, errno " + e.getErrno(), e);
+        } catch (Throwable t) {
+            // The native library could not be loaded
+            buffer.release();
+            throw new IOException("Direct I/O is not available: " + t.getMessage(), t);
+        }
+
+        try {
+            return new DirectBufferedChannel(fc, buffer.slice(alignOffset, alignedCapacity).writerIndex(0),
+                    buffer.memoryAddress() + alignOffset, nativeIO, file.getPath(), fd);
+        } catch (IOException e) {
+            buffer.release();
+            nativeIO.close(fd);
+            throw e;
+        }
+    }
+
+    private DirectBufferedChannel(FileChannel fc, ByteBuf alignedBuffer, long bufferAddress, NativeIO nativeIO,
+                                  String path, int fd) throws IOException {
+        super(fc, alignedBuffer, ALIGNMENT, 0L);
+        this.nativeIO = nativeIO;
+        this.path = path;
+        this.fd = fd;
+        this.bufferAddress = bufferAddress;
+
+        // Start from the beginning of the block holding the current position, with the data already in
+        // that block, so that it is written back unchanged
+        long blockStart = position - position % ALIGNMENT;
+        int head = (int) (position - blockStart);
+        while (writeBuffer.writerIndex() < head) {
+            int read = writeBuffer.writeBytes(fc, blockStart + writeBuffer.writerIndex(),
+                    head - writeBuffer.writerIndex());
+            if (read <= 0) {
+                throw new IOException("Short read of " + path + " at " + blockStart);
+            }
+        }
+        writeBufferStartPosition.set(blockStart);
+        writtenBytes = head;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        int length = writeBuffer.writerIndex();
+        if (length == writtenBytes) {
+            return;
+        }
+        int blockBytes = length % ALIGNMENT;
+        int alignedLength = alignUp(length);
+        writeBuffer.setZero(length, alignedLength - length);
+
+        long offset = writeBufferStartPosition.get();
+        int written = 0;
+        while (written < alignedLength) {
+            int ret = nativeIO.pwrite(fd, bufferAddress + written, alignedLength - written, offset + written);
+            if (ret <= 0) {
+                throw new IOException("Incomplete direct write of " + path + " at " + (offset + written));
+            }
+            written += ret;
+        }
+
+        if (blockBytes == 0) {
+            writeBuffer.clear();
+            writtenBytes = 0;
+            writeBufferStartPosition.set(offset + length);
+        } else {
+            // Keep the partial last block, to write it again once it has more data
+            int lastBlock = length - blockBytes;
+            if (lastBlock > 0) {
+                writeBuffer.setBytes(0, writeBuffer, lastBlock, blockBytes);
+            }
+            writeBuffer.setIndex(0, blockBytes);
+            writtenBytes = blockBytes;
+            writeBufferStartPosition.set(offset + lastBlock);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            super.close();
+        } finally {
+            nativeIO.close(fd);
+        }
+    }
+
+    private static int alignUp(int size) {
+        return (size + ALIGNMENT - 1) & ~(ALIGNMENT - 1);
+    }
+}
@@ -49,7 +49,16 @@ public class EntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, new Throttler(conf));
+    }
+
+    public EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            Throttler throttler) {
+        super(conf, logRemover, throttler);
         this.maxOutstandingRequests = conf.getCompactionMaxOutstandingRequests();
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
@@ -58,8 +67,10 @@ public class EntryLogCompactor extends AbstractLogCompactor {
     @Override
     public boolean compact(EntryLogMetadata entryLogMeta) {
         try {
-            entryLogger.scanEntryLog(entryLogMeta.getEntryLogId(),
-                scannerFactory.newScanner(entryLogMeta));
+            if (!compactLiveEntries(entryLogMeta)) {
+                entryLogger.scanEntryLog(entryLogMeta.getEntryLogId(),
+                    scannerFactory.newScanner(entryLogMeta));
+            }
             scannerFactory.flush();
             LOG.info("Removing entry log {} after compaction", entryLogMeta.getEntryLogId());
             logRemovalListener.removeEntryLog(entryLogMeta.getEntryLogId());
@@ -76,6 +87,25 @@ public class EntryLogCompactor extends AbstractLogCompactor {
         return true;
     }
 
+    /**
+     * Copy the live entries of an entry log, found through the entry location index.
+     *
+     * @return false if the entry log has to be scanned instead
+     */
+    private boolean compactLiveEntries(EntryLogMetadata entryLogMeta) throws IOException {
+        List<EntryLocation> liveEntries = getLiveEntryLocations(ledgerStorage, entryLogMeta);
+        if (liveEntries == null) {
+            return false;
+        }
+        if (readLiveEntries(entryLogger, entryLogMeta, liveEntries, scannerFactory.newScanner(entryLogMeta))) {
+            return true;
+        }
+        // The entries copied so far are copied again by the scan, the first copies are left as garbage
+        LOG.info("Entry location index does not account for all the live data of entry log {}, scanning it",
+                entryLogMeta.getEntryLogId());
+        return false;
+    }
+
     /**
      * A scanner wrapper to check whether a ledger is alive in an entry log file.
      */
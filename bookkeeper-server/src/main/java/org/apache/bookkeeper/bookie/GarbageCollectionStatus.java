@@ -46,4 +46,16 @@ public class GarbageCollectionStatus {
     private long majorCompactionCounter;
     private long minorCompactionCounter;
     private long entryLocationCompactionCounter;
+
+    // the ledger directories collected by the GC thread.
+    private String ledgerDirs;
+    // the entry log being compacted, or -1 if the GC thread is not compacting an entry log.
+    private long compactingEntryLogId;
+    // progress of the current, or last, compaction run.
+    private int compactionCandidates;
+    private int compactedEntryLogs;
+    private long compactionReclaimedBytes;
+    // the compaction workers of the bookie currently compacting, and their limit (0 if not limited).
+    private int activeCompactionWorkers;
+    private int maxCompactionWorkers;
 }
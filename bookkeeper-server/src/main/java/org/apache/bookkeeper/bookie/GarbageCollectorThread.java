@@ -27,10 +27,12 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -39,6 +41,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
 import org.apache.bookkeeper.bookie.GarbageCollector.GarbageCleaner;
@@ -108,6 +111,12 @@ public class GarbageCollectorThread implements Runnable {
     private volatile double entryLogCompactRatio;
     private volatile int[] currentEntryLogUsageBuckets;
 
+    // Progress of the current, or last, compaction run
+    private volatile long compactingEntryLogId = -1L;
+    private final AtomicInteger compactionCandidates = new AtomicInteger(0);
+    private final AtomicInteger compactedEntryLogs = new AtomicInteger(0);
+    private final AtomicLong compactionReclaimedBytes = new AtomicLong(0L);
+
     final CompactableLedgerStorage ledgerStorage;
 
     // flag to ensure gc thread will not be interrupted during compaction
@@ -135,6 +144,8 @@ public class GarbageCollectorThread implements Runnable {
 
     private static final AtomicLong threadNum = new AtomicLong(0);
     final AbstractLogCompactor.Throttler throttler;
+    final CompactionScheduler compactionScheduler;
+    private final String ledgerDirs;
 
     /**
      * Create a garbage collector thread.
@@ -171,10 +182,49 @@ public class GarbageCollectorThread implements Runnable {
                                   StatsLogger statsLogger,
                                   ScheduledExecutorService gcExecutor)
         throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger, gcExecutor,
+             new CompactionScheduler(conf));
+    }
+
+    /**
+     * Create a garbage collector thread whose compaction is coordinated with the other ledger
+     * directories of the bookie.
+     *
+     * @param conf
+     *          Server Configuration Object.
+     * @param compactionScheduler
+     *          Scheduler shared by the garbage collector threads of the bookie.
+     * @throws IOException
+     */
+    public GarbageCollectorThread(ServerConfiguration conf,
+                                  LedgerManager ledgerManager,
+                                  final LedgerDirsManager ledgerDirsManager,
+                                  final CompactableLedgerStorage ledgerStorage,
+                                  EntryLogger entryLogger,
+                                  StatsLogger statsLogger,
+                                  CompactionScheduler compactionScheduler)
+        throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger, newExecutor(),
+             compactionScheduler);
+    }
+
+    public GarbageCollectorThread(ServerConfiguration conf,
+                                  LedgerManager ledgerManager,
+                                  final LedgerDirsManager ledgerDirsManager,
+                                  final CompactableLedgerStorage ledgerStorage,
+                                  EntryLogger entryLogger,
+                                  StatsLogger statsLogger,
+                                  ScheduledExecutorService gcExecutor,
+                                  CompactionScheduler compactionScheduler)
+        throws IOException {
         this.gcExecutor = gcExecutor;
         this.conf = conf;
+        this.compactionScheduler = compactionScheduler;
 
         this.ledgerDirsManager = ledgerDirsManager;
+        this.ledgerDirs = ledgerDirsManager.getAllLedgerDirs().stream()
+            .map(File::getPath)
+            .collect(Collectors.joining(","));
         this.entryLogger = entryLogger;
         this.entryLogMetaMap = createEntryLogMetadataMap();
         this.ledgerStorage = ledgerStorage;
@@ -237,12 +287,14 @@ public class GarbageCollectorThread implements Runnable {
             }
         };
         if (conf.getUseTransactionalCompaction()) {
-            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                compactionScheduler.newThrottler());
         } else {
-            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                compactionScheduler.newThrottler());
         }
 
-        this.throttler = new AbstractLogCompactor.Throttler(conf);
+        this.throttler = compactionScheduler.newThrottler();
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
             if (minorCompactionThreshold > 1.0d) {
                 throw new IOException("Invalid minor compaction threshold "
@@ -299,6 +351,9 @@ public class GarbageCollectorThread implements Runnable {
                + majorCompactionThreshold + ", interval=" + majorCompactionInterval);
         LOG.info("Entry Location Compaction : interval=" + entryLocationCompactionInterval + ", randomCompactionDelay="
                 + randomCompactionDelay);
+        LOG.info("Compaction Scheduling : maxConcurrentWorkers=" + compactionScheduler.getMaxWorkers()
+                + ", globalThrottle=" + conf.isCompactionGlobalThrottle()
+                + ", costBenefitSelection=" + compactionScheduler.isCostBenefitSelection());
 
         lastMinorCompactionTime = lastMajorCompactionTime =
             lastEntryLocationCompactionTime = System.currentTimeMillis();
@@ -315,6 +370,11 @@ public class GarbageCollectorThread implements Runnable {
                     baseDir + "/" + METADATA_CACHE, e);
                 throw e;
             }
+        } else if (conf.isGcEntryLogMetadataOffHeapEnabled()) {
+            String baseDir = Strings.isNullOrEmpty(conf.getGcEntryLogMetadataCachePath())
+                ? this.ledgerDirsManager.getAllLedgerDirs().get(0).getPath() : conf.getGcEntryLogMetadataCachePath();
+            return new OffHeapEntryLogMetadataMap(conf.getGcEntryLogMetadataOffHeapMaxSizeMb() * 1024 * 1024,
+                    new File(baseDir));
         } else {
             return new InMemoryEntryLogMetadataMap();
         }
@@ -619,9 +679,14 @@ public class GarbageCollectorThread implements Runnable {
      * Compact entry logs if necessary.
      *
      * <p>
-     * Compaction will be executed from low unused space to high unused space.
-     * Those entry log files whose remaining size percentage is higher than threshold
-     * would not be compacted.
+     * Compaction will be executed from low usage to high usage, or from the highest cost-benefit
+     * score to the lowest when cost-benefit selection is enabled. Those entry log files whose
+     * remaining size percentage is higher than threshold would not be compacted.
+     * </p>
+     *
+     * <p>
+     * A compaction slot of the {@link CompactionScheduler} is held while compacting each entry log,
+     * so the ledger directories of the bookie take turns when the number of workers is limited.
      * </p>
      */
     @VisibleForTesting
@@ -632,16 +697,15 @@ public class GarbageCollectorThread implements Runnable {
         int[] entryLogUsageBuckets = new int[numBuckets];
         int[] compactedBuckets = new int[numBuckets];
 
-        ArrayList<LinkedList<Long>> compactableBuckets = new ArrayList<>(numBuckets);
-        for (int i = 0; i < numBuckets; i++) {
-            compactableBuckets.add(new LinkedList<>());
-        }
+        List<CompactionCandidate> candidates = new ArrayList<>();
+        MutableLong newestEntryLogId = new MutableLong(Long.MIN_VALUE);
 
         long start = System.currentTimeMillis();
         MutableLong end = new MutableLong(start);
         MutableLong timeDiff = new MutableLong(0);
 
         entryLogMetaMap.forEach((entryLogId, meta) -> {
+            newestEntryLogId.setValue(Math.max(newestEntryLogId.getValue(), entryLogId));
             double usage = meta.getUsage();
             if (conf.isUseTargetEntryLogSizeForGc() && usage < 1.0d) {
                 usage = (double) meta.getRemainingSize() / Math.max(meta.getTotalSize(), conf.getEntryLogSizeLimit());
@@ -661,7 +725,7 @@ public class GarbageCollectorThread implements Runnable {
                 return;
             }
 
-            compactableBuckets.get(bucketIndex).add(meta.getEntryLogId());
+            candidates.add(new CompactionCandidate(meta.getEntryLogId(), bucketIndex, usage));
         });
         currentEntryLogUsageBuckets = entryLogUsageBuckets;
         gcStats.setEntryLogUsageBuckets(currentEntryLogUsageBuckets);
@@ -669,36 +733,46 @@ public class GarbageCollectorThread implements Runnable {
                 "Compaction: entry log usage buckets before compaction [10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}",
                 entryLogUsageBuckets);
 
-        final int maxBucket = calculateUsageIndex(numBuckets, threshold);
-        int totalEntryLogIds = 0;
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            totalEntryLogIds += compactableBuckets.get(currBucket).size();
+        if (compactionScheduler.isCostBenefitSelection()) {
+            // Entry log ids are allocated in increasing order, so the distance to the newest log
+            // tells how old a log is
+            final long newestLogId = newestEntryLogId.getValue();
+            candidates.sort(Comparator.comparingDouble((CompactionCandidate candidate) ->
+                CompactionScheduler.costBenefitScore(candidate.usage, newestLogId - candidate.entryLogId + 1))
+                .reversed());
+        } else {
+            // The sort is stable, the logs of a bucket keep the order of the metadata map
+            candidates.sort(Comparator.comparingInt(candidate -> candidate.bucketIndex));
         }
+
+        compactionCandidates.set(candidates.size());
+        compactedEntryLogs.set(0);
+        compactionReclaimedBytes.set(0L);
         long lastPrintTimestamp = 0;
-        AtomicInteger processedEntryLogCnt = new AtomicInteger(0);
-
-        stopCompaction:
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            LinkedList<Long> entryLogIds = compactableBuckets.get(currBucket);
-            while (!entryLogIds.isEmpty()) {
-                if (timeDiff.getValue() < maxTimeMillis) {
-                    end.setValue(System.currentTimeMillis());
-                    timeDiff.setValue(end.getValue() - start);
-                }
 
-                if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || !running) {
-                    // We allow the usage limit calculation to continue so that we get an accurate
-                    // report of where the usage was prior to running compaction.
-                    break stopCompaction;
-                }
+        for (CompactionCandidate candidate : candidates) {
+            if (timeDiff.getValue() < maxTimeMillis) {
+                end.setValue(System.currentTimeMillis());
+                timeDiff.setValue(end.getValue() - start);
+            }
 
-                final int bucketIndex = currBucket;
-                final long logId = entryLogIds.remove();
-                if (System.currentTimeMillis() - lastPrintTimestamp >= MINUTE) {
-                    lastPrintTimestamp = System.currentTimeMillis();
-                    LOG.info("Compaction progress {} / {}, current compaction entryLogId: {}",
-                        processedEntryLogCnt.get(), totalEntryLogIds, logId);
-                }
+            if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || !running) {
+                // We allow the usage limit calculation to continue so that we get an accurate
+                // report of where the usage was prior to running compaction.
+                break;
+            }
+
+            final long logId = candidate.entryLogId;
+            if (System.currentTimeMillis() - lastPrintTimestamp >= MINUTE) {
+                lastPrintTimestamp = System.currentTimeMillis();
+                LOG.info("Compaction progress {} / {}, current compaction entryLogId: {}",
+                    compactedEntryLogs.get(), candidates.size(), logId);
+            }
+            if (!acquireCompactionWorker()) {
+                break;
+            }
+            compactingEntryLogId = logId;
+            try {
                 entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
                     if (meta == null) {
                         if (LOG.isDebugEnabled()) {
@@ -713,10 +787,15 @@ public class GarbageCollectorThread implements Runnable {
 
                     long priorRemainingSize = meta.getRemainingSize();
                     compactEntryLog(meta);
-                    gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
-                    compactedBuckets[bucketIndex]++;
-                    processedEntryLogCnt.getAndIncrement();
+                    long reclaimedSize = meta.getTotalSize() - priorRemainingSize;
+                    gcStats.getReclaimedSpaceViaCompaction().addCount(reclaimedSize);
+                    compactionReclaimedBytes.addAndGet(reclaimedSize);
+                    compactedBuckets[candidate.bucketIndex]++;
+                    compactedEntryLogs.incrementAndGet();
                 });
+            } finally {
+                compactingEntryLogId = -1L;
+                compactionScheduler.releaseWorker();
             }
         }
 
@@ -735,6 +814,16 @@ public class GarbageCollectorThread implements Runnable {
                 + "compacted entry log ratio {}", entryLogUsageBuckets, compactedBuckets, entryLogCompactRatio);
     }
 
+    private boolean acquireCompactionWorker() {
+        try {
+            return compactionScheduler.acquireWorker(() -> running);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.info("Interrupted while waiting for a compaction worker");
+            return false;
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -894,6 +983,25 @@ public class GarbageCollectorThread implements Runnable {
             .majorCompactionCounter(gcStats.getMajorCompactionCounter().get())
             .minorCompactionCounter(gcStats.getMinorCompactionCounter().get())
             .entryLocationCompactionCounter(gcStats.getEntryLocationCompactionCounter().get())
+            .ledgerDirs(ledgerDirs)
+            .compactingEntryLogId(compactingEntryLogId)
+            .compactionCandidates(compactionCandidates.get())
+            .compactedEntryLogs(compactedEntryLogs.get())
+            .compactionReclaimedBytes(compactionReclaimedBytes.get())
+            .activeCompactionWorkers(compactionScheduler.getActiveWorkers())
+            .maxCompactionWorkers(compactionScheduler.getMaxWorkers())
             .build();
     }
+
+    private static final class CompactionCandidate {
+        final long entryLogId;
+        final int bucketIndex;
+        final double usage;
+
+        CompactionCandidate(long entryLogId, int bucketIndex, double usage) {
+            this.entryLogId = entryLogId;
+            this.bucketIndex = bucketIndex;
+            this.usage = usage;
+        }
+    }
 }
@@ -39,6 +39,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -52,6 +53,8 @@ import org.apache.bookkeeper.common.collections.RecyclableArrayList;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.proto.BookieRequestHandler;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -92,6 +95,13 @@ public class Journal implements CheckpointSource {
                 int capacity) -> new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, fc, capacity);
 
         BufferedChannel create(FileChannel fc, int capacity) throws IOException;
+
+        /**
+         * Create the buffered channel of the given journal file.
+         */
+        default BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+            return create(fc, capacity);
+        }
     }
 
 
@@ -293,11 +303,119 @@ public class Journal implements CheckpointSource {
         void process(int journalVersion, long offset, ByteBuffer entry) throws IOException;
     }
 
+    /**
+     * Entries added to the journal together, possibly of several ledgers.
+     *
+     * <p>The batch is queued to the journal as a single entry. Its entries are written one after the
+     * other, in the same format as entries added one by one, and they are acknowledged together once
+     * written.
+     */
+    public static class AddBatch {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private ByteBuf[] entries = new ByteBuf[INITIAL_CAPACITY];
+        private long[] ledgerIds = new long[INITIAL_CAPACITY];
+        private long[] entryIds = new long[INITIAL_CAPACITY];
+        private WriteCallback[] cbs = new WriteCallback[INITIAL_CAPACITY];
+        private int size = 0;
+        private long bytes = 0L;
+
+        public static AddBatch create() {
+            return RECYCLER.get();
+        }
+
+        /**
+         * Add an entry to the batch. The entry is retained until it is written to the journal.
+         */
+        public void add(long ledgerId, long entryId, ByteBuf entry, WriteCallback cb) {
+            if (size == entries.length) {
+                int capacity = size * 2;
+                entries = Arrays.copyOf(entries, capacity);
+                ledgerIds = Arrays.copyOf(ledgerIds, capacity);
+                entryIds = Arrays.copyOf(entryIds, capacity);
+                cbs = Arrays.copyOf(cbs, capacity);
+            }
+            entries[size] = entry.retain();
+            ledgerIds[size] = ledgerId;
+            entryIds[size] = entryId;
+            cbs[size] = cb;
+            size++;
+            bytes += entry.readableBytes();
+        }
+
+        public int size() {
+            return size;
+        }
+
+        long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Write the entries of the batch, each one preceded by its length, and release them.
+         */
+        void write(BufferedChannel bc, ByteBuf lenBuff) throws IOException {
+            for (int i = 0; i < size; i++) {
+                lenBuff.clear();
+                lenBuff.writeInt(entries[i].readableBytes());
+                bc.write(lenBuff);
+                bc.write(entries[i]);
+            }
+            releaseEntries();
+        }
+
+        void complete(int rc, Object ctx) {
+            for (int i = 0; i < size; i++) {
+                cbs[i].writeComplete(rc, ledgerIds[i], entryIds[i], null, ctx);
+            }
+        }
+
+        /**
+         * Release the entries of a batch that is not queued to the journal, without acknowledging them.
+         */
+        public void release() {
+            releaseEntries();
+            recycle();
+        }
+
+        private void releaseEntries() {
+            for (int i = 0; i < size; i++) {
+                if (entries[i] != null) {
+                    ReferenceCountUtil.release(entries[i]);
+                    entries[i] = null;
+                }
+            }
+        }
+
+        private final Handle<AddBatch> recyclerHandle;
+
+        private AddBatch(Handle<AddBatch> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<AddBatch> RECYCLER = new Recycler<AddBatch>() {
+            @Override
+            protected AddBatch newObject(Recycler.Handle<AddBatch> handle) {
+                return new AddBatch(handle);
+            }
+        };
+
+        private void recycle() {
+            Arrays.fill(cbs, 0, size, null);
+            size = 0;
+            bytes = 0L;
+            recyclerHandle.recycle(this);
+        }
+    }
+
     /**
      * Journal Entry to Record.
      */
     static class QueueEntry implements Runnable {
         ByteBuf entry;
+        // Set instead of the entry when a batch of entries is queued, the ledger id and entry id then
+        // being the ones of its first entry
+        AddBatch batch;
         long ledgerId;
         long entryId;
         WriteCallback cb;
@@ -324,14 +442,37 @@ public class Journal implements CheckpointSource {
             return qe;
         }
 
+        static QueueEntry create(AddBatch batch, boolean ackBeforeSync, Object ctx, long enqueueTime,
+                OpStatsLogger journalAddEntryStats, Counter callbackTime) {
+            QueueEntry qe = create(null, ackBeforeSync, batch.ledgerIds[0], batch.entryIds[0], null, ctx,
+                    enqueueTime, journalAddEntryStats, callbackTime);
+            qe.batch = batch;
+            return qe;
+        }
+
+        /**
+         * Get the number of entries added to the journal by this queue entry.
+         */
+        int numEntries() {
+            return batch != null ? batch.size() : 1;
+        }
+
         @Override
         public void run() {
             long startTime = System.nanoTime();
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Acknowledge Ledger: {}, Entry: {}", ledgerId, entryId);
+                LOG.debug("Acknowledge Ledger: {}, Entry: {}, Entries: {}", ledgerId, entryId, numEntries());
+            }
+            long queuedNanos = MathUtils.elapsedNanos(enqueueTime);
+            if (batch != null) {
+                for (int i = 0; i < batch.size(); i++) {
+                    journalAddEntryStats.registerSuccessfulEvent(queuedNanos, TimeUnit.NANOSECONDS);
+                }
+                batch.complete(0, ctx);
+            } else {
+                journalAddEntryStats.registerSuccessfulEvent(queuedNanos, TimeUnit.NANOSECONDS);
+                cb.writeComplete(0, ledgerId, entryId, null, ctx);
             }
-            journalAddEntryStats.registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
-            cb.writeComplete(0, ledgerId, entryId, null, ctx);
             callbackTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
             recycle();
         }
@@ -355,6 +496,10 @@ public class Journal implements CheckpointSource {
 
         private void recycle() {
             this.entry = null;
+            if (this.batch != null) {
+                this.batch.recycle();
+                this.batch = null;
+            }
             this.cb = null;
             this.ctx = null;
             this.journalAddEntryStats = null;
@@ -541,8 +686,13 @@ public class Journal implements CheckpointSource {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
                 lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
+                long fsyncNanos = MathUtils.elapsedNanos(fsyncStartTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncNanos, TimeUnit.NANOSECONDS);
+                if (groupCommitController != null) {
+                    groupCommitController.recordForceWrite(fsyncNanos);
+                }
+                long latency = forceWriteLatencyNanos;
+                forceWriteLatencyNanos = latency == 0L ? fsyncNanos : (fsyncNanos + 4 * latency) / 5;
                 lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
@@ -600,6 +750,8 @@ public class Journal implements CheckpointSource {
     final ServerConfiguration conf;
     final ForceWriteThread forceWriteThread;
     final FileChannelProvider fileChannelProvider;
+    // Used by the journal channels to write with direct I/O, when enabled
+    private final NativeIO directIO;
 
     // Time after which we will stop grouping and issue the flush
     private final long maxGroupWaitInNanos;
@@ -609,6 +761,10 @@ public class Journal implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // Chooses the group wait and the buffered entries threshold when adaptive group commit is enabled
+    private final JournalGroupCommitController groupCommitController;
+    // Moving average of the fsync latency, to compare the load of the journals
+    private volatile long forceWriteLatencyNanos = 0L;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
@@ -691,6 +847,9 @@ public class Journal implements CheckpointSource {
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        this.groupCommitController = conf.getJournalAdaptiveGroupCommit()
+                ? new JournalGroupCommitController(maxGroupWaitInNanos, conf.getJournalQueueSize(), journalStatsLogger)
+                : null;
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
@@ -710,6 +869,7 @@ public class Journal implements CheckpointSource {
             LOG.error("Failed to initiate file channel provider: {}", conf.getJournalChannelProvider());
             throw new RuntimeException(e);
         }
+        this.directIO = conf.getJournalDirectIOEnabled() ? newDirectIO() : null;
 
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
@@ -911,6 +1071,36 @@ public class Journal implements CheckpointSource {
                 callbackTime));
     }
 
+    /**
+     * Record a batch of add entry operations in the journal, as a single queue entry. The entries
+     * are acknowledged, through their callbacks and with the given context, once written.
+     */
+    public void logAddEntries(AddBatch batch, boolean ackBeforeSync, Object ctx) throws InterruptedException {
+        if (batch.size() == 0) {
+            batch.release();
+            return;
+        }
+
+        journalStats.getJournalQueueSize().inc();
+
+        memoryLimitController.reserveMemory(batch.getBytes());
+
+        QueueEntry qe = QueueEntry.create(
+                batch, ackBeforeSync, ctx, MathUtils.nowInNano(),
+                journalStats.getJournalAddEntryStats(),
+                callbackTime);
+        try {
+            queue.put(qe);
+        } catch (InterruptedException e) {
+            // The caller releases the batch, which is not queued
+            qe.batch = null;
+            qe.recycle();
+            memoryLimitController.releaseMemory(batch.getBytes());
+            journalStats.getJournalQueueSize().dec();
+            throw e;
+        }
+    }
+
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
@@ -930,6 +1120,15 @@ public class Journal implements CheckpointSource {
         return queue.size();
     }
 
+    /**
+     * Get the moving average of the latency of the force writes of the journal.
+     *
+     * @return the latency in nanoseconds, or 0 before the first force write.
+     */
+    public long getForceWriteLatencyNanos() {
+        return forceWriteLatencyNanos;
+    }
+
     @VisibleForTesting
     JournalChannel newLogFile(long logId, Long replaceLogId) throws IOException {
         return new JournalChannel(journalDirectory, logId, journalPreAllocSize, journalWriteBufferSize,
@@ -938,6 +1137,16 @@ public class Journal implements CheckpointSource {
                 conf, fileChannelProvider, replaceLogId);
     }
 
+    private NativeIO newDirectIO() {
+        if (journalFormatVersionToWrite < JournalChannel.V5
+                || journalAlignmentSize % DirectBufferedChannel.ALIGNMENT != 0) {
+            LOG.warn("Journal writes are not aligned to {} bytes, the last block is written again on each flush."
+                    + " Set journalFormatVersionToWrite to 5 or more and journalAlignmentSize to a multiple of {}",
+                    DirectBufferedChannel.ALIGNMENT, DirectBufferedChannel.ALIGNMENT);
+        }
+        return new NativeIOImpl();
+    }
+
     /**
      * A thread used for persisting journal entries to journal files.
      *
@@ -994,6 +1203,9 @@ public class Journal implements CheckpointSource {
             int localQueueEntriesIdx = 0;
             int localQueueEntriesLen = 0;
             QueueEntry qe = null;
+            long groupWaitNanos = maxGroupWaitInNanos;
+            long entriesThreshold = bufferedEntriesThreshold;
+            boolean flushOnEmptyQueue = flushWhenQueueEmpty;
             while (true) {
                 // new journal file to write
                 if (null == logFile) {
@@ -1031,9 +1243,9 @@ public class Journal implements CheckpointSource {
                     } else {
                         // There are already some entries pending. We must adjust
                         // the waiting time to the remaining groupWait time
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushOnEmptyQueue || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
 
@@ -1042,6 +1254,17 @@ public class Journal implements CheckpointSource {
                     }
 
                     dequeueStartTime = MathUtils.nowInNano();
+                    if (groupCommitController != null) {
+                        // An add batch is a single queue entry, but each of its entries is an arrival
+                        int arrivals = 0;
+                        for (int i = 0; i < localQueueEntriesLen; i++) {
+                            arrivals += localQueueEntries[i].numEntries();
+                        }
+                        groupCommitController.recordArrivals(arrivals, dequeueStartTime);
+                        groupWaitNanos = groupCommitController.getGroupWaitNanos();
+                        entriesThreshold = groupCommitController.getBatchEntries();
+                        flushOnEmptyQueue = groupWaitNanos <= 0;
+                    }
 
                     if (localQueueEntriesLen > 0) {
                         qe = localQueueEntries[localQueueEntriesIdx];
@@ -1053,12 +1276,12 @@ public class Journal implements CheckpointSource {
                     boolean shouldFlush = false;
                     // We should issue a forceWrite if any of the three conditions below holds good
                     // 1. If the oldest pending entry has been pending for longer than the max wait time
-                    if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                            .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                    if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                            .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                         groupWhenTimeout = true;
-                    } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                    } else if (groupWaitNanos > 0 && groupWhenTimeout
                         && (qe == null // no entry to group
-                            || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                            || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                         // when group timeout, it would be better to look forward, as there might be lots of
                         // entries already timeout
                         // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1069,13 +1292,13 @@ public class Journal implements CheckpointSource {
                         shouldFlush = true;
                         journalStats.getFlushMaxWaitCounter().inc();
                     } else if (qe != null
-                            && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
+                            && ((entriesThreshold > 0 && numEntriesToFlush > entriesThreshold)
                             || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
                         // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                         groupWhenTimeout = false;
                         shouldFlush = true;
                         journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                    } else if (qe == null && flushWhenQueueEmpty) {
+                    } else if (qe == null && flushOnEmptyQueue) {
                         // We should get here only if we flushWhenQueueEmpty is true else we would wait
                         // for timeout that would put is past the maxWait threshold
                         // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1097,7 +1320,7 @@ public class Journal implements CheckpointSource {
                             QueueEntry entry = toFlush.get(i);
                             if (entry != null && (!syncData || entry.ackBeforeSync)) {
                                 toFlush.set(i, null);
-                                numEntriesToFlush--;
+                                numEntriesToFlush -= entry.numEntries();
                                 if (entry.getCtx() instanceof BookieRequestHandler
                                         && entry.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
                                     writeHandlers.add((BookieRequestHandler) entry.getCtx());
@@ -1184,6 +1407,18 @@ public class Journal implements CheckpointSource {
                      */
                     memoryLimitController.releaseMemory(qe.entry.readableBytes());
                     ReferenceCountUtil.release(qe.entry);
+                } else if (qe.batch != null) {
+                    long batchBytes = qe.batch.getBytes();
+                    journalStats.getJournalWriteBytes().addCount(batchBytes);
+
+                    long recordsSize = 4L * qe.batch.size() + batchBytes;
+                    batchSize += recordsSize;
+
+                    // preAlloc for the whole batch, written as one contiguous run of records
+                    logFile.preAllocIfNeeded(recordsSize);
+
+                    qe.batch.write(bc, lenBuff);
+                    memoryLimitController.releaseMemory(batchBytes);
                 } else if (qe.entryId != BookieImpl.METAENTRY_ID_FORCE_LEDGER) {
                     int entrySize = qe.entry.readableBytes();
                     journalStats.getJournalWriteBytes().addCount(entrySize);
@@ -1203,7 +1438,7 @@ public class Journal implements CheckpointSource {
                 }
 
                 toFlush.add(qe);
-                numEntriesToFlush++;
+                numEntriesToFlush += qe.numEntries();
 
                 if (localQueueEntriesIdx < localQueueEntriesLen) {
                     qe = localQueueEntries[localQueueEntriesIdx];
@@ -1232,7 +1467,25 @@ public class Journal implements CheckpointSource {
     }
 
     public BufferedChannelBuilder getBufferedChannelBuilder() {
-        return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        if (directIO == null) {
+            return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        }
+        return new BufferedChannelBuilder() {
+            @Override
+            public BufferedChannel create(FileChannel fc, int capacity) throws IOException {
+                return new BufferedChannel(allocator, fc, capacity);
+            }
+
+            @Override
+            public BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+                try {
+                    return DirectBufferedChannel.open(allocator, directIO, file, fc, capacity);
+                } catch (IOException e) {
+                    LOG.warn("Failed to write journal {} with direct I/O, using the page cache", file, e);
+                    return new BufferedChannel(allocator, fc, capacity);
+                }
+            }
+        };
     }
 
     /**
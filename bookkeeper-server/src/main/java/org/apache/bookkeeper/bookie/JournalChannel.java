@@ -185,11 +185,11 @@ class JournalChannel implements Closeable {
             }
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(fn, bcBuilder, writeBufferSize);
         } else if (reuseFile) { // Open an existing journal to write, it needs fileChannelProvider support reuse file.
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(fn, bcBuilder, writeBufferSize);
         } else {  // open an existing file to read.
             fc = channel.getFileChannel();
             // readonly, use fileChannel directly, no need to use BufferedChannel
@@ -247,7 +247,7 @@ class JournalChannel implements Closeable {
         }
     }
 
-    private void writeHeader(Journal.BufferedChannelBuilder bcBuilder,
+    private void writeHeader(File fn, Journal.BufferedChannelBuilder bcBuilder,
                              int writeBufferSize) throws IOException {
         int headerSize = (V4 == formatVersion) ? VERSION_HEADER_SIZE : HEADER_SIZE;
         ByteBuffer bb = ByteBuffer.allocate(headerSize);
@@ -258,7 +258,7 @@ class JournalChannel implements Closeable {
         bb.clear();
         fc.write(bb);
 
-        bc = bcBuilder.create(fc, writeBufferSize);
+        bc = bcBuilder.create(fn, fc, writeBufferSize);
         forceWrite(true);
         nextPrealloc = this.preAllocSize;
         fc.write(zeros, nextPrealloc - journalAlignSize);
@@ -331,4 +331,5 @@ class JournalChannel implements Closeable {
         }
     }
 
+
 }
@@ -0,0 +1,197 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_ARRIVAL_RATE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_BATCH_ENTRIES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_FSYNC_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * Chooses how long the journal groups entries before flushing them, from the observed fsync latency
+ * and arrival rate of entries.
+ *
+ * <p>When fewer than one entry arrives during an fsync, the disk keeps up with the entries and waiting
+ * only adds latency, so entries are flushed as soon as the journal queue is empty. Otherwise entries
+ * wait for the fsync in flight anyway, and flushing them in smaller batches only adds writes in front
+ * of it. The journal then groups entries for up to one fsync, bounded by the configured max group
+ * wait, and flushes early once the entries expected in that time are buffered.
+ *
+ * <p>The arrivals are recorded and the parameters read by the journal thread, while the fsync latency
+ * is recorded by the force write thread.
+ */
+public class JournalGroupCommitController {
+
+    // Interval between two updates of the arrival rate and of the chosen parameters
+    static final long UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // Weight of the last sample in the moving averages, of the last update interval for the arrival rate
+    private static final double FSYNC_ALPHA = 0.2;
+    private static final double RATE_ALPHA = 0.3;
+    // Time constant of the arrival rate average, with which an update interval weighs RATE_ALPHA
+    private static final double RATE_TAU_NANOS = -UPDATE_INTERVAL_NANOS / Math.log(1 - RATE_ALPHA);
+
+    private final long maxGroupWaitNanos;
+    private final int maxBatchEntries;
+
+    // Updated by the force write thread
+    private volatile long fsyncNanos = -1L;
+
+    // Updated by the journal thread
+    private long arrivals = 0L;
+    private long lastUpdateNanos = -1L;
+    private volatile double arrivalsPerNano = 0.0d;
+    private volatile long groupWaitNanos = 0L;
+    private volatile long batchEntries = 0L;
+
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_WAIT,
+        help = "The time, in microseconds, the journal currently groups entries before flushing them"
+    )
+    private final Gauge<Long> groupWaitGauge;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_BATCH_ENTRIES,
+        help = "The number of buffered entries after which the journal currently flushes them"
+    )
+    private final Gauge<Long> batchEntriesGauge;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_FSYNC_LATENCY,
+        help = "The moving average of the journal fsync latency, in microseconds"
+    )
+    private final Gauge<Long> fsyncLatencyGauge;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_ARRIVAL_RATE,
+        help = "The moving average of the number of entries added to the journal per second"
+    )
+    private final Gauge<Long> arrivalRateGauge;
+
+    public JournalGroupCommitController(long maxGroupWaitNanos, int maxBatchEntries) {
+        this(maxGroupWaitNanos, maxBatchEntries, NullStatsLogger.INSTANCE);
+    }
+
+    public JournalGroupCommitController(long maxGroupWaitNanos, int maxBatchEntries, StatsLogger statsLogger) {
+        this.maxGroupWaitNanos = Math.max(maxGroupWaitNanos, 0L);
+        this.maxBatchEntries = Math.max(maxBatchEntries, 1);
+
+        this.groupWaitGauge = newGauge(() -> TimeUnit.NANOSECONDS.toMicros(groupWaitNanos));
+        this.batchEntriesGauge = newGauge(() -> batchEntries);
+        this.fsyncLatencyGauge = newGauge(() -> TimeUnit.NANOSECONDS.toMicros(Math.max(fsyncNanos, 0L)));
+        this.arrivalRateGauge = newGauge(() -> (long) (arrivalsPerNano * TimeUnit.SECONDS.toNanos(1)));
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_WAIT, groupWaitGauge);
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_BATCH_ENTRIES, batchEntriesGauge);
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_FSYNC_LATENCY, fsyncLatencyGauge);
+        statsLogger.registerGauge(JOURNAL_GROUP_COMMIT_ARRIVAL_RATE, arrivalRateGauge);
+    }
+
+    private static Gauge<Long> newGauge(LongSupplier sample) {
+        return new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return sample.getAsLong();
+            }
+        };
+    }
+
+    /**
+     * Record the latency of a completed fsync.
+     */
+    void recordForceWrite(long latencyNanos) {
+        long current = fsyncNanos;
+        fsyncNanos = current < 0
+                ? latencyNanos : (long) (FSYNC_ALPHA * latencyNanos + (1 - FSYNC_ALPHA) * current);
+    }
+
+    /**
+     * Record entries taken from the journal queue.
+     *
+     * @param count number of entries
+     * @param nowNanos current time, from {@link System#nanoTime()} or any clock used for all the calls
+     */
+    void recordArrivals(int count, long nowNanos) {
+        arrivals += count;
+        if (lastUpdateNanos < 0) {
+            lastUpdateNanos = nowNanos;
+            return;
+        }
+        long elapsed = nowNanos - lastUpdateNanos;
+        if (elapsed < UPDATE_INTERVAL_NANOS) {
+            return;
+        }
+        double rate = (double) arrivals / elapsed;
+        // The sample weighs the time it covers. The journal does not record anything while it is idle, so
+        // that the first entry after an idle period makes it forget the rate of the burst before
+        double decay = Math.exp(-elapsed / RATE_TAU_NANOS);
+        arrivalsPerNano = (1 - decay) * rate + decay * arrivalsPerNano;
+        arrivals = 0L;
+        lastUpdateNanos = nowNanos;
+        update();
+    }
+
+    private void update() {
+        long fsync = fsyncNanos;
+        double rate = arrivalsPerNano;
+        if (fsync <= 0 || rate * fsync < 1.0d) {
+            // No grouping, the disk keeps up with the entries
+            groupWaitNanos = 0L;
+            batchEntries = 0L;
+            return;
+        }
+        long wait = Math.min(fsync, maxGroupWaitNanos);
+        groupWaitNanos = wait;
+        batchEntries = wait > 0 ? Math.min(Math.max((long) Math.ceil(rate * wait), 1L), maxBatchEntries) : 0L;
+    }
+
+    /**
+     * Get the maximum time to group entries before flushing them, 0 to flush them as soon as the
+     * journal queue is empty.
+     */
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    /**
+     * Get the number of buffered entries beyond which they are flushed without waiting, or 0 if the
+     * entries are flushed only by time or when the journal queue is empty.
+     */
+    long getBatchEntries() {
+        return batchEntries;
+    }
+
+    long getFsyncNanos() {
+        return fsyncNanos;
+    }
+
+    double getArrivalsPerSecond() {
+        return arrivalsPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_LEDGER_REASSIGNMENTS;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Assigns ledgers to journals by load, instead of by ledger id.
+ *
+ * <p>A ledger stays on its journal while it is written. A new ledger, or a ledger not written for
+ * the idle time, goes to the least loaded journal, so the entries of a ledger never wait in two
+ * journals at once. The load of a journal is the number of queued entries times its average fsync
+ * latency, and a ledger only leaves the journal it would use by ledger id when another journal is
+ * clearly less loaded.
+ *
+ * <p>Each journal must be replayable on its own, so the caller logs the master key of a ledger to
+ * the journal it is assigned to before its entries, see {@link Assignment#isMasterKeyLogged()}.
+ */
+class JournalLoadBalancer {
+
+    // A ledger leaves its journal only for one with a load below this fraction of its own
+    private static final double LOAD_RATIO_TO_MOVE = 0.75d;
+
+    private final List<Journal> journals;
+    private final long idleNanos;
+    private final ConcurrentLongHashMap<Assignment> assignments;
+    private final AtomicLong nextSweepNanos;
+
+    @StatsDoc(
+        name = JOURNAL_LEDGER_REASSIGNMENTS,
+        help = "The number of idle ledgers moved to a less loaded journal"
+    )
+    private final Counter reassignments;
+
+    JournalLoadBalancer(List<Journal> journals, long idleMillis, StatsLogger statsLogger) {
+        this.journals = journals;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.assignments = ConcurrentLongHashMap.<Assignment>newBuilder().autoShrink(true).build();
+        this.nextSweepNanos = new AtomicLong(MathUtils.nowInNano() + idleNanos);
+        this.reassignments = statsLogger.getCounter(JOURNAL_LEDGER_REASSIGNMENTS);
+    }
+
+    /**
+     * Journal assigned to a ledger.
+     */
+    static final class Assignment {
+        private final int journalIndex;
+        private volatile long lastUsedNanos;
+        private volatile boolean masterKeyLogged = false;
+
+        private Assignment(int journalIndex, long nowNanos) {
+            this.journalIndex = journalIndex;
+            this.lastUsedNanos = nowNanos;
+        }
+
+        int getJournalIndex() {
+            return journalIndex;
+        }
+
+        /**
+         * Whether the master key of the ledger was logged to the journal since it was assigned.
+         */
+        boolean isMasterKeyLogged() {
+            return masterKeyLogged;
+        }
+
+        void setMasterKeyLogged() {
+            this.masterKeyLogged = true;
+        }
+    }
+
+    /**
+     * Get the journal to write the ledger to, assigning one if the ledger is new or idle. The concurrent
+     * callers for a ledger, like a fence and an add, get the same journal.
+     */
+    Assignment assign(long ledgerId) {
+        long now = MathUtils.nowInNano();
+        Assignment assignment = assignments.get(ledgerId);
+        if (assignment != null && now - assignment.lastUsedNanos < idleNanos) {
+            assignment.lastUsedNanos = now;
+            return assignment;
+        }
+
+        if (assignment == null) {
+            assignment = assignNew(ledgerId, now);
+        } else {
+            assignment = reassignIdle(ledgerId, assignment, now);
+        }
+        sweepIdleAssignments(now);
+        return assignment;
+    }
+
+    private Assignment assignNew(long ledgerId, long now) {
+        Assignment assignment = assignments.computeIfAbsent(ledgerId,
+                id -> new Assignment(selectJournal(id, -1), now));
+        assignment.lastUsedNanos = now;
+        return assignment;
+    }
+
+    /**
+     * Move an idle ledger to a less loaded journal, if there is one.
+     */
+    private synchronized Assignment reassignIdle(long ledgerId, Assignment idle, long now) {
+        Assignment current = assignments.get(ledgerId);
+        if (current != idle) {
+            // Already moved by a concurrent caller, or forgotten by the sweep
+            return current != null ? current : assignNew(ledgerId, now);
+        }
+        if (now - idle.lastUsedNanos >= idleNanos) {
+            int journalIndex = selectJournal(ledgerId, idle.journalIndex);
+            if (journalIndex != idle.journalIndex) {
+                reassignments.inc();
+                Assignment moved = new Assignment(journalIndex, now);
+                assignments.put(ledgerId, moved);
+                return moved;
+            }
+        }
+        // Kept on its journal, possibly by a concurrent caller
+        idle.lastUsedNanos = now;
+        return idle;
+    }
+
+    private int selectJournal(long ledgerId, int current) {
+        int preferred = current >= 0 ? current : MathUtils.signSafeMod(ledgerId, journals.size());
+        double preferredLoad = load(journals.get(preferred));
+        int selected = preferred;
+        double selectedLoad = preferredLoad * LOAD_RATIO_TO_MOVE;
+        for (int i = 0; i < journals.size(); i++) {
+            double load = load(journals.get(i));
+            if (load < selectedLoad) {
+                selected = i;
+                selectedLoad = load;
+            }
+        }
+        return selected;
+    }
+
+    private static double load(Journal journal) {
+        return (journal.getJournalQueueLength() + 1.0d) * Math.max(journal.getForceWriteLatencyNanos(), 1L);
+    }
+
+    /**
+     * Forget the ledgers not written for the idle time, at most once per idle time. They are assigned
+     * again when written.
+     */
+    private void sweepIdleAssignments(long now) {
+        long nextSweep = nextSweepNanos.get();
+        if (now - nextSweep < 0 || !nextSweepNanos.compareAndSet(nextSweep, now + idleNanos)) {
+            return;
+        }
+        // Not while an idle ledger is kept on its journal
+        synchronized (this) {
+            assignments.removeIf((ledgerId, assignment) -> now - assignment.lastUsedNanos >= idleNanos);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scanner that hands the records read from a journal to the threads applying them to the ledger storage.
+ *
+ * <p>Records are dispatched to the apply threads by ledger id, each thread having a bounded queue, so
+ * that the entries of a ledger are applied in the order they were journaled while the thread reading
+ * the journal does not wait for the ledger storage. With no apply thread, records are applied by the
+ * thread reading the journal.
+ */
+class JournalReplayPipeline implements JournalScanner, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalReplayPipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    private final JournalScanner applier;
+    private final JournalReplayProgress progress;
+    private final JournalStats journalStats;
+    // Null when the records are applied by the thread reading the journal
+    private final ApplyThread[] applyThreads;
+
+    private volatile Throwable failure = null;
+
+    JournalReplayPipeline(String name, JournalScanner applier, int numApplyThreads, int queueSize,
+                          JournalReplayProgress progress, JournalStats journalStats) {
+        this.applier = applier;
+        this.progress = progress;
+        this.journalStats = journalStats;
+        if (numApplyThreads > 0) {
+            this.applyThreads = new ApplyThread[numApplyThreads];
+            for (int i = 0; i < numApplyThreads; i++) {
+                applyThreads[i] = new ApplyThread(name + "-apply-" + i, Math.max(queueSize, 1));
+                applyThreads[i].start();
+            }
+        } else {
+            this.applyThreads = null;
+        }
+    }
+
+    @Override
+    public void process(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+        int size = entry.remaining();
+        progress.recordRead(size);
+        journalStats.getJournalReplayRecords().inc();
+        journalStats.getJournalReplayBytes().addCount(size);
+
+        if (applyThreads == null) {
+            applier.process(journalVersion, offset, entry);
+            progress.recordApplied();
+            return;
+        }
+
+        checkFailure();
+        // The buffer is reused by the journal scan for the next record
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.put(entry.duplicate()).flip();
+        long ledgerId = size >= Long.BYTES ? record.getLong(0) : 0L;
+        ApplyThread applyThread = applyThreads[MathUtils.signSafeMod(ledgerId, applyThreads.length)];
+        enqueue(applyThread, new Record(journalVersion, offset, record, null));
+        journalStats.getJournalReplayQueueSize().inc();
+    }
+
+    /**
+     * Wait until all the records read so far are applied.
+     *
+     * @throws IOException if a record failed to be applied
+     */
+    void awaitApplied() throws IOException {
+        if (applyThreads == null) {
+            return;
+        }
+        CountDownLatch applied = new CountDownLatch(applyThreads.length);
+        for (ApplyThread applyThread : applyThreads) {
+            enqueue(applyThread, new Record(0, 0L, null, applied));
+        }
+        try {
+            while (!applied.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for journal records to be applied", e);
+        }
+        checkFailure();
+    }
+
+    private void enqueue(ApplyThread applyThread, Record record) throws IOException {
+        try {
+            while (!applyThread.queue.offer(record, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while queuing journal record", e);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t != null) {
+            throw new IOException("Failed to apply journal record", t);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (applyThreads == null) {
+            return;
+        }
+        for (ApplyThread applyThread : applyThreads) {
+            applyThread.interrupt();
+        }
+        for (ApplyThread applyThread : applyThreads) {
+            try {
+                applyThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static final class Record {
+        final int journalVersion;
+        final long offset;
+        final ByteBuffer entry;
+        // Set for the marker records counted down once the records queued before them are applied
+        final CountDownLatch applied;
+
+        Record(int journalVersion, long offset, ByteBuffer entry, CountDownLatch applied) {
+            this.journalVersion = journalVersion;
+            this.offset = offset;
+            this.entry = entry;
+            this.applied = applied;
+        }
+    }
+
+    private final class ApplyThread extends Thread {
+        final BlockingQueue<Record> queue;
+
+        ApplyThread(String name, int queueSize) {
+            super(name);
+            setDaemon(true);
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Record record;
+                try {
+                    record = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (record.applied != null) {
+                    record.applied.countDown();
+                    continue;
+                }
+                journalStats.getJournalReplayQueueSize().dec();
+                if (failure != null) {
+                    // The replay fails, drop the remaining records
+                    continue;
+                }
+                try {
+                    applier.process(record.journalVersion, record.offset, record.entry);
+                    progress.recordApplied();
+                } catch (Throwable t) {
+                    LOG.error("Failed to apply journal record at offset {} of {}", record.offset,
+                            progress.getJournalDirectory(), t);
+                    failure = t;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress of the replay of a journal directory on bookie startup.
+ */
+public class JournalReplayProgress {
+
+    private final File journalDirectory;
+    private volatile long journalId = -1L;
+    private volatile int journalFiles = 0;
+    private volatile int replayedJournalFiles = 0;
+    private final LongAdder readRecords = new LongAdder();
+    private final LongAdder readBytes = new LongAdder();
+    private final LongAdder appliedRecords = new LongAdder();
+    private volatile long startTime = -1L;
+    private volatile long endTime = -1L;
+
+    public JournalReplayProgress(File journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    void start(int journalFiles) {
+        this.journalFiles = journalFiles;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    void startJournalFile(long journalId) {
+        this.journalId = journalId;
+    }
+
+    void completeJournalFile() {
+        replayedJournalFiles++;
+    }
+
+    void recordRead(int size) {
+        readRecords.increment();
+        readBytes.add(size);
+    }
+
+    void recordApplied() {
+        appliedRecords.increment();
+    }
+
+    void complete() {
+        this.endTime = System.currentTimeMillis();
+    }
+
+    public File getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Get the id of the journal file being replayed, or the last one once the replay completed.
+     */
+    public long getJournalId() {
+        return journalId;
+    }
+
+    public int getJournalFiles() {
+        return journalFiles;
+    }
+
+    public int getReplayedJournalFiles() {
+        return replayedJournalFiles;
+    }
+
+    public long getReadRecords() {
+        return readRecords.sum();
+    }
+
+    public long getReadBytes() {
+        return readBytes.sum();
+    }
+
+    public long getAppliedRecords() {
+        return appliedRecords.sum();
+    }
+
+    public boolean isCompleted() {
+        return endTime >= 0;
+    }
+
+    /**
+     * Get the time spent replaying the journal so far, in milliseconds.
+     */
+    public long getElapsedMillis() {
+        if (startTime < 0) {
+            return 0L;
+        }
+        return (endTime >= 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.util.internal.PlatformDependent;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sealed entry log mapped in memory, to serve reads without copying the entries.
+ *
+ * <p>Entries are returned as {@link ByteBuf} slices of the mapping, each holding a reference on the
+ * mapped log. The mapping is only released when the log has been {@link #release() released} by the
+ * entry logger and all the entries read from it have been released as well, so that removing the log
+ * never invalidates a buffer that is still being sent.
+ */
+class MappedEntryLog {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEntryLog.class);
+
+    private static final AtomicIntegerFieldUpdater<MappedEntryLog> REF_CNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(MappedEntryLog.class, "refCnt");
+
+    private final long logId;
+    private final MappedByteBuffer mapping;
+    private volatile int refCnt = 1;
+
+    private MappedEntryLog(long logId, MappedByteBuffer mapping) {
+        this.logId = logId;
+        this.mapping = mapping;
+    }
+
+    /**
+     * Map the whole content of an entry log.
+     *
+     * @return the mapped log, or null if the log is too big to be mapped in a single buffer
+     */
+    static MappedEntryLog map(long logId, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        // A private mapping is writable from the point of view of the buffers, though nothing is ever
+        // written back to the file, which lets the slices be wrapped as regular direct buffers
+        return new MappedEntryLog(logId, channel.map(FileChannel.MapMode.PRIVATE, 0, size));
+    }
+
+    long getLogId() {
+        return logId;
+    }
+
+    int size() {
+        return mapping.capacity();
+    }
+
+    int getInt(int pos) {
+        return mapping.getInt(pos);
+    }
+
+    long getLong(int pos) {
+        return mapping.getLong(pos);
+    }
+
+    /**
+     * Try to take a reference on the mapped log.
+     *
+     * @return false if the log was already unmapped
+     */
+    boolean tryRetain() {
+        while (true) {
+            int cnt = refCnt;
+            if (cnt == 0) {
+                return false;
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, cnt, cnt + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (REF_CNT_UPDATER.decrementAndGet(this) == 0) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Unmapping entry log {}", logId);
+            }
+            PlatformDependent.freeDirectBuffer(mapping);
+        }
+    }
+
+    /**
+     * Return a buffer over [pos, pos + length) of the log. The buffer holds a reference on the log, that
+     * the caller must have taken with {@link #tryRetain()}.
+     */
+    ByteBuf slice(ByteBufAllocator allocator, int pos, int length) {
+        ByteBuffer slice = mapping.duplicate();
+        slice.position(pos);
+        slice.limit(pos + length);
+        return new MappedEntryBuf(allocator, slice, this);
+    }
+
+    private static final class MappedEntryBuf extends UnpooledDirectByteBuf {
+        private final MappedEntryLog log;
+
+        MappedEntryBuf(ByteBufAllocator allocator, ByteBuffer slice, MappedEntryLog log) {
+            super(allocator, slice, slice.remaining());
+            this.log = log;
+        }
+
+        @Override
+        protected void deallocate() {
+            // The wrapped memory is not owned by the buffer, only drop the reference on the mapping
+            super.deallocate();
+            log.release();
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.util.internal.PlatformDependent;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata.EntryLogMetadataRecyclable;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry-log metadata-map that stores the metadata of the entry logs off-heap.
+ *
+ * <p>The metadata of an entry log is stored as a single record, a header with the entry log totals
+ * followed by the column of its ledger ids and the column of their sizes. Records are appended to
+ * direct memory chunks, and located through a primitive map from the entry log id to the chunk and
+ * offset of the record. Chunks whose records are mostly gone are compacted.
+ *
+ * <p>When the chunks in memory exceed the configured size, the oldest chunks, whose records have not
+ * been rewritten for the longest time, are moved to a memory-mapped scratch file, so that the OS can
+ * page them out. The scratch file is deleted when the map is closed, the metadata being extracted
+ * again from the entry logs after a restart like with {@link InMemoryEntryLogMetadataMap}.
+ *
+ * <p>Like {@link org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap}, the
+ * {@link EntryLogMetadata} passed to the actions is transient and recycled once the action completes.
+ */
+public class OffHeapEntryLogMetadataMap implements EntryLogMetadataMap {
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapEntryLogMetadataMap.class);
+
+    // Record layout
+    private static final int LOG_ID_OFFSET = 0;
+    private static final int TOTAL_SIZE_OFFSET = 8;
+    private static final int REMAINING_SIZE_OFFSET = 16;
+    private static final int LEDGERS_COUNT_OFFSET = 24;
+    // Number of ledgers the record has room for, which is larger than the count after ledgers are removed
+    private static final int LEDGERS_CAPACITY_OFFSET = 28;
+    private static final int HEADER_SIZE = 32;
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    // A chunk is compacted once less than this fraction of it holds live records
+    private static final int COMPACTION_RATIO = 4;
+
+    private static final String SPILL_FILE_PREFIX = "entrylog-metadata";
+    private static final String SPILL_FILE_SUFFIX = ".spill";
+
+    private final int chunkSize;
+    private final long maxMemorySize;
+    private final File spillDir;
+
+    // Entry log id -> (chunk id << 32 | offset of the record in the chunk)
+    private final ConcurrentLongLongHashMap records;
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final ArrayDeque<Integer> freeChunkIds = new ArrayDeque<>();
+    private Chunk currentChunk = null;
+    private long chunkSequence = 0;
+    private long memorySize = 0;
+    private long spilledSize = 0;
+
+    private RandomAccessFile spillFile = null;
+    private File spillFilePath = null;
+    private long spillFileSize = 0;
+    // Regions of the spill file no longer used, by size
+    private final Map<Integer, ArrayDeque<Long>> freeSpillRegions = new HashMap<>();
+
+    private boolean closed = false;
+
+    public OffHeapEntryLogMetadataMap(long maxMemorySize, File spillDir) {
+        this(maxMemorySize, spillDir, DEFAULT_CHUNK_SIZE);
+    }
+
+    public OffHeapEntryLogMetadataMap(long maxMemorySize, File spillDir, int chunkSize) {
+        if (chunkSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Chunk size is too small: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.maxMemorySize = maxMemorySize;
+        this.spillDir = spillDir;
+        this.records = ConcurrentLongLongHashMap.newBuilder()
+                .expectedItems(1024)
+                .concurrencyLevel(1)
+                .build();
+        LOG.info("Off-heap entry-log metadata-map with {} bytes in memory, spilling to {}", maxMemorySize, spillDir);
+    }
+
+    @Override
+    public synchronized boolean containsKey(long entryLogId) throws EntryLogMetadataMapException {
+        throwIfClosed();
+        return records.containsKey(entryLogId);
+    }
+
+    @Override
+    public synchronized void put(long entryLogId, EntryLogMetadata entryLogMeta) throws EntryLogMetadataMapException {
+        throwIfClosed();
+        ConcurrentLongLongHashMap ledgersMap = entryLogMeta.getLedgersMap();
+        int ledgersCount = (int) ledgersMap.size();
+
+        long address = records.get(entryLogId);
+        if (address >= 0) {
+            Chunk chunk = chunkOf(address);
+            int offset = offsetOf(address);
+            int ledgersCapacity = chunk.buffer.getInt(offset + LEDGERS_CAPACITY_OFFSET);
+            if (ledgersCount <= ledgersCapacity) {
+                // Removing ledgers is the usual update, it is done in place
+                writeRecord(chunk.buffer, offset, entryLogId, entryLogMeta, ledgersCapacity);
+                return;
+            }
+            // Unmapped first, so that compacting the chunk does not move the old record
+            records.remove(entryLogId);
+            free(chunk, recordSize(ledgersCapacity));
+        }
+
+        int size = recordSize(ledgersCount);
+        Chunk chunk = allocate(size);
+        int offset = chunk.writeOffset;
+        writeRecord(chunk.buffer, offset, entryLogId, entryLogMeta, ledgersCount);
+        chunk.writeOffset += size;
+        chunk.liveBytes += size;
+        records.put(entryLogId, addressOf(chunk, offset));
+    }
+
+    /**
+     * {@link EntryLogMetadata} life-cycle in supplied action will be transient
+     * and it will be recycled as soon as supplied action is completed.
+     */
+    @Override
+    public void forEach(BiConsumer<Long, EntryLogMetadata> action) throws EntryLogMetadataMapException {
+        long[] ids;
+        int count;
+        synchronized (this) {
+            throwIfClosed();
+            // Not shared between the calls, the actions may iterate or update the map too
+            ids = new long[(int) records.size()];
+            int[] index = new int[] { 0 };
+            records.forEach((entryLogId, address) -> {
+                if (index[0] < ids.length) {
+                    ids[index[0]++] = entryLogId;
+                }
+            });
+            count = index[0];
+        }
+
+        for (int i = 0; i < count; i++) {
+            EntryLogMetadataRecyclable metadata;
+            synchronized (this) {
+                if (closed) {
+                    break;
+                }
+                // The action may have removed the next entry logs
+                metadata = read(ids[i]);
+            }
+            if (metadata == null) {
+                continue;
+            }
+            try {
+                action.accept(ids[i], metadata);
+            } finally {
+                metadata.recycle();
+            }
+        }
+    }
+
+    /**
+     * {@link EntryLogMetadata} life-cycle in supplied action will be transient
+     * and it will be recycled as soon as supplied action is completed.
+     */
+    @Override
+    public void forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action)
+            throws EntryLogMetadataMapException {
+        EntryLogMetadataRecyclable metadata;
+        synchronized (this) {
+            throwIfClosed();
+            metadata = read(entryLogId);
+        }
+        if (metadata == null) {
+            action.accept(entryLogId, null);
+            return;
+        }
+        try {
+            action.accept(entryLogId, metadata);
+        } finally {
+            metadata.recycle();
+        }
+    }
+
+    @Override
+    public synchronized void remove(long entryLogId) throws EntryLogMetadataMapException {
+        throwIfClosed();
+        long address = records.remove(entryLogId);
+        if (address >= 0) {
+            Chunk chunk = chunkOf(address);
+            free(chunk, recordSize(chunk.buffer.getInt(offsetOf(address) + LEDGERS_CAPACITY_OFFSET)));
+        }
+    }
+
+    @Override
+    public synchronized int size() throws EntryLogMetadataMapException {
+        throwIfClosed();
+        return (int) records.size();
+    }
+
+    @Override
+    public synchronized void clear() throws EntryLogMetadataMapException {
+        throwIfClosed();
+        records.clear();
+        releaseAllChunks();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            LOG.warn("Attempted to close already closed OffHeapEntryLogMetadataMap");
+            return;
+        }
+        closed = true;
+        records.clear();
+        releaseAllChunks();
+        if (spillFile != null) {
+            spillFile.close();
+            if (!spillFilePath.delete()) {
+                LOG.warn("Failed to delete entry-log metadata spill file {}", spillFilePath);
+            }
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Get the size of the chunks held in direct memory.
+     */
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * Get the size of the chunks moved to the spill file.
+     */
+    public synchronized long getSpilledSize() {
+        return spilledSize;
+    }
+
+    private void throwIfClosed() throws EntryLogMetadataMapException {
+        if (closed) {
+            throw new EntryLogMetadataMapException(
+                    new IOException("Attempted to use OffHeapEntryLogMetadataMap after it was closed"));
+        }
+    }
+
+    private EntryLogMetadataRecyclable read(long entryLogId) {
+        long address = records.get(entryLogId);
+        if (address < 0) {
+            return null;
+        }
+        ByteBuffer buffer = chunkOf(address).buffer;
+        int offset = offsetOf(address);
+
+        EntryLogMetadataRecyclable metadata = EntryLogMetadataRecyclable.get();
+        metadata.entryLogId = buffer.getLong(offset + LOG_ID_OFFSET);
+        metadata.totalSize = buffer.getLong(offset + TOTAL_SIZE_OFFSET);
+        metadata.remainingSize = buffer.getLong(offset + REMAINING_SIZE_OFFSET);
+        int ledgersCount = buffer.getInt(offset + LEDGERS_COUNT_OFFSET);
+        int ledgersCapacity = buffer.getInt(offset + LEDGERS_CAPACITY_OFFSET);
+        int ledgerIdsOffset = offset + HEADER_SIZE;
+        int sizesOffset = ledgerIdsOffset + ledgersCapacity * Long.BYTES;
+        for (int i = 0; i < ledgersCount; i++) {
+            metadata.ledgersMap.put(buffer.getLong(ledgerIdsOffset + i * Long.BYTES),
+                    buffer.getLong(sizesOffset + i * Long.BYTES));
+        }
+        return metadata;
+    }
+
+    private static void writeRecord(ByteBuffer buffer, int offset, long entryLogId, EntryLogMetadata entryLogMeta,
+                                    int ledgersCapacity) {
+        ConcurrentLongLongHashMap ledgersMap = entryLogMeta.getLedgersMap();
+        int ledgerIdsOffset = offset + HEADER_SIZE;
+        int sizesOffset = ledgerIdsOffset + ledgersCapacity * Long.BYTES;
+        int[] count = new int[] { 0 };
+        ledgersMap.forEach((ledgerId, size) -> {
+            if (count[0] < ledgersCapacity) {
+                buffer.putLong(ledgerIdsOffset + count[0] * Long.BYTES, ledgerId);
+                buffer.putLong(sizesOffset + count[0] * Long.BYTES, size);
+                count[0]++;
+            }
+        });
+
+        buffer.putLong(offset + LOG_ID_OFFSET, entryLogId);
+        buffer.putLong(offset + TOTAL_SIZE_OFFSET, entryLogMeta.getTotalSize());
+        buffer.putLong(offset + REMAINING_SIZE_OFFSET, entryLogMeta.getRemainingSize());
+        buffer.putInt(offset + LEDGERS_COUNT_OFFSET, count[0]);
+        buffer.putInt(offset + LEDGERS_CAPACITY_OFFSET, ledgersCapacity);
+    }
+
+    private static int recordSize(int ledgersCapacity) {
+        return HEADER_SIZE + ledgersCapacity * 2 * Long.BYTES;
+    }
+
+    private static long addressOf(Chunk chunk, int offset) {
+        return ((long) chunk.id << 32) | offset;
+    }
+
+    private Chunk chunkOf(long address) {
+        return chunks.get((int) (address >>> 32));
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Get a chunk with room for a record of the given size at its write offset.
+     */
+    private Chunk allocate(int size) throws EntryLogMetadataMapException {
+        if (currentChunk != null && currentChunk.buffer.capacity() - currentChunk.writeOffset >= size) {
+            return currentChunk;
+        }
+
+        int id = freeChunkIds.isEmpty() ? chunks.size() : freeChunkIds.poll();
+        Chunk chunk = new Chunk(id, chunkSequence++, ByteBuffer.allocateDirect(Math.max(chunkSize, size)));
+        if (id == chunks.size()) {
+            chunks.add(chunk);
+        } else {
+            chunks.set(id, chunk);
+        }
+        memorySize += chunk.buffer.capacity();
+        currentChunk = chunk;
+
+        spillIfNeeded();
+        return chunk;
+    }
+
+    private void free(Chunk chunk, int size) throws EntryLogMetadataMapException {
+        chunk.liveBytes -= size;
+        if (chunk == currentChunk) {
+            return;
+        }
+        if (chunk.liveBytes == 0) {
+            release(chunk);
+        } else if (chunk.liveBytes < chunk.buffer.capacity() / COMPACTION_RATIO) {
+            compact(chunk);
+        }
+    }
+
+    /**
+     * Move the live records of a chunk to the current chunk, and release it.
+     */
+    private void compact(Chunk chunk) throws EntryLogMetadataMapException {
+        int offset = 0;
+        while (offset < chunk.writeOffset) {
+            ByteBuffer buffer = chunk.buffer;
+            long entryLogId = buffer.getLong(offset + LOG_ID_OFFSET);
+            int size = recordSize(buffer.getInt(offset + LEDGERS_CAPACITY_OFFSET));
+            if (records.get(entryLogId) == addressOf(chunk, offset)) {
+                Chunk target = allocate(size);
+                ByteBuffer src = chunk.buffer.duplicate();
+                src.limit(offset + size).position(offset);
+                ByteBuffer dst = target.buffer.duplicate();
+                dst.position(target.writeOffset);
+                dst.put(src);
+
+                records.put(entryLogId, addressOf(target, target.writeOffset));
+                target.writeOffset += size;
+                target.liveBytes += size;
+                chunk.liveBytes -= size;
+            }
+            offset += size;
+        }
+        release(chunk);
+    }
+
+    private void release(Chunk chunk) {
+        if (chunk.spilled) {
+            spilledSize -= chunk.buffer.capacity();
+            freeSpillRegions.computeIfAbsent(chunk.buffer.capacity(), k -> new ArrayDeque<>())
+                    .add(chunk.spillOffset);
+        } else {
+            memorySize -= chunk.buffer.capacity();
+        }
+        PlatformDependent.freeDirectBuffer(chunk.buffer);
+        chunks.set(chunk.id, null);
+        freeChunkIds.add(chunk.id);
+        if (chunk == currentChunk) {
+            currentChunk = null;
+        }
+    }
+
+    private void releaseAllChunks() {
+        for (Chunk chunk : chunks) {
+            if (chunk != null) {
+                PlatformDependent.freeDirectBuffer(chunk.buffer);
+            }
+        }
+        chunks.clear();
+        freeChunkIds.clear();
+        freeSpillRegions.clear();
+        currentChunk = null;
+        memorySize = 0;
+        spilledSize = 0;
+        spillFileSize = 0;
+        if (spillFile != null) {
+            try {
+                spillFile.setLength(0);
+            } catch (IOException e) {
+                LOG.warn("Failed to truncate entry-log metadata spill file {}", spillFilePath, e);
+            }
+        }
+    }
+
+    /**
+     * Move the oldest chunks to the spill file until the chunks in memory fit the configured size.
+     */
+    private void spillIfNeeded() throws EntryLogMetadataMapException {
+        while (memorySize > maxMemorySize) {
+            Chunk oldest = null;
+            for (Chunk chunk : chunks) {
+                if (chunk != null && !chunk.spilled && chunk != currentChunk
+                        && (oldest == null || chunk.sequence < oldest.sequence)) {
+                    oldest = chunk;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            spill(oldest);
+        }
+    }
+
+    private void spill(Chunk chunk) throws EntryLogMetadataMapException {
+        int capacity = chunk.buffer.capacity();
+        try {
+            if (spillFile == null) {
+                spillFilePath = File.createTempFile(SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX, spillDir);
+                spillFilePath.deleteOnExit();
+                spillFile = new RandomAccessFile(spillFilePath, "rw");
+                LOG.info("Spilling entry-log metadata to {}", spillFilePath);
+            }
+
+            ArrayDeque<Long> freeRegions = freeSpillRegions.get(capacity);
+            long offset;
+            if (freeRegions != null && !freeRegions.isEmpty()) {
+                offset = freeRegions.poll();
+            } else {
+                offset = spillFileSize;
+                spillFileSize += capacity;
+            }
+
+            ByteBuffer mapping = spillFile.getChannel().map(FileChannel.MapMode.READ_WRITE, offset, capacity);
+            ByteBuffer src = chunk.buffer.duplicate();
+            src.limit(chunk.writeOffset).position(0);
+            mapping.duplicate().put(src);
+
+            PlatformDependent.freeDirectBuffer(chunk.buffer);
+            chunk.buffer = mapping;
+            chunk.spilled = true;
+            chunk.spillOffset = offset;
+            memorySize -= capacity;
+            spilledSize += capacity;
+        } catch (IOException e) {
+            throw new EntryLogMetadataMapException(e);
+        }
+    }
+
+    private static final class Chunk {
+        final int id;
+        final long sequence;
+        // Direct memory, or a mapping of the spill file once spilled
+        ByteBuffer buffer;
+        boolean spilled = false;
+        long spillOffset = -1L;
+        int writeOffset = 0;
+        int liveBytes = 0;
+
+        Chunk(int id, long sequence, ByteBuffer buffer) {
+            this.id = id;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -57,7 +57,16 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, new Throttler(conf));
+    }
+
+    public TransactionalEntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            Throttler throttler) {
+        super(conf, logRemover, throttler);
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
     }
@@ -80,17 +89,36 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         if (metadata != null) {
             LOG.info("Compacting entry log {} with usage {}.",
                 metadata.getEntryLogId(), metadata.getUsage());
-            CompactionEntryLog compactionLog;
-            try {
-                compactionLog = entryLogger.newCompactionLog(metadata.getEntryLogId());
-            } catch (IOException ioe) {
-                LOG.error("Exception creating new compaction entry log", ioe);
+            CompactionEntryLog compactionLog = newCompactionLog(metadata);
+            if (compactionLog == null) {
                 return false;
             }
-            CompactionPhase scanEntryLog = new ScanEntryLogPhase(metadata, compactionLog);
-            if (!scanEntryLog.run()) {
-                LOG.info("Compaction for entry log {} end in ScanEntryLogPhase.", metadata.getEntryLogId());
-                return false;
+
+            boolean scanned = false;
+            List<EntryLocation> liveEntries = getLiveEntries(metadata);
+            if (liveEntries != null) {
+                ReadLiveEntriesPhase readLiveEntries = new ReadLiveEntriesPhase(metadata, compactionLog, liveEntries);
+                if (readLiveEntries.run()) {
+                    scanned = true;
+                } else if (readLiveEntries.isIndexIncomplete()) {
+                    LOG.info("Entry location index does not account for all the live data of entry log {}, "
+                            + "scanning it", metadata.getEntryLogId());
+                    compactionLog = newCompactionLog(metadata);
+                    if (compactionLog == null) {
+                        return false;
+                    }
+                } else {
+                    LOG.info("Compaction for entry log {} end in ReadLiveEntriesPhase.", metadata.getEntryLogId());
+                    return false;
+                }
+            }
+
+            if (!scanned) {
+                CompactionPhase scanEntryLog = new ScanEntryLogPhase(metadata, compactionLog);
+                if (!scanEntryLog.run()) {
+                    LOG.info("Compaction for entry log {} end in ScanEntryLogPhase.", metadata.getEntryLogId());
+                    return false;
+                }
             }
 
             CompactionPhase flushCompactionLog = new FlushCompactionLogPhase(compactionLog);
@@ -110,6 +138,24 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         return false;
     }
 
+    private CompactionEntryLog newCompactionLog(EntryLogMetadata metadata) {
+        try {
+            return entryLogger.newCompactionLog(metadata.getEntryLogId());
+        } catch (IOException ioe) {
+            LOG.error("Exception creating new compaction entry log", ioe);
+            return null;
+        }
+    }
+
+    private List<EntryLocation> getLiveEntries(EntryLogMetadata metadata) {
+        try {
+            return getLiveEntryLocations(ledgerStorage, metadata);
+        } catch (IOException ioe) {
+            LOG.warn("Failed to look up the live entries of entry log {}, scanning it", metadata.getEntryLogId(), ioe);
+            return null;
+        }
+    }
+
     /**
      * An abstract class that would be extended to be the actual transactional phases for compaction.
      */
@@ -150,11 +196,15 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
      * <p>If anything failed in this phase, we should delete the compaction log and clean the offsets.
      */
     class ScanEntryLogPhase extends CompactionPhase {
-        private final EntryLogMetadata metadata;
-        private final CompactionEntryLog compactionLog;
+        final EntryLogMetadata metadata;
+        final CompactionEntryLog compactionLog;
 
         ScanEntryLogPhase(EntryLogMetadata metadata, CompactionEntryLog compactionLog) {
-            super("ScanEntryLogPhase");
+            this("ScanEntryLogPhase", metadata, compactionLog);
+        }
+
+        ScanEntryLogPhase(String phaseName, EntryLogMetadata metadata, CompactionEntryLog compactionLog) {
+            super(phaseName);
             this.metadata = metadata;
             this.compactionLog = compactionLog;
         }
@@ -162,7 +212,11 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         @Override
         void start() throws IOException {
             // scan entry log into compaction log and offset list
-            entryLogger.scanEntryLog(metadata.getEntryLogId(), new EntryLogScanner() {
+            entryLogger.scanEntryLog(metadata.getEntryLogId(), newScanner());
+        }
+
+        EntryLogScanner newScanner() {
+            return new EntryLogScanner() {
                 @Override
                 public boolean accept(long ledgerId) {
                     return metadata.containsLedger(ledgerId);
@@ -189,7 +243,7 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
                         }
                     }
                 }
-            });
+            };
         }
 
         @Override
@@ -214,6 +268,38 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         }
     }
 
+    /**
+     * Alternative to {@link ScanEntryLogPhase} that copies to the compaction log only the live entries
+     * of the entry log, found through the entry location index, instead of scanning the whole log.
+     *
+     * <p>If the entries read do not account for all the data of the active ledgers of the entry log,
+     * the phase is aborted like the scan phase, and {@link #isIndexIncomplete()} tells that the entry
+     * log has to be compacted with a scan instead.
+     */
+    class ReadLiveEntriesPhase extends ScanEntryLogPhase {
+        private final List<EntryLocation> liveEntries;
+        private boolean indexIncomplete = false;
+
+        ReadLiveEntriesPhase(EntryLogMetadata metadata, CompactionEntryLog compactionLog,
+                             List<EntryLocation> liveEntries) {
+            super("ReadLiveEntriesPhase", metadata, compactionLog);
+            this.liveEntries = liveEntries;
+        }
+
+        @Override
+        void start() throws IOException {
+            if (!readLiveEntries(entryLogger, metadata, liveEntries, newScanner())) {
+                indexIncomplete = true;
+                throw new IOException("Entry location index is missing live entries of entry log "
+                        + metadata.getEntryLogId());
+            }
+        }
+
+        boolean isIndexIncomplete() {
+            return indexIncomplete;
+        }
+    }
+
     private void compactingLogWriteDone() {
         if (entryLogger instanceof DefaultEntryLogger) {
             ((DefaultEntryLogger) entryLogger).clearCompactingLogId();
@@ -39,6 +39,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLU
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_PROCESS_TIME_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_RECORDS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_BYTES;
@@ -162,6 +165,21 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_REPLAY_RECORDS,
+        help = "The number of records read from the journal while replaying it on startup"
+    )
+    private final Counter journalReplayRecords;
+    @StatsDoc(
+        name = JOURNAL_REPLAY_BYTES,
+        help = "The number of bytes read from the journal while replaying it on startup"
+    )
+    private final Counter journalReplayBytes;
+    @StatsDoc(
+        name = JOURNAL_REPLAY_QUEUE_SIZE,
+        help = "The number of replayed journal records waiting to be applied to the ledger storage"
+    )
+    private final Counter journalReplayQueueSize;
     @StatsDoc(
             name = JOURNAL_MEMORY_MAX,
             help = "The max amount of memory in bytes that can be used by the bookie journal"
@@ -195,6 +213,9 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        journalReplayRecords = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_REPLAY_RECORDS);
+        journalReplayBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_REPLAY_BYTES);
+        journalReplayQueueSize = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_REPLAY_QUEUE_SIZE);
 
         journalMemoryMaxStats = new Gauge<Long>() {
             @Override
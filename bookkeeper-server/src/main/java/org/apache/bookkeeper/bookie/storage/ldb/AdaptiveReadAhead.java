@@ -0,0 +1,280 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-ahead that follows the readers of each ledger.
+ *
+ * <p>A ledger is prefetched once it is read sequentially. Entries are fetched on a separate executor, following
+ * the entry locations index when the next entry is not right after the previous one, so that prefetching
+ * continues across entry logs.
+ *
+ * <p>The window of each ledger starts at the configured read-ahead batch size. It doubles when the reader
+ * consumed the previous window from the read cache, and it is halved when prefetched entries are wasted, either
+ * because the reader moved away or because they were evicted before being read.
+ */
+class AdaptiveReadAhead {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveReadAhead.class);
+
+    // Number of consecutive sequential reads after which a ledger is prefetched
+    private static final int SEQUENTIAL_READS_THRESHOLD = 2;
+
+    private static final long READER_STATE_EXPIRY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final EntryReadCache readCache;
+    private final EntryLocationIndex entryLocationIndex;
+    private final EntryLogger entryLogger;
+    private final DbLedgerStorageStats stats;
+
+    private final int initialWindow;
+    private final int minWindow;
+    private final int maxWindow;
+    private final long maxPrefetchBytes;
+
+    private final ExecutorService executor;
+    private final ConcurrentLongHashMap<ReaderState> readers = ConcurrentLongHashMap.<ReaderState>newBuilder()
+            .expectedItems(1024)
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+            .build();
+
+    AdaptiveReadAhead(EntryReadCache readCache, EntryLocationIndex entryLocationIndex, EntryLogger entryLogger,
+                      DbLedgerStorageStats stats, int initialWindow, int minWindow, int maxWindow,
+                      long maxPrefetchBytes, int numThreads) {
+        this.readCache = readCache;
+        this.entryLocationIndex = entryLocationIndex;
+        this.entryLogger = entryLogger;
+        this.stats = stats;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+        this.initialWindow = Math.max(minWindow, Math.min(maxWindow, initialWindow));
+        this.maxPrefetchBytes = maxPrefetchBytes;
+        this.executor = Executors.newFixedThreadPool(numThreads, new DefaultThreadFactory("db-storage-readahead"));
+    }
+
+    /**
+     * Record a read of an entry that was found in the read cache.
+     */
+    void onCacheHit(long ledgerId, long entryId) {
+        onRead(ledgerId, entryId, true, 0L);
+    }
+
+    /**
+     * Record a read of an entry that had to be read from the entry logs.
+     *
+     * @param nextEntryLocation the location right after the entry, where the next entry likely is
+     */
+    void onCacheMiss(long ledgerId, long entryId, long nextEntryLocation) {
+        onRead(ledgerId, entryId, false, nextEntryLocation);
+    }
+
+    private void onRead(long ledgerId, long entryId, boolean cacheHit, long nextEntryLocation) {
+        ReaderState state = readers.computeIfAbsent(ledgerId, k -> new ReaderState(initialWindow));
+        long firstEntryId;
+        long lastEntryId;
+        long locationHint;
+
+        synchronized (state) {
+            state.lastAccessNanos = MathUtils.nowInNano();
+
+            if (entryId > state.lastEntryId && entryId <= state.prefetchedUpTo) {
+                if (cacheHit) {
+                    stats.getReadAheadPrefetchHits().inc();
+                } else if (!state.prefetchPending) {
+                    // The entry was prefetched, but evicted before being read
+                    state.windowMisses++;
+                    shrink(state);
+                }
+            }
+
+            if (entryId == state.lastEntryId + 1) {
+                state.sequentialReads++;
+            } else if (entryId != state.lastEntryId) {
+                // The reader moved away, the entries prefetched ahead of it are wasted
+                if (state.prefetchedUpTo > state.lastEntryId && state.lastEntryId >= 0) {
+                    stats.getReadAheadPrefetchWasted().addCount(state.prefetchedUpTo - state.lastEntryId);
+                    shrink(state);
+                }
+                state.sequentialReads = 0;
+                state.prefetchedUpTo = entryId;
+            }
+            state.lastEntryId = entryId;
+
+            if (state.sequentialReads < SEQUENTIAL_READS_THRESHOLD || state.prefetchPending
+                    || state.prefetchedUpTo - entryId > state.window / 2) {
+                return;
+            }
+
+            // The reader is about to consume the previous window, grow it if it was read from the cache
+            if (state.prefetches > 0 && state.windowMisses == 0) {
+                state.window = Math.min(maxWindow, state.window * 2);
+            }
+            state.windowMisses = 0;
+
+            firstEntryId = Math.max(state.prefetchedUpTo, entryId) + 1;
+            lastEntryId = entryId + state.window;
+            locationHint = firstEntryId == entryId + 1 ? nextEntryLocation : 0L;
+
+            state.prefetches++;
+            state.prefetchPending = true;
+            state.prefetchedUpTo = lastEntryId;
+        }
+
+        try {
+            executor.execute(() -> prefetch(ledgerId, state, firstEntryId, lastEntryId, locationHint));
+        } catch (RejectedExecutionException e) {
+            synchronized (state) {
+                state.prefetchPending = false;
+                state.prefetchedUpTo = entryId;
+            }
+        }
+    }
+
+    private void shrink(ReaderState state) {
+        state.window = Math.max(minWindow, state.window / 2);
+    }
+
+    private void prefetch(long ledgerId, ReaderState state, long firstEntryId, long lastEntryId, long locationHint) {
+        long startNanos = MathUtils.nowInNano();
+        long entryId = firstEntryId;
+        long location = locationHint;
+        int count = 0;
+        long size = 0;
+
+        try {
+            for (; entryId <= lastEntryId && size < maxPrefetchBytes; entryId++) {
+                if (readCache.hasEntry(ledgerId, entryId)) {
+                    // Already read by the reader itself
+                    location = 0L;
+                    continue;
+                }
+
+                ByteBuf entry = location != 0L ? readEntryAt(ledgerId, entryId, location) : null;
+                if (entry == null) {
+                    // Not right after the previous entry, which happens when crossing an entry log boundary
+                    location = entryLocationIndex.getLocation(ledgerId, entryId);
+                    if (location == 0L) {
+                        // Not written yet, or still in the write cache
+                        break;
+                    }
+                    entry = readEntryAt(ledgerId, entryId, location);
+                    if (entry == null) {
+                        break;
+                    }
+                }
+
+                try {
+                    readCache.put(ledgerId, entryId, entry);
+                    count++;
+                    size += entry.readableBytes();
+                    location += 4 + entry.readableBytes();
+                } finally {
+                    ReferenceCountUtil.release(entry);
+                }
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Exception during read ahead for ledger: {}", ledgerId, e);
+            }
+        } finally {
+            synchronized (state) {
+                state.prefetchPending = false;
+                if (entryId <= lastEntryId) {
+                    // Stopped early, allow the next read to try again from where the prefetch stopped
+                    state.prefetchedUpTo = Math.min(state.prefetchedUpTo, entryId - 1);
+                }
+            }
+
+            stats.getReadAheadPrefetched().addCount(count);
+            stats.getReadAheadWindowStats().registerSuccessfulValue(lastEntryId - firstEntryId + 1);
+            stats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
+            stats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
+            stats.getReadAheadTime().addLatency(MathUtils.elapsedNanos(startNanos), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Read the entry at the given location, if that location holds the expected entry.
+     */
+    private ByteBuf readEntryAt(long ledgerId, long entryId, long location) {
+        ByteBuf entry;
+        try {
+            entry = entryLogger.readEntry(location);
+        } catch (Exception e) {
+            return null;
+        }
+        if (entry.readableBytes() < 16 || entry.getLong(0) != ledgerId || entry.getLong(8) != entryId) {
+            ReferenceCountUtil.release(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    void removeLedger(long ledgerId) {
+        readers.remove(ledgerId);
+    }
+
+    /**
+     * Forget the readers that have been idle for a while.
+     */
+    void removeIdleReaders() {
+        long now = MathUtils.nowInNano();
+        readers.removeIf((ledgerId, state) -> {
+            synchronized (state) {
+                return !state.prefetchPending && now - state.lastAccessNanos > READER_STATE_EXPIRY_NANOS;
+            }
+        });
+    }
+
+    void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    private static class ReaderState {
+        long lastEntryId = -1;
+        int sequentialReads = 0;
+        int window;
+        // Last entry id prefetched, or being prefetched
+        long prefetchedUpTo = -1;
+        boolean prefetchPending = false;
+        long prefetches = 0;
+        // Prefetched entries of the current window that were evicted before being read
+        int windowMisses = 0;
+        long lastAccessNanos;
+
+        ReaderState(int window) {
+            this.window = window;
+        }
+    }
+}
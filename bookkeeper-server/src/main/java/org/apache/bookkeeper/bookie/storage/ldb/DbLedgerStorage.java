@@ -39,14 +39,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.CompactionScheduler;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
@@ -61,6 +64,10 @@ import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigT
 import org.apache.bookkeeper.bookie.storage.ldb.SingleDirectoryDbLedgerStorage.LedgerLoggerProcessor;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.IoUring;
+import org.apache.bookkeeper.common.util.nativeio.IoUringNativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
 import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -91,8 +98,14 @@ public class DbLedgerStorage implements LedgerStorage {
         "dbStorage_directIOEntryLoggerReadBufferSizeMB";
     public static final String DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS =
         "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
+    public static final String DIRECT_IO_ENTRYLOGGER_IO_URING = "dbStorage_directIOEntryLoggerIoUring";
+    public static final String DIRECT_IO_ENTRYLOGGER_IO_URING_QUEUE_DEPTH =
+        "dbStorage_directIOEntryLoggerIoUringQueueDepth";
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
+    static final String WRITE_CACHE_RING_SIZE = "dbStorage_writeCacheRingSize";
+    static final String PIPELINED_FLUSH = "dbStorage_pipelinedFlushEnabled";
+    static final String PIPELINED_FLUSH_CHUNK_SIZE = "dbStorage_pipelinedFlushChunkSize";
 
     private static final int MB = 1024 * 1024;
 
@@ -101,8 +114,19 @@ public class DbLedgerStorage implements LedgerStorage {
     private static final long DEFAULT_READ_CACHE_MAX_SIZE_MB =
         (long) (0.25 * PlatformDependent.estimateMaxDirectMemory()) / MB;
 
+    static final String READ_CACHE_SHARDED = "dbStorage_readCacheSharded";
+    static final String READ_CACHE_SHARDS = "dbStorage_readCacheShards";
+
+    static final String ENTRY_LOCATION_INDEX_STORAGE = "dbStorage_entryLocationIndexStorage";
+    static final String ENTRY_LOCATION_INDEX_STORAGE_ROCKSDB = "rocksdb";
+    static final String ENTRY_LOCATION_INDEX_STORAGE_LEDGER_ARRAYS = "ledgerArrays";
+
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     static final String READ_AHEAD_CACHE_BATCH_BYTES_SIZE = "dbStorage_readAheadCacheBatchBytesSize";
+    static final String READ_AHEAD_ADAPTIVE = "dbStorage_readAheadAdaptive";
+    static final String READ_AHEAD_ADAPTIVE_MIN_WINDOW = "dbStorage_readAheadAdaptiveMinWindow";
+    static final String READ_AHEAD_ADAPTIVE_MAX_WINDOW = "dbStorage_readAheadAdaptiveMaxWindow";
+    static final String READ_AHEAD_ADAPTIVE_THREADS = "dbStorage_readAheadAdaptiveThreads";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
     // the default value is -1. this feature(limit of read ahead bytes) is disabled
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE = -1;
@@ -117,6 +141,8 @@ public class DbLedgerStorage implements LedgerStorage {
 
     private static final int DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS = 300;
 
+    private static final int DEFAULT_DIRECT_IO_IO_URING_QUEUE_DEPTH = 128;
+
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
     // but in that case data integrity should kick off anyhow.
@@ -127,6 +153,15 @@ public class DbLedgerStorage implements LedgerStorage {
     private ExecutorService entryLoggerWriteExecutor = null;
     private ExecutorService entryLoggerFlushExecutor = null;
 
+    // One ring per ledger directory, when the direct entry loggers go through io_uring
+    private final List<IoUring> ioUrings = new ArrayList<>();
+
+    // Shared by the garbage collector threads of all the ledger directories
+    private CompactionScheduler compactionScheduler;
+
+    // Used to flush all the ledger directories in parallel, when the pipelined flush is enabled
+    private ExecutorService ledgerDirsFlushExecutor = null;
+
     protected ByteBufAllocator allocator;
 
     // parent DbLedgerStorage stats (not per directory)
@@ -154,6 +189,13 @@ public class DbLedgerStorage implements LedgerStorage {
         long readCacheMaxSize = getLongVariableOrDefault(conf, READ_AHEAD_CACHE_MAX_SIZE_MB,
                 DEFAULT_READ_CACHE_MAX_SIZE_MB) * MB;
         boolean directIOEntryLogger = getBooleanVariableOrDefault(conf, DIRECT_IO_ENTRYLOGGER, false);
+        boolean directIOIoUring = directIOEntryLogger
+                && getBooleanVariableOrDefault(conf, DIRECT_IO_ENTRYLOGGER_IO_URING, false);
+        if (directIOIoUring && !IoUring.isAvailable()) {
+            log.warn("io_uring is not available, the direct entry logger will use blocking I/O: {}",
+                    IoUring.unavailabilityCause().getMessage());
+            directIOIoUring = false;
+        }
 
         this.allocator = allocator;
         this.numberOfDirs = ledgerDirsManager.getAllLedgerDirs().size();
@@ -178,6 +220,7 @@ public class DbLedgerStorage implements LedgerStorage {
                 DEFAULT_READ_AHEAD_CACHE_BATCH_BYTES_SIZE);
 
         ledgerStorageList = Lists.newArrayList();
+        compactionScheduler = new CompactionScheduler(conf);
         for (int i = 0; i < ledgerDirsManager.getAllLedgerDirs().size(); i++) {
             File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(i);
             File indexDir = indexDirsManager.getAllLedgerDirs().get(i);
@@ -224,8 +267,16 @@ public class DbLedgerStorage implements LedgerStorage {
                     numReadThreads = conf.getServerNumIOThreads();
                 }
 
+                NativeIO nativeIO = new NativeIOImpl();
+                if (directIOIoUring) {
+                    IoUring ioUring = new IoUring((int) getLongVariableOrDefault(conf,
+                            DIRECT_IO_ENTRYLOGGER_IO_URING_QUEUE_DEPTH, DEFAULT_DIRECT_IO_IO_URING_QUEUE_DEPTH));
+                    ioUrings.add(ioUring);
+                    nativeIO = new IoUringNativeIO(nativeIO, ioUring);
+                }
+
                 entrylogger = new DirectEntryLogger(ledgerDir, new EntryLogIdsImpl(ldm, slog),
-                    new NativeIOImpl(),
+                    nativeIO,
                     allocator, entryLoggerWriteExecutor, entryLoggerFlushExecutor,
                     conf.getEntryLogSizeLimit(),
                     conf.getNettyMaxFrameSizeBytes() - 500,
@@ -249,6 +300,11 @@ public class DbLedgerStorage implements LedgerStorage {
             }
         }
 
+        if (numberOfDirs > 1 && getBooleanVariableOrDefault(conf, PIPELINED_FLUSH, false)) {
+            ledgerDirsFlushExecutor = Executors.newFixedThreadPool(numberOfDirs,
+                    new DefaultThreadFactory("db-storage-dirs-flush"));
+        }
+
         // parent DbLedgerStorage stats (not per directory)
         readaheadBatchSizeGauge = new Gauge<Integer>() {
             @Override
@@ -285,7 +341,8 @@ public class DbLedgerStorage implements LedgerStorage {
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager, entryLogger,
                                                   statsLogger, allocator, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize, readAheadCacheBatchBytesSize);
+                                                  readAheadCacheBatchSize, readAheadCacheBatchBytesSize,
+                                                  compactionScheduler);
     }
 
     @Override
@@ -318,6 +375,16 @@ public class DbLedgerStorage implements LedgerStorage {
         if (entryLoggerFlushExecutor != null) {
             entryLoggerFlushExecutor.shutdown();
         }
+        if (ledgerDirsFlushExecutor != null) {
+            ledgerDirsFlushExecutor.shutdown();
+        }
+        for (IoUring ioUring : ioUrings) {
+            try {
+                ioUring.close();
+            } catch (NativeIOException e) {
+                log.warn("Failed to close io_uring", e);
+            }
+        }
     }
 
     @Override
@@ -381,15 +448,53 @@ public class DbLedgerStorage implements LedgerStorage {
 
     @Override
     public void flush() throws IOException {
-        for (LedgerStorage ls : ledgerStorageList) {
-            ls.flush();
-        }
+        flushLedgerDirs(LedgerStorage::flush);
     }
 
     @Override
     public void checkpoint(Checkpoint checkpoint) throws IOException {
+        flushLedgerDirs(ls -> ls.checkpoint(checkpoint));
+    }
+
+    private interface LedgerDirFlushOp {
+        void flush(LedgerStorage ledgerStorage) throws IOException;
+    }
+
+    private void flushLedgerDirs(LedgerDirFlushOp op) throws IOException {
+        if (ledgerDirsFlushExecutor == null) {
+            for (LedgerStorage ls : ledgerStorageList) {
+                op.flush(ls);
+            }
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(ledgerStorageList.size());
         for (LedgerStorage ls : ledgerStorageList) {
-            ls.checkpoint(checkpoint);
+            futures.add(ledgerDirsFlushExecutor.submit(() -> {
+                op.flush(ls);
+                return null;
+            }));
+        }
+
+        // Wait for all the directories, even if one of them failed, and report the first failure
+        IOException exception = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while flushing ledger directories", e);
+            } catch (ExecutionException e) {
+                if (exception == null) {
+                    exception = e.getCause() instanceof IOException
+                            ? (IOException) e.getCause()
+                            : new IOException("Failed to flush ledger directory", e.getCause());
+                }
+            }
+        }
+
+        if (exception != null) {
+            throw exception;
         }
     }
 
@@ -484,9 +589,12 @@ public class DbLedgerStorage implements LedgerStorage {
         int dirIndex = MathUtils.signSafeMod(ledgerId, ledgerDirs.size());
         String indexBasePath = indexDirs.get(dirIndex).toString();
 
-        EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf,
-                (basePath, subPath, dbConfigType, conf1) ->
-                        new KeyValueStorageRocksDB(basePath, subPath, DbConfigType.Default, conf1, true),
+        KeyValueStorageFactory storageFactory = isLedgerArraysEntryLocationIndex(serverConf)
+                ? (basePath, subPath, dbConfigType, conf1) ->
+                        new KeyValueStorageLedgerArrays(basePath, subPath, dbConfigType, conf1, true)
+                : (basePath, subPath, dbConfigType, conf1) ->
+                        new KeyValueStorageRocksDB(basePath, subPath, DbConfigType.Default, conf1, true);
+        EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf, storageFactory,
                 indexBasePath, NullStatsLogger.INSTANCE);
         try {
             long lastEntryId = entryLocationIndex.getLastEntryInLedger(ledgerId);
@@ -610,6 +718,17 @@ public class DbLedgerStorage implements LedgerStorage {
         }
     }
 
+    static boolean isLedgerArraysEntryLocationIndex(ServerConfiguration conf) {
+        String storage = conf.getString(ENTRY_LOCATION_INDEX_STORAGE, ENTRY_LOCATION_INDEX_STORAGE_ROCKSDB);
+        if (ENTRY_LOCATION_INDEX_STORAGE_LEDGER_ARRAYS.equalsIgnoreCase(storage)) {
+            return true;
+        } else if (ENTRY_LOCATION_INDEX_STORAGE_ROCKSDB.equalsIgnoreCase(storage)) {
+            return false;
+        } else {
+            throw new IllegalArgumentException("Invalid value for " + ENTRY_LOCATION_INDEX_STORAGE + ": " + storage);
+        }
+    }
+
     static boolean getBooleanVariableOrDefault(ServerConfiguration conf, String keyName, boolean defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Boolean) {
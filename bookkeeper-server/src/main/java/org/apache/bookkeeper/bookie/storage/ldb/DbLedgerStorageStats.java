@@ -55,8 +55,16 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_WINDOW = "readahead-window";
+    private static final String READAHEAD_PREFETCHED = "readahead-prefetched";
+    private static final String READAHEAD_PREFETCH_HITS = "readahead-prefetch-hits";
+    private static final String READAHEAD_PREFETCH_WASTED = "readahead-prefetch-wasted";
+    private static final String READAHEAD_PREFETCH_ACCURACY = "readahead-prefetch-accuracy";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
+    private static final String FLUSH_ENTRYLOG_WRITE = "flush-entrylog-write";
+    private static final String FLUSH_LOCATIONS_INDEX_BUILD = "flush-locations-index-build";
+    private static final String FLUSH_LOCATIONS_INDEX_WAIT = "flush-locations-index-wait";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
     private static final String FLUSH_LEDGER_INDEX = "flush-ledger-index";
     private static final String FLUSH_SIZE = "flush-size";
@@ -68,8 +76,12 @@ class DbLedgerStorageStats {
     private static final String REJECTED_WRITE_REQUESTS = "rejected-write-requests";
     private static final String WRITE_CACHE_SIZE = "write-cache-size";
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
+    private static final String WRITE_CACHE_RING_OCCUPANCY = "write-cache-ring-occupancy";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String READ_CACHE_HIT_RATE = "read-cache-hit-rate";
+    private static final String READ_CACHE_EVICTIONS = "read-cache-evictions";
+    private static final String READ_CACHE_ADMISSION_REJECTIONS = "read-cache-admission-rejections";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -134,6 +146,33 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+        name = READAHEAD_WINDOW,
+        help = "the distribution of num of entries requested in one adaptive readahead prefetch"
+    )
+    private final OpStatsLogger readAheadWindowStats;
+    @StatsDoc(
+        name = READAHEAD_PREFETCHED,
+        help = "number of entries prefetched in read cache by the adaptive readahead"
+    )
+    private final Counter readAheadPrefetched;
+    @StatsDoc(
+        name = READAHEAD_PREFETCH_HITS,
+        help = "number of entries prefetched by the adaptive readahead that were then read from read cache",
+        parent = READ_ENTRY
+    )
+    private final Counter readAheadPrefetchHits;
+    @StatsDoc(
+        name = READAHEAD_PREFETCH_WASTED,
+        help = "number of entries prefetched by the adaptive readahead that were skipped by their reader"
+    )
+    private final Counter readAheadPrefetchWasted;
+    @StatsDoc(
+        name = READAHEAD_PREFETCH_ACCURACY,
+        help = "Percentage of the entries prefetched by the adaptive readahead that were then read from read cache,"
+            + " since the previous sample"
+    )
+    private final Gauge<Double> readAheadPrefetchAccuracyGauge;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -144,11 +183,28 @@ class DbLedgerStorageStats {
             help = "operation stats of flushing to the current entry log file"
     )
     private final OpStatsLogger flushEntryLogStats;
+    @StatsDoc(
+            name = FLUSH_ENTRYLOG_WRITE,
+            help = "operation stats of writing a chunk of entries to the entry log files, in a pipelined flush"
+    )
+    private final OpStatsLogger flushEntryLogWriteStats;
     @StatsDoc(
             name = FLUSH_LOCATIONS_INDEX,
             help = "operation stats of flushing to the locations index"
     )
     private final OpStatsLogger flushLocationIndexStats;
+    @StatsDoc(
+            name = FLUSH_LOCATIONS_INDEX_BUILD,
+            help = "operation stats of adding a chunk of entry locations to the locations index batch,"
+                + " in a pipelined flush"
+    )
+    private final OpStatsLogger flushLocationsIndexBuildStats;
+    @StatsDoc(
+            name = FLUSH_LOCATIONS_INDEX_WAIT,
+            help = "operation stats of waiting for the locations index to be flushed after the entry log files,"
+                + " in a pipelined flush"
+    )
+    private final OpStatsLogger flushLocationsIndexWaitStats;
     @StatsDoc(
             name = FLUSH_LOCATIONS_INDEX,
             help = "operation stats of flushing to the ledger index"
@@ -185,6 +241,12 @@ class DbLedgerStorageStats {
         help = "Current number of entries in write cache"
     )
     private final Gauge<Long> writeCacheCountGauge;
+    @StatsDoc(
+        name = WRITE_CACHE_RING_OCCUPANCY,
+        help = "Current number of write caches of the ring that hold entries not yet flushed, including the"
+            + " one receiving new entries"
+    )
+    private final Gauge<Integer> writeCacheRingOccupancyGauge;
     @StatsDoc(
         name = READ_CACHE_SIZE,
         help = "Current number of bytes in read cache"
@@ -195,12 +257,30 @@ class DbLedgerStorageStats {
         help = "Current number of entries in read cache"
     )
     private final Gauge<Long> readCacheCountGauge;
+    @StatsDoc(
+        name = READ_CACHE_HIT_RATE,
+        help = "Percentage of read cache lookups that were hits, since the previous sample"
+    )
+    private final Gauge<Double> readCacheHitRateGauge;
+    @StatsDoc(
+        name = READ_CACHE_EVICTIONS,
+        help = "Total number of entries evicted from read cache"
+    )
+    private final Gauge<Long> readCacheEvictionsGauge;
+    @StatsDoc(
+        name = READ_CACHE_ADMISSION_REJECTIONS,
+        help = "Total number of entries that were not admitted in read cache"
+    )
+    private final Gauge<Long> readCacheAdmissionRejectionsGauge;
 
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
+                         Supplier<Integer> writeCacheRingOccupancySupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         Supplier<Long> readCacheEvictionsSupplier,
+                         Supplier<Long> readCacheAdmissionRejectionsSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
@@ -212,9 +292,16 @@ class DbLedgerStorageStats {
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadWindowStats = stats.getOpStatsLogger(READAHEAD_WINDOW);
+        readAheadPrefetched = stats.getCounter(READAHEAD_PREFETCHED);
+        readAheadPrefetchHits = stats.getCounter(READAHEAD_PREFETCH_HITS);
+        readAheadPrefetchWasted = stats.getCounter(READAHEAD_PREFETCH_WASTED);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
+        flushEntryLogWriteStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG_WRITE);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
+        flushLocationsIndexBuildStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX_BUILD);
+        flushLocationsIndexWaitStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX_WAIT);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
 
@@ -246,6 +333,18 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(WRITE_CACHE_COUNT, writeCacheCountGauge);
+        writeCacheRingOccupancyGauge = new Gauge<Integer>() {
+            @Override
+            public Integer getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Integer getSample() {
+                return writeCacheRingOccupancySupplier.get();
+            }
+        };
+        stats.registerGauge(WRITE_CACHE_RING_OCCUPANCY, writeCacheRingOccupancyGauge);
         readCacheSizeGauge = new Gauge<Long>() {
             @Override
             public Long getDefaultValue() {
@@ -271,6 +370,72 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+        readCacheHitRateGauge = new Gauge<Double>() {
+            private long lastHits = 0;
+            private long lastMisses = 0;
+
+            @Override
+            public Double getDefaultValue() {
+                return 0.0;
+            }
+
+            @Override
+            public synchronized Double getSample() {
+                long hits = readCacheHitCounter.get();
+                long misses = readCacheMissCounter.get();
+                long deltaHits = hits - lastHits;
+                long deltaLookups = deltaHits + misses - lastMisses;
+                lastHits = hits;
+                lastMisses = misses;
+                return deltaLookups > 0 ? 100.0 * deltaHits / deltaLookups : 0.0;
+            }
+        };
+        stats.registerGauge(READ_CACHE_HIT_RATE, readCacheHitRateGauge);
+        readCacheEvictionsGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCacheEvictionsSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_EVICTIONS, readCacheEvictionsGauge);
+        readCacheAdmissionRejectionsGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCacheAdmissionRejectionsSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_ADMISSION_REJECTIONS, readCacheAdmissionRejectionsGauge);
+        readAheadPrefetchAccuracyGauge = new Gauge<Double>() {
+            private long lastPrefetched = 0;
+            private long lastHits = 0;
+
+            @Override
+            public Double getDefaultValue() {
+                return 0.0;
+            }
+
+            @Override
+            public synchronized Double getSample() {
+                long prefetched = readAheadPrefetched.get();
+                long hits = readAheadPrefetchHits.get();
+                long deltaPrefetched = prefetched - lastPrefetched;
+                long deltaHits = hits - lastHits;
+                lastPrefetched = prefetched;
+                lastHits = hits;
+                return deltaPrefetched > 0 ? Math.min(100.0, 100.0 * deltaHits / deltaPrefetched) : 0.0;
+            }
+        };
+        stats.registerGauge(READAHEAD_PREFETCH_ACCURACY, readAheadPrefetchAccuracyGauge);
     }
 
 }
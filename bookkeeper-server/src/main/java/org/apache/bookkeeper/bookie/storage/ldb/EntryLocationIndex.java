@@ -23,12 +23,14 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 import com.google.common.collect.Iterables;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -146,6 +148,33 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Add to the list the locations of the entries of a ledger that are stored in an entry log,
+     * in the order of their entry ids.
+     */
+    public void getLocationsInEntryLog(long ledgerId, long entryLogId, List<EntryLocation> locations)
+            throws IOException {
+        if (deletedLedgers.contains(ledgerId)) {
+            return;
+        }
+
+        LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, 0);
+        LongPairWrapper lastKey = LongPairWrapper.get(ledgerId, Long.MAX_VALUE);
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = locationsDb.iterator(firstKey.array,
+                lastKey.array)) {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                long location = ArrayUtil.getLong(entry.getValue(), 0);
+                if ((location >> 32) == entryLogId) {
+                    locations.add(new EntryLocation(ledgerId, ArrayUtil.getLong(entry.getKey(), 8), location));
+                }
+            }
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+        }
+    }
+
     public void addLocation(long ledgerId, long entryId, long location) throws IOException {
         try (Batch batch = locationsDb.newBatch()) {
             addLocation(batch, ledgerId, entryId, location);
@@ -0,0 +1,62 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import java.io.Closeable;
+
+/**
+ * Cache of entries that were recently read, or pre-fetched by read-ahead, from the entry logs.
+ *
+ * <p>Entries are copied into the cache on {@link #put} and a new buffer, owned by the caller,
+ * is returned by {@link #get}.
+ */
+public interface EntryReadCache extends Closeable {
+
+    void put(long ledgerId, long entryId, ByteBuf entry);
+
+    ByteBuf get(long ledgerId, long entryId);
+
+    boolean hasEntry(long ledgerId, long entryId);
+
+    /**
+     * @return the total size of cached entries
+     */
+    long size();
+
+    /**
+     * @return the total number of cached entries
+     */
+    long count();
+
+    /**
+     * @return the total number of entries that were dropped from the cache to make space for new ones
+     */
+    long evictionCount();
+
+    /**
+     * @return the total number of entries that were refused by the cache on {@link #put}
+     */
+    long admissionRejectedCount();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Approximate access frequency of (ledgerId, entryId) keys, as used by TinyLFU admission.
+ *
+ * <p>This is a count-min sketch with 4 rows of 4-bit counters, packed 16 to a long. Once the number of
+ * recorded accesses reaches 10 times the width of the sketch, all the counters are halved so that the
+ * frequencies are aged and old popularity does not stick forever.
+ *
+ * <p>Updates are not atomic: concurrent increments can be lost, which only makes the estimation a bit
+ * less accurate and never requires any locking on the read path.
+ */
+class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_FREQUENCY = 15;
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedItems) {
+        int width = alignToPowerOfTwo(Math.max(16, expectedItems));
+        this.table = new long[width];
+        this.tableMask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * @return the estimated number of accesses to the key, in the range [0, 15]
+     */
+    int frequency(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = rehash(hash, i);
+            int index = (int) h & tableMask;
+            int shift = counterShift(h);
+            frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xfL));
+        }
+        return frequency;
+    }
+
+    void increment(long ledgerId, long entryId) {
+        long hash = hash(ledgerId, entryId);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = rehash(hash, i);
+            int index = (int) h & tableMask;
+            int shift = counterShift(h);
+            long value = table[index];
+            if (((value >>> shift) & 0xfL) < MAX_FREQUENCY) {
+                table[index] = value + (1L << shift);
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static long hash(long ledgerId, long entryId) {
+        long h = ledgerId * 0x9e3779b97f4a7c15L + entryId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long rehash(long hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 29);
+    }
+
+    private static int counterShift(long h) {
+        // Pick one of the 16 counters within the long, from bits not used for the table index
+        return (int) ((h >>> 40) & 0xfL) << 2;
+    }
+}
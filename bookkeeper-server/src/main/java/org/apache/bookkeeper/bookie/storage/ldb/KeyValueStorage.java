@@ -22,6 +22,7 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.Map.Entry;
 
 /**
@@ -142,6 +143,38 @@ public interface KeyValueStorage extends Closeable {
      */
     CloseableIterator<Entry<byte[], byte[]>> iterator();
 
+    /**
+     * Return an iterator object that can be used to sequentially scan through the
+     * entries within a specified range.
+     *
+     * <p>The entries returned by the iterator may be reused at the next step.
+     *
+     * @param firstKey
+     *            the first key in the range (included)
+     * @param lastKey
+     *            the lastKey in the range (not included)
+     */
+    default CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey) {
+        final CloseableIterator<byte[]> keys = keys(firstKey, lastKey);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() throws IOException {
+                return keys.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() throws IOException {
+                byte[] key = keys.next();
+                return new AbstractMap.SimpleImmutableEntry<>(key, get(key));
+            }
+
+            @Override
+            public void close() throws IOException {
+                keys.close();
+            }
+        };
+    }
+
     /**
      * Commit all pending write to durable storage.
      */
@@ -0,0 +1,1775 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * KeyValueStorage specialized for the entry locations index.
+ *
+ * <p>Keys are (ledgerId, entryId) pairs and values are 8 bytes locations, as written by
+ * {@link EntryLocationIndex}. Since most ledgers are written sequentially, the locations of each ledger
+ * are kept in a dense off-heap array indexed by {@code entryId - firstEntryId}, so that a lookup is a
+ * hash map access followed by an array read. Entries that would make the array too sparse are kept in
+ * a sorted map on the side.
+ *
+ * <p>The content is persisted as immutable segment files and a write-ahead log of the mutations applied
+ * since the last segment was written. A base segment holds the arrays of all the ledgers, and each delta
+ * segment the arrays of the ledgers changed since the previous segment, along with the ledgers deleted
+ * since then. The segments are memory-mapped when they are loaded, so that the arrays of ledgers that are
+ * not written anymore live in the page cache rather than in direct memory.
+ *
+ * <p>When the write-ahead log grows over {@code dbStorage_ledgerArrays_walMaxSizeMb}, only the changed
+ * ledgers are written in a new delta segment and the log is truncated. Once there are
+ * {@code dbStorage_ledgerArrays_maxDeltaSegments} delta segments, or when the storage is compacted, they
+ * are merged with the base segment into a new base segment. The merge only reads the segment files, so it
+ * runs on a background thread without blocking the mutations.
+ *
+ * <p>A location of 0 is never valid, so a slot holding 0 means that the entry is not present and storing 0
+ * removes the key.
+ */
+public class KeyValueStorageLedgerArrays implements KeyValueStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueStorageLedgerArrays.class);
+
+    static final KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) ->
+            new KeyValueStorageLedgerArrays(defaultBasePath, subPath, dbConfigType, conf);
+
+    static final String DIRECTORY_SUFFIX = "-arrays";
+
+    static final String WAL_MAX_SIZE_MB = "dbStorage_ledgerArrays_walMaxSizeMb";
+    private static final long DEFAULT_WAL_MAX_SIZE_MB = 256;
+    static final String MAX_DELTA_SEGMENTS = "dbStorage_ledgerArrays_maxDeltaSegments";
+    private static final int DEFAULT_MAX_DELTA_SEGMENTS = 8;
+
+    private static final int KEY_SIZE = 16;
+    private static final int VALUE_SIZE = 8;
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String DELTA_PREFIX = "delta-";
+    static final String SEGMENT_SUFFIX = ".idx";
+    static final String WAL_PREFIX = "wal-";
+    static final String WAL_SUFFIX = ".log";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final long SEGMENT_MAGIC = 0x424b4c4f43415253L; // "BKLOCARS"
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_FLAG_DELTA = 1;
+    private static final int SEGMENT_HEADER_SIZE = 24;
+    private static final int LEDGER_HEADER_SIZE = 32;
+    private static final int MAX_MAPPING_SIZE = 1024 * 1024 * 1024;
+    // Entries count of a ledger deleted since the previous segment, in a delta segment
+    private static final long DELETED_LEDGER = -1;
+
+    private static final int WAL_BATCH_MAGIC = 0x4c4f4357; // "LOCW"
+    private static final int WAL_BATCH_HEADER_SIZE = 12;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_DELETE_RANGE = 3;
+
+    private static final long NOT_FOUND = Long.MIN_VALUE;
+
+    private final Path dbPath;
+    private final boolean readOnly;
+    private final long walMaxSize;
+    private final int maxDeltaSegments;
+    // Merges the delta segments into a new base segment, null in read-only mode
+    private final ExecutorService mergeExecutor;
+
+    // Point lookups go through the hash map, ordered scans through the skip list. Both are only updated
+    // while holding the mutation lock.
+    private final ConcurrentLongHashMap<LedgerLocations> ledgers;
+    private final ConcurrentSkipListMap<Long, LedgerLocations> sortedLedgers = new ConcurrentSkipListMap<>();
+
+    private final ReentrantLock mutationLock = new ReentrantLock();
+    private volatile long totalCount;
+    private volatile boolean closed = false;
+
+    // Guarded by the mutation lock
+    private long sequence;
+    private FileChannel wal;
+    private long walSize;
+    private long baseSequence;
+    private final List<Long> deltaSequences = new ArrayList<>();
+    private boolean mergeScheduled = false;
+    // Ledgers changed or deleted since the last segment was written
+    private final Set<Long> dirtyLedgers = new TreeSet<>();
+
+    public KeyValueStorageLedgerArrays(String basePath, String subPath, DbConfigType dbConfigType,
+                                       ServerConfiguration conf) throws IOException {
+        this(basePath, subPath, dbConfigType, conf, false);
+    }
+
+    public KeyValueStorageLedgerArrays(String basePath, String subPath, DbConfigType dbConfigType,
+                                       ServerConfiguration conf, boolean readOnly) throws IOException {
+        this.dbPath = FileSystems.getDefault().getPath(basePath, subPath + DIRECTORY_SUFFIX);
+        this.readOnly = readOnly;
+        this.walMaxSize = conf.getLong(WAL_MAX_SIZE_MB, DEFAULT_WAL_MAX_SIZE_MB) * 1024 * 1024;
+        this.maxDeltaSegments = Math.max(1, conf.getInt(MAX_DELTA_SEGMENTS, DEFAULT_MAX_DELTA_SEGMENTS));
+        this.ledgers = ConcurrentLongHashMap.<LedgerLocations>newBuilder()
+                .expectedItems(16 * 1024)
+                .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                .build();
+
+        boolean exists = Files.isDirectory(dbPath);
+        Path rocksDbPath = FileSystems.getDefault().getPath(basePath, subPath);
+        if (readOnly) {
+            if (!exists) {
+                throw new IOException("Entry locations storage not found at " + dbPath);
+            }
+            this.mergeExecutor = null;
+            load();
+            return;
+        }
+
+        this.mergeExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("ledger-arrays-merge"));
+        mutationLock.lock();
+        try {
+            if (!exists) {
+                Files.createDirectories(dbPath);
+                if (Files.exists(rocksDbPath.resolve("CURRENT"))) {
+                    importFromRocksDB(basePath, subPath, dbConfigType, conf);
+                }
+                writeSegment(true);
+            } else {
+                // Left over by a segment write or a merge that did not complete
+                deleteFiles(name -> name.endsWith(TMP_SUFFIX));
+                if (load() || sequence == 0) {
+                    // Fold the replayed mutations in a new segment, so that the log always starts empty
+                    writeSegment(baseSequence == 0);
+                } else {
+                    openWal();
+                    deleteObsoleteFiles();
+                }
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+        scheduleMergeIfNeeded();
+
+        log.info("Opened entry locations storage at {} with {} ledgers and {} entries", dbPath,
+                sortedLedgers.size(), totalCount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mutationLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (wal != null) {
+                wal.force(false);
+                wal.close();
+                wal = null;
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+
+        if (mergeExecutor != null) {
+            // Let a running merge complete, its segment is only used once the storage is opened again
+            mergeExecutor.shutdown();
+            try {
+                mergeExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while closing entry locations storage " + dbPath, e);
+            }
+        }
+
+        mutationLock.lock();
+        try {
+            for (LedgerLocations ledger : sortedLedgers.values()) {
+                ledger.free();
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) throws IOException {
+        checkKey(key);
+        checkValue(value);
+        ByteBuf record = Unpooled.buffer(25);
+        try {
+            record.writeByte(OP_PUT);
+            record.writeLongLE(ArrayUtil.getLong(key, 0));
+            record.writeLongLE(ArrayUtil.getLong(key, 8));
+            record.writeLongLE(ArrayUtil.getLong(value, 0));
+            write(record, false);
+        } finally {
+            record.release();
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) throws IOException {
+        byte[] value = new byte[VALUE_SIZE];
+        return get(key, value) < 0 ? null : value;
+    }
+
+    @Override
+    public int get(byte[] key, byte[] value) throws IOException {
+        checkKey(key);
+        if (value.length < VALUE_SIZE) {
+            throw new IOException("Value array is too small to fit the result");
+        }
+
+        LedgerLocations ledger = ledgers.get(ArrayUtil.getLong(key, 0));
+        if (ledger == null) {
+            return -1;
+        }
+        long location = ledger.get(ArrayUtil.getLong(key, 8));
+        if (location == 0) {
+            return -1;
+        }
+        ArrayUtil.setLong(value, 0, location);
+        return VALUE_SIZE;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+        checkKey(key);
+        long ledgerId = ArrayUtil.getLong(key, 0);
+        long entryId = ArrayUtil.getLong(key, 8);
+        long[] found = new long[2];
+
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger != null && entryId != Long.MIN_VALUE && ledger.floor(entryId - 1, found)) {
+            return newEntry(ledgerId, found);
+        }
+
+        for (Map.Entry<Long, LedgerLocations> e = sortedLedgers.lowerEntry(ledgerId); e != null;
+             e = sortedLedgers.lowerEntry(e.getKey())) {
+            if (e.getValue().floor(Long.MAX_VALUE, found)) {
+                return newEntry(e.getKey(), found);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+        checkKey(key);
+        long[] found = new long[3];
+        if (findCeil(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), found)) {
+            return newEntry(found[2], found);
+        }
+        return null;
+    }
+
+    @Override
+    public void delete(byte[] key) throws IOException {
+        checkKey(key);
+        ByteBuf record = Unpooled.buffer(17);
+        try {
+            record.writeByte(OP_DELETE);
+            record.writeLongLE(ArrayUtil.getLong(key, 0));
+            record.writeLongLE(ArrayUtil.getLong(key, 8));
+            write(record, false);
+        } finally {
+            record.release();
+        }
+    }
+
+    @Override
+    public String getDBPath() {
+        return dbPath.toString();
+    }
+
+    @Override
+    public void compact(byte[] firstKey, byte[] lastKey) throws IOException {
+        // There is nothing to reclaim within a range: deleted ledgers are dropped from the next segment
+        compact();
+    }
+
+    @Override
+    public void compact() throws IOException {
+        if (readOnly) {
+            return;
+        }
+        mutationLock.lock();
+        try {
+            checkOpen();
+            if (walSize > 0) {
+                writeSegment(false);
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+
+        // The mutations are not blocked while the segments are merged
+        Future<?> merge = mergeExecutor.submit(() -> {
+            mergeSegments();
+            return null;
+        });
+        try {
+            merge.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compacting entry locations storage " + dbPath, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compact entry locations storage " + dbPath, e.getCause());
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        mutationLock.lock();
+        try {
+            if (wal != null) {
+                wal.force(false);
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys() {
+        return keys(null, null);
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+        Cursor cursor = new Cursor(firstKey, lastKey);
+        return new CloseableIterator<byte[]>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public byte[] next() throws IOException {
+                cursor.next();
+                return cursor.key();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+        Cursor cursor = new Cursor(null, null);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() throws IOException {
+                cursor.next();
+                return new AbstractMap.SimpleImmutableEntry<>(cursor.key(), cursor.value());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey) {
+        Cursor cursor = new Cursor(firstKey, lastKey);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() throws IOException {
+                cursor.next();
+                return new AbstractMap.SimpleImmutableEntry<>(cursor.key(), cursor.value());
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public long count() throws IOException {
+        return totalCount;
+    }
+
+    @Override
+    public Batch newBatch() {
+        return new LedgerArraysBatch();
+    }
+
+    private class LedgerArraysBatch implements Batch {
+        private final ByteBuf records = Unpooled.buffer(64 * 1024);
+        private int count = 0;
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            checkKey(key);
+            checkValue(value);
+            records.writeByte(OP_PUT);
+            records.writeLongLE(ArrayUtil.getLong(key, 0));
+            records.writeLongLE(ArrayUtil.getLong(key, 8));
+            records.writeLongLE(ArrayUtil.getLong(value, 0));
+            ++count;
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            checkKey(key);
+            records.writeByte(OP_DELETE);
+            records.writeLongLE(ArrayUtil.getLong(key, 0));
+            records.writeLongLE(ArrayUtil.getLong(key, 8));
+            ++count;
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            checkKey(beginKey);
+            checkKey(endKey);
+            records.writeByte(OP_DELETE_RANGE);
+            records.writeLongLE(ArrayUtil.getLong(beginKey, 0));
+            records.writeLongLE(ArrayUtil.getLong(beginKey, 8));
+            records.writeLongLE(ArrayUtil.getLong(endKey, 0));
+            records.writeLongLE(ArrayUtil.getLong(endKey, 8));
+            ++count;
+        }
+
+        @Override
+        public void clear() {
+            records.clear();
+            count = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                write(records, true);
+            }
+            clear();
+        }
+
+        @Override
+        public int batchCount() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            records.release();
+        }
+    }
+
+    /**
+     * Append the records to the write-ahead log and apply them.
+     */
+    private void write(ByteBuf records, boolean sync) throws IOException {
+        if (readOnly) {
+            throw new IOException("Entry locations storage at " + dbPath + " is opened in read-only mode");
+        }
+
+        mutationLock.lock();
+        try {
+            checkOpen();
+
+            CRC32 crc = new CRC32();
+            crc.update(records.nioBuffer());
+            ByteBuffer header = ByteBuffer.allocate(WAL_BATCH_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(WAL_BATCH_MAGIC);
+            header.putInt(records.readableBytes());
+            header.putInt((int) crc.getValue());
+            header.flip();
+
+            ByteBuffer[] buffers = {header, records.nioBuffer()};
+            long size = header.remaining() + buffers[1].remaining();
+            long written = 0;
+            while (written < size) {
+                written += wal.write(buffers);
+            }
+            walSize += size;
+            if (sync) {
+                wal.force(false);
+            }
+
+            applyRecords(records.duplicate());
+
+            if (walSize >= walMaxSize) {
+                writeSegment(false);
+            }
+        } finally {
+            mutationLock.unlock();
+        }
+        scheduleMergeIfNeeded();
+    }
+
+    private void applyRecords(ByteBuf records) throws IOException {
+        while (records.isReadable()) {
+            byte op = records.readByte();
+            switch (op) {
+            case OP_PUT:
+                applyPut(records.readLongLE(), records.readLongLE(), records.readLongLE());
+                break;
+            case OP_DELETE:
+                applyDelete(records.readLongLE(), records.readLongLE());
+                break;
+            case OP_DELETE_RANGE:
+                applyDeleteRange(records.readLongLE(), records.readLongLE(), records.readLongLE(),
+                        records.readLongLE());
+                break;
+            default:
+                throw new IOException("Invalid record type " + op + " in entry locations storage " + dbPath);
+            }
+        }
+    }
+
+    private void applyPut(long ledgerId, long entryId, long location) {
+        if (location == 0) {
+            applyDelete(ledgerId, entryId);
+            return;
+        }
+
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger == null) {
+            ledger = new LedgerLocations();
+            ledgers.put(ledgerId, ledger);
+            sortedLedgers.put(ledgerId, ledger);
+        }
+        if (ledger.put(entryId, location)) {
+            totalCount++;
+        }
+        markDirty(ledgerId, ledger);
+    }
+
+    private void applyDelete(long ledgerId, long entryId) {
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger != null && ledger.remove(entryId)) {
+            totalCount--;
+            markDirty(ledgerId, ledger);
+            if (ledger.count == 0) {
+                removeLedger(ledgerId);
+            }
+        }
+    }
+
+    private void applyDeleteRange(long beginLedgerId, long beginEntryId, long endLedgerId, long endEntryId) {
+        if (beginLedgerId > endLedgerId || (beginLedgerId == endLedgerId && beginEntryId >= endEntryId)) {
+            return;
+        }
+
+        List<Long> emptyLedgers = new ArrayList<>();
+        for (Map.Entry<Long, LedgerLocations> e
+                : sortedLedgers.subMap(beginLedgerId, true, endLedgerId, true).entrySet()) {
+            long ledgerId = e.getKey();
+            LedgerLocations ledger = e.getValue();
+            long from = ledgerId == beginLedgerId ? beginEntryId : Long.MIN_VALUE;
+            boolean bounded = ledgerId == endLedgerId;
+            long removed = ledger.removeRange(from, bounded, endEntryId);
+            if (removed > 0) {
+                totalCount -= removed;
+                markDirty(ledgerId, ledger);
+            }
+            if (ledger.count == 0) {
+                emptyLedgers.add(ledgerId);
+            }
+        }
+
+        for (long ledgerId : emptyLedgers) {
+            removeLedger(ledgerId);
+        }
+    }
+
+    private void removeLedger(long ledgerId) {
+        LedgerLocations ledger = ledgers.remove(ledgerId);
+        sortedLedgers.remove(ledgerId);
+        if (ledger != null) {
+            ledger.free();
+        }
+        dirtyLedgers.add(ledgerId);
+    }
+
+    private void markDirty(long ledgerId, LedgerLocations ledger) {
+        if (!ledger.dirty) {
+            ledger.dirty = true;
+            dirtyLedgers.add(ledgerId);
+        }
+    }
+
+    /**
+     * Find the first entry at or after the given key.
+     *
+     * @param found filled with the entryId, the location and the ledgerId of the entry
+     */
+    private boolean findCeil(long ledgerId, long entryId, long[] found) {
+        LedgerLocations ledger = ledgers.get(ledgerId);
+        if (ledger != null && ledger.ceiling(entryId, found)) {
+            found[2] = ledgerId;
+            return true;
+        }
+
+        for (Map.Entry<Long, LedgerLocations> e = sortedLedgers.higherEntry(ledgerId); e != null;
+             e = sortedLedgers.higherEntry(e.getKey())) {
+            if (e.getValue().ceiling(Long.MIN_VALUE, found)) {
+                found[2] = e.getKey();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sequential scan over the keys in [firstKey, lastKey), which does not hold any lock between two steps.
+     */
+    private class Cursor {
+        private final boolean bounded;
+        private final long lastLedgerId;
+        private final long lastEntryId;
+
+        private final long[] found = new long[3];
+        private long ledgerId;
+        private long entryId;
+        private long location;
+        private boolean hasNext;
+
+        Cursor(byte[] firstKey, byte[] lastKey) {
+            this.bounded = lastKey != null;
+            this.lastLedgerId = bounded ? ArrayUtil.getLong(lastKey, 0) : 0;
+            this.lastEntryId = bounded ? ArrayUtil.getLong(lastKey, 8) : 0;
+            if (firstKey != null) {
+                seek(ArrayUtil.getLong(firstKey, 0), ArrayUtil.getLong(firstKey, 8));
+            } else {
+                seek(Long.MIN_VALUE, Long.MIN_VALUE);
+            }
+        }
+
+        private void seek(long fromLedgerId, long fromEntryId) {
+            hasNext = findCeil(fromLedgerId, fromEntryId, found)
+                    && (!bounded || found[2] < lastLedgerId || (found[2] == lastLedgerId && found[0] < lastEntryId));
+        }
+
+        boolean hasNext() {
+            return hasNext;
+        }
+
+        void next() throws IOException {
+            if (!hasNext) {
+                throw new EOFException("No more keys in entry locations storage " + dbPath);
+            }
+            ledgerId = found[2];
+            entryId = found[0];
+            location = found[1];
+            if (entryId == Long.MAX_VALUE) {
+                if (ledgerId == Long.MAX_VALUE) {
+                    hasNext = false;
+                } else {
+                    seek(ledgerId + 1, Long.MIN_VALUE);
+                }
+            } else {
+                seek(ledgerId, entryId + 1);
+            }
+        }
+
+        byte[] key() {
+            byte[] key = new byte[KEY_SIZE];
+            ArrayUtil.setLong(key, 0, ledgerId);
+            ArrayUtil.setLong(key, 8, entryId);
+            return key;
+        }
+
+        byte[] value() {
+            byte[] value = new byte[VALUE_SIZE];
+            ArrayUtil.setLong(value, 0, location);
+            return value;
+        }
+    }
+
+    /**
+     * Locations of the entries of one ledger.
+     *
+     * <p>Mutations are serialized by the storage mutation lock and also take the write lock. The direct memory
+     * arrays are freed as soon as they are replaced, so lookups only read them holding the read lock. The
+     * arrays mapped from segment files are never freed explicitly, lookups read them optimistically and only
+     * fall back to the read lock when racing with a mutation.
+     */
+    private static final class LedgerLocations {
+        private static final int INITIAL_SLOTS = 64;
+        // Below this window size the dense array is always used, above it must be at least 1/4 full
+        private static final int MIN_SPARSE_WINDOW = 64 * 1024;
+        private static final int MAX_DENSE_SLOTS = MAX_MAPPING_SIZE / 8;
+
+        private final StampedLock lock = new StampedLock();
+
+        // Slot i holds the location of entry (firstEntryId + i), or 0 if the entry is not present
+        private ByteBuffer dense;
+        private long firstEntryId;
+        // Highest slot holding a location
+        private int highestSlot = -1;
+        // Whether the dense array is a read-only view of a segment file, and the sequence of that file
+        private boolean mapped;
+        private long segmentSequence;
+        // Entries that do not fit in the dense array without making it too sparse
+        private ConcurrentSkipListMap<Long, Long> sparse;
+        private long count;
+        // Whether the ledger changed since the last segment was written, guarded by the mutation lock
+        private boolean dirty;
+
+        long get(long entryId) {
+            long stamp = lock.tryOptimisticRead();
+            ByteBuffer dense = this.dense;
+            // The array must be known to be mapped before reading it, a direct array could be already freed
+            if (mapped && lock.validate(stamp)) {
+                long location = lookup(dense, entryId);
+                if (lock.validate(stamp)) {
+                    return location;
+                }
+            }
+
+            stamp = lock.readLock();
+            try {
+                return lookup(this.dense, entryId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private long lookup(ByteBuffer dense, long entryId) {
+            if (dense != null && entryId >= firstEntryId) {
+                long slot = entryId - firstEntryId;
+                if (slot < (dense.limit() >> 3)) {
+                    long location = dense.getLong((int) slot << 3);
+                    if (location != 0) {
+                        return location;
+                    }
+                }
+            }
+
+            ConcurrentSkipListMap<Long, Long> sparse = this.sparse;
+            if (sparse != null) {
+                Long location = sparse.get(entryId);
+                if (location != null) {
+                    return location;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return true if a new entry was added
+         */
+        boolean put(long entryId, long location) {
+            long stamp = lock.writeLock();
+            try {
+                boolean added = lookup(dense, entryId) == 0;
+                if (added) {
+                    count++;
+                }
+
+                if (ensureDenseSlot(entryId)) {
+                    int slot = (int) (entryId - firstEntryId);
+                    dense.putLong(slot << 3, location);
+                    highestSlot = Math.max(highestSlot, slot);
+                } else {
+                    if (sparse == null) {
+                        sparse = new ConcurrentSkipListMap<>();
+                    }
+                    sparse.put(entryId, location);
+                }
+                return added;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * @return true if the entry was present
+         */
+        boolean remove(long entryId) {
+            long stamp = lock.writeLock();
+            try {
+                return removeLocked(entryId);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private boolean removeLocked(long entryId) {
+            if (dense != null && entryId >= firstEntryId && entryId - firstEntryId <= highestSlot) {
+                int slot = (int) (entryId - firstEntryId);
+                if (dense.getLong(slot << 3) != 0) {
+                    if (mapped) {
+                        resize(firstEntryId, dense.limit() >> 3);
+                    }
+                    dense.putLong(slot << 3, 0);
+                    while (highestSlot >= 0 && dense.getLong(highestSlot << 3) == 0) {
+                        highestSlot--;
+                    }
+                    count--;
+                    return true;
+                }
+            }
+
+            if (sparse != null && sparse.remove(entryId) != null) {
+                count--;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Remove the entries in [from, to), or all the entries after from when the range is not bounded.
+         *
+         * @return the number of removed entries
+         */
+        long removeRange(long from, boolean bounded, long to) {
+            long stamp = lock.writeLock();
+            try {
+                long[] found = new long[2];
+                boolean coversFirst = !ceilingLocked(Long.MIN_VALUE, found) || from <= found[0];
+                boolean coversLast = !floorLocked(Long.MAX_VALUE, found) || !bounded || found[0] < to;
+                if (coversFirst && coversLast) {
+                    long removed = count;
+                    clear();
+                    return removed;
+                }
+
+                long removed = 0;
+                long entryId = from;
+                while (ceilingLocked(entryId, found) && (!bounded || found[0] < to)) {
+                    removeLocked(found[0]);
+                    removed++;
+                    if (found[0] == Long.MAX_VALUE) {
+                        break;
+                    }
+                    entryId = found[0] + 1;
+                }
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Find the last entry at or before the given entry.
+         *
+         * @param found filled with the entryId and the location of the entry
+         */
+        boolean floor(long entryId, long[] found) {
+            long stamp = lock.readLock();
+            try {
+                return floorLocked(entryId, found);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private boolean floorLocked(long entryId, long[] found) {
+            boolean result = false;
+            if (dense != null && highestSlot >= 0 && entryId >= firstEntryId) {
+                for (long slot = Math.min(entryId - firstEntryId, highestSlot); slot >= 0; slot--) {
+                    long location = dense.getLong((int) slot << 3);
+                    if (location != 0) {
+                        found[0] = firstEntryId + slot;
+                        found[1] = location;
+                        result = true;
+                        break;
+                    }
+                }
+            }
+
+            if (sparse != null) {
+                Map.Entry<Long, Long> e = sparse.floorEntry(entryId);
+                if (e != null && (!result || e.getKey() > found[0])) {
+                    found[0] = e.getKey();
+                    found[1] = e.getValue();
+                    result = true;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Find the first entry at or after the given entry.
+         *
+         * @param found filled with the entryId and the location of the entry
+         */
+        boolean ceiling(long entryId, long[] found) {
+            long stamp = lock.readLock();
+            try {
+                return ceilingLocked(entryId, found);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private boolean ceilingLocked(long entryId, long[] found) {
+            boolean result = false;
+            if (dense != null && highestSlot >= 0
+                    && (entryId < firstEntryId || entryId - firstEntryId <= highestSlot)) {
+                for (long slot = entryId < firstEntryId ? 0 : entryId - firstEntryId; slot <= highestSlot; slot++) {
+                    long location = dense.getLong((int) slot << 3);
+                    if (location != 0) {
+                        found[0] = firstEntryId + slot;
+                        found[1] = location;
+                        result = true;
+                        break;
+                    }
+                }
+            }
+
+            if (sparse != null) {
+                Map.Entry<Long, Long> e = sparse.ceilingEntry(entryId);
+                if (e != null && (!result || e.getKey() < found[0])) {
+                    found[0] = e.getKey();
+                    found[1] = e.getValue();
+                    result = true;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Make sure the entry has a writable slot in the dense array, growing the array if needed.
+         *
+         * @return false if the entry should rather be stored in the sparse map
+         */
+        private boolean ensureDenseSlot(long entryId) {
+            if (entryId < 0) {
+                return false;
+            }
+
+            if (dense == null || highestSlot < 0) {
+                resize(entryId, INITIAL_SLOTS);
+                return true;
+            }
+
+            int slots = dense.limit() >> 3;
+            if (entryId >= firstEntryId && entryId - firstEntryId < slots) {
+                if (mapped) {
+                    resize(firstEntryId, slots);
+                }
+                return true;
+            }
+
+            long lowEntryId = Math.min(entryId, firstEntryId);
+            long highEntryId = Math.max(entryId, firstEntryId + highestSlot);
+            long neededSlots = highEntryId - lowEntryId + 1;
+            if (neededSlots <= 0 || neededSlots > MAX_DENSE_SLOTS
+                    || neededSlots > Math.max(MIN_SPARSE_WINDOW, 4 * count)) {
+                return false;
+            }
+
+            int newSlots = (int) Math.min(MAX_DENSE_SLOTS, Math.max(neededSlots, 2L * slots));
+            long newFirstEntryId = entryId < firstEntryId ? Math.max(0, highEntryId + 1 - newSlots) : firstEntryId;
+            resize(newFirstEntryId, newSlots);
+            return true;
+        }
+
+        /**
+         * Drop all the entries, freeing the direct memory array.
+         */
+        void free() {
+            long stamp = lock.writeLock();
+            try {
+                clear();
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void clear() {
+            freeDense();
+            dense = null;
+            highestSlot = -1;
+            mapped = false;
+            sparse = null;
+            count = 0;
+        }
+
+        /**
+         * Free the current dense array if it is in direct memory, called holding the write lock before
+         * replacing it.
+         */
+        private void freeDense() {
+            if (dense != null && !mapped) {
+                PlatformDependent.freeDirectBuffer(dense);
+            }
+        }
+
+        private void resize(long newFirstEntryId, int newSlots) {
+            ByteBuffer newDense = ByteBuffer.allocateDirect(newSlots << 3).order(ByteOrder.LITTLE_ENDIAN);
+            int newHighestSlot = -1;
+            if (dense != null && highestSlot >= 0) {
+                // The new array always covers the range of the old one
+                int shift = (int) (firstEntryId - newFirstEntryId);
+                ByteBuffer src = dense.duplicate();
+                src.position(0);
+                src.limit((highestSlot + 1) << 3);
+                newDense.position(shift << 3);
+                newDense.put(src);
+                newDense.clear();
+                newHighestSlot = shift + highestSlot;
+            }
+
+            if (sparse != null) {
+                Map<Long, Long> covered = sparse.subMap(newFirstEntryId, newFirstEntryId + newSlots);
+                for (Map.Entry<Long, Long> e : covered.entrySet()) {
+                    int slot = (int) (e.getKey() - newFirstEntryId);
+                    newDense.putLong(slot << 3, e.getValue());
+                    newHighestSlot = Math.max(newHighestSlot, slot);
+                }
+                covered.clear();
+            }
+
+            freeDense();
+            dense = newDense;
+            firstEntryId = newFirstEntryId;
+            highestSlot = newHighestSlot;
+            mapped = false;
+        }
+    }
+
+    // Persistence
+
+    /**
+     * Load the base segment, the delta segments written after it and replay the write-ahead logs.
+     *
+     * @return true if at least one batch of mutations was replayed
+     */
+    private boolean load() throws IOException {
+        long segmentSequence = 0;
+        List<Long> deltas = new ArrayList<>();
+        List<Long> walSequences = new ArrayList<>();
+        File[] files = dbPath.toFile().listFiles();
+        if (files == null) {
+            throw new IOException("Failed to list entry locations storage directory " + dbPath);
+        }
+
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                segmentSequence = Math.max(segmentSequence, parseSequence(name, SEGMENT_PREFIX, SEGMENT_SUFFIX));
+            } else if (name.startsWith(DELTA_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                deltas.add(parseSequence(name, DELTA_PREFIX, SEGMENT_SUFFIX));
+            } else if (name.startsWith(WAL_PREFIX) && name.endsWith(WAL_SUFFIX)) {
+                walSequences.add(parseSequence(name, WAL_PREFIX, WAL_SUFFIX));
+            }
+        }
+
+        if (segmentSequence > 0) {
+            loadSegment(segmentPath(segmentSequence), segmentSequence);
+        }
+        baseSequence = segmentSequence;
+        sequence = segmentSequence;
+
+        // The delta segments up to the base segment were merged in it
+        deltas.sort(null);
+        for (long delta : deltas) {
+            if (delta > segmentSequence) {
+                loadSegment(deltaPath(delta), delta);
+                deltaSequences.add(delta);
+                sequence = delta;
+            }
+        }
+
+        boolean replayed = false;
+        walSequences.sort(null);
+        for (long walSequence : walSequences) {
+            if (walSequence >= sequence) {
+                replayed |= replayWal(walPath(walSequence));
+                sequence = walSequence;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Load the ledgers of a segment. The ledgers of a delta segment replace the ones already loaded.
+     */
+    private void loadSegment(Path path, long segmentSequence) throws IOException {
+        try (SegmentReader reader = new SegmentReader(path, segmentSequence)) {
+            List<DenseArray> denseArrays = new ArrayList<>();
+            while (reader.next()) {
+                LedgerLocations previous = ledgers.remove(reader.ledgerId);
+                if (previous != null) {
+                    sortedLedgers.remove(reader.ledgerId);
+                    totalCount -= previous.count;
+                    previous.free();
+                }
+                if (reader.isDeleted()) {
+                    continue;
+                }
+
+                LedgerLocations ledger = new LedgerLocations();
+                ledger.firstEntryId = reader.firstEntryId;
+                ledger.highestSlot = reader.denseSlots - 1;
+                ledger.count = reader.count;
+                long denseSize = (long) reader.denseSlots << 3;
+                if (reader.denseSlots > 0) {
+                    denseArrays.add(new DenseArray(ledger, reader.dataPosition, denseSize));
+                }
+
+                if (reader.sparseCount > 0) {
+                    ByteBuffer pairs = ByteBuffer.allocate(reader.sparseCount * 16).order(ByteOrder.LITTLE_ENDIAN);
+                    readFully(reader.channel, pairs, reader.dataPosition + denseSize);
+                    ledger.sparse = new ConcurrentSkipListMap<>();
+                    for (int j = 0; j < reader.sparseCount; j++) {
+                        ledger.sparse.put(pairs.getLong(j * 16), pairs.getLong(j * 16 + 8));
+                    }
+                }
+
+                ledgers.put(reader.ledgerId, ledger);
+                sortedLedgers.put(reader.ledgerId, ledger);
+                totalCount += ledger.count;
+            }
+            reader.checkTrailer();
+            mapDenseArrays(reader.channel, segmentSequence, denseArrays);
+        }
+    }
+
+    /**
+     * Map the dense arrays of a segment, in chunks of up to 1GB each holding the arrays of consecutive ledgers.
+     *
+     * @param denseArrays the arrays to map, ordered by position in the segment
+     */
+    private static void mapDenseArrays(FileChannel channel, long segmentSequence, List<DenseArray> denseArrays)
+            throws IOException {
+        int chunkFirst = 0;
+        for (int i = 0; i <= denseArrays.size(); i++) {
+            boolean chunkEnd = i == denseArrays.size() || (i > chunkFirst
+                    && denseArrays.get(i).position + denseArrays.get(i).size - denseArrays.get(chunkFirst).position
+                    > MAX_MAPPING_SIZE);
+            if (chunkEnd) {
+                if (i > chunkFirst) {
+                    mapChunk(channel, segmentSequence, denseArrays.subList(chunkFirst, i));
+                }
+                chunkFirst = i;
+            }
+        }
+    }
+
+    private static void mapChunk(FileChannel channel, long segmentSequence, List<DenseArray> chunk)
+            throws IOException {
+        long chunkStart = chunk.get(0).position;
+        DenseArray last = chunk.get(chunk.size() - 1);
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart,
+                last.position + last.size - chunkStart);
+        for (DenseArray array : chunk) {
+            ByteBuffer slice = mapping.duplicate();
+            slice.position((int) (array.position - chunkStart));
+            slice.limit((int) (array.position - chunkStart + array.size));
+            LedgerLocations ledger = array.ledger;
+            // When remapping after writing a segment, lookups may be reading the array concurrently
+            long stamp = ledger.lock.writeLock();
+            try {
+                ledger.freeDense();
+                ledger.dense = slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+                ledger.mapped = true;
+                ledger.segmentSequence = segmentSequence;
+            } finally {
+                ledger.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return true if at least one batch of mutations was applied
+     */
+    private boolean replayWal(Path path) throws IOException {
+        boolean replayed = false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(WAL_BATCH_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (position + WAL_BATCH_HEADER_SIZE <= size) {
+                header.clear();
+                readFully(channel, header, position);
+                int length = header.getInt(4);
+                if (header.getInt(0) != WAL_BATCH_MAGIC || length < 0
+                        || position + WAL_BATCH_HEADER_SIZE + length > size) {
+                    break;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(channel, payload, position + WAL_BATCH_HEADER_SIZE);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != header.getInt(8)) {
+                    break;
+                }
+
+                applyRecords(Unpooled.wrappedBuffer(payload));
+                replayed = true;
+                position += WAL_BATCH_HEADER_SIZE + length;
+            }
+
+            if (position < size) {
+                // The last batch was not completely written before a crash, it was never acknowledged
+                log.warn("Ignoring {} bytes at the end of entry locations log {}", size - position, path);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Write a new segment, then start a new empty write-ahead log and delete the files it replaces. A base
+     * segment holds all the ledgers, a delta segment only the ledgers changed since the previous segment.
+     * Called holding the mutation lock.
+     */
+    private void writeSegment(boolean base) throws IOException {
+        long startTime = System.nanoTime();
+        long newSequence = sequence + 1;
+        Path path = base ? segmentPath(newSequence) : deltaPath(newSequence);
+        Path tmpPath = tmpPath(path);
+
+        List<Long> ledgerIds = new ArrayList<>(base ? sortedLedgers.keySet() : dirtyLedgers);
+        List<DenseArray> denseArrays = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(LEDGER_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            writeSegmentHeader(channel, header, base, ledgerIds.size());
+            long position = SEGMENT_HEADER_SIZE;
+
+            for (long ledgerId : ledgerIds) {
+                LedgerLocations ledger = sortedLedgers.get(ledgerId);
+                if (ledger == null) {
+                    writeLedgerHeader(channel, header, ledgerId, 0, 0, 0, DELETED_LEDGER);
+                    position += LEDGER_HEADER_SIZE;
+                    continue;
+                }
+
+                int denseSlots = ledger.dense != null ? ledger.highestSlot + 1 : 0;
+                int sparseCount = ledger.sparse != null ? ledger.sparse.size() : 0;
+                writeLedgerHeader(channel, header, ledgerId, ledger.firstEntryId, denseSlots, sparseCount,
+                        ledger.count);
+                position += LEDGER_HEADER_SIZE;
+
+                if (denseSlots > 0) {
+                    ByteBuffer dense = ledger.dense.duplicate();
+                    dense.position(0);
+                    dense.limit(denseSlots << 3);
+                    writeFully(channel, dense);
+                    denseArrays.add(new DenseArray(ledger, position, (long) denseSlots << 3));
+                    position += (long) denseSlots << 3;
+                }
+
+                if (sparseCount > 0) {
+                    ByteBuffer pairs = ByteBuffer.allocate(sparseCount * 16).order(ByteOrder.LITTLE_ENDIAN);
+                    for (Map.Entry<Long, Long> pair : ledger.sparse.entrySet()) {
+                        pairs.putLong(pair.getKey());
+                        pairs.putLong(pair.getValue());
+                    }
+                    pairs.flip();
+                    writeFully(channel, pairs);
+                    position += pairs.capacity();
+                }
+            }
+
+            header.clear();
+            header.putLong(SEGMENT_MAGIC);
+            header.flip();
+            writeFully(channel, header);
+            channel.force(true);
+        }
+
+        Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        for (LedgerLocations ledger : sortedLedgers.values()) {
+            ledger.dirty = false;
+        }
+        dirtyLedgers.clear();
+
+        FileChannel oldWal = wal;
+        sequence = newSequence;
+        openWal();
+        if (oldWal != null) {
+            oldWal.close();
+        }
+
+        // Serve the ledgers from the new segment, freeing their direct memory arrays
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapDenseArrays(channel, newSequence, denseArrays);
+        }
+
+        if (base) {
+            baseSequence = newSequence;
+            deltaSequences.clear();
+        } else {
+            deltaSequences.add(newSequence);
+        }
+        deleteObsoleteFiles();
+
+        log.info("Written entry locations {} {} with {} ledgers in {} ms", base ? "segment" : "delta segment",
+                path, ledgerIds.size(), (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    private void scheduleMergeIfNeeded() {
+        mutationLock.lock();
+        try {
+            if (closed || mergeScheduled || deltaSequences.size() < maxDeltaSegments) {
+                return;
+            }
+            mergeScheduled = true;
+            // Submitted holding the lock, so that the executor cannot be shut down by a concurrent close
+            mergeExecutor.execute(() -> {
+                try {
+                    mergeSegments();
+                } catch (IOException e) {
+                    log.error("Failed to merge the segments of entry locations storage {}", dbPath, e);
+                }
+            });
+        } finally {
+            mutationLock.unlock();
+        }
+    }
+
+    /**
+     * Merge the base segment and the delta segments into a new base segment. Only the segment files are read,
+     * so the mutations are not blocked while the new segment is written. Runs on the merge executor.
+     */
+    private void mergeSegments() throws IOException {
+        long startTime = System.nanoTime();
+        long base;
+        List<Long> deltas;
+        mutationLock.lock();
+        try {
+            mergeScheduled = false;
+            if (closed || deltaSequences.isEmpty()) {
+                return;
+            }
+            base = baseSequence;
+            deltas = new ArrayList<>(deltaSequences);
+        } finally {
+            mutationLock.unlock();
+        }
+
+        // The new base segment takes the sequence of the last merged delta segment, which it replaces
+        long mergedSequence = deltas.get(deltas.size() - 1);
+        Path path = segmentPath(mergedSequence);
+        Path tmpPath = tmpPath(path);
+        List<long[]> writtenArrays = new ArrayList<>();
+        long ledgersCount = 0;
+
+        List<SegmentReader> readers = new ArrayList<>();
+        try {
+            if (base > 0) {
+                readers.add(new SegmentReader(segmentPath(base), base));
+            }
+            for (long delta : deltas) {
+                readers.add(new SegmentReader(deltaPath(delta), delta));
+            }
+
+            // Ordered by ledger, and for the same ledger from the most recent segment
+            PriorityQueue<SegmentReader> queue = new PriorityQueue<>(
+                    Comparator.<SegmentReader>comparingLong(reader -> reader.ledgerId)
+                            .thenComparing(Comparator.<SegmentReader>comparingLong(reader -> reader.sequence)
+                                    .reversed()));
+            for (SegmentReader reader : readers) {
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(LEDGER_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                writeSegmentHeader(channel, header, true, 0);
+                long position = SEGMENT_HEADER_SIZE;
+
+                while (!queue.isEmpty()) {
+                    SegmentReader latest = queue.poll();
+                    long ledgerId = latest.ledgerId;
+                    if (!latest.isDeleted()) {
+                        writeLedgerHeader(channel, header, ledgerId, latest.firstEntryId, latest.denseSlots,
+                                latest.sparseCount, latest.count);
+                        position += LEDGER_HEADER_SIZE;
+                        if (latest.denseSlots > 0) {
+                            writtenArrays.add(new long[] {ledgerId, position, (long) latest.denseSlots << 3});
+                        }
+                        transferFully(latest.channel, latest.dataPosition, latest.dataSize(), channel);
+                        position += latest.dataSize();
+                        ledgersCount++;
+                    }
+
+                    // Skip the older versions of the ledger
+                    advance(latest, queue);
+                    while (!queue.isEmpty() && queue.peek().ledgerId == ledgerId) {
+                        advance(queue.poll(), queue);
+                    }
+                }
+
+                header.clear();
+                header.putLong(SEGMENT_MAGIC);
+                header.flip();
+                writeFully(channel, header);
+
+                header.clear();
+                header.putLong(ledgersCount);
+                header.flip();
+                channel.write(header, 16);
+                channel.force(true);
+            }
+        } finally {
+            for (SegmentReader reader : readers) {
+                reader.close();
+            }
+        }
+
+        Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+
+        mutationLock.lock();
+        try {
+            if (closed) {
+                // The new segment is loaded the next time the storage is opened
+                return;
+            }
+
+            // The ledgers still mapped from the merged segments have the same arrays in the new segment
+            List<DenseArray> denseArrays = new ArrayList<>();
+            for (long[] array : writtenArrays) {
+                LedgerLocations ledger = ledgers.get(array[0]);
+                if (ledger != null && ledger.mapped && ledger.segmentSequence <= mergedSequence
+                        && ledger.dense.limit() == array[2]) {
+                    denseArrays.add(new DenseArray(ledger, array[1], array[2]));
+                }
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                mapDenseArrays(channel, mergedSequence, denseArrays);
+            }
+
+            baseSequence = mergedSequence;
+            deltaSequences.removeIf(delta -> delta <= mergedSequence);
+            deleteObsoleteFiles();
+        } finally {
+            mutationLock.unlock();
+        }
+
+        log.info("Merged {} delta segments of entry locations storage in segment {} with {} ledgers in {} ms",
+                deltas.size(), path, ledgersCount, (System.nanoTime() - startTime) / 1_000_000);
+    }
+
+    private static void advance(SegmentReader reader, PriorityQueue<SegmentReader> queue) throws IOException {
+        if (reader.next()) {
+            queue.add(reader);
+        }
+    }
+
+    private static void writeSegmentHeader(FileChannel channel, ByteBuffer header, boolean base,
+                                           long ledgersCount) throws IOException {
+        header.clear();
+        header.putLong(SEGMENT_MAGIC);
+        header.putInt(SEGMENT_VERSION);
+        header.putInt(base ? 0 : SEGMENT_FLAG_DELTA);
+        header.putLong(ledgersCount);
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    private static void writeLedgerHeader(FileChannel channel, ByteBuffer header, long ledgerId, long firstEntryId,
+                                          int denseSlots, int sparseCount, long count) throws IOException {
+        header.clear();
+        header.putLong(ledgerId);
+        header.putLong(firstEntryId);
+        header.putInt(denseSlots);
+        header.putInt(sparseCount);
+        header.putLong(count);
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * Dense array of a ledger, at some position of a segment file.
+     */
+    private static final class DenseArray {
+        final LedgerLocations ledger;
+        final long position;
+        final long size;
+
+        DenseArray(LedgerLocations ledger, long position, long size) {
+            this.ledger = ledger;
+            this.position = position;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Sequential reader of the ledgers of a segment file.
+     */
+    private static final class SegmentReader implements Closeable {
+        final long sequence;
+        final FileChannel channel;
+        private final Path path;
+        private final long ledgersCount;
+        private final ByteBuffer header = ByteBuffer.allocate(LEDGER_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long readLedgers = 0;
+        private long position = SEGMENT_HEADER_SIZE;
+
+        // The current ledger, its dense array and sparse pairs start at the data position
+        long ledgerId;
+        long firstEntryId;
+        int denseSlots;
+        int sparseCount;
+        long count;
+        long dataPosition;
+
+        SegmentReader(Path path, long sequence) throws IOException {
+            this.path = path;
+            this.sequence = sequence;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                header.limit(SEGMENT_HEADER_SIZE);
+                readFully(channel, header, 0);
+                if (header.getLong(0) != SEGMENT_MAGIC || header.getInt(8) != SEGMENT_VERSION) {
+                    throw new IOException("Invalid entry locations segment " + path);
+                }
+                this.ledgersCount = header.getLong(16);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        boolean next() throws IOException {
+            if (readLedgers == ledgersCount) {
+                return false;
+            }
+            header.clear();
+            readFully(channel, header, position);
+            ledgerId = header.getLong(0);
+            firstEntryId = header.getLong(8);
+            denseSlots = header.getInt(16);
+            sparseCount = header.getInt(20);
+            count = header.getLong(24);
+            dataPosition = position + LEDGER_HEADER_SIZE;
+            position = dataPosition + dataSize();
+            readLedgers++;
+            return true;
+        }
+
+        boolean isDeleted() {
+            return count == DELETED_LEDGER;
+        }
+
+        long dataSize() {
+            return isDeleted() ? 0 : ((long) denseSlots << 3) + (long) sparseCount * 16;
+        }
+
+        /**
+         * Check that the segment was completely written, once all the ledgers were read.
+         */
+        void checkTrailer() throws IOException {
+            header.clear();
+            header.limit(8);
+            readFully(channel, header, position);
+            if (header.getLong(0) != SEGMENT_MAGIC) {
+                throw new IOException("Truncated entry locations segment " + path);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private void openWal() throws IOException {
+        wal = FileChannel.open(walPath(sequence), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        walSize = 0;
+    }
+
+    /**
+     * Delete the segments older than the base segment, the delta segments merged in it and the write-ahead
+     * logs folded in a segment. Called holding the mutation lock.
+     */
+    private void deleteObsoleteFiles() throws IOException {
+        deleteFiles(name -> (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                && parseSequence(name, SEGMENT_PREFIX, SEGMENT_SUFFIX) < baseSequence)
+                || (name.startsWith(DELTA_PREFIX) && name.endsWith(SEGMENT_SUFFIX)
+                && parseSequence(name, DELTA_PREFIX, SEGMENT_SUFFIX) <= baseSequence)
+                || (name.startsWith(WAL_PREFIX) && name.endsWith(WAL_SUFFIX)
+                && parseSequence(name, WAL_PREFIX, WAL_SUFFIX) < sequence));
+    }
+
+    private void deleteFiles(Predicate<String> filter) throws IOException {
+        File[] files = dbPath.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (filter.test(f.getName())) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+    }
+
+    private void syncDirectory() throws IOException {
+        try (FileChannel dir = FileChannel.open(dbPath, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not supported on all platforms
+            log.debug("Failed to sync directory {}", dbPath, e);
+        }
+    }
+
+    private void importFromRocksDB(String basePath, String subPath, DbConfigType dbConfigType,
+                                   ServerConfiguration conf) throws IOException {
+        log.info("Importing entry locations from RocksDB index at {}/{}", basePath, subPath);
+        long imported = 0;
+        try (KeyValueStorage rocksDB = new KeyValueStorageRocksDB(basePath, subPath, dbConfigType, conf, true);
+             CloseableIterator<Entry<byte[], byte[]>> iterator = rocksDB.iterator()) {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> e = iterator.next();
+                applyPut(ArrayUtil.getLong(e.getKey(), 0), ArrayUtil.getLong(e.getKey(), 8),
+                        ArrayUtil.getLong(e.getValue(), 0));
+                imported++;
+            }
+        }
+        log.info("Imported {} entry locations from RocksDB", imported);
+    }
+
+    private Path segmentPath(long sequence) {
+        return dbPath.resolve(SEGMENT_PREFIX + sequence + SEGMENT_SUFFIX);
+    }
+
+    private Path deltaPath(long sequence) {
+        return dbPath.resolve(DELTA_PREFIX + sequence + SEGMENT_SUFFIX);
+    }
+
+    private static Path tmpPath(Path path) {
+        return path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+    }
+
+    private Path walPath(long sequence) {
+        return dbPath.resolve(WAL_PREFIX + sequence + WAL_SUFFIX);
+    }
+
+    private static long parseSequence(String name, String prefix, String suffix) {
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of entry locations file");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void transferFully(FileChannel src, long position, long size, FileChannel dst)
+            throws IOException {
+        long transferred = 0;
+        while (transferred < size) {
+            long n = src.transferTo(position + transferred, size - transferred, dst);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of entry locations file");
+            }
+            transferred += n;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Entry locations storage at " + dbPath + " is closed");
+        }
+    }
+
+    private static void checkKey(byte[] key) throws IOException {
+        if (key.length != KEY_SIZE) {
+            throw new IOException("Entry locations storage only supports (ledgerId, entryId) keys");
+        }
+    }
+
+    private static void checkValue(byte[] value) throws IOException {
+        if (value.length != VALUE_SIZE) {
+            throw new IOException("Entry locations storage only supports 8 bytes values");
+        }
+    }
+
+    private static Entry<byte[], byte[]> newEntry(long ledgerId, long[] found) {
+        byte[] key = new byte[KEY_SIZE];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, found[0]);
+        byte[] value = new byte[VALUE_SIZE];
+        ArrayUtil.setLong(value, 0, found[1]);
+        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+    }
+}
@@ -523,6 +523,38 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         };
     }
 
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey) {
+        final Slice upperBound = new Slice(lastKey);
+        final ReadOptions option = new ReadOptions(optionDontCache).setIterateUpperBound(upperBound);
+        final RocksIterator iterator = db.newIterator(option);
+        iterator.seek(firstKey);
+        final EntryWrapper entryWrapper = new EntryWrapper();
+
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.isValid();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                checkState(iterator.isValid());
+                entryWrapper.key = iterator.key();
+                entryWrapper.value = iterator.value();
+                iterator.next();
+                return entryWrapper;
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+                option.close();
+                upperBound.close();
+            }
+        };
+    }
+
     @Override
     public long count() throws IOException {
         try {
@@ -26,10 +26,10 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
-import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
@@ -46,7 +46,7 @@ import org.slf4j.LoggerFactory;
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
  */
-public class ReadCache implements Closeable {
+public class ReadCache implements EntryReadCache {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
@@ -62,6 +62,9 @@ public class ReadCache implements Closeable {
     private ByteBufAllocator allocator;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    private final LongAdder evictedEntries = new LongAdder();
+    private final LongAdder rejectedEntries = new LongAdder();
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
@@ -89,6 +92,7 @@ public class ReadCache implements Closeable {
         cacheSegments.forEach(ReferenceCountUtil::safeRelease);
     }
 
+    @Override
     public void put(long ledgerId, long entryId, ByteBuf entry) {
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
@@ -98,6 +102,7 @@ public class ReadCache implements Closeable {
         try {
             if (entrySize > segmentSize) {
                 log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+                rejectedEntries.increment();
                 return;
             }
             int offset = currentSegmentOffset.getAndAdd(alignedSize);
@@ -124,6 +129,7 @@ public class ReadCache implements Closeable {
                 // Rollover to next segment
                 currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
                 currentSegmentOffset.set(alignedSize);
+                evictedEntries.add(cacheIndexes.get(currentSegmentIdx).size());
                 cacheIndexes.get(currentSegmentIdx).clear();
                 offset = 0;
             }
@@ -136,6 +142,7 @@ public class ReadCache implements Closeable {
         }
     }
 
+    @Override
     public ByteBuf get(long ledgerId, long entryId) {
         lock.readLock().lock();
 
@@ -165,6 +172,7 @@ public class ReadCache implements Closeable {
         return null;
     }
 
+    @Override
     public boolean hasEntry(long ledgerId, long entryId) {
         lock.readLock().lock();
 
@@ -186,9 +194,7 @@ public class ReadCache implements Closeable {
         return false;
     }
 
-    /**
-     * @return the total size of cached entries
-     */
+    @Override
     public long size() {
         lock.readLock().lock();
 
@@ -210,9 +216,7 @@ public class ReadCache implements Closeable {
         }
     }
 
-    /**
-     * @return the total number of cached entries
-     */
+    @Override
     public long count() {
         lock.readLock().lock();
 
@@ -227,4 +231,14 @@ public class ReadCache implements Closeable {
             lock.readLock().unlock();
         }
     }
+
+    @Override
+    public long evictionCount() {
+        return evictedEntries.sum();
+    }
+
+    @Override
+    public long admissionRejectedCount() {
+        return rejectedEntries.sum();
+    }
 }
@@ -0,0 +1,400 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read cache implementation that is striped by ledger id and uses a frequency-aware eviction.
+ *
+ * <p>The memory is split in multiple shards and each ledger is always mapped to the same shard. Each shard
+ * splits its memory in multiple segments, like {@link ReadCache} does, but the segment to recycle is chosen
+ * with a CLOCK policy: every hit on a segment sets its reference count, and the clock hand gives a second
+ * chance to (and ages) referenced segments before picking one that was not accessed since the previous pass.
+ *
+ * <p>When all the segments of a shard are being referenced, new entries are admitted only if they were
+ * already requested before, based on a TinyLFU-style {@link FrequencySketch}. This prevents a scan, eg. the
+ * read-ahead of a catch-up reader, from flushing a working set that is being hit.
+ *
+ * <p>Lookups don't take any lock: a segment is only recycled while holding its {@link StampedLock} in write
+ * mode and readers validate an optimistic stamp after having copied the entry out of the segment.
+ */
+public class ShardedReadCache implements EntryReadCache {
+    private static final Logger log = LoggerFactory.getLogger(ShardedReadCache.class);
+
+    private static final int DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int MIN_SEGMENTS_PER_SHARD = 4;
+    private static final long MIN_SHARD_SIZE = MIN_SEGMENTS_PER_SHARD * 1024 * 1024;
+
+    // Maximum value of a segment reference count, so that a hot segment is aged out after a few clock passes
+    private static final int MAX_SEGMENT_REFERENCES = 15;
+
+    // Minimum estimated frequency of an entry to be admitted when all the segments of the shard are hot
+    private static final int ADMISSION_MIN_FREQUENCY = 1;
+
+    // Expected average entry size, only used to size the frequency sketches
+    private static final int EXPECTED_ENTRY_SIZE = 1024;
+    private static final int MAX_SKETCH_EXPECTED_ITEMS = 64 * 1024;
+
+    private final ByteBufAllocator allocator;
+    private final Shard[] shards;
+
+    private final LongAdder evictedEntries = new LongAdder();
+    private final LongAdder rejectedEntries = new LongAdder();
+
+    public ShardedReadCache(ByteBufAllocator allocator, long maxCacheSize, int numShards) {
+        this(allocator, maxCacheSize, numShards, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public ShardedReadCache(ByteBufAllocator allocator, long maxCacheSize, int numShards, int maxSegmentSize) {
+        checkArgument(numShards > 0, "The number of read cache shards must be positive");
+        this.allocator = allocator;
+
+        // Do not create shards that are too small to hold a few segments of a reasonable size
+        int shardsCount = (int) Math.max(1, Math.min(numShards, maxCacheSize / MIN_SHARD_SIZE));
+        long shardSize = maxCacheSize / shardsCount;
+        int segmentsCount = Math.max(MIN_SEGMENTS_PER_SHARD, (int) (shardSize / maxSegmentSize));
+        int segmentSize = (int) (shardSize / segmentsCount);
+        int sketchExpectedItems = (int) Math.min(MAX_SKETCH_EXPECTED_ITEMS, shardSize / EXPECTED_ENTRY_SIZE);
+
+        shards = new Shard[shardsCount];
+        for (int i = 0; i < shardsCount; i++) {
+            shards[i] = new Shard(segmentsCount, segmentSize, sketchExpectedItems);
+        }
+
+        log.info("Created sharded read cache: {} shards, {} segments per shard, segment size {}", shardsCount,
+                segmentsCount, segmentSize);
+    }
+
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        getShard(ledgerId).put(ledgerId, entryId, entry);
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        return getShard(ledgerId).get(ledgerId, entryId);
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return getShard(ledgerId).hasEntry(ledgerId, entryId);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.count();
+        }
+        return count;
+    }
+
+    @Override
+    public long evictionCount() {
+        return evictedEntries.sum();
+    }
+
+    @Override
+    public long admissionRejectedCount() {
+        return rejectedEntries.sum();
+    }
+
+    int getShardsCount() {
+        return shards.length;
+    }
+
+    private Shard getShard(long ledgerId) {
+        return shards[MathUtils.signSafeMod(ledgerId, shards.length)];
+    }
+
+    private final class Shard {
+        private final ByteBuf[] segments;
+        private final ConcurrentLongLongPairHashMap[] indexes;
+
+        // Held in write mode only while a segment is being recycled, readers validate an optimistic stamp
+        private final StampedLock[] segmentLocks;
+        private final AtomicIntegerArray segmentReferences;
+
+        private final int segmentSize;
+        private final FrequencySketch sketch;
+
+        // Appends to the current segment hold the read lock, the rotation to a new segment holds the write lock
+        private final StampedLock rotationLock = new StampedLock();
+        private volatile int currentSegmentIdx;
+        private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+        private int clockHand;
+
+        Shard(int segmentsCount, int segmentSize, int sketchExpectedItems) {
+            this.segmentSize = segmentSize;
+            this.segments = new ByteBuf[segmentsCount];
+            this.indexes = new ConcurrentLongLongPairHashMap[segmentsCount];
+            this.segmentLocks = new StampedLock[segmentsCount];
+            this.segmentReferences = new AtomicIntegerArray(segmentsCount);
+            this.sketch = new FrequencySketch(sketchExpectedItems);
+
+            for (int i = 0; i < segmentsCount; i++) {
+                segments[i] = Unpooled.directBuffer(segmentSize, segmentSize);
+                indexes[i] = ConcurrentLongLongPairHashMap.newBuilder()
+                        .expectedItems(4096)
+                        .concurrencyLevel(Runtime.getRuntime().availableProcessors())
+                        .build();
+                segmentLocks[i] = new StampedLock();
+            }
+        }
+
+        void close() {
+            for (ByteBuf segment : segments) {
+                ReferenceCountUtil.safeRelease(segment);
+            }
+        }
+
+        void put(long ledgerId, long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = align64(entrySize);
+
+            if (entrySize > segmentSize) {
+                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+                rejectedEntries.increment();
+                return;
+            }
+
+            long stamp = rotationLock.readLock();
+            try {
+                int offset = reserve(entrySize, alignedSize);
+                if (offset >= 0) {
+                    insert(currentSegmentIdx, offset, ledgerId, entryId, entry);
+                    return;
+                }
+            } finally {
+                rotationLock.unlockRead(stamp);
+            }
+
+            // The current segment is full, we need to get the write lock and roll-over to the next segment
+            stamp = rotationLock.writeLock();
+            try {
+                int offset = reserve(entrySize, alignedSize);
+                if (offset < 0) {
+                    if (!rotate(sketch.frequency(ledgerId, entryId))) {
+                        rejectedEntries.increment();
+                        return;
+                    }
+
+                    currentSegmentOffset.set(Math.min(alignedSize, segmentSize));
+                    offset = 0;
+                }
+
+                insert(currentSegmentIdx, offset, ledgerId, entryId, entry);
+            } finally {
+                rotationLock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Reserve the space of an entry in the current segment. The offset never goes past the end of the
+         * segment, however many entries do not fit in it.
+         *
+         * @return the offset of the entry, or -1 if it does not fit in the current segment
+         */
+        private int reserve(int entrySize, int alignedSize) {
+            while (true) {
+                int offset = currentSegmentOffset.get();
+                if ((long) offset + entrySize > segmentSize) {
+                    return -1;
+                }
+                int nextOffset = (int) Math.min((long) offset + alignedSize, segmentSize);
+                if (currentSegmentOffset.compareAndSet(offset, nextOffset)) {
+                    return offset;
+                }
+            }
+        }
+
+        private void insert(int segmentIdx, int offset, long ledgerId, long entryId, ByteBuf entry) {
+            // The entry data must be in place before it becomes visible through the index
+            segments[segmentIdx].setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
+            indexes[segmentIdx].put(ledgerId, entryId, offset, entry.readableBytes());
+        }
+
+        /**
+         * Advance the clock hand and recycle the first segment that was not referenced since the last pass.
+         *
+         * <p>Must be called while holding the rotation write lock.
+         *
+         * @return false if the candidate entry was not admitted into the shard
+         */
+        private boolean rotate(int candidateFrequency) {
+            int segmentsCount = segments.length;
+            int victim = -1;
+
+            for (int i = 0; i < segmentsCount && victim == -1; i++) {
+                int idx = nextClockHand();
+                int references = segmentReferences.get(idx);
+                if (references == 0) {
+                    victim = idx;
+                } else {
+                    // Give a second chance to the segment, aging its reference count
+                    segmentReferences.set(idx, references >>> 1);
+                }
+            }
+
+            if (victim == -1) {
+                // All the segments are being hit, only replace one of them for an entry that was requested before
+                if (candidateFrequency < ADMISSION_MIN_FREQUENCY) {
+                    return false;
+                }
+
+                victim = nextClockHand();
+            }
+
+            StampedLock segmentLock = segmentLocks[victim];
+            long stamp = segmentLock.writeLock();
+            try {
+                evictedEntries.add(indexes[victim].size());
+                indexes[victim].clear();
+                segmentReferences.set(victim, 0);
+            } finally {
+                segmentLock.unlockWrite(stamp);
+            }
+
+            currentSegmentIdx = victim;
+            return true;
+        }
+
+        private int nextClockHand() {
+            int idx = clockHand;
+            clockHand = (clockHand + 1) % segments.length;
+            if (idx == currentSegmentIdx) {
+                // Never recycle the segment that is being filled
+                idx = clockHand;
+                clockHand = (clockHand + 1) % segments.length;
+            }
+            return idx;
+        }
+
+        ByteBuf get(long ledgerId, long entryId) {
+            sketch.increment(ledgerId, entryId);
+
+            // Check all the segments, starting from the current one and looking backward to minimize the
+            // checks for recently inserted entries
+            int size = segments.length;
+            int currentIdx = currentSegmentIdx;
+            for (int i = 0; i < size; i++) {
+                int segmentIdx = (currentIdx + (size - i)) % size;
+
+                StampedLock segmentLock = segmentLocks[segmentIdx];
+                long stamp = segmentLock.tryOptimisticRead();
+                if (stamp == 0) {
+                    // Segment is being recycled
+                    continue;
+                }
+
+                LongPair res = indexes[segmentIdx].get(ledgerId, entryId);
+                if (res == null) {
+                    continue;
+                }
+
+                int entryOffset = (int) res.first;
+                int entryLen = (int) res.second;
+
+                ByteBuf entry = allocator.buffer(entryLen, entryLen);
+                entry.writeBytes(segments[segmentIdx], entryOffset, entryLen);
+
+                if (!segmentLock.validate(stamp)) {
+                    // The segment was recycled while we were copying, the content might be already overwritten
+                    entry.release();
+                    continue;
+                }
+
+                if (segmentReferences.get(segmentIdx) < MAX_SEGMENT_REFERENCES) {
+                    segmentReferences.incrementAndGet(segmentIdx);
+                }
+                return entry;
+            }
+
+            // Entry not found in any segment
+            return null;
+        }
+
+        boolean hasEntry(long ledgerId, long entryId) {
+            for (int i = 0; i < segments.length; i++) {
+                StampedLock segmentLock = segmentLocks[i];
+                long stamp = segmentLock.tryOptimisticRead();
+                if (stamp != 0 && indexes[i].get(ledgerId, entryId) != null && segmentLock.validate(stamp)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        long size() {
+            long size = 0;
+            int currentIdx = currentSegmentIdx;
+            for (int i = 0; i < segments.length; i++) {
+                if (i == currentIdx) {
+                    size += currentSegmentOffset.get();
+                } else if (!indexes[i].isEmpty()) {
+                    size += segmentSize;
+                }
+            }
+            return size;
+        }
+
+        long count() {
+            long count = 0;
+            for (ConcurrentLongLongPairHashMap index : indexes) {
+                count += index.size();
+            }
+            return count;
+        }
+    }
+}
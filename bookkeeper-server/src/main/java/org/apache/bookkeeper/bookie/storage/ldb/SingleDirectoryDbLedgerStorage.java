@@ -35,15 +35,21 @@ import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -56,6 +62,7 @@ import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
+import org.apache.bookkeeper.bookie.CompactionScheduler;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
@@ -102,18 +109,27 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Write cache where all new entries are inserted into
     protected volatile WriteCache writeCache;
 
-    // Write cache that is used to swap with writeCache during flushes
-    protected volatile WriteCache writeCacheBeingFlushed;
+    // Write caches that were rotated out of writeCache and are waiting to be flushed, from the most recent to the
+    // oldest one. Guarded by writeCacheRotationLock
+    private final Deque<WriteCache> writeCachesBeingFlushed = new ArrayDeque<>();
+
+    // Empty write caches that are available to replace writeCache. Guarded by writeCacheRotationLock
+    private final Deque<WriteCache> freeWriteCaches = new ArrayDeque<>();
+
+    // Snapshot of writeCache followed by writeCachesBeingFlushed, that is replaced every time the caches are rotated
+    // or flushed. It holds all the entries that are not yet in the entry logs.
+    private volatile WriteCache[] unflushedWriteCaches;
+
+    private final List<WriteCache> writeCacheRing;
 
     // Cache where we insert entries for speculative reading
-    private final ReadCache readCache;
+    private final EntryReadCache readCache;
 
     private final StampedLock writeCacheRotationLock = new StampedLock();
 
     protected final ReentrantLock flushMutex = new ReentrantLock();
 
     protected final AtomicBoolean hasFlushBeenTriggered = new AtomicBoolean(false);
-    private final AtomicBoolean isFlushOngoing = new AtomicBoolean(false);
 
     private static String dbStoragerExecutorName = "db-storage";
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
@@ -124,6 +140,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 }
             });
 
+    // Executor used to update the locations index in parallel with the entry logs writes, when the pipelined flush
+    // is enabled
+    private final ExecutorService indexFlushExecutor;
+    private final int flushChunkSize;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -139,12 +160,26 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final int readAheadCacheBatchSize;
     private final long readAheadCacheBatchBytesSize;
 
+    // Replaces the read-ahead done on each read cache miss, when enabled
+    private final AdaptiveReadAhead adaptiveReadAhead;
+
     private final long maxThrottleTimeNanos;
 
     private final DbLedgerStorageStats dbLedgerStorageStats;
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final int DEFAULT_WRITE_CACHE_RING_SIZE = 2;
+
+    private static final int DEFAULT_FLUSH_CHUNK_SIZE = 4096;
+    private static final int MAX_FLUSH_CHUNKS_IN_FLIGHT = 4;
+
+    private static final int DEFAULT_READ_CACHE_SHARDS = Runtime.getRuntime().availableProcessors();
+
+    private static final int DEFAULT_READ_AHEAD_ADAPTIVE_MIN_WINDOW = 16;
+    private static final int DEFAULT_READ_AHEAD_ADAPTIVE_MAX_WINDOW = 1024;
+    private static final int DEFAULT_READ_AHEAD_ADAPTIVE_THREADS = 2;
+
     private final long maxReadAheadBytesSize;
 
     private final Counter flushExecutorTime;
@@ -156,6 +191,17 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                                           long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
                                           long readAheadCacheBatchBytesSize)
             throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, indexDirsManager, entryLogger, statsLogger, allocator,
+             writeCacheSize, readCacheSize, readAheadCacheBatchSize, readAheadCacheBatchBytesSize,
+             new CompactionScheduler(conf));
+    }
+
+    public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+                                          LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                                          EntryLogger entryLogger, StatsLogger statsLogger, ByteBufAllocator allocator,
+                                          long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+                                          long readAheadCacheBatchBytesSize, CompactionScheduler compactionScheduler)
+            throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
 
@@ -178,10 +224,27 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("indexDir", indexBaseDir);
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        int writeCacheRingSize = conf.getInt(DbLedgerStorage.WRITE_CACHE_RING_SIZE, DEFAULT_WRITE_CACHE_RING_SIZE);
+        checkArgument(writeCacheRingSize >= 2, "The write cache ring needs at least 2 write caches");
+        this.writeCacheRing = Lists.newArrayListWithCapacity(writeCacheRingSize);
+        for (int i = 0; i < writeCacheRingSize; i++) {
+            writeCacheRing.add(new WriteCache(allocator, writeCacheMaxSize / writeCacheRingSize));
+        }
+        this.writeCache = writeCacheRing.get(0);
+        this.freeWriteCaches.addAll(writeCacheRing.subList(1, writeCacheRingSize));
+        this.unflushedWriteCaches = new WriteCache[] { writeCache };
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
+        if (DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.PIPELINED_FLUSH, false)) {
+            this.flushChunkSize = conf.getInt(DbLedgerStorage.PIPELINED_FLUSH_CHUNK_SIZE, DEFAULT_FLUSH_CHUNK_SIZE);
+            checkArgument(flushChunkSize > 0, "The pipelined flush chunk size must be positive");
+            this.indexFlushExecutor = Executors.newSingleThreadExecutor(
+                    new DefaultThreadFactory("db-storage-index-flush"));
+        } else {
+            this.flushChunkSize = 0;
+            this.indexFlushExecutor = null;
+        }
+
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
         this.readAheadCacheBatchBytesSize = readAheadCacheBatchBytesSize;
@@ -193,12 +256,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        if (DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.READ_CACHE_SHARDED, false)) {
+            int readCacheShards = conf.getInt(DbLedgerStorage.READ_CACHE_SHARDS, DEFAULT_READ_CACHE_SHARDS);
+            readCache = new ShardedReadCache(allocator, readCacheMaxSize, readCacheShards);
+        } else {
+            readCache = new ReadCache(allocator, readCacheMaxSize);
+        }
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+        KeyValueStorageFactory entryLocationStorageFactory = DbLedgerStorage.isLedgerArraysEntryLocationIndex(conf)
+                ? KeyValueStorageLedgerArrays.factory
+                : KeyValueStorageRocksDB.factory;
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+                entryLocationStorageFactory, indexBaseDir, ledgerIndexDirStatsLogger);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -210,16 +281,48 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         this.entryLogger = entryLogger;
         gcThread = new GarbageCollectorThread(conf,
-                ledgerManager, ledgerDirsManager, this, entryLogger, ledgerIndexDirStatsLogger);
+                ledgerManager, ledgerDirsManager, this, entryLogger, ledgerIndexDirStatsLogger, compactionScheduler);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
             ledgerIndexDirStatsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
+            () -> {
+                long size = 0;
+                for (WriteCache cache : unflushedWriteCaches) {
+                    size += cache.size();
+                }
+                return size;
+            },
+            () -> {
+                long count = 0;
+                for (WriteCache cache : unflushedWriteCaches) {
+                    count += cache.count();
+                }
+                return count;
+            },
+            () -> unflushedWriteCaches.length,
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            () -> readCache.evictionCount(),
+            () -> readCache.admissionRejectedCount()
         );
 
+        if (DbLedgerStorage.getBooleanVariableOrDefault(conf, DbLedgerStorage.READ_AHEAD_ADAPTIVE, false)) {
+            int minWindow = conf.getInt(DbLedgerStorage.READ_AHEAD_ADAPTIVE_MIN_WINDOW,
+                    DEFAULT_READ_AHEAD_ADAPTIVE_MIN_WINDOW);
+            int maxWindow = conf.getInt(DbLedgerStorage.READ_AHEAD_ADAPTIVE_MAX_WINDOW,
+                    DEFAULT_READ_AHEAD_ADAPTIVE_MAX_WINDOW);
+            checkArgument(minWindow > 0 && minWindow <= maxWindow, "Invalid adaptive read-ahead window bounds");
+            adaptiveReadAhead = new AdaptiveReadAhead(readCache, entryLocationIndex, entryLogger,
+                    dbLedgerStorageStats, readAheadCacheBatchSize, minWindow, maxWindow,
+                    readAheadCacheBatchBytesSize > 0 ? readAheadCacheBatchBytesSize : maxReadAheadBytesSize,
+                    conf.getInt(DbLedgerStorage.READ_AHEAD_ADAPTIVE_THREADS, DEFAULT_READ_AHEAD_ADAPTIVE_THREADS));
+            cleanupExecutor.scheduleAtFixedRate(adaptiveReadAhead::removeIdleReaders,
+                    TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
+                    TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
+        } else {
+            adaptiveReadAhead = null;
+        }
+
         flushExecutorTime = ledgerIndexDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
         executor.submit(() -> {
@@ -344,6 +447,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         try {
             flush();
 
+            if (adaptiveReadAhead != null) {
+                adaptiveReadAhead.shutdown();
+            }
             gcThread.shutdown();
             entryLogger.close();
 
@@ -353,10 +459,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             ledgerIndex.close();
             entryLocationIndex.close();
 
-            writeCache.close();
-            writeCacheBeingFlushed.close();
+            writeCacheRing.forEach(WriteCache::close);
             readCache.close();
             executor.shutdown();
+            if (indexFlushExecutor != null) {
+                indexFlushExecutor.shutdown();
+            }
 
         } catch (IOException e) {
             log.error("Error closing db storage", e);
@@ -383,28 +491,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return false;
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
+        // We need to try to read from all the unflushed write caches, since recent entries could be found in any of
+        // them. The write caches are already thread safe on their own and a write cache is only cleared after its
+        // entries are in the locations index, so a stale snapshot is good enough.
+        for (WriteCache cache : unflushedWriteCaches) {
+            if (cache.hasEntry(ledgerId, entryId)) {
+                return true;
             }
         }
 
-        boolean inCache = localWriteCache.hasEntry(ledgerId, entryId)
-             || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
-             || readCache.hasEntry(ledgerId, entryId);
-
-        if (inCache) {
+        if (readCache.hasEntry(ledgerId, entryId)) {
             return true;
         }
 
@@ -517,39 +613,39 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private void triggerFlushAndAddEntry(long ledgerId, long entryId, ByteBuf entry)
             throws IOException, BookieException {
         long throttledStartTime = MathUtils.nowInNano();
-        dbLedgerStorageStats.getThrottledWriteRequests().inc();
+        boolean throttled = false;
         long absoluteTimeoutNanos = System.nanoTime() + maxThrottleTimeNanos;
 
         while (System.nanoTime() < absoluteTimeoutNanos) {
-            // Write cache is full, we need to trigger a flush so that it gets rotated
-            // If the flush has already been triggered or flush has already switched the
-            // cache, we don't need to trigger another flush
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                // Trigger an early flush in background
-                log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                        }
-                    });
-            }
-
+            WriteCache fullWriteCache;
             long stamp = writeCacheRotationLock.readLock();
             try {
                 if (writeCache.put(ledgerId, entryId, entry)) {
                     // We succeeded in putting the entry in write cache in the
-                    recordSuccessfulEvent(dbLedgerStorageStats.getThrottledWriteStats(), throttledStartTime);
+                    if (throttled) {
+                        recordSuccessfulEvent(dbLedgerStorageStats.getThrottledWriteStats(), throttledStartTime);
+                    }
                     return;
                 }
+                fullWriteCache = writeCache;
             } finally {
                 writeCacheRotationLock.unlockRead(stamp);
             }
 
+            // Write cache is full, hand it over to the flush and continue with an empty write cache, if there is one
+            // left in the ring. The flush is triggered in background, unless it has already been triggered.
+            boolean rotated = rotateWriteCache(fullWriteCache);
+            triggerFlush();
+            if (rotated) {
+                continue;
+            }
+
+            // All the write caches in the ring are full, we need to wait for the flush to release one of them
+            if (!throttled) {
+                throttled = true;
+                dbLedgerStorageStats.getThrottledWriteRequests().inc();
+            }
+
             // Wait some time and try again
             try {
                 Thread.sleep(1);
@@ -565,6 +661,25 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         throw new OperationRejectedException();
     }
 
+    private void triggerFlush() {
+        // If the flush has already been triggered and has not yet started, it will also take care of
+        // the write caches that were rotated in the meantime
+        if (hasFlushBeenTriggered.compareAndSet(false, true)) {
+            // Trigger an early flush in background
+            log.info("Write cache is full, triggering flush");
+            executor.execute(() -> {
+                    long startTime = System.nanoTime();
+                    try {
+                        flushWriteCaches();
+                    } catch (IOException e) {
+                        log.error("Error during flush", e);
+                    } finally {
+                        flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    }
+                });
+        }
+    }
+
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException {
         long startTime = MathUtils.nowInNano();
@@ -587,43 +702,27 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
+        // First try to read from the write caches, starting from the one with the most recent entries. If there are
+        // flushes going on, the entry might be in one of the caches being flushed. A write cache is only cleared
+        // after its entries are in the locations index, so a stale snapshot is good enough.
+        ByteBuf entry;
+        for (WriteCache cache : unflushedWriteCaches) {
+            entry = cache.get(ledgerId, entryId);
+            if (entry != null) {
+                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+                return entry;
             }
         }
 
-        // First try to read from the write cache of recent entries
-        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
-        }
-
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
-        }
-
         dbLedgerStorageStats.getWriteCacheMissCounter().inc();
 
         // Try reading from read-ahead cache
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            if (adaptiveReadAhead != null) {
+                adaptiveReadAhead.onCacheHit(ledgerId, entryId);
+            }
             return entry;
         }
 
@@ -657,7 +756,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         // Try to read more entries
         long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        if (adaptiveReadAhead != null) {
+            adaptiveReadAhead.onCacheMiss(ledgerId, entryId, nextEntryLocation);
+        } else {
+            fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        }
 
         return entry;
     }
@@ -724,42 +827,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     public ByteBuf getLastEntry(long ledgerId) throws IOException, BookieException {
         throwIfLimbo(ledgerId);
 
-        long stamp = writeCacheRotationLock.readLock();
-        try {
-            // First try to read from the write cache of recent entries
-            ByteBuf entry = writeCache.getLastEntry(ledgerId);
+        // First try to read from the write cache of recent entries. If there are flushes going on, the entry might
+        // be in one of the caches being flushed, the most recent one holding the last entry.
+        WriteCache[] caches = unflushedWriteCaches;
+        for (int i = 0; i < caches.length; i++) {
+            ByteBuf entry = caches[i].getLastEntry(ledgerId);
             if (entry != null) {
                 if (log.isDebugEnabled()) {
                     long foundLedgerId = entry.readLong(); // ledgerId
                     long entryId = entry.readLong();
                     entry.resetReaderIndex();
-                    if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache: {}@{}", ledgerId, foundLedgerId,
-                                entryId);
-                    }
+                    log.debug("Found last entry for ledger {} in write cache {}: {}@{}", ledgerId, i, foundLedgerId,
+                            entryId);
                 }
 
                 dbLedgerStorageStats.getWriteCacheHitCounter().inc();
                 return entry;
             }
-
-            // If there's a flush going on, the entry might be in the flush buffer
-            entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    entry.readLong(); // ledgerId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
-                    if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId, entryId);
-                    }
-                }
-
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
-            }
-        } finally {
-            writeCacheRotationLock.unlockRead(stamp);
         }
 
         dbLedgerStorageStats.getWriteCacheMissCounter().inc();
@@ -784,12 +868,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     @VisibleForTesting
     boolean isFlushRequired() {
-        long stamp = writeCacheRotationLock.readLock();
-        try {
-            return !writeCache.isEmpty();
-        } finally {
-            writeCacheRotationLock.unlockRead(stamp);
+        for (WriteCache cache : unflushedWriteCaches) {
+            if (!cache.isEmpty()) {
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
@@ -811,40 +895,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         try {
-            if (writeCache.isEmpty()) {
+            WriteCache currentWriteCache = writeCache;
+            if (currentWriteCache.isEmpty() && unflushedWriteCaches.length == 1) {
                 return;
             }
-            // Swap the write cache so that writes can continue to happen while the flush is
-            // ongoing
-            swapWriteCache();
 
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
+            // Swap the write cache so that writes can continue to happen while the flush is
+            // ongoing. If all the write caches of the ring are waiting to be flushed, make space by
+            // flushing the oldest one first.
+            long sizeToFlush = 0;
+            while (!currentWriteCache.isEmpty() && !rotateWriteCache(currentWriteCache)) {
+                sizeToFlush += flushOldestWriteCache();
             }
 
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            try (Batch batch = entryLocationIndex.newBatch()) {
-                writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                    long location = entryLogger.addEntry(ledgerId, entry);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                });
-
-                long entryLoggerStart = MathUtils.nowInNano();
-                entryLogger.flush();
-                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-                long batchFlushStartTime = MathUtils.nowInNano();
-                batch.flush();
-
-                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-                if (log.isDebugEnabled()) {
-                    log.debug("DB batch flushed time : {} s",
-                            MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
-                }
+            // Flush, in order, all the write caches that were rotated up to now. The write caches that get
+            // rotated afterwards only contain entries that were added after this checkpoint.
+            for (int i = countWriteCachesBeingFlushed(); i > 0; i--) {
+                sizeToFlush += flushOldestWriteCache();
             }
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
@@ -853,9 +920,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -871,49 +935,336 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             throw e;
         } finally {
             try {
-                cleanupExecutor.execute(() -> {
-                    // There can only be one single cleanup task running because the cleanupExecutor
-                    // is single-threaded
-                    try {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Removing deleted ledgers from db indexes");
-                        }
-
-                        entryLocationIndex.removeOffsetFromDeletedLedgers();
-                        ledgerIndex.removeDeletedLedgers();
-                    } catch (Throwable t) {
-                        log.warn("Failed to cleanup db indexes", t);
+                cleanupDeletedLedgersFromIndexes();
+            } finally {
+                flushMutex.unlock();
+            }
+        }
+    }
+
+    /**
+     * Flush the write caches that were rotated because they were full, without waiting for the next checkpoint.
+     */
+    private void flushWriteCaches() throws IOException {
+        flushMutex.lock();
+        try {
+            // Any write cache rotated from now on will need another flush to be triggered
+            hasFlushBeenTriggered.set(false);
+
+            int writeCachesToFlush = countWriteCachesBeingFlushed();
+            if (writeCachesToFlush == 0) {
+                return;
+            }
+
+            long startTime = MathUtils.nowInNano();
+            try {
+                long sizeToFlush = 0;
+                for (int i = writeCachesToFlush; i > 0; i--) {
+                    sizeToFlush += flushOldestWriteCache();
+                }
+
+                long ledgerIndexStartTime = MathUtils.nowInNano();
+                ledgerIndex.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLedgerIndexStats(), ledgerIndexStartTime);
+
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushStats(), startTime);
+                dbLedgerStorageStats.getFlushSizeStats().registerSuccessfulValue(sizeToFlush);
+            } catch (IOException e) {
+                recordFailedEvent(dbLedgerStorageStats.getFlushStats(), startTime);
+                throw e;
+            } finally {
+                cleanupDeletedLedgersFromIndexes();
+            }
+        } finally {
+            flushMutex.unlock();
+        }
+    }
+
+    /**
+     * Write all the entries of the oldest write cache being flushed into the entry logs and the locations
+     * index, then make the write cache available again for new entries.
+     *
+     * <p>Must be called while holding the flush mutex.
+     *
+     * @return the number of bytes flushed
+     */
+    private long flushOldestWriteCache() throws IOException {
+        WriteCache writeCacheToFlush;
+        long stamp = writeCacheRotationLock.readLock();
+        try {
+            writeCacheToFlush = writeCachesBeingFlushed.peekLast();
+        } finally {
+            writeCacheRotationLock.unlockRead(stamp);
+        }
+
+        if (writeCacheToFlush == null) {
+            return 0;
+        }
+
+        long sizeToFlush = writeCacheToFlush.size();
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheToFlush.count(),
+                    sizeToFlush / 1024.0 / 1024);
+        }
+
+        if (indexFlushExecutor != null) {
+            pipelinedFlush(writeCacheToFlush);
+        } else {
+            serialFlush(writeCacheToFlush);
+        }
+
+        // Discard all the entry from the write cache, since they're now persisted
+        writeCacheToFlush.clear();
+
+        stamp = writeCacheRotationLock.writeLock();
+        try {
+            writeCachesBeingFlushed.removeLast();
+            freeWriteCaches.addLast(writeCacheToFlush);
+            updateUnflushedWriteCaches();
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+
+        return sizeToFlush;
+    }
+
+    private void serialFlush(WriteCache writeCacheToFlush) throws IOException {
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry
+
+        try (Batch batch = entryLocationIndex.newBatch()) {
+            writeCacheToFlush.forEach((ledgerId, entryId, entry) -> {
+                long location = entryLogger.addEntry(ledgerId, entry);
+                entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+            });
+
+            long entryLoggerStart = MathUtils.nowInNano();
+            entryLogger.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+            long batchFlushStartTime = MathUtils.nowInNano();
+            batch.flush();
+
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+            if (log.isDebugEnabled()) {
+                log.debug("DB batch flushed time : {} s",
+                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+    }
+
+    /**
+     * Flush the write cache with the entry logs writes and the locations index updates running in parallel.
+     *
+     * <p>The sorted entries are written into the entry logger in chunks. Once a chunk is written, its locations
+     * are added to the index batch by the index flush thread, while the next chunk is being written. Finally, the
+     * entry logger flush and the index batch commit are also done in parallel.
+     *
+     * <p>This is safe because a write cache is only cleared, and a checkpoint is only marked as complete, after both
+     * the entry logs and the index are durable.
+     */
+    private void pipelinedFlush(WriteCache writeCacheToFlush) throws IOException {
+        try (Batch batch = entryLocationIndex.newBatch()) {
+            Semaphore chunksInFlight = new Semaphore(MAX_FLUSH_CHUNKS_IN_FLIGHT);
+            LocationsChunk[] currentChunk = { new LocationsChunk(flushChunkSize) };
+            CompletableFuture<?>[] indexStage = { CompletableFuture.completedFuture(null) };
+
+            try {
+                writeCacheToFlush.forEach((ledgerId, entryId, entry) -> {
+                    LocationsChunk chunk = currentChunk[0];
+                    chunk.add(ledgerId, entryId, entryLogger.addEntry(ledgerId, entry));
+                    if (chunk.isFull()) {
+                        indexStage[0] = submitLocationsChunk(indexStage[0], batch, chunk, chunksInFlight);
+                        currentChunk[0] = new LocationsChunk(flushChunkSize);
                     }
                 });
 
-                isFlushOngoing.set(false);
-            } finally {
-                flushMutex.unlock();
+                if (!currentChunk[0].isEmpty()) {
+                    indexStage[0] = submitLocationsChunk(indexStage[0], batch, currentChunk[0], chunksInFlight);
+                }
+
+                // Commit the index batch while the entry logs are being flushed
+                indexStage[0] = indexStage[0].thenRunAsync(() -> {
+                    long batchFlushStartTime = MathUtils.nowInNano();
+                    try {
+                        batch.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+                }, indexFlushExecutor);
+
+                long entryLoggerStart = MathUtils.nowInNano();
+                entryLogger.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+            } catch (IOException | RuntimeException e) {
+                // The batch cannot be closed before the index flush thread is done with it
+                indexStage[0].handle((result, throwable) -> null).join();
+                throw e;
+            }
+
+            long waitStartTime = MathUtils.nowInNano();
+            waitForIndexFlush(indexStage[0]);
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationsIndexWaitStats(), waitStartTime);
+        }
+    }
+
+    private CompletableFuture<Void> submitLocationsChunk(CompletableFuture<?> previousStage, Batch batch,
+                                                         LocationsChunk chunk, Semaphore chunksInFlight)
+            throws IOException {
+        if (previousStage.isCompletedExceptionally()) {
+            // The index update failed, no need to write the rest of the entries
+            waitForIndexFlush(previousStage);
+        }
+
+        // Don't let the entry logs writes get too far ahead of the index updates
+        try {
+            chunksInFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the write cache", e);
+        }
+
+        chunk.recordWritten();
+        return previousStage.thenRunAsync(() -> {
+            try {
+                long startTime = MathUtils.nowInNano();
+                for (int i = 0; i < chunk.size; i++) {
+                    entryLocationIndex.addLocation(batch, chunk.ledgerIds[i], chunk.entryIds[i], chunk.locations[i]);
+                }
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationsIndexBuildStats(), startTime);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, indexFlushExecutor).whenComplete((result, throwable) -> {
+            // Also when a previous chunk failed and this one is skipped
+            chunksInFlight.release();
+        });
+    }
+
+    private static void waitForIndexFlush(CompletableFuture<?> indexStage) throws IOException {
+        try {
+            indexStage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the locations index", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else {
+                throw new IOException("Failed to flush the locations index", cause);
             }
         }
     }
 
     /**
-     * Swap the current write cache with the replacement cache.
+     * Locations of a chunk of entries that were written in the entry logs, waiting to be added to the index.
      */
-    private void swapWriteCache() {
+    private final class LocationsChunk {
+        private final long[] ledgerIds;
+        private final long[] entryIds;
+        private final long[] locations;
+        private int size = 0;
+        private final long startTime = MathUtils.nowInNano();
+
+        LocationsChunk(int capacity) {
+            this.ledgerIds = new long[capacity];
+            this.entryIds = new long[capacity];
+            this.locations = new long[capacity];
+        }
+
+        void add(long ledgerId, long entryId, long location) {
+            ledgerIds[size] = ledgerId;
+            entryIds[size] = entryId;
+            locations[size] = location;
+            size++;
+        }
+
+        boolean isFull() {
+            return size == ledgerIds.length;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void recordWritten() {
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogWriteStats(), startTime);
+        }
+    }
+
+    private void cleanupDeletedLedgersFromIndexes() {
+        cleanupExecutor.execute(() -> {
+            // There can only be one single cleanup task running because the cleanupExecutor
+            // is single-threaded
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug("Removing deleted ledgers from db indexes");
+                }
+
+                entryLocationIndex.removeOffsetFromDeletedLedgers();
+                ledgerIndex.removeDeletedLedgers();
+            } catch (Throwable t) {
+                log.warn("Failed to cleanup db indexes", t);
+            }
+        });
+    }
+
+    /**
+     * Move the current write cache to the queue of write caches being flushed and replace it with an empty
+     * write cache of the ring.
+     *
+     * @param expectedWriteCache the write cache to rotate
+     * @return true if the expected write cache is no longer the current one, or false if there are no empty
+     *         write caches left in the ring
+     */
+    private boolean rotateWriteCache(WriteCache expectedWriteCache) {
         long stamp = writeCacheRotationLock.writeLock();
         try {
+            if (writeCache != expectedWriteCache) {
+                // Already rotated by another thread
+                return true;
+            }
+
+            WriteCache emptyWriteCache = freeWriteCaches.pollFirst();
+            if (emptyWriteCache == null) {
+                return false;
+            }
+
             // First, swap the current write-cache map with an empty one so that writes will
-            // go on unaffected. Only a single flush is happening at the same time
-            WriteCache tmp = writeCacheBeingFlushed;
-            writeCacheBeingFlushed = writeCache;
-            writeCache = tmp;
-
-            // Set to true before updating hasFlushBeenTriggered to false.
-            isFlushOngoing.set(true);
-            // since the cache is switched, we can allow flush to be triggered
-            hasFlushBeenTriggered.set(false);
+            // go on unaffected.
+            writeCachesBeingFlushed.addFirst(writeCache);
+            writeCache = emptyWriteCache;
+            updateUnflushedWriteCaches();
+            return true;
         } finally {
             writeCacheRotationLock.unlockWrite(stamp);
         }
     }
 
+    private int countWriteCachesBeingFlushed() {
+        long stamp = writeCacheRotationLock.readLock();
+        try {
+            return writeCachesBeingFlushed.size();
+        } finally {
+            writeCacheRotationLock.unlockRead(stamp);
+        }
+    }
+
+    // Must be called while holding the write cache rotation lock in write mode
+    private void updateUnflushedWriteCaches() {
+        WriteCache[] caches = new WriteCache[1 + writeCachesBeingFlushed.size()];
+        caches[0] = writeCache;
+        int i = 1;
+        for (WriteCache cache : writeCachesBeingFlushed) {
+            caches[i++] = cache;
+        }
+        unflushedWriteCaches = caches;
+    }
+
     @Override
     public void flush() throws IOException {
         Checkpoint cp = checkpointSource.newCheckpoint();
@@ -949,6 +1300,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (tli != null) {
             tli.close();
         }
+
+        if (adaptiveReadAhead != null) {
+            adaptiveReadAhead.removeLedger(ledgerId);
+        }
     }
 
     @Override
@@ -985,6 +1340,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entryLocationIndex.updateLocations(locations);
     }
 
+    @Override
+    public boolean supportsEntriesLocationsLookup() {
+        return true;
+    }
+
+    @Override
+    public void getEntriesLocationsInEntryLog(long entryLogId, long ledgerId, List<EntryLocation> locations)
+            throws IOException {
+        // Same as in updateEntriesLocations(), wait for any pending flush so that the index
+        // knows the locations of all the entries written in the flushed entry logs
+        flushMutex.lock();
+        flushMutex.unlock();
+
+        entryLocationIndex.getLocationsInEntryLog(ledgerId, entryLogId, locations);
+    }
+
     @VisibleForTesting
     EntryLogger getEntryLogger() {
         return entryLogger;
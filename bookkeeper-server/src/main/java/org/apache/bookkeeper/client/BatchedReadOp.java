@@ -191,6 +191,11 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         public String toString() {
             return String.format("L%d-E%d~%d s-%d", lh.getId(), eId, eId + maxCount, maxSize);
         }
+
+        @Override
+        byte getReadOpCode() {
+            return BookieProtocol.BATCH_READ_ENTRY;
+        }
     }
 
     class SequenceReadRequest extends BatchedLedgerEntryRequest {
@@ -44,4 +44,24 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the average read latency of a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return average read latency in nanoseconds, -1 if it is unknown
+     */
+    default long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+        return -1L;
+    }
+
+    /**
+     * Returns the estimated tail read latency of a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return tail read latency in nanoseconds, -1 if it is unknown
+     */
+    default long getBookieReadTailLatencyNanos(BookieId bookieSocketAddress) {
+        return -1L;
+    }
+
 }
@@ -39,6 +39,7 @@ class ClientInternalConf {
     final long addEntryQuorumTimeoutNanos;
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
+    final boolean enableLatencyAwareReads;
     final boolean enableStickyReads;
     final int recoveryReadBatchSize;
     final int throttleValue;
@@ -68,6 +69,7 @@ class ClientInternalConf {
                                FeatureProvider featureProvider) {
         this.explicitLacInterval = conf.getExplictLacInterval();
         this.enableReorderReadSequence = conf.isReorderReadSequenceEnabled();
+        this.enableLatencyAwareReads = conf.isLatencyAwareReadsEnabled();
         this.enableParallelRecoveryRead = conf.getEnableParallelRecoveryRead();
         this.recoveryReadBatchSize = conf.getRecoveryReadBatchSize();
         this.waitForWriteSetMs = conf.getWaitTimeoutOnBackpressureMillis();
@@ -85,12 +87,22 @@ class ClientInternalConf {
         this.enableStickyReads = conf.isStickyReadsEnabled();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.getSpeculativeReadLatencyPercentile() > 0) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new PercentileSpeculativeRequestExecutionPolicy(
+                                        conf.getSpeculativeReadLatencyPercentile(),
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout(),
+                                        conf.getSpeculativeReadTimeoutBackoffMultiplier(),
+                                        conf.getSpeculativeReadMaxRatePercent(),
+                                        conf.isLatencyAwareReadsEnabled()));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
                                         conf.getMaxSpeculativeReadTimeout(),
-                                        conf.getSpeculativeReadTimeoutBackoffMultiplier()));
+                                        conf.getSpeculativeReadTimeoutBackoffMultiplier(),
+                                        conf.isLatencyAwareReadsEnabled()));
         } else {
             this.readSpeculativeRequestPolicy = Optional.<SpeculativeRequestExecutionPolicy>empty();
         }
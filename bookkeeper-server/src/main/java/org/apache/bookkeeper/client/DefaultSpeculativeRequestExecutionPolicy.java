@@ -37,18 +37,28 @@ import org.slf4j.LoggerFactory;
  *
  * <p>The policy issues speculative requests in a backoff way. The time between two speculative requests
  * are between {@code firstSpeculativeRequestTimeout} and {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>When {@code useObservedLatency} is set, the first speculative request is issued after the tail latency
+ * observed by the request executor instead, if it knows one, still capped by {@code maxSpeculativeRequestTimeout}.
  */
 public class DefaultSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultSpeculativeRequestExecutionPolicy.class);
     final int firstSpeculativeRequestTimeout;
     final int maxSpeculativeRequestTimeout;
     final float backoffMultiplier;
+    final boolean useObservedLatency;
 
     public DefaultSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
             int maxSpeculativeRequestTimeout, float backoffMultiplier) {
+        this(firstSpeculativeRequestTimeout, maxSpeculativeRequestTimeout, backoffMultiplier, false);
+    }
+
+    public DefaultSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier, boolean useObservedLatency) {
         this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
         this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
         this.backoffMultiplier = backoffMultiplier;
+        this.useObservedLatency = useObservedLatency;
 
         if (backoffMultiplier <= 0) {
             throw new IllegalArgumentException("Invalid value provided for backoffMultiplier");
@@ -70,7 +80,15 @@ public class DefaultSpeculativeRequestExecutionPolicy implements SpeculativeRequ
     @Override
     public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
             final SpeculativeRequestExecutor requestExecutor) {
-        return scheduleSpeculativeRead(scheduler, requestExecutor, firstSpeculativeRequestTimeout);
+        int speculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        if (useObservedLatency) {
+            long tailLatencyNanos = requestExecutor.getObservedTailLatencyNanos();
+            if (tailLatencyNanos > 0) {
+                long tailLatencyMs = TimeUnit.NANOSECONDS.toMillis(tailLatencyNanos) + 1;
+                speculativeRequestTimeout = (int) Math.min(tailLatencyMs, maxSpeculativeRequestTimeout);
+            }
+        }
+        return scheduleSpeculativeRead(scheduler, requestExecutor, speculativeRequestTimeout);
     }
 
     private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
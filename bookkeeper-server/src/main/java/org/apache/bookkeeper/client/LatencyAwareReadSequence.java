@@ -0,0 +1,80 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+
+/**
+ * Picks the first bookie of a read sequence by latency, with the power of two choices.
+ *
+ * <p>Two random bookies of the sequence without recent failures are compared, and the one with the lower
+ * average read latency times pending requests is read first. Always picking the fastest bookie would send
+ * it all the reads until it becomes the slowest one, while two random choices spread the load and still
+ * avoid the slow bookies. A bookie whose latency is unknown, because it got no reads for a while, counts
+ * as fast so that it is tried again.
+ */
+final class LatencyAwareReadSequence {
+
+    private LatencyAwareReadSequence() {}
+
+    static void moveBestOfTwoFirst(List<BookieId> ensemble, BookiesHealthInfo bookiesHealthInfo,
+                                   DistributionSchedule.WriteSet writeSet) {
+        int[] candidates = new int[writeSet.size()];
+        int numCandidates = 0;
+        for (int i = 0; i < writeSet.size(); i++) {
+            if (bookiesHealthInfo.getBookieFailureHistory(ensemble.get(writeSet.get(i))) < 0) {
+                candidates[numCandidates++] = i;
+            }
+        }
+        if (numCandidates < 2) {
+            return;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(numCandidates);
+        int second = random.nextInt(numCandidates - 1);
+        if (second >= first) {
+            second++;
+        }
+        int a = Math.min(candidates[first], candidates[second]);
+        int b = Math.max(candidates[first], candidates[second]);
+        // On a tie, keep the order of the sequence
+        int best = cost(ensemble, bookiesHealthInfo, writeSet, b) < cost(ensemble, bookiesHealthInfo, writeSet, a)
+                ? b : a;
+        if (best > 0) {
+            writeSet.moveAndShift(best, 0);
+        }
+    }
+
+    private static double cost(List<BookieId> ensemble, BookiesHealthInfo bookiesHealthInfo,
+                               DistributionSchedule.WriteSet writeSet, int i) {
+        BookieId bookie = ensemble.get(writeSet.get(i));
+        long pendingRequests = bookiesHealthInfo.getBookiePendingRequests(bookie);
+        if ((pendingRequests & BookieClient.PENDINGREQ_NOTWRITABLE_MASK) != 0) {
+            return Double.MAX_VALUE;
+        }
+        long latencyNanos = Math.max(bookiesHealthInfo.getBookieReadLatencyNanos(bookie), 0L);
+        return (latencyNanos + 1.0d) * (pendingRequests + 1);
+    }
+}
@@ -33,6 +33,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -53,6 +54,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -70,14 +72,17 @@ import org.apache.bookkeeper.client.SyncCallbackUtils.SyncReadLastConfirmedCallb
 import org.apache.bookkeeper.client.api.BKException.Code;
 import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
 import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.client.api.WriteHandle;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryStreamImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieLatencyEstimator;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
 import org.apache.bookkeeper.stats.Counter;
@@ -97,6 +102,9 @@ public class LedgerHandle implements WriteHandle {
 
     private static final int STICKY_READ_BOOKIE_INDEX_UNSET = -1;
 
+    // Adds sequenced by an adding thread before it leaves the others to the ordered thread
+    private static final int MAX_SEQUENCED_ADDS_PER_CALL = 256;
+
     final ClientContext clientCtx;
 
     final byte[] ledgerKey;
@@ -119,6 +127,8 @@ public class LedgerHandle implements WriteHandle {
       * This value is used by readers, the LAC protocol
       */
     volatile long lastAddConfirmed;
+    private static final AtomicLongFieldUpdater<LedgerHandle> LAST_ADD_CONFIRMED_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(LedgerHandle.class, "lastAddConfirmed");
 
      /**
       * Next entryId which is expected to move forward during {@link #sendAddSuccessCallbacks() }. This is important
@@ -168,6 +178,9 @@ public class LedgerHandle implements WriteHandle {
     boolean changingEnsemble = false;
     final AtomicInteger numEnsembleChanges = new AtomicInteger(0);
     Queue<PendingAddOp> pendingAddOps;
+    // Adds waiting for an entry id, see #sequencePendingAdds()
+    private final Queue<PendingAddOp> addsToSequence = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean sequencingAdds = new AtomicBoolean(false);
     ExplicitLacFlushPolicy explicitLacFlushPolicy;
 
     final Counter ensembleChangeCounter;
@@ -242,6 +255,20 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+                BookieLatencyEstimator estimator =
+                        clientCtx.getBookieClient().getReadLatencyEstimator(bookieSocketAddress);
+                return estimator == null ? -1L : estimator.getAverageNanos();
+            }
+
+            @Override
+            public long getBookieReadTailLatencyNanos(BookieId bookieSocketAddress) {
+                BookieLatencyEstimator estimator =
+                        clientCtx.getBookieClient().getReadLatencyEstimator(bookieSocketAddress);
+                return estimator == null ? -1L : estimator.getTailNanos();
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -321,10 +348,26 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddConfirmed() {
+    public long getLastAddConfirmed() {
         return lastAddConfirmed;
     }
 
+    /**
+     * Move the last add confirmed forward to the given entry, unless it is already past it.
+     *
+     * @return whether the last add confirmed moved
+     */
+    boolean advanceLastAddConfirmed(long lac) {
+        long current;
+        do {
+            current = lastAddConfirmed;
+            if (lac <= current) {
+                return false;
+            }
+        } while (!LAST_ADD_CONFIRMED_UPDATER.compareAndSet(this, current, lac));
+        return true;
+    }
+
     synchronized void setLastAddConfirmed(long lac) {
         this.lastAddConfirmed = lac;
     }
@@ -551,9 +594,15 @@ public class LedgerHandle implements WriteHandle {
                         }
                     });
 
+                    final List<PendingAddOp> queuedAdds = new ArrayList<>();
+                    final List<PendingAddOp> rejectedAdds = new ArrayList<>();
                     synchronized (LedgerHandle.this) {
                         prevHandleState = handleState;
 
+                        // sequence the adds queued before the close, like their adding thread would
+                        // have, so that they are errored out with the other pending adds
+                        sequenceQueuedAdds(Integer.MAX_VALUE, queuedAdds, rejectedAdds);
+
                         // drain pending adds first
                         pendingAdds = drainPendingAddsAndAdjustLength();
 
@@ -567,6 +616,13 @@ public class LedgerHandle implements WriteHandle {
                     // running under any bk locks.
                     try {
                         errorOutPendingAdds(rc, pendingAdds);
+                        // the errored out adds that were never sent are recycled once initiated
+                        for (PendingAddOp op : queuedAdds) {
+                            op.initiate();
+                        }
+                        for (PendingAddOp op : rejectedAdds) {
+                            failAddToClosedLedger(op);
+                        }
                     } catch (Throwable e) {
                         closePromise.completeExceptionally(e);
                         return;
@@ -941,6 +997,18 @@ public class LedgerHandle implements WriteHandle {
         return future;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The entries are read with {@link #batchReadAsync(long, int, long)}, so with batched reads when the
+     * bookies support them, each returning at most a netty frame of entries.
+     */
+    @Override
+    public LedgerEntryStream readStream(long firstEntry, long lastEntry, int maxOutstandingEntries) {
+        return new LedgerEntryStreamImpl(this, firstEntry, lastEntry, maxOutstandingEntries,
+                clientCtx.getConf().nettyMaxFrameSizeBytes);
+    }
+
     private boolean notSupportBatchRead() {
         if (!clientCtx.getConf().batchReadEnabled) {
             return true;
@@ -1588,48 +1656,116 @@ public class LedgerHandle implements WriteHandle {
             throttler.acquire();
         }
 
-        boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
-            if (isHandleWritable()) {
+        addsToSequence.add(op);
+        sequencePendingAdds();
+    }
+
+    /**
+     * Assign the entry ids of the queued adds and send them.
+     *
+     * <p>Rather than taking the handle lock once per add, one adding thread takes the queued adds of all
+     * of them and sequences them at once, under the lock to exclude a concurrent close, and the others
+     * return right away. An add is therefore sequenced before {@link #asyncAddEntry} returns, unless
+     * another thread is sequencing adds at that time.
+     *
+     * <p>A thread sequences at most {@link #MAX_SEQUENCED_ADDS_PER_CALL} adds, so that it does not keep
+     * sequencing the adds of the other threads for as long as they add entries. The adds still queued
+     * after that are left to the ordered thread of the ledger.
+     *
+     * <p>The close sequences the adds still queued, so that an add made before the close is completed
+     * before it with the other pending adds, as when each adding thread took the lock itself.
+     */
+    private void sequencePendingAdds() {
+        int remaining = MAX_SEQUENCED_ADDS_PER_CALL;
+        while (!addsToSequence.isEmpty()) {
+            if (remaining <= 0) {
+                try {
+                    executeOrdered(this::sequencePendingAdds);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // The client is closing, sequence the adds here so that they are completed
+                    remaining = MAX_SEQUENCED_ADDS_PER_CALL;
+                }
+            }
+            if (!sequencingAdds.compareAndSet(false, true)) {
+                return;
+            }
+
+            List<PendingAddOp> sequenced = new ArrayList<>();
+            List<PendingAddOp> rejected = new ArrayList<>();
+            try {
+                synchronized (this) {
+                    remaining -= sequenceQueuedAdds(remaining, sequenced, rejected);
+                }
+            } finally {
+                sequencingAdds.set(false);
+            }
+
+            for (PendingAddOp op : rejected) {
+                failAddToClosedLedger(op);
+            }
+            for (PendingAddOp op : sequenced) {
+                initiateAdd(op);
+            }
+        }
+    }
+
+    /**
+     * Assign the entry ids of at most {@code maxAdds} queued adds, and add them to the pending adds. The
+     * adds are rejected if the handle is not writable. The caller holds the handle lock, which also makes
+     * it the only consumer of the queue.
+     *
+     * @return the number of adds taken from the queue
+     */
+    private int sequenceQueuedAdds(int maxAdds, List<PendingAddOp> sequenced, List<PendingAddOp> rejected) {
+        // synchronized on this to ensure that
+        // the ledger isn't closed between checking and
+        // updating lastAddPushed
+        boolean writable = isHandleWritable();
+        int taken = 0;
+        PendingAddOp op;
+        while (taken < maxAdds && (op = addsToSequence.poll()) != null) {
+            taken++;
+            if (writable) {
                 long entryId = ++lastAddPushed;
                 long currentLedgerLength = addToLength(op.payload.readableBytes());
                 op.setEntryId(entryId);
                 op.setLedgerLength(currentLedgerLength);
                 pendingAddOps.add(op);
+                sequenced.add(op);
             } else {
-                wasClosed = true;
+                rejected.add(op);
             }
         }
+        return taken;
+    }
 
-        if (wasClosed) {
-            // make sure the callback is triggered in main worker pool
-            try {
-                executeOrdered(new Runnable() {
-                    @Override
-                    public void run() {
-                        LOG.warn("Attempt to add to closed ledger: {}", ledgerId);
-                        op.cb.addCompleteWithLatency(BKException.Code.LedgerClosedException,
-                                LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
-                        op.recyclePendAddOpObject();
-                    }
+    private void failAddToClosedLedger(final PendingAddOp op) {
+        // make sure the callback is triggered in main worker pool
+        try {
+            executeOrdered(new Runnable() {
+                @Override
+                public void run() {
+                    LOG.warn("Attempt to add to closed ledger: {}", ledgerId);
+                    op.cb.addCompleteWithLatency(BKException.Code.LedgerClosedException,
+                            LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
+                    op.recyclePendAddOpObject();
+                }
 
-                    @Override
-                    public String toString() {
-                        return String.format("AsyncAddEntryToClosedLedger(lid=%d)", ledgerId);
-                    }
-                });
-            } catch (RejectedExecutionException e) {
-                op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
-                                BKException.Code.InterruptedException),
-                        LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
-                op.recyclePendAddOpObject();
-            }
-            return;
+                @Override
+                public String toString() {
+                    return String.format("AsyncAddEntryToClosedLedger(lid=%d)", ledgerId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
+                            BKException.Code.InterruptedException),
+                    LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
+            op.recyclePendAddOpObject();
         }
+    }
 
+    private void initiateAdd(PendingAddOp op) {
         if (clientCtx.getConf().waitForWriteSetMs >= 0) {
             DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(op.getEntryId());
             try {
@@ -1642,12 +1778,10 @@ public class LedgerHandle implements WriteHandle {
         }
 
         op.initiate();
-
     }
 
     synchronized void updateLastConfirmed(long lac, long len) {
-        if (lac > lastAddConfirmed) {
-            lastAddConfirmed = lac;
+        if (advanceLastAddConfirmed(lac)) {
             lacUpdateHitsCounter.inc();
         } else {
             lacUpdateMissesCounter.inc();
@@ -2115,7 +2249,7 @@ public class LedgerHandle implements WriteHandle {
             explicitLacFlushPolicy.updatePiggyBackedLac(lastAddConfirmed);
             pendingAddsSequenceHead = pendingAddOp.entryId;
             if (!writeFlags.contains(WriteFlag.DEFERRED_SYNC)) {
-                this.lastAddConfirmed = pendingAddsSequenceHead;
+                advanceLastAddConfirmed(pendingAddsSequenceHead);
             }
 
             pendingAddOp.submitCallback(BKException.Code.OK);
@@ -2343,6 +2477,13 @@ public class LedgerHandle implements WriteHandle {
         return LedgerMetadataUtils.getCurrentEnsemble(versionedMetadata.getValue());
     }
 
+    /**
+     * Whether the reads are sent to the same bookie first, to take advantage of its read-ahead.
+     */
+    boolean isStickyReadEnabled() {
+        return stickyBookieIndex != STICKY_READ_BOOKIE_INDEX_UNSET;
+    }
+
     /**
      * Return a {@link WriteSet} suitable for reading a particular entry.
      * This will include all bookies that are part of the ensemble for the entry.
@@ -0,0 +1,175 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} that issues the first speculative request once the request
+ * took longer than a percentile of the recent latency of the same requests to the same bookie.
+ *
+ * <p>When the latency percentile is unknown, because the bookie got too few requests recently, the first
+ * speculative request is issued after the tail latency observed by the request executor if
+ * {@code useObservedLatency} is set and it knows one, like {@link DefaultSpeculativeRequestExecutionPolicy},
+ * and after {@code firstSpeculativeRequestTimeout} otherwise. The next speculative requests are issued in a
+ * backoff way, up to {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>A token bucket caps the speculative requests to a percentage of the requests: each request earns a
+ * fraction of a token, and each speculative request takes one. A speculative request without a token is
+ * not issued, and the request waits for the bookies it was already sent to, so that speculation does not
+ * amplify the load when all the bookies are slow.
+ */
+public class PercentileSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(PercentileSpeculativeRequestExecutionPolicy.class);
+
+    // Tokens are counted in hundredths of a percent of a speculative request
+    private static final long TOKENS_PER_REQUEST = 100L * 100L;
+    // Speculative requests that can be issued at once, after a period without any
+    static final long MAX_BURST = 100L;
+
+    final double percentile;
+    final int firstSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+    final float backoffMultiplier;
+    final long tokensPerRequest;
+    final boolean useObservedLatency;
+    private final AtomicLong tokens = new AtomicLong(MAX_BURST * TOKENS_PER_REQUEST);
+
+    public PercentileSpeculativeRequestExecutionPolicy(double percentile, int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier, double maxSpeculativeRequestPercent,
+            boolean useObservedLatency) {
+        this.percentile = percentile;
+        this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
+        this.backoffMultiplier = backoffMultiplier;
+        this.tokensPerRequest = Math.round(maxSpeculativeRequestPercent * 100d);
+        this.useObservedLatency = useObservedLatency;
+
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for percentile");
+        }
+        if (backoffMultiplier <= 0) {
+            throw new IllegalArgumentException("Invalid value provided for backoffMultiplier");
+        }
+        if (maxSpeculativeRequestPercent < 0) {
+            throw new IllegalArgumentException("Invalid value provided for maxSpeculativeRequestPercent");
+        }
+    }
+
+    /**
+     * Initialize the speculative request execution policy.
+     *
+     * @param scheduler The scheduler service to issue the speculative request
+     * @param requestExecutor The executor is used to issue the actual speculative requests
+     * @return ScheduledFuture, in case caller needs to cancel it.
+     */
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        addTokens(tokensPerRequest);
+        long maxTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(maxSpeculativeRequestTimeout);
+        long timeoutMicros = Math.min(TimeUnit.MILLISECONDS.toMicros(firstSpeculativeRequestTimeout),
+                maxTimeoutMicros);
+        long latencyNanos = requestExecutor.getObservedLatencyNanos(percentile);
+        if (latencyNanos <= 0 && useObservedLatency) {
+            latencyNanos = requestExecutor.getObservedTailLatencyNanos();
+        }
+        if (latencyNanos > 0) {
+            timeoutMicros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos) + 1, maxTimeoutMicros);
+        }
+        return scheduleSpeculativeRequest(scheduler, requestExecutor, Math.max(timeoutMicros, 1L));
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                          final SpeculativeRequestExecutor requestExecutor,
+                                                          final long timeoutMicros) {
+        try {
+            return scheduler.schedule(() -> {
+                if (!tryTakeToken()) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Too many speculative requests, not issuing one for {}, timeout = {} us",
+                                requestExecutor, timeoutMicros);
+                    }
+                    return;
+                }
+                ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean issueNextRequest) {
+                        if (issueNextRequest) {
+                            scheduleSpeculativeRequest(scheduler, requestExecutor,
+                                    Math.min(TimeUnit.MILLISECONDS.toMicros(maxSpeculativeRequestTimeout),
+                                            Math.round((double) timeoutMicros * backoffMultiplier)));
+                        } else {
+                            // The request completed, or there is no bookie left to send it to
+                            addTokens(TOKENS_PER_REQUEST);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable thrown) {
+                        LOG.warn("Failed to issue speculative request for {}, timeout = {} us : ",
+                                requestExecutor, timeoutMicros, thrown);
+                    }
+                }, directExecutor());
+            }, timeoutMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, timeout = {} us : ",
+                        requestExecutor, timeoutMicros, re);
+            }
+        }
+        return null;
+    }
+
+    private void addTokens(long added) {
+        long maxTokens = MAX_BURST * TOKENS_PER_REQUEST;
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(current + added, maxTokens)));
+    }
+
+    private boolean tryTakeToken() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKENS_PER_REQUEST) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKENS_PER_REQUEST));
+        return true;
+    }
+}
@@ -32,6 +32,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieLatencyEstimator;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -135,6 +137,43 @@ public abstract class ReadOpBase implements Runnable {
             } else {
                 writeSet = lh.getWriteSetForReadOperation(eId);
             }
+            // Sticky reads already pick the bookie read first, so that its read-ahead gets used
+            if (clientCtx.getConf().enableLatencyAwareReads && !lh.isStickyReadEnabled()) {
+                LatencyAwareReadSequence.moveBestOfTwoFirst(ensemble, lh.getBookiesHealthInfo(), writeSet);
+            }
+        }
+
+        /**
+         * Returns the tail latency of the first bookie of the read sequence, which the first read
+         * is sent to.
+         */
+        @Override
+        public long getObservedTailLatencyNanos() {
+            if (complete.get()) {
+                return -1L;
+            }
+            return lh.getBookiesHealthInfo().getBookieReadTailLatencyNanos(ensemble.get(writeSet.get(0)));
+        }
+
+        /**
+         * Returns the latency percentile of the reads of the same kind to the first bookie of the read
+         * sequence.
+         */
+        @Override
+        public long getObservedLatencyNanos(double percentile) {
+            if (complete.get()) {
+                return -1L;
+            }
+            BookieLatencyEstimator estimator = clientCtx.getBookieClient()
+                    .getReadLatencyEstimator(ensemble.get(writeSet.get(0)));
+            return estimator == null ? -1L : estimator.getLatencyAtPercentileNanos(getReadOpCode(), percentile);
+        }
+
+        /**
+         * The {@link BookieProtocol} op code of the reads sent for this request.
+         */
+        byte getReadOpCode() {
+            return BookieProtocol.READENTRY;
         }
 
         public void close() {
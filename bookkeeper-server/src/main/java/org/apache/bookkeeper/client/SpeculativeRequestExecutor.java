@@ -39,4 +39,25 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Returns the tail latency observed for the requests already issued, for the policies that
+     * adapt the speculative timeout to it.
+     *
+     * @return the tail latency in nanoseconds, or -1 if it is unknown
+     */
+    default long getObservedTailLatencyNanos() {
+        return -1L;
+    }
+
+    /**
+     * Returns the given percentile of the latency observed for the same requests, for the policies that
+     * issue the speculative requests after it.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or -1 if it is unknown
+     */
+    default long getObservedLatencyNanos(double percentile) {
+        return -1L;
+    }
 }
@@ -0,0 +1,68 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Stream of the entries of a sequence, returned in order as they are read.
+ *
+ * @see ReadHandle#readStream(long, long, int)
+ */
+@Public
+@Unstable
+public interface LedgerEntryStream extends AutoCloseable {
+
+    /**
+     * Whether the stream has entries that were not returned yet.
+     *
+     * @return true if {@link #nextAsync()} returns another entry
+     */
+    boolean hasNext();
+
+    /**
+     * Returns the next entry of the sequence, once it is read. The entry must be closed by the caller.
+     *
+     * <p>The calls made before the previous entries are read return the following entries, in order. If
+     * a read fails, the next entries fail with its error.
+     *
+     * @return a handle to the next entry
+     */
+    CompletableFuture<LedgerEntry> nextAsync();
+
+    /**
+     * Returns the next entry of the sequence, waiting until it is read.
+     *
+     * @return the next entry, to be closed by the caller
+     */
+    default LedgerEntry next() throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntry, BKException>result(nextAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Stop reading the sequence and release the entries read but not returned.
+     */
+    @Override
+    void close();
+}
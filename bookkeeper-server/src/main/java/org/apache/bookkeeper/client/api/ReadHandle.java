@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client.api;
 
 import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.LedgerEntryStreamImpl;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
@@ -62,6 +63,27 @@ public interface ReadHandle extends Handle {
         return future;
     }
 
+    /**
+     * Read a sequence of entries as a stream.
+     *
+     * <p>Unlike {@link #readAsync(long, long)}, the entries are not held until the whole sequence is read.
+     * They are returned in order as soon as they are read, and at most the given number of entries are
+     * read ahead of the entries returned by the stream.
+     *
+     * <p>The default implementation reads chunks of the sequence with {@link #readAsync(long, long)}.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @param maxOutstandingEntries
+     *          the maximum number of entries requested or read but not yet returned by the stream
+     * @return the stream of entries, to be closed once it is no longer used
+     */
+    default LedgerEntryStream readStream(long firstEntry, long lastEntry, int maxOutstandingEntries) {
+        return new LedgerEntryStreamImpl(this, firstEntry, lastEntry, maxOutstandingEntries);
+    }
+
     /**
      * Read a sequence of entries synchronously.
      *
@@ -0,0 +1,242 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.CreateBuilder;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+
+/**
+ * Write handle that packs the appended records into fewer entries.
+ *
+ * <p>The records are added to a batch, which is appended to the ledger as one entry once it has the
+ * maximum number of records or bytes, or once its first record has waited for the maximum delay. An
+ * entry then has one digest, one protocol header and one journal record for all its records. The
+ * position of each record is returned by {@link #appendRecordAsync(ByteBuf)}, and the records are read
+ * back through the reads of this handle, or through an {@link UnbatchingReadHandle} on the ledger.
+ *
+ * <p>The ledger must be marked for batching in its custom metadata, see {@link #create}, so that the
+ * readers unpack its entries and only its entries.
+ *
+ * <p>The batches are appended in the order of their records. The entries of a handle that numbers
+ * them itself, like {@link org.apache.bookkeeper.client.api.WriteAdvHandle}, cannot be packed.
+ */
+public class BatchingWriteHandle extends UnbatchingReadHandle implements WriteHandle {
+
+    private final WriteHandle delegate;
+    private final ByteBufAllocator allocator;
+    private final int maxRecords;
+    private final int maxBytes;
+    private final long maxDelayMicros;
+    private final ScheduledExecutorService scheduler;
+
+    // The batch being filled
+    private List<ByteBuf> records = new ArrayList<>();
+    private List<CompletableFuture<RecordPosition>> recordFutures = new ArrayList<>();
+    private int batchBytes = RecordBatchCodec.headerSize(0);
+    // Incremented whenever a batch is appended, so that a delayed flush skips the batches already appended
+    private long batchSequence = 0;
+    private CompletableFuture<Long> lastAppend = CompletableFuture.completedFuture(null);
+    private boolean closed = false;
+
+    /**
+     * Create a ledger marked for batching, and a batching handle writing to it.
+     *
+     * @param builder the builder of the ledger
+     * @param customMetadata the custom metadata of the application, may be null
+     * @param maxRecords the maximum number of records of a batch
+     * @param maxBytes the maximum size of a batch, unless it has a single record
+     * @param maxDelayMicros the maximum time a record waits for more records before its batch is appended
+     * @param scheduler the scheduler of the delayed appends
+     * @return a future with the batching handle, once the ledger is created
+     */
+    public static CompletableFuture<BatchingWriteHandle> create(CreateBuilder builder,
+                                                                Map<String, byte[]> customMetadata,
+                                                                int maxRecords, int maxBytes, long maxDelayMicros,
+                                                                ScheduledExecutorService scheduler) {
+        return builder.withCustomMetadata(batchedMetadata(customMetadata)).execute()
+                .thenApply(handle -> new BatchingWriteHandle(handle, maxRecords, maxBytes, maxDelayMicros, scheduler));
+    }
+
+    /**
+     * Create a batching handle writing to the given handle, whose ledger is marked for batching.
+     *
+     * @param delegate the handle to append the batches to
+     * @param maxRecords the maximum number of records of a batch
+     * @param maxBytes the maximum size of a batch, unless it has a single record
+     * @param maxDelayMicros the maximum time a record waits for more records before its batch is appended
+     * @param scheduler the scheduler of the delayed appends
+     */
+    public BatchingWriteHandle(WriteHandle delegate, int maxRecords, int maxBytes, long maxDelayMicros,
+                               ScheduledExecutorService scheduler) {
+        this(delegate, ByteBufAllocator.DEFAULT, maxRecords, maxBytes, maxDelayMicros, scheduler);
+    }
+
+    public BatchingWriteHandle(WriteHandle delegate, ByteBufAllocator allocator, int maxRecords, int maxBytes,
+                               long maxDelayMicros, ScheduledExecutorService scheduler) {
+        super(delegate);
+        if (!isBatched(delegate.getLedgerMetadata())) {
+            throw new IllegalArgumentException("Ledger " + delegate.getId() + " is not marked for batching");
+        }
+        this.delegate = delegate;
+        this.allocator = allocator;
+        this.maxRecords = Math.max(maxRecords, 1);
+        this.maxBytes = maxBytes;
+        this.maxDelayMicros = maxDelayMicros;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Append a record to the ledger.
+     *
+     * @param data the record, released by the handle
+     * @return a future with the position of the record, once the entry holding it is written
+     */
+    public CompletableFuture<RecordPosition> appendRecordAsync(ByteBuf data) {
+        CompletableFuture<RecordPosition> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                data.release();
+                future.completeExceptionally(new BKException.BKLedgerClosedException());
+                return future;
+            }
+            int recordBytes = data.readableBytes() + Integer.BYTES;
+            if (!records.isEmpty() && batchBytes + recordBytes > maxBytes) {
+                appendBatch();
+            }
+            records.add(data);
+            recordFutures.add(future);
+            batchBytes += recordBytes;
+            if (records.size() >= maxRecords || batchBytes >= maxBytes) {
+                appendBatch();
+            } else if (records.size() == 1) {
+                scheduleFlush();
+            }
+        }
+        return future;
+    }
+
+    public CompletableFuture<RecordPosition> appendRecordAsync(byte[] data) {
+        return appendRecordAsync(Unpooled.wrappedBuffer(data));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The data is appended as a record, and the returned entry id is the id of the entry holding it.
+     */
+    @Override
+    public CompletableFuture<Long> appendAsync(ByteBuf data) {
+        return appendRecordAsync(data).thenApply(RecordPosition::getEntryId);
+    }
+
+    /**
+     * Append the batch being filled now, without waiting for more records.
+     */
+    public synchronized void flush() {
+        if (!records.isEmpty()) {
+            appendBatch();
+        }
+    }
+
+    private synchronized void flush(long sequence) {
+        if (sequence == batchSequence) {
+            flush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (maxDelayMicros <= 0 || scheduler == null) {
+            appendBatch();
+            return;
+        }
+        long sequence = batchSequence;
+        try {
+            scheduler.schedule(() -> flush(sequence), maxDelayMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException e) {
+            appendBatch();
+        }
+    }
+
+    // Called holding the handle lock, so that the batches are appended in order
+    private void appendBatch() {
+        List<ByteBuf> batchRecords = records;
+        List<CompletableFuture<RecordPosition>> batchFutures = recordFutures;
+        records = new ArrayList<>();
+        recordFutures = new ArrayList<>();
+        batchBytes = RecordBatchCodec.headerSize(0);
+        batchSequence++;
+
+        lastAppend = delegate.appendAsync(RecordBatchCodec.pack(allocator, batchRecords));
+        lastAppend.whenComplete((entryId, cause) -> {
+            for (int i = 0; i < batchFutures.size(); i++) {
+                if (cause != null) {
+                    batchFutures.get(i).completeExceptionally(cause);
+                } else {
+                    batchFutures.get(i).complete(new RecordPosition(entryId, i));
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The batch being filled is appended first.
+     */
+    @Override
+    public CompletableFuture<Void> force() {
+        flush();
+        return delegate.force();
+    }
+
+    @Override
+    public long getLastAddPushed() {
+        return delegate.getLastAddPushed();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The batch being filled is appended, and the ledger is closed once it is written.
+     */
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Long> pending;
+        synchronized (this) {
+            flush();
+            closed = true;
+            pending = lastAppend;
+        }
+        return pending.<Void>handle((entryId, cause) -> null).thenCompose(ignore -> delegate.closeAsync());
+    }
+}
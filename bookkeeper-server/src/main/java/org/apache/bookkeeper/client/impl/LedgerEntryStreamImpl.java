@@ -0,0 +1,265 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
+import org.apache.bookkeeper.client.api.ReadHandle;
+
+/**
+ * Stream of entries read with the range reads or the batch reads of a handle.
+ *
+ * <p>The sequence is read in chunks of a quarter of the window, so that a few reads are outstanding at
+ * once. A new chunk is only requested once the entries returned by the stream leave room for it in the
+ * window, so a slow consumer slows down the reads instead of buffering the ledger. The chunks complete
+ * in any order and their entries are returned in order. When a batch read returns less entries than
+ * requested, because of its size limit, the rest of the chunk is requested again.
+ */
+public class LedgerEntryStreamImpl implements LedgerEntryStream {
+
+    private final ReadHandle handle;
+    // The maximum size of a batch read, or 0 to read the chunks with range reads
+    private final long maxBatchReadSize;
+    private final long lastEntry;
+    private final int maxOutstandingEntries;
+    private final int chunkSize;
+
+    // Guarded by this
+    private final Deque<Chunk> chunks = new ArrayDeque<>();
+    private final Deque<LedgerEntry> readEntries = new ArrayDeque<>();
+    private final Deque<CompletableFuture<LedgerEntry>> waiters = new ArrayDeque<>();
+    private long nextEntryToRequest;
+    private long nextEntryToReturn;
+    private Throwable failure = null;
+    private boolean closed = false;
+
+    /**
+     * Chunk of the sequence requested with one read.
+     */
+    private static class Chunk {
+        final long firstEntry;
+        final long lastEntry;
+        LedgerEntries entries = null;
+        Throwable failure = null;
+
+        Chunk(long firstEntry, long lastEntry) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+
+        boolean isDone() {
+            return entries != null || failure != null;
+        }
+    }
+
+    /**
+     * Create a stream reading each chunk with {@link ReadHandle#readAsync(long, long)}.
+     */
+    public LedgerEntryStreamImpl(ReadHandle handle, long firstEntry, long lastEntry, int maxOutstandingEntries) {
+        this(handle, firstEntry, lastEntry, maxOutstandingEntries, 0L);
+    }
+
+    /**
+     * Create a stream reading each chunk with {@link ReadHandle#batchReadAsync(long, int, long)}.
+     *
+     * @param maxBatchReadSize
+     *          the maximum size of the entries returned by a batch read, or 0 to use range reads
+     */
+    public LedgerEntryStreamImpl(ReadHandle handle, long firstEntry, long lastEntry, int maxOutstandingEntries,
+                                 long maxBatchReadSize) {
+        this.handle = handle;
+        this.maxBatchReadSize = maxBatchReadSize;
+        this.lastEntry = lastEntry;
+        this.maxOutstandingEntries = Math.max(maxOutstandingEntries, 1);
+        this.chunkSize = Math.max((this.maxOutstandingEntries + 3) / 4, 1);
+        this.nextEntryToRequest = firstEntry;
+        this.nextEntryToReturn = firstEntry;
+
+        List<Runnable> reads = new ArrayList<>();
+        synchronized (this) {
+            if (firstEntry < 0 || firstEntry > lastEntry) {
+                failure = new BKException.BKIncorrectParameterException();
+            } else if (lastEntry > handle.getLastAddConfirmed()) {
+                failure = new BKException.BKReadException();
+            } else {
+                requestChunks(reads);
+            }
+        }
+        reads.forEach(Runnable::run);
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return nextEntryToReturn + waiters.size() <= lastEntry && !closed;
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntry> nextAsync() {
+        CompletableFuture<LedgerEntry> waiter = new CompletableFuture<>();
+        List<Runnable> actions;
+        synchronized (this) {
+            if (closed) {
+                waiter.completeExceptionally(new CancellationException("The stream is closed"));
+                return waiter;
+            }
+            if (nextEntryToReturn + waiters.size() > lastEntry) {
+                waiter.completeExceptionally(new NoSuchElementException());
+                return waiter;
+            }
+            waiters.add(waiter);
+            actions = completeWaiters();
+        }
+        actions.forEach(Runnable::run);
+        return waiter;
+    }
+
+    @Override
+    public void close() {
+        List<CompletableFuture<LedgerEntry>> cancelled;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            readEntries.forEach(LedgerEntry::close);
+            readEntries.clear();
+            for (Chunk chunk : chunks) {
+                if (chunk.entries != null) {
+                    chunk.entries.close();
+                }
+            }
+            chunks.clear();
+            cancelled = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        cancelled.forEach(waiter -> waiter.completeExceptionally(new CancellationException("The stream is closed")));
+    }
+
+    // Called holding the lock, the reads are added to the given actions
+    private void requestChunks(List<Runnable> actions) {
+        while (failure == null && nextEntryToRequest <= lastEntry) {
+            long count = Math.min(chunkSize, lastEntry - nextEntryToRequest + 1);
+            if (nextEntryToRequest - nextEntryToReturn + count > maxOutstandingEntries) {
+                // Wait for room for a whole chunk, rather than sending reads of a few entries
+                break;
+            }
+            Chunk chunk = new Chunk(nextEntryToRequest, nextEntryToRequest + count - 1);
+            nextEntryToRequest += count;
+            chunks.add(chunk);
+            actions.add(() -> read(chunk));
+        }
+    }
+
+    private void read(Chunk chunk) {
+        CompletableFuture<LedgerEntries> future;
+        if (maxBatchReadSize > 0) {
+            future = handle.batchReadAsync(chunk.firstEntry, (int) (chunk.lastEntry - chunk.firstEntry + 1),
+                    maxBatchReadSize);
+        } else {
+            future = handle.readAsync(chunk.firstEntry, chunk.lastEntry);
+        }
+        future.whenComplete((entries, cause) -> readComplete(chunk, entries, cause));
+    }
+
+    private void readComplete(Chunk chunk, LedgerEntries entries, Throwable cause) {
+        List<Runnable> actions;
+        synchronized (this) {
+            if (closed) {
+                if (entries != null) {
+                    entries.close();
+                }
+                return;
+            }
+            chunk.entries = entries;
+            chunk.failure = cause;
+            actions = completeWaiters();
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Move the entries of the chunks read at the head of the sequence to the entries to return, hand
+     * them to the waiters, and request the next chunks. Called holding the lock, the returned actions
+     * complete the waiters and send the reads, and must be run once the lock is released.
+     */
+    private List<Runnable> completeWaiters() {
+        List<Runnable> actions = new ArrayList<>();
+        while (failure == null && !chunks.isEmpty() && chunks.peekFirst().isDone()) {
+            Chunk chunk = chunks.pollFirst();
+            if (chunk.failure != null) {
+                failure = chunk.failure;
+                break;
+            }
+            long nextEntry = chunk.firstEntry;
+            try {
+                Iterator<LedgerEntry> iterator = chunk.entries.iterator();
+                while (iterator.hasNext() && nextEntry <= chunk.lastEntry) {
+                    LedgerEntry entry = iterator.next();
+                    if (entry.getEntryId() != nextEntry) {
+                        failure = new BKException.BKUnexpectedConditionException();
+                        break;
+                    }
+                    // The entries of the read are released with it
+                    readEntries.add(entry.duplicate());
+                    nextEntry++;
+                }
+            } finally {
+                chunk.entries.close();
+            }
+            if (failure == null && nextEntry == chunk.firstEntry) {
+                // Nothing was read, it would be requested again forever
+                failure = new BKException.BKReadException();
+            } else if (failure == null && nextEntry <= chunk.lastEntry) {
+                // Request the rest of the chunk, ahead of the chunks requested after it
+                Chunk rest = new Chunk(nextEntry, chunk.lastEntry);
+                chunks.addFirst(rest);
+                actions.add(() -> read(rest));
+            }
+        }
+
+        while (!waiters.isEmpty() && !readEntries.isEmpty()) {
+            CompletableFuture<LedgerEntry> waiter = waiters.poll();
+            LedgerEntry entry = readEntries.poll();
+            nextEntryToReturn++;
+            actions.add(() -> waiter.complete(entry));
+        }
+        if (failure != null) {
+            Throwable cause = failure;
+            while (!waiters.isEmpty()) {
+                CompletableFuture<LedgerEntry> waiter = waiters.poll();
+                actions.add(() -> waiter.completeExceptionally(cause));
+            }
+        } else {
+            requestChunks(actions);
+        }
+        return actions;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+
+/**
+ * Format of the entries that pack several records.
+ *
+ * <pre>
+ * magic (int) | record count (int) | record lengths (int each) | records
+ * </pre>
+ *
+ * <p>An entry that does not start with the magic, or whose header does not match its length, is read
+ * as a single record. The format has no other marker, so only the entries of the ledgers marked for
+ * batching are unpacked, see {@link UnbatchingReadHandle#BATCHED_METADATA_KEY}.
+ */
+final class RecordBatchCodec {
+
+    static final int MAGIC = 0xBB7C4E01;
+
+    private RecordBatchCodec() {}
+
+    static int headerSize(int numRecords) {
+        return (2 + numRecords) * Integer.BYTES;
+    }
+
+    /**
+     * Pack the given records into an entry, without copying them. The records are released with the
+     * returned buffer.
+     */
+    static ByteBuf pack(ByteBufAllocator allocator, List<ByteBuf> records) {
+        ByteBuf header = allocator.buffer(headerSize(records.size()));
+        header.writeInt(MAGIC);
+        header.writeInt(records.size());
+        for (ByteBuf record : records) {
+            header.writeInt(record.readableBytes());
+        }
+        CompositeByteBuf entry = allocator.compositeBuffer(records.size() + 1);
+        entry.addComponent(true, header);
+        for (ByteBuf record : records) {
+            entry.addComponent(true, record);
+        }
+        return entry;
+    }
+
+    /**
+     * Unpack the records of an entry. The returned entries hold a reference to the buffer of the
+     * given entry, which is not closed.
+     */
+    static List<LedgerEntry> unpack(LedgerEntry entry) {
+        ByteBuf buf = entry.getEntryBuffer();
+        int numRecords = numRecords(buf);
+        if (numRecords < 0) {
+            return Collections.singletonList(LedgerEntryImpl.create(entry.getLedgerId(), entry.getEntryId(),
+                    buf.readableBytes(), buf.retainedSlice()));
+        }
+        List<LedgerEntry> records = new ArrayList<>(numRecords);
+        int lengthIndex = buf.readerIndex() + 2 * Integer.BYTES;
+        int recordIndex = buf.readerIndex() + headerSize(numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            int length = buf.getInt(lengthIndex);
+            records.add(LedgerEntryImpl.create(entry.getLedgerId(), entry.getEntryId(), length,
+                    buf.retainedSlice(recordIndex, length)));
+            lengthIndex += Integer.BYTES;
+            recordIndex += length;
+        }
+        return records;
+    }
+
+    /**
+     * Returns the number of records packed in the buffer, or -1 if it is not a valid batch.
+     */
+    private static int numRecords(ByteBuf buf) {
+        int size = buf.readableBytes();
+        int start = buf.readerIndex();
+        if (size < headerSize(0) || buf.getInt(start) != MAGIC) {
+            return -1;
+        }
+        int numRecords = buf.getInt(start + Integer.BYTES);
+        if (numRecords < 0 || numRecords > (size - headerSize(0)) / Integer.BYTES) {
+            return -1;
+        }
+        long recordsSize = 0;
+        for (int i = 0; i < numRecords; i++) {
+            int length = buf.getInt(start + headerSize(i));
+            if (length < 0) {
+                return -1;
+            }
+            recordsSize += length;
+        }
+        return recordsSize == size - headerSize(numRecords) ? numRecords : -1;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.ReadHandle;
+
+/**
+ * View of a ledger written with a {@link BatchingWriteHandle}, that reads the records packed in its
+ * entries instead of the entries.
+ *
+ * <p>The reads return one {@link LedgerEntry} per record, in the order they were appended. The
+ * records of an entry have the id of the entry, and {@link LedgerEntries#getEntry(long)} returns the
+ * first record of the entry.
+ *
+ * <p>Only the ledgers created for batching, whose custom metadata has {@link #BATCHED_METADATA_KEY},
+ * are unpacked. The entries of any other ledger are read as they were written, whatever their content.
+ */
+public class UnbatchingReadHandle implements ReadHandle {
+
+    /**
+     * Custom metadata key marking the ledgers whose entries pack records.
+     */
+    public static final String BATCHED_METADATA_KEY = "bookkeeper.record-batch";
+
+    private static final byte[] BATCHED_METADATA_VALUE = "v1".getBytes(UTF_8);
+
+    private final ReadHandle delegate;
+    private final boolean batched;
+
+    public UnbatchingReadHandle(ReadHandle delegate) {
+        this.delegate = delegate;
+        this.batched = isBatched(delegate.getLedgerMetadata());
+    }
+
+    /**
+     * Returns whether the entries of a ledger pack records.
+     *
+     * @param metadata the metadata of the ledger
+     * @return true if the ledger was created for batching
+     */
+    public static boolean isBatched(LedgerMetadata metadata) {
+        return metadata != null && metadata.getCustomMetadata().containsKey(BATCHED_METADATA_KEY);
+    }
+
+    /**
+     * Returns the given custom metadata with the mark of a ledger created for batching.
+     *
+     * @param customMetadata the custom metadata of the application, may be null
+     * @return a new map with the custom metadata and the mark
+     */
+    public static Map<String, byte[]> batchedMetadata(Map<String, byte[]> customMetadata) {
+        Map<String, byte[]> metadata = customMetadata == null ? new HashMap<>() : new HashMap<>(customMetadata);
+        metadata.put(BATCHED_METADATA_KEY, BATCHED_METADATA_VALUE);
+        return metadata;
+    }
+
+    /**
+     * Unpack the records of an entry, for instance the entry returned by
+     * {@link #readLastAddConfirmedAndEntryAsync(long, long, boolean)}. The entry is not closed, and is
+     * returned as a single record if the ledger was not created for batching.
+     *
+     * @param entry the entry to unpack
+     * @return the records of the entry, to be closed by the caller
+     */
+    public List<LedgerEntry> unpack(LedgerEntry entry) {
+        if (!batched) {
+            return Collections.singletonList(entry.duplicate());
+        }
+        return RecordBatchCodec.unpack(entry);
+    }
+
+    private LedgerEntries unpack(LedgerEntries entries) {
+        if (!batched) {
+            return entries;
+        }
+        List<LedgerEntry> records = new ArrayList<>();
+        try {
+            for (LedgerEntry entry : entries) {
+                records.addAll(RecordBatchCodec.unpack(entry));
+            }
+        } finally {
+            entries.close();
+        }
+        return new UnpackedEntries(records);
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readAsync(long firstEntry, long lastEntry) {
+        return delegate.readAsync(firstEntry, lastEntry).thenApply(this::unpack);
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        return delegate.batchReadAsync(startEntry, maxCount, maxSize).thenApply(this::unpack);
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readUnconfirmedAsync(long firstEntry, long lastEntry) {
+        return delegate.readUnconfirmedAsync(firstEntry, lastEntry).thenApply(this::unpack);
+    }
+
+    @Override
+    public CompletableFuture<Long> readLastAddConfirmedAsync() {
+        return delegate.readLastAddConfirmedAsync();
+    }
+
+    @Override
+    public CompletableFuture<Long> tryReadLastAddConfirmedAsync() {
+        return delegate.tryReadLastAddConfirmedAsync();
+    }
+
+    @Override
+    public long getLastAddConfirmed() {
+        return delegate.getLastAddConfirmed();
+    }
+
+    @Override
+    public long getLength() {
+        return delegate.getLength();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The entry is returned as it was written, see {@link #unpack(LedgerEntry)} to read its records.
+     */
+    @Override
+    public CompletableFuture<LastConfirmedAndEntry> readLastAddConfirmedAndEntryAsync(long entryId,
+                                                                                      long timeOutInMillis,
+                                                                                      boolean parallel) {
+        return delegate.readLastAddConfirmedAndEntryAsync(entryId, timeOutInMillis, parallel);
+    }
+
+    @Override
+    public long getId() {
+        return delegate.getId();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        return delegate.closeAsync();
+    }
+
+    @Override
+    public LedgerMetadata getLedgerMetadata() {
+        return delegate.getLedgerMetadata();
+    }
+
+    /**
+     * Records unpacked from ledger entries.
+     */
+    private static class UnpackedEntries implements LedgerEntries {
+        private List<LedgerEntry> records;
+
+        UnpackedEntries(List<LedgerEntry> records) {
+            this.records = records;
+        }
+
+        @Override
+        public LedgerEntry getEntry(long entryId) {
+            checkNotNull(records, "entries have been closed");
+            for (LedgerEntry record : records) {
+                if (record.getEntryId() == entryId) {
+                    return record;
+                }
+            }
+            throw new IndexOutOfBoundsException("entry " + entryId + " was not read");
+        }
+
+        @Override
+        public Iterator<LedgerEntry> iterator() {
+            checkNotNull(records, "entries have been closed");
+            return records.iterator();
+        }
+
+        @Override
+        public void close() {
+            if (records != null) {
+                records.forEach(LedgerEntry::close);
+                records = null;
+            }
+        }
+    }
+}
@@ -93,6 +93,8 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String STORE_SYSTEMTIME_AS_LEDGER_CREATION_TIME = "storeSystemTimeAsLedgerCreationTime";
 
     protected static final String ENABLE_BUSY_WAIT = "enableBusyWait";
+    protected static final String BUSY_WAIT_SPIN_ITERATIONS = "busyWaitSpinIterations";
+    protected static final String ENABLE_IO_URING = "enableIoUring";
     protected static final String ENABLE_HEALTH_CHECK = "enableHealthCheck";
 
     // Metastore settings, only being used when LEDGER_MANAGER_FACTORY_CLASS is MSLedgerManagerFactory
@@ -1207,6 +1209,58 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Get the number of consecutive polls without events after which a busy-waiting Netty IO thread
+     * blocks until the next event, instead of spinning. It spins again as soon as it gets events.
+     *
+     * <p>Default is 0, the IO threads always spin.
+     *
+     * @return the number of empty polls before blocking, 0 to never block
+     * @see #isBusyWaitEnabled()
+     */
+    public int getBusyWaitSpinIterations() {
+        return getInt(BUSY_WAIT_SPIN_ITERATIONS, 0);
+    }
+
+    /**
+     * Set the number of consecutive polls without events after which a busy-waiting Netty IO thread
+     * blocks until the next event. This keeps the latency of busy-waiting under load, without spending
+     * a core per IO thread when there is no traffic. It applies to the epoll transport only.
+     *
+     * @param spinIterations
+     *            the number of empty polls before blocking, 0 to never block
+     * @see #getBusyWaitSpinIterations()
+     */
+    public T setBusyWaitSpinIterations(int spinIterations) {
+        setProperty(BUSY_WAIT_SPIN_ITERATIONS, spinIterations);
+        return getThis();
+    }
+
+    /**
+     * Return whether the Netty IO threads use the io_uring transport, when it is available.
+     *
+     * <p>Default is false. The transport can also be enabled with the {@code enable.io_uring} system
+     * property, in which case it must be available.
+     *
+     * @return the value of the option
+     */
+    public boolean isIoUringEnabled() {
+        return getBoolean(ENABLE_IO_URING, false);
+    }
+
+    /**
+     * Option to use the io_uring transport for the Netty IO threads. If io_uring is not available, the
+     * epoll transport is used instead.
+     *
+     * @param ioUringEnabled
+     *            if enabled, use the io_uring transport when it is available
+     * @see #isIoUringEnabled()
+     */
+    public T setIoUringEnabled(boolean ioUringEnabled) {
+        setProperty(ENABLE_IO_URING, ioUringEnabled);
+        return getThis();
+    }
+
     /**
      * Return the flag indicating whether to limit stats logging.
      *
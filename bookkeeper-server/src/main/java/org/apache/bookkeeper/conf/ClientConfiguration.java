@@ -99,6 +99,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
     protected static final String USE_V2_WIRE_PROTOCOL = "useV2WireProtocol";
     protected static final String NETTY_USE_POOLED_BUFFERS = "nettyUsePooledBuffers";
+    protected static final String CLIENT_WRITE_COALESCING_ENABLED = "clientWriteCoalescingEnabled";
+    protected static final String CLIENT_WRITE_COALESCING_MAX_OPS = "clientWriteCoalescingMaxOps";
+    protected static final String CLIENT_WRITE_COALESCING_MAX_BYTES = "clientWriteCoalescingMaxBytes";
 
     // Read Parameters
     protected static final String READ_TIMEOUT = "readTimeout";
@@ -111,9 +114,13 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadLACTimeoutBackoffMultiplier";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
+    protected static final String SPECULATIVE_READ_LATENCY_WINDOW_MS = "speculativeReadLatencyWindowMs";
+    protected static final String SPECULATIVE_READ_MAX_RATE_PERCENT = "speculativeReadMaxRatePercent";
     protected static final String ENABLE_PARALLEL_RECOVERY_READ = "enableParallelRecoveryRead";
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
+    protected static final String LATENCY_AWARE_READS_ENABLED = "latencyAwareReadsEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
     protected static final String RECOVERY_BATCH_READ_ENABLED = "recoveryBatchReadEnabled";
     // Add Parameters
@@ -558,6 +565,71 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Are the v2 add and read requests to a bookie coalesced. The requests sent to a channel while its
+     * event loop is busy are then written in one event loop task and flushed together, instead of one
+     * task and one flush per request. Fencing, recovery and high priority requests are never coalesced.
+     *
+     * @return whether the v2 add and read requests are coalesced
+     */
+    public boolean getClientWriteCoalescingEnabled() {
+        return getBoolean(CLIENT_WRITE_COALESCING_ENABLED, true);
+    }
+
+    /**
+     * Set whether the v2 add and read requests to a bookie are coalesced.
+     *
+     * @param enabled
+     *          true to coalesce the v2 add and read requests
+     * @return client configuration
+     */
+    public ClientConfiguration setClientWriteCoalescingEnabled(boolean enabled) {
+        setProperty(CLIENT_WRITE_COALESCING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of coalesced requests written to a channel before flushing it.
+     *
+     * @return the maximum number of requests per flush
+     */
+    public int getClientWriteCoalescingMaxOps() {
+        return getInt(CLIENT_WRITE_COALESCING_MAX_OPS, 1024);
+    }
+
+    /**
+     * Set the maximum number of coalesced requests written to a channel before flushing it.
+     *
+     * @param maxOps
+     *          the maximum number of requests per flush
+     * @return client configuration
+     */
+    public ClientConfiguration setClientWriteCoalescingMaxOps(int maxOps) {
+        setProperty(CLIENT_WRITE_COALESCING_MAX_OPS, maxOps);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of bytes of coalesced requests written to a channel before flushing it.
+     *
+     * @return the maximum number of bytes per flush
+     */
+    public int getClientWriteCoalescingMaxBytes() {
+        return getInt(CLIENT_WRITE_COALESCING_MAX_BYTES, 256 * 1024);
+    }
+
+    /**
+     * Set the maximum number of bytes of coalesced requests written to a channel before flushing it.
+     *
+     * @param maxBytes
+     *          the maximum number of bytes per flush
+     * @return client configuration
+     */
+    public ClientConfiguration setClientWriteCoalescingMaxBytes(int maxBytes) {
+        setProperty(CLIENT_WRITE_COALESCING_MAX_BYTES, maxBytes);
+        return this;
+    }
+
     /**
      * Get num channels per bookie.
      *
@@ -1102,6 +1174,87 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the percentile of the read latency of a bookie after which a speculative read is sent.
+     *
+     * @return the percentile, or 0 if speculative reads are sent after the configured timeouts
+     * @see #setSpeculativeReadLatencyPercentile(double)
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 0.0);
+    }
+
+    /**
+     * Set the percentile of the read latency of a bookie after which a speculative read is sent.
+     *
+     * <p>If it is set, the client keeps a sketch of the recent latency distribution of the reads and of the
+     * batch reads of each bookie, and a speculative read of an entry is sent once the bookie read first
+     * took longer than this percentile of its reads, for example 99 for the 99th percentile. The first
+     * speculative read timeout is used for the bookies with too few recent reads, and the next speculative
+     * reads are sent with the usual backoff, up to the max speculative read timeout. The speculative
+     * reads are also capped to a percentage of the reads, see {@link #setSpeculativeReadMaxRatePercent(double)}.
+     *
+     * <p>With {@link #setLatencyAwareReadsEnabled(boolean) latency aware reads}, this percentile takes precedence
+     * over the tail latency for the first speculative read, and the tail latency is only used for the bookies
+     * with too few recent reads. Both come from the same per bookie latency tracker.
+     *
+     * <p>Speculative reads must be enabled, with a first speculative read timeout greater than 0.
+     *
+     * @param percentile the percentile, between 0 and 100, or 0 to use the configured timeouts
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the time window of the read latencies used to compute the speculative read percentile.
+     *
+     * @return the window in milliseconds
+     */
+    public int getSpeculativeReadLatencyWindowMs() {
+        return getInt(SPECULATIVE_READ_LATENCY_WINDOW_MS, 10000);
+    }
+
+    /**
+     * Set the time window of the read latencies used to compute the speculative read percentile. The
+     * percentile is computed from the reads of the last one to two windows.
+     *
+     * @param windowMs the window in milliseconds
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setSpeculativeReadLatencyWindowMs(int windowMs) {
+        setProperty(SPECULATIVE_READ_LATENCY_WINDOW_MS, windowMs);
+        return this;
+    }
+
+    /**
+     * Get the maximum percentage of the reads that can be sent as speculative reads, when they are sent
+     * after a percentile of the read latency.
+     *
+     * @return the maximum percentage of speculative reads
+     */
+    public double getSpeculativeReadMaxRatePercent() {
+        return getDouble(SPECULATIVE_READ_MAX_RATE_PERCENT, 10.0);
+    }
+
+    /**
+     * Set the maximum percentage of the reads that can be sent as speculative reads, when they are sent
+     * after a percentile of the read latency.
+     *
+     * <p>Each read earns a fraction of a speculative read, so that the speculative reads do not add more
+     * than this percentage of load when all the bookies are slow, like during an incident. A speculative
+     * read over the cap is not sent, and the read waits for the bookies it was already sent to.
+     *
+     * @param percent the maximum percentage of speculative reads
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setSpeculativeReadMaxRatePercent(double percent) {
+        setProperty(SPECULATIVE_READ_MAX_RATE_PERCENT, percent);
+        return this;
+    }
+
     /**
      * Whether to enable parallel reading in recovery read.
      *
@@ -1174,6 +1327,34 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If latency aware reads are enabled or not.
+     *
+     * @return true if latency aware reads are enabled, otherwise false.
+     */
+    public boolean isLatencyAwareReadsEnabled() {
+        return getBoolean(LATENCY_AWARE_READS_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable latency aware reads.
+     *
+     * <p>If this flag is enabled, the client tracks the read latency of each bookie, as a moving average
+     * and a deviation. The first bookie to read an entry from is then chosen among two random bookies of
+     * its read sequence without recent failures, as the one with the lower latency times pending
+     * requests, so that a slow but healthy bookie gets less reads. The first speculative read timeout
+     * is also taken from the tail latency of that bookie, capped by the max speculative read timeout.
+     * When a {@link #setSpeculativeReadLatencyPercentile(double) speculative read latency percentile} is
+     * set, that percentile is used instead, and the tail latency only when the percentile is unknown.
+     *
+     * @param enabled the flag to enable/disable latency aware reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setLatencyAwareReadsEnabled(boolean enabled) {
+        setProperty(LATENCY_AWARE_READS_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * If read operation should be sticky to a single bookie or not.
      *
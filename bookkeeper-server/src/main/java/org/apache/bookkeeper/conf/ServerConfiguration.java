@@ -107,6 +107,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
     protected static final String ENTRY_LOCATION_COMPACTION_INTERVAL = "entryLocationCompactionInterval";
+    protected static final String COMPACTION_MAX_CONCURRENT_WORKERS = "compactionMaxConcurrentWorkers";
+    protected static final String COMPACTION_GLOBAL_THROTTLE = "compactionGlobalThrottle";
+    protected static final String COMPACTION_COST_BENEFIT_SELECTION = "compactionCostBenefitSelection";
+    protected static final String COMPACTION_USE_ENTRY_LOCATION_INDEX = "compactionUseEntryLocationIndex";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -118,6 +122,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String VERIFY_METADATA_ON_GC = "verifyMetadataOnGC";
     protected static final String GC_ENTRYLOGMETADATA_CACHE_ENABLED = "gcEntryLogMetadataCacheEnabled";
     protected static final String GC_ENTRYLOG_METADATA_CACHE_PATH = "gcEntryLogMetadataCachePath";
+    protected static final String GC_ENTRYLOG_METADATA_OFFHEAP_ENABLED = "gcEntryLogMetadataOffHeapEnabled";
+    protected static final String GC_ENTRYLOG_METADATA_OFFHEAP_MAX_SIZE_MB = "gcEntryLogMetadataOffHeapMaxSizeMb";
     protected static final String USE_TARGET_ENTRYLOG_SIZE_FOR_GC = "useTargetEntryLogSizeForGc";
     // Scrub Parameters
     protected static final String LOCAL_SCRUB_PERIOD = "localScrubInterval";
@@ -144,7 +150,12 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
+    protected static final String JOURNAL_ADAPTIVE_GROUP_COMMIT = "journalAdaptiveGroupCommit";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
+    protected static final String JOURNAL_DIRECT_IO_ENABLED = "journalDirectIOEnabled";
+    protected static final String JOURNAL_ADD_BATCHING_ENABLED = "journalAddBatchingEnabled";
+    protected static final String JOURNAL_LOAD_AWARE_ASSIGNMENT = "journalLoadAwareAssignment";
+    protected static final String JOURNAL_LOAD_AWARE_IDLE_TIME_MS = "journalLoadAwareIdleTimeMs";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
@@ -180,6 +191,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String SERVER_SOCK_LINGER = "serverTcpLinger";
     protected static final String SERVER_WRITEBUFFER_LOW_WATER_MARK = "serverWriteBufferLowWaterMark";
     protected static final String SERVER_WRITEBUFFER_HIGH_WATER_MARK = "serverWriteBufferHighWaterMark";
+    protected static final String SERVER_ZERO_COPY_V2_CODEC_ENABLED = "serverZeroCopyV2CodecEnabled";
+    protected static final String SERVER_ZERO_COPY_V3_CODEC_ENABLED = "serverZeroCopyV3CodecEnabled";
 
     protected static final String SERVER_NUM_ACCEPTOR_THREADS = "serverNumAcceptorThreads";
     protected static final String SERVER_NUM_IO_THREADS = "serverNumIOThreads";
@@ -231,12 +244,15 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String BATCH_REQUEST_DISPATCH_ENABLED = "batchRequestDispatchEnabled";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
     protected static final String REQUEST_TIMER_NO_OF_TICKS = "requestTimerNumTicks";
 
     protected static final String READ_BUFFER_SIZE = "readBufferSizeBytes";
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ENTRY_LOG_MMAP_MAX_MAPPED_LOGS = "entryLogMmapMaxMappedLogs";
     protected static final String WRITE_BUFFER_SIZE = "writeBufferSizeBytes";
     // Whether the bookie should use its hostname or ipaddress for the
     // registration.
@@ -345,6 +361,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         "maxOperationNumbersInSingleRocksdbWriteBatch";
 
     protected static final String SKIP_REPLAY_JOURNAL_INVALID_RECORD = "skipReplayJournalInvalidRecord";
+    protected static final String JOURNAL_REPLAY_PARALLEL_ENABLED = "journalReplayParallelEnabled";
+    protected static final String JOURNAL_REPLAY_APPLY_THREADS = "journalReplayApplyThreads";
+    protected static final String JOURNAL_REPLAY_QUEUE_SIZE = "journalReplayQueueSize";
 
     protected static final String MAX_BATCH_READ_SIZE = "maxBatchReadSize";
     protected static final int DEFAULT_MAX_BATCH_READ_SIZE = 5 * 1024 * 1024; // 5MB
@@ -566,6 +585,48 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get whether the bookie keeps the entrylogMetadataMap off-heap, when it is not persisted.
+     *
+     * @return use off-heap entry-log metadata map
+     */
+    public boolean isGcEntryLogMetadataOffHeapEnabled() {
+        return this.getBoolean(GC_ENTRYLOG_METADATA_OFFHEAP_ENABLED, false);
+    }
+
+    /**
+     * Set whether the bookie keeps the entrylogMetadataMap off-heap. It has no effect if
+     * gcEntryLogMetadataCacheEnabled is true.
+     *
+     * @param gcEntryLogMetadataOffHeapEnabled
+     * @return server configuration
+     */
+    public ServerConfiguration setGcEntryLogMetadataOffHeapEnabled(boolean gcEntryLogMetadataOffHeapEnabled) {
+        this.setProperty(GC_ENTRYLOG_METADATA_OFFHEAP_ENABLED, gcEntryLogMetadataOffHeapEnabled);
+        return this;
+    }
+
+    /**
+     * Get the size of direct memory the off-heap entrylogMetadataMap of a ledger directory may use,
+     * beyond which the oldest metadata is moved to a memory-mapped file under the metadata cache path.
+     *
+     * @return max size in MB of the off-heap entry-log metadata map in memory
+     */
+    public long getGcEntryLogMetadataOffHeapMaxSizeMb() {
+        return this.getLong(GC_ENTRYLOG_METADATA_OFFHEAP_MAX_SIZE_MB, 64);
+    }
+
+    /**
+     * Set the size of direct memory the off-heap entrylogMetadataMap of a ledger directory may use.
+     *
+     * @param gcEntryLogMetadataOffHeapMaxSizeMb
+     * @return server configuration
+     */
+    public ServerConfiguration setGcEntryLogMetadataOffHeapMaxSizeMb(long gcEntryLogMetadataOffHeapMaxSizeMb) {
+        this.setProperty(GC_ENTRYLOG_METADATA_OFFHEAP_MAX_SIZE_MB, gcEntryLogMetadataOffHeapMaxSizeMb);
+        return this;
+    }
+
     public boolean isUseTargetEntryLogSizeForGc() {
         return getBoolean(USE_TARGET_ENTRYLOG_SIZE_FOR_GC, false);
     }
@@ -1519,6 +1580,52 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the v2 protocol codec writes the header of read responses in a small buffer followed by
+     * the entry itself, instead of copying small entries into the response, and reuses the master key
+     * of the previous request of a connection when it is the same.
+     *
+     * @return whether the zero copy v2 codec is enabled
+     */
+    public boolean getServerZeroCopyV2CodecEnabled() {
+        return getBoolean(SERVER_ZERO_COPY_V2_CODEC_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the zero copy v2 codec.
+     *
+     * @param enabled
+     *          whether the zero copy v2 codec is enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setServerZeroCopyV2CodecEnabled(boolean enabled) {
+        setProperty(SERVER_ZERO_COPY_V2_CODEC_ENABLED, Boolean.toString(enabled));
+        return this;
+    }
+
+    /**
+     * Whether the v3 protocol codec avoids copying the entries: the entries of add requests are kept in
+     * the buffer they were received in, and the entries of read responses are written on the channel
+     * from the buffer they were read in, if they are not smaller than 16KB.
+     *
+     * @return whether the zero copy v3 codec is enabled
+     */
+    public boolean getServerZeroCopyV3CodecEnabled() {
+        return getBoolean(SERVER_ZERO_COPY_V3_CODEC_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the zero copy v3 codec.
+     *
+     * @param enabled
+     *          whether the zero copy v3 codec is enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setServerZeroCopyV3CodecEnabled(boolean enabled) {
+        setProperty(SERVER_ZERO_COPY_V3_CODEC_ENABLED, Boolean.toString(enabled));
+        return this;
+    }
+
     /**
      * Get the number of IO threads. This is the number of
      * threads used by Netty to handle TCP connections.
@@ -1846,6 +1953,116 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the maximum number of ledger directories that compact entry logs at the same time.
+     *
+     * <p>Each ledger directory has its own compaction worker. Workers take a slot for each entry log
+     * they compact, so the directories take turns when there are more directories than slots.
+     * If it is set to less than or equal to zero, the directories compact without limit.
+     *
+     * @return the maximum number of concurrent compaction workers
+     */
+    public int getCompactionMaxConcurrentWorkers() {
+        return getInt(COMPACTION_MAX_CONCURRENT_WORKERS, 0);
+    }
+
+    /**
+     * Set the maximum number of ledger directories that compact entry logs at the same time.
+     *
+     * @see #getCompactionMaxConcurrentWorkers()
+     *
+     * @param maxWorkers
+     *          the maximum number of concurrent compaction workers
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionMaxConcurrentWorkers(int maxWorkers) {
+        setProperty(COMPACTION_MAX_CONCURRENT_WORKERS, maxWorkers);
+        return this;
+    }
+
+    /**
+     * Get whether the compaction rate applies to the whole bookie instead of each ledger directory.
+     *
+     * <p>When enabled, the compaction workers of all the ledger directories share a single rate
+     * limiter, set by {@link #getCompactionRateByEntries()} or {@link #getCompactionRateByBytes()}.
+     *
+     * @return true if the compaction rate is shared by all the ledger directories
+     */
+    public boolean isCompactionGlobalThrottle() {
+        return getBoolean(COMPACTION_GLOBAL_THROTTLE, false);
+    }
+
+    /**
+     * Set whether the compaction rate applies to the whole bookie instead of each ledger directory.
+     *
+     * @see #isCompactionGlobalThrottle()
+     *
+     * @param enabled
+     *          whether to share the compaction rate between the ledger directories
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionGlobalThrottle(boolean enabled) {
+        setProperty(COMPACTION_GLOBAL_THROTTLE, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether compaction picks entry logs by cost-benefit instead of by usage.
+     *
+     * <p>By default the entry logs below the compaction threshold are compacted from the lowest
+     * usage to the highest. With cost-benefit selection, they are ordered by
+     * {@code (1 - usage) * age / (1 + usage)}, so older logs, whose remaining data is less likely to
+     * be deleted soon, are compacted before younger logs with a similar usage.
+     *
+     * @return true if entry logs are picked by cost-benefit
+     */
+    public boolean isCompactionCostBenefitSelection() {
+        return getBoolean(COMPACTION_COST_BENEFIT_SELECTION, false);
+    }
+
+    /**
+     * Set whether compaction picks entry logs by cost-benefit instead of by usage.
+     *
+     * @see #isCompactionCostBenefitSelection()
+     *
+     * @param enabled
+     *          whether to pick entry logs by cost-benefit
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionCostBenefitSelection(boolean enabled) {
+        setProperty(COMPACTION_COST_BENEFIT_SELECTION, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether compaction reads only the live entries of an entry log, found through the
+     * entry location index of the ledger storage, instead of scanning the whole entry log.
+     *
+     * <p>The compaction I/O is then proportional to the live data of the entry log rather than to
+     * its size. It only applies to ledger storages with an entry location index, like DbLedgerStorage.
+     * When the index does not account for all the data of the active ledgers of an entry log, the
+     * entry log is scanned as usual.
+     *
+     * @return true if compaction reads the live entries through the entry location index
+     */
+    public boolean isCompactionUseEntryLocationIndex() {
+        return getBoolean(COMPACTION_USE_ENTRY_LOCATION_INDEX, false);
+    }
+
+    /**
+     * Set whether compaction reads only the live entries of an entry log through the entry location index.
+     *
+     * @see #isCompactionUseEntryLocationIndex()
+     *
+     * @param enabled
+     *          whether to read the live entries through the entry location index
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionUseEntryLocationIndex(boolean enabled) {
+        setProperty(COMPACTION_USE_ENTRY_LOCATION_INDEX, enabled);
+        return this;
+    }
+
     /**
      * Get whether force compaction is allowed when disk full or almost full.
      *
@@ -1955,6 +2172,52 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether entries of sealed entry logs are read from a memory mapping of the log, and returned
+     * without being copied, instead of being read through a BufferedReadChannel.
+     * Default is false.
+     *
+     * @return true if entry logs are memory mapped for reads
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable reading the entries of sealed entry logs from memory mappings.
+     *
+     * @param enabled
+     *          whether to memory map sealed entry logs for reads
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_MMAP_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of entry logs mapped in memory at once. Once the limit is reached, the least
+     * recently used mapping is dropped, and unmapped once the entries read from it are released.
+     * Default is 64.
+     *
+     * @return the maximum number of mapped entry logs
+     */
+    public int getEntryLogMmapMaxMappedLogs() {
+        return getInt(ENTRY_LOG_MMAP_MAX_MAPPED_LOGS, 64);
+    }
+
+    /**
+     * Set the maximum number of entry logs mapped in memory at once.
+     *
+     * @param maxMappedLogs
+     *          the maximum number of mapped entry logs
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapMaxMappedLogs(int maxMappedLogs) {
+        setProperty(ENTRY_LOG_MMAP_MAX_MAPPED_LOGS, maxMappedLogs);
+        return this;
+    }
+
     /**
      * Set the number of threads that would handle write requests.
      *
@@ -2118,6 +2381,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(MAX_PENDING_ADD_REQUESTS_PER_THREAD, 10000);
     }
 
+    /**
+     * Should the requests read together from a connection be executed as one task per worker thread and
+     * ordering key, instead of one task per request. The responses written by a task are flushed once.
+     *
+     * @return whether the requests are dispatched in batches
+     */
+    public boolean getBatchRequestDispatchEnabled() {
+        return getBoolean(BATCH_REQUEST_DISPATCH_ENABLED, false);
+    }
+
+    /**
+     * Sets whether the requests read together from a connection should be executed as one task per worker
+     * thread and ordering key.
+     *
+     * @param enabled
+     *            - true to dispatch the requests in batches
+     * @return server configuration
+     */
+    public ServerConfiguration setBatchRequestDispatchEnabled(boolean enabled) {
+        setProperty(BATCH_REQUEST_DISPATCH_ENABLED, enabled);
+        return this;
+    }
+
 
 
     /**
@@ -2437,6 +2723,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(JOURNAL_FLUSH_WHEN_QUEUE_EMPTY, false);
     }
 
+    /**
+     * Set if the journal should choose the group wait and the buffered entries threshold from the
+     * observed fsync latency and entries arrival rate. The group wait is then bounded by
+     * {@link #getJournalMaxGroupWaitMSec()}, and {@link #getJournalBufferedEntriesThreshold()} and
+     * {@link #getJournalFlushWhenQueueEmpty()} are ignored.
+     *
+     * @param enabled flag to enable/disable adaptive group commit
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalAdaptiveGroupCommit(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_GROUP_COMMIT, enabled);
+        return this;
+    }
+
+    /**
+     * Should the journal choose the group wait and the buffered entries threshold on the fly.
+     *
+     * @return adaptive group commit
+     */
+    public boolean getJournalAdaptiveGroupCommit() {
+        return getBoolean(JOURNAL_ADAPTIVE_GROUP_COMMIT, false);
+    }
+
     /**
      * Set whether the bookie is able to go into read-only mode.
      * If this is set to false, the bookie will shutdown on encountering
@@ -3032,6 +3341,97 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Should the journal be written with direct I/O, bypassing the page cache. The journal is written
+     * through the page cache when direct I/O is not available.
+     *
+     * @return whether the journal is written with direct I/O
+     */
+    public boolean getJournalDirectIOEnabled() {
+        return getBoolean(JOURNAL_DIRECT_IO_ENABLED, false);
+    }
+
+    /**
+     * Sets whether the journal should be written with direct I/O.
+     *
+     * @param enabled
+     *            - true to write the journal with direct I/O when it is available
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIOEnabled(boolean enabled) {
+        setProperty(JOURNAL_DIRECT_IO_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Should the adds read together from a connection be queued to the journal as a single batch,
+     * written as one contiguous run of records and acknowledged together. Only the adds of the v2
+     * protocol are batched.
+     *
+     * @return whether the adds are batched
+     */
+    public boolean getJournalAddBatchingEnabled() {
+        return getBoolean(JOURNAL_ADD_BATCHING_ENABLED, false);
+    }
+
+    /**
+     * Sets whether the adds read together from a connection should be queued to the journal as a
+     * single batch.
+     *
+     * @param enabled
+     *            - true to batch the adds
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalAddBatchingEnabled(boolean enabled) {
+        setProperty(JOURNAL_ADD_BATCHING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Should the ledgers be assigned to the journals by load, instead of by ledger id. A new or idle
+     * ledger then goes to the journal with the least queued entries and fsync latency.
+     *
+     * @return whether the ledgers are assigned to the journals by load
+     */
+    public boolean getJournalLoadAwareAssignment() {
+        return getBoolean(JOURNAL_LOAD_AWARE_ASSIGNMENT, false);
+    }
+
+    /**
+     * Sets whether the ledgers should be assigned to the journals by load.
+     *
+     * @param enabled
+     *            - true to assign the ledgers to the journals by load
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalLoadAwareAssignment(boolean enabled) {
+        setProperty(JOURNAL_LOAD_AWARE_ASSIGNMENT, enabled);
+        return this;
+    }
+
+    /**
+     * Get the time, in milliseconds, without writes after which a ledger may be moved to another
+     * journal, when the ledgers are assigned to the journals by load.
+     *
+     * @return the idle time of a ledger in milliseconds
+     */
+    public long getJournalLoadAwareIdleTimeMs() {
+        return getLong(JOURNAL_LOAD_AWARE_IDLE_TIME_MS, 1000L);
+    }
+
+    /**
+     * Sets the time, in milliseconds, without writes after which a ledger may be moved to another
+     * journal.
+     *
+     * @param idleTimeMs
+     *            - the idle time of a ledger in milliseconds
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalLoadAwareIdleTimeMs(long idleTimeMs) {
+        setProperty(JOURNAL_LOAD_AWARE_IDLE_TIME_MS, idleTimeMs);
+        return this;
+    }
+
     /*
      * Get the {@link LedgerStorage} implementation class name.
      *
@@ -4084,6 +4484,63 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getBoolean(SKIP_REPLAY_JOURNAL_INVALID_RECORD, false);
     }
 
+    /**
+     * Set whether the journals are replayed concurrently on startup, with the records read from each
+     * journal applied to the ledger storage by separate threads.
+     *
+     * @param enabled
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayParallelEnabled(boolean enabled) {
+        this.setProperty(JOURNAL_REPLAY_PARALLEL_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * @see #setJournalReplayParallelEnabled .
+     */
+    public boolean isJournalReplayParallelEnabled() {
+        return this.getBoolean(JOURNAL_REPLAY_PARALLEL_ENABLED, false);
+    }
+
+    /**
+     * Set the number of threads applying the records of each journal during a parallel replay. The
+     * records of a ledger are always applied by the same thread, in order.
+     *
+     * @param numThreads
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayApplyThreads(int numThreads) {
+        this.setProperty(JOURNAL_REPLAY_APPLY_THREADS, numThreads);
+        return this;
+    }
+
+    /**
+     * @see #setJournalReplayApplyThreads .
+     */
+    public int getJournalReplayApplyThreads() {
+        return this.getInt(JOURNAL_REPLAY_APPLY_THREADS, 1);
+    }
+
+    /**
+     * Set the number of records read from a journal that may wait for each apply thread during a
+     * parallel replay.
+     *
+     * @param queueSize
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayQueueSize(int queueSize) {
+        this.setProperty(JOURNAL_REPLAY_QUEUE_SIZE, queueSize);
+        return this;
+    }
+
+    /**
+     * @see #setJournalReplayQueueSize .
+     */
+    public int getJournalReplayQueueSize() {
+        return this.getInt(JOURNAL_REPLAY_QUEUE_SIZE, 1024);
+    }
+
     /**
      * Get default rocksdb conf.
      *
@@ -108,15 +108,23 @@ class AuthHandler {
                             req.getLedgerId(), req.getEntryId());
                     NettyChannelUtil.writeAndFlushWithVoidPromise(ctx.channel(), response);
                 } else if (req.getOpCode() == BookieProtocol.READENTRY) {
-                    final BookieProtocol.ReadResponse response = new BookieProtocol.ReadResponse(
+                    final BookieProtocol.ReadResponse response = BookieProtocol.ReadResponse.create(
                             req.getProtocolVersion(), BookieProtocol.EUA,
                             req.getLedgerId(), req.getEntryId());
                     NettyChannelUtil.writeAndFlushWithVoidPromise(ctx.channel(), response);
                 } else {
                     ctx.channel().close();
                 }
-            } else if (msg instanceof BookkeeperProtocol.Request) { // post-PB-client
-                BookkeeperProtocol.Request req = (BookkeeperProtocol.Request) msg;
+            } else if (msg instanceof BookkeeperProtocol.Request
+                    || msg instanceof ParsedAddRequestV3) { // post-PB-client
+                final BookkeeperProtocol.Request req;
+                if (msg instanceof ParsedAddRequestV3) {
+                    // only the header of the request is used from now on
+                    req = ((ParsedAddRequestV3) msg).getRequest();
+                    ((ParsedAddRequestV3) msg).release();
+                } else {
+                    req = (BookkeeperProtocol.Request) msg;
+                }
                 if (req.getHeader().getOperation() == BookkeeperProtocol.OperationType.AUTH
                         && req.hasAuthRequest()
                         && checkAuthPlugin(req.getAuthRequest(), ctx.channel())) {
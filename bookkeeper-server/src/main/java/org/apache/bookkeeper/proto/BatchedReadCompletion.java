@@ -40,6 +40,7 @@ class BatchedReadCompletion extends CompletionValue {
         this.timeoutOpLogger = perChannelBookieClient.readTimeoutOpLogger;
         this.cb = (rc, ledgerId1, startEntryId, bufList, ctx) -> {
             logOpResult(rc);
+            perChannelBookieClient.recordReadLatency(BookieProtocol.BATCH_READ_ENTRY, rc, latency());
             originalCallback.readEntriesComplete(rc,
                     ledgerId1, entryId,
                     bufList, originalCtx);
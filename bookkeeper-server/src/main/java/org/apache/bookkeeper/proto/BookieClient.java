@@ -85,6 +85,16 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the estimate of the read latency of a bookie.
+     *
+     * @param address the address of the bookie
+     * @return the estimate, or null if the read latency is not tracked
+     */
+    default BookieLatencyEstimator getReadLatencyEstimator(BookieId address) {
+        return null;
+    }
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -181,6 +181,12 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    @Override
+    public BookieLatencyEstimator getReadLatencyEstimator(BookieId address) {
+        PerChannelBookieClientPool pcbcPool = lookupClient(address);
+        return pcbcPool == null ? null : pcbcPool.getReadLatencyEstimator();
+    }
+
     @Override
     public PerChannelBookieClient create(BookieId address, PerChannelBookieClientPool pcbcPool,
             SecurityHandlerFactory shFactory, boolean forceUseV3) throws SecurityException {
@@ -0,0 +1,138 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * Moving estimate of the latency of the requests to a bookie.
+ *
+ * <p>Like the round trip time estimate of TCP, it keeps an exponentially weighted moving average of the
+ * latency and of its deviation from the average, and the tail latency is estimated as the average plus
+ * four times the deviation. The estimate is forgotten once no request completed for a while, so that a
+ * bookie that was avoided because it was slow gets requests again.
+ *
+ * <p>When a sketch window is given, it also keeps a {@link BookieLatencySketch} of the reads and one of the
+ * batch reads, to get latency percentiles. All the read latency measures of a bookie come from this tracker.
+ */
+public class BookieLatencyEstimator {
+
+    private static final double AVERAGE_GAIN = 0.125d;
+    private static final double DEVIATION_GAIN = 0.25d;
+    private static final long EXPIRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private double averageNanos = -1d;
+    private double deviationNanos = 0d;
+    private long lastSampleNanos;
+
+    // Only kept for the speculative read policy that uses them
+    private final BookieLatencySketch readSketch;
+    private final BookieLatencySketch batchReadSketch;
+
+    public BookieLatencyEstimator() {
+        this(0L);
+    }
+
+    /**
+     * Create an estimator that also keeps the latency distributions of the reads.
+     *
+     * @param sketchWindowMillis the window of the latency distributions, or 0 to not keep them
+     */
+    public BookieLatencyEstimator(long sketchWindowMillis) {
+        if (sketchWindowMillis > 0) {
+            this.readSketch = new BookieLatencySketch(sketchWindowMillis);
+            this.batchReadSketch = new BookieLatencySketch(sketchWindowMillis);
+        } else {
+            this.readSketch = null;
+            this.batchReadSketch = null;
+        }
+    }
+
+    /**
+     * Record the latency of a read, in the moving estimate and in the distribution of the operation.
+     *
+     * @param opCode the read operation, as a {@link BookieProtocol} op code
+     */
+    public void record(byte opCode, long latencyNanos) {
+        record(latencyNanos);
+        BookieLatencySketch sketch = getSketch(opCode);
+        if (sketch != null) {
+            sketch.record(latencyNanos);
+        }
+    }
+
+    /**
+     * Record the latency of a request.
+     */
+    public synchronized void record(long latencyNanos) {
+        long now = MathUtils.nowInNano();
+        if (averageNanos < 0 || now - lastSampleNanos > EXPIRY_NANOS) {
+            averageNanos = latencyNanos;
+            deviationNanos = latencyNanos / 2d;
+        } else {
+            deviationNanos += DEVIATION_GAIN * (Math.abs(latencyNanos - averageNanos) - deviationNanos);
+            averageNanos += AVERAGE_GAIN * (latencyNanos - averageNanos);
+        }
+        lastSampleNanos = now;
+    }
+
+    /**
+     * Returns the average latency, or -1 if it is unknown.
+     */
+    public synchronized long getAverageNanos() {
+        return isKnown() ? (long) averageNanos : -1L;
+    }
+
+    /**
+     * Returns the estimated tail latency, or -1 if it is unknown.
+     */
+    public synchronized long getTailNanos() {
+        return isKnown() ? (long) (averageNanos + 4 * deviationNanos) : -1L;
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recent reads of an operation completed.
+     *
+     * @param opCode the read operation, as a {@link BookieProtocol} op code
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or -1 if it is unknown or the distribution is not kept
+     */
+    public long getLatencyAtPercentileNanos(byte opCode, double percentile) {
+        BookieLatencySketch sketch = getSketch(opCode);
+        return sketch == null ? -1L : sketch.getLatencyAtPercentileNanos(percentile);
+    }
+
+    private BookieLatencySketch getSketch(byte opCode) {
+        switch (opCode) {
+            case BookieProtocol.READENTRY:
+                return readSketch;
+            case BookieProtocol.BATCH_READ_ENTRY:
+                return batchReadSketch;
+            default:
+                return null;
+        }
+    }
+
+    private boolean isKnown() {
+        return averageNanos >= 0 && MathUtils.nowInNano() - lastSampleNanos <= EXPIRY_NANOS;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * Sketch of the recent latency distribution of the requests to a bookie, to get latency percentiles.
+ *
+ * <p>Like an HdrHistogram, the latencies are counted in buckets of exponentially growing width, with
+ * 16 buckets per power of two, so a percentile is known within about 6%, with a few hundred counters
+ * whatever the latencies. The latencies are recorded in microseconds without locking.
+ *
+ * <p>The counts are kept in two windows, the current one and the previous one, and the percentiles
+ * are computed from both, so the sketch reflects the latencies of the last one to two windows.
+ */
+public class BookieLatencySketch {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Latencies are capped at 2^32 microseconds, more than an hour
+    private static final int MAX_MAGNITUDE = 31;
+    private static final int NUM_BUCKETS = (MAX_MAGNITUDE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final long MAX_VALUE_MICROS = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    // Percentiles are not computed with less samples, they would be mostly noise
+    static final long MIN_SAMPLES = 100;
+    private static final long PERCENTILE_CACHE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long windowNanos;
+    private volatile Window current;
+    private volatile Window previous;
+    private volatile CachedPercentile cachedPercentile;
+
+    public BookieLatencySketch(long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        long now = MathUtils.nowInNano();
+        this.current = new Window(now);
+        this.previous = new Window(now - windowNanos);
+    }
+
+    private static final class Window {
+        final long startNanos;
+        final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final class CachedPercentile {
+        final double percentile;
+        final long valueNanos;
+        final long computedNanos;
+
+        CachedPercentile(double percentile, long valueNanos, long computedNanos) {
+            this.percentile = percentile;
+            this.valueNanos = valueNanos;
+            this.computedNanos = computedNanos;
+        }
+    }
+
+    /**
+     * Record the latency of a request.
+     */
+    public void record(long latencyNanos) {
+        long valueMicros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(latencyNanos), 0L), MAX_VALUE_MICROS);
+        currentWindow(MathUtils.nowInNano()).counts.incrementAndGet(bucketOf(valueMicros));
+    }
+
+    /**
+     * Returns the latency below which the given percentage of the recent requests completed, or -1
+     * if too few requests completed recently.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or -1 if it is unknown
+     */
+    public long getLatencyAtPercentileNanos(double percentile) {
+        long now = MathUtils.nowInNano();
+        CachedPercentile cached = cachedPercentile;
+        if (cached != null && cached.percentile == percentile && now - cached.computedNanos < PERCENTILE_CACHE_NANOS) {
+            return cached.valueNanos;
+        }
+        long valueNanos = computeLatencyAtPercentileNanos(percentile, now);
+        cachedPercentile = new CachedPercentile(percentile, valueNanos, now);
+        return valueNanos;
+    }
+
+    private long computeLatencyAtPercentileNanos(double percentile, long now) {
+        Window current = currentWindow(now);
+        Window previous = this.previous;
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = current.counts.get(i) + previous.counts.get(i);
+            total += counts[i];
+        }
+        if (total < MIN_SAMPLES) {
+            return -1L;
+        }
+        long rank = Math.max((long) Math.ceil(Math.min(percentile, 100d) / 100d * total), 1L);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return TimeUnit.MICROSECONDS.toNanos(highestValueOf(i));
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(MAX_VALUE_MICROS);
+    }
+
+    private Window currentWindow(long now) {
+        Window window = current;
+        if (now - window.startNanos < windowNanos) {
+            return window;
+        }
+        synchronized (this) {
+            window = current;
+            if (now - window.startNanos >= windowNanos) {
+                // After a long idle time, the previous window is too old to be kept
+                previous = now - window.startNanos < 2 * windowNanos ? window : new Window(now - windowNanos);
+                window = new Window(now);
+                current = window;
+            }
+            return window;
+        }
+    }
+
+    static int bucketOf(long valueMicros) {
+        if (valueMicros < SUB_BUCKETS) {
+            return (int) valueMicros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(valueMicros);
+        int subBucket = (int) (valueMicros >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
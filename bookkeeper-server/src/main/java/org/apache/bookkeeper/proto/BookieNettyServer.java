@@ -351,8 +351,10 @@ class BookieNettyServer {
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
-                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
-                    pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry,
+                            conf.getServerZeroCopyV2CodecEnabled(), conf.getServerZeroCopyV3CodecEnabled()));
+                    pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry,
+                            conf.getServerZeroCopyV2CodecEnabled(), conf.getServerZeroCopyV3CodecEnabled()));
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
@@ -417,8 +419,10 @@ class BookieNettyServer {
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
 
-                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
-                    pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry,
+                            conf.getServerZeroCopyV2CodecEnabled(), conf.getServerZeroCopyV3CodecEnabled()));
+                    pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry,
+                            conf.getServerZeroCopyV2CodecEnabled(), conf.getServerZeroCopyV3CodecEnabled()));
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
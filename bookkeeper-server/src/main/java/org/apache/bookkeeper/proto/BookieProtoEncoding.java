@@ -20,14 +20,18 @@
  */
 package org.apache.bookkeeper.proto;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -35,6 +39,7 @@ import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
@@ -88,6 +93,9 @@ public class BookieProtoEncoding {
      */
     public static class RequestEnDeCoderPreV3 implements EnDecoder {
         final ExtensionRegistry extensionRegistry;
+        final boolean reuseMasterKey;
+        // Master key of the last decoded request, shared by the next requests with the same key
+        private byte[] lastMasterKey = null;
 
         //This empty master key is used when an empty password is provided which is the hash of an empty string
         private static final byte[] emptyPasswordMasterKey;
@@ -100,7 +108,17 @@ public class BookieProtoEncoding {
         }
 
         public RequestEnDeCoderPreV3(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false);
+        }
+
+        /**
+         * @param reuseMasterKey whether the decoded requests share the master key of the previous request
+         *                       when it is the same, instead of each getting a copy. The decoder must then
+         *                       be used by a single thread, like the decoder of a connection.
+         */
+        public RequestEnDeCoderPreV3(ExtensionRegistry extensionRegistry, boolean reuseMasterKey) {
             this.extensionRegistry = extensionRegistry;
+            this.reuseMasterKey = reuseMasterKey;
         }
 
         @Override
@@ -229,30 +247,37 @@ public class BookieProtoEncoding {
             }
         }
 
-        private static byte[] readMasterKey(ByteBuf packet) {
+        private byte[] readMasterKey(ByteBuf packet) {
             byte[] masterKey = null;
 
-            // check if the master key is an empty master key
-            boolean isEmptyKey = true;
-            for (int i = 0; i < BookieProtocol.MASTER_KEY_LENGTH; i++) {
-                if (packet.getByte(packet.readerIndex() + i) != emptyPasswordMasterKey[i]) {
-                    isEmptyKey = false;
-                    break;
-                }
-            }
-
-            if (isEmptyKey) {
+            if (isMasterKey(packet, emptyPasswordMasterKey)) {
                 // avoid new allocations if incoming master key is empty and use the static master key
                 masterKey = emptyPasswordMasterKey;
                 packet.readerIndex(packet.readerIndex() + BookieProtocol.MASTER_KEY_LENGTH);
+            } else if (lastMasterKey != null && isMasterKey(packet, lastMasterKey)) {
+                // same key as the previous request, the master keys are never modified once decoded
+                masterKey = lastMasterKey;
+                packet.readerIndex(packet.readerIndex() + BookieProtocol.MASTER_KEY_LENGTH);
             } else {
                 // Master key is set, we need to copy and check it
                 masterKey = new byte[BookieProtocol.MASTER_KEY_LENGTH];
                 packet.readBytes(masterKey, 0, BookieProtocol.MASTER_KEY_LENGTH);
+                if (reuseMasterKey) {
+                    lastMasterKey = masterKey;
+                }
             }
 
             return masterKey;
         }
+
+        private static boolean isMasterKey(ByteBuf packet, byte[] masterKey) {
+            for (int i = 0; i < BookieProtocol.MASTER_KEY_LENGTH; i++) {
+                if (packet.getByte(packet.readerIndex() + i) != masterKey[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
     /**
@@ -379,7 +404,7 @@ public class BookieProtoEncoding {
                 ledgerId = buffer.readLong();
                 entryId = buffer.readLong();
 
-                return new BookieProtocol.ReadResponse(
+                return BookieProtocol.ReadResponse.create(
                         version, rc, ledgerId, entryId, buffer.retainedSlice());
             case BookieProtocol.BATCH_READ_ENTRY:
                 rc = buffer.readInt();
@@ -398,8 +423,8 @@ public class BookieProtoEncoding {
                         buffer.readerIndex(entryPos + entrySize);
                     }
                 }
-                return new BookieProtocol.BatchedReadResponse(version, rc, ledgerId, entryId, requestId, data == null
-                        ? ByteBufList.get() : data.retain());
+                return BookieProtocol.BatchedReadResponse.create(version, rc, ledgerId, entryId, requestId,
+                        data == null ? ByteBufList.get() : data.retain());
             case BookieProtocol.AUTH:
                 ByteBufInputStream bufStream = new ByteBufInputStream(buffer);
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
@@ -418,6 +443,66 @@ public class BookieProtoEncoding {
             buf.writeLong(req.getLedgerId());
             buf.writeLong(req.getEntryId());
         }
+
+        /**
+         * Write a read response on the channel as its headers, in a small buffer, followed by the entry
+         * itself, whatever its size. The channel sends them together with a gathering write on flush, so
+         * the entry is neither copied nor wrapped in a {@link ByteBufList}.
+         */
+        static void writeReadResponse(ChannelHandlerContext ctx, BookieProtocol.ReadResponse rr,
+                                      ChannelPromise promise) {
+            ByteBuf data = rr.getData();
+            int payloadSize = data.readableBytes();
+            ByteBuf buf = ctx.alloc().buffer(4 /* frame size */ + RESPONSE_HEADERS_SIZE);
+            buf.writeInt(RESPONSE_HEADERS_SIZE + payloadSize);
+            buf.writeInt(PacketHeader.toInt(rr.getProtocolVersion(), rr.getOpCode(), (short) 0));
+            buf.writeInt(rr.getErrorCode());
+            buf.writeLong(rr.getLedgerId());
+            buf.writeLong(rr.getEntryId());
+            rr.recycle();
+
+            if (payloadSize == 0) {
+                data.release();
+                ctx.write(buf, promise);
+            } else {
+                ctx.write(buf, ctx.voidPromise());
+                ctx.write(data, promise);
+            }
+        }
+
+        /**
+         * Write a batched read response on the channel as its headers followed by the size and the data
+         * of each entry, without copying the entries.
+         */
+        static void writeBatchedReadResponse(ChannelHandlerContext ctx, BookieProtocol.BatchedReadResponse brr,
+                                             ChannelPromise promise) {
+            ByteBufList data = brr.getData();
+            int entries = data.size();
+            int responseSize = RESPONSE_HEADERS_SIZE + 8 /* request_id */ + data.readableBytes() + entries * 4;
+            ByteBuf buf = ctx.alloc().buffer(4 /* frame size */ + RESPONSE_HEADERS_SIZE + 8);
+            buf.writeInt(responseSize);
+            buf.writeInt(PacketHeader.toInt(brr.getProtocolVersion(), brr.getOpCode(), (short) 0));
+            buf.writeInt(brr.getErrorCode());
+            buf.writeLong(brr.getLedgerId());
+            buf.writeLong(brr.getEntryId());
+            buf.writeLong(brr.getRequestId());
+            brr.recycle();
+
+            if (entries == 0) {
+                data.release();
+                ctx.write(buf, promise);
+                return;
+            }
+            ctx.write(buf, ctx.voidPromise());
+            for (int i = 0; i < entries; i++) {
+                ByteBuf entryData = data.getBuffer(i);
+                ByteBuf entryLengthBuf = ctx.alloc().buffer(4);
+                entryLengthBuf.writeInt(entryData.readableBytes());
+                ctx.write(entryLengthBuf, ctx.voidPromise());
+                ctx.write(entryData.retain(), i == entries - 1 ? promise : ctx.voidPromise());
+            }
+            data.release();
+        }
     }
 
     /**
@@ -425,16 +510,68 @@ public class BookieProtoEncoding {
      */
     public static class RequestEnDecoderV3 implements EnDecoder {
         final ExtensionRegistry extensionRegistry;
+        final boolean zeroCopyAdds;
 
         public RequestEnDecoderV3(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false);
+        }
+
+        /**
+         * @param zeroCopyAdds whether add requests are decoded as {@link ParsedAddRequestV3}, with their
+         *                     entry kept in the packet instead of being copied
+         */
+        public RequestEnDecoderV3(ExtensionRegistry extensionRegistry, boolean zeroCopyAdds) {
             this.extensionRegistry = extensionRegistry;
+            this.zeroCopyAdds = zeroCopyAdds;
         }
 
         @Override
         public Object decode(ByteBuf packet) throws Exception {
+            if (zeroCopyAdds) {
+                int bodyIndex = findAddRequestBody(packet);
+                if (bodyIndex >= 0) {
+                    // the bytes fields of the request point into the packet, kept by the entry slice
+                    CodedInputStream input = CodedInputStream.newInstance(packet.nioBuffer());
+                    input.enableAliasing(true);
+                    BookkeeperProtocol.Request request = BookkeeperProtocol.Request.parseFrom(input,
+                            extensionRegistry);
+                    int bodySize = request.getAddRequest().getBody().size();
+                    return new ParsedAddRequestV3(request,
+                            packet.retainedSlice(packet.readerIndex() + bodyIndex, bodySize));
+                }
+            }
             return BookkeeperProtocol.Request.parseFrom(new ByteBufInputStream(packet), extensionRegistry);
         }
 
+        /**
+         * Get the index of the entry of an add request in the packet, from its reader index, or -1 if
+         * the packet is not an add request.
+         */
+        private static int findAddRequestBody(ByteBuf packet) throws IOException {
+            CodedInputStream input = CodedInputStream.newInstance(packet.nioBuffer());
+            if (!skipToField(input, BookkeeperProtocol.Request.ADDREQUEST_FIELD_NUMBER)) {
+                return -1;
+            }
+            input.pushLimit(input.readRawVarint32());
+            if (!skipToField(input, BookkeeperProtocol.AddRequest.BODY_FIELD_NUMBER)) {
+                return -1;
+            }
+            input.readRawVarint32();
+            return input.getTotalBytesRead();
+        }
+
+        private static boolean skipToField(CodedInputStream input, int fieldNumber) throws IOException {
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                if (WireFormat.getTagFieldNumber(tag) == fieldNumber
+                        && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    return true;
+                }
+                input.skipField(tag);
+            }
+            return false;
+        }
+
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
             BookkeeperProtocol.Request request = (BookkeeperProtocol.Request) msg;
@@ -448,9 +585,19 @@ public class BookieProtoEncoding {
      */
     public static class ResponseEnDecoderV3 implements EnDecoder {
         final ExtensionRegistry extensionRegistry;
+        final boolean zeroCopyReads;
 
         public ResponseEnDecoderV3(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false);
+        }
+
+        /**
+         * @param zeroCopyReads whether the entries of read responses that are not small are written after
+         *                      the rest of the response instead of being copied into it
+         */
+        public ResponseEnDecoderV3(ExtensionRegistry extensionRegistry, boolean zeroCopyReads) {
             this.extensionRegistry = extensionRegistry;
+            this.zeroCopyReads = zeroCopyReads;
         }
 
         @Override
@@ -462,9 +609,54 @@ public class BookieProtoEncoding {
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
             BookkeeperProtocol.Response response = (BookkeeperProtocol.Response) msg;
+            if (zeroCopyReads && response.hasReadResponse()
+                    && response.getReadResponse().getBody().size() >= SMALL_ENTRY_SIZE_THRESHOLD) {
+                return serializeReadResponse(response, allocator);
+            }
             return serializeProtobuf(response, allocator);
         }
 
+        /**
+         * Serialize a read response without its entry, followed by the entry in a second read response
+         * field, which the parser merges into the first one. The entry is not copied, it is written on
+         * the channel from the buffer of the response body.
+         */
+        private static ByteBufList serializeReadResponse(Response response, ByteBufAllocator allocator) {
+            ByteString body = response.getReadResponse().getBody();
+            Response withoutBody = response.toBuilder()
+                    .setReadResponse(response.getReadResponse().toBuilder().clearBody())
+                    .build();
+            int bodyFieldSize = CodedOutputStream.computeBytesSize(
+                    BookkeeperProtocol.ReadResponse.BODY_FIELD_NUMBER, body);
+            int bodyHeaderSize = bodyFieldSize - body.size();
+            int headersSize = withoutBody.getSerializedSize()
+                    + CodedOutputStream.computeTagSize(Response.READRESPONSE_FIELD_NUMBER)
+                    + CodedOutputStream.computeUInt32SizeNoTag(bodyFieldSize)
+                    + bodyHeaderSize;
+            int frameSize = headersSize + 4;
+
+            ByteBuf buf = allocator.directBuffer(frameSize, frameSize);
+            buf.writeInt(headersSize + body.size());
+            try {
+                CodedOutputStream output = CodedOutputStream.newInstance(buf.nioBuffer(buf.writerIndex(),
+                        headersSize));
+                withoutBody.writeTo(output);
+                output.writeTag(Response.READRESPONSE_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(bodyFieldSize);
+                output.writeTag(BookkeeperProtocol.ReadResponse.BODY_FIELD_NUMBER,
+                        WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeUInt32NoTag(body.size());
+            } catch (IOException e) {
+                // This is in-memory serialization, should not fail
+                throw new RuntimeException(e);
+            }
+            buf.writerIndex(frameSize);
+
+            // The buffer the body points to is kept by the processor until the response is written
+            return ByteBufList.get(buf,
+                    Unpooled.wrappedBuffer(body.asReadOnlyByteBufferList().toArray(new ByteBuffer[0])));
+        }
+
     }
 
     private static ByteBuf serializeProtobuf(MessageLite msg, ByteBufAllocator allocator) {
@@ -535,8 +727,12 @@ public class BookieProtoEncoding {
         boolean usingV3Protocol;
 
         RequestDecoder(ExtensionRegistry extensionRegistry) {
-            reqPreV3 = new RequestEnDeCoderPreV3(extensionRegistry);
-            reqV3 = new RequestEnDecoderV3(extensionRegistry);
+            this(extensionRegistry, false, false);
+        }
+
+        RequestDecoder(ExtensionRegistry extensionRegistry, boolean zeroCopyV2, boolean zeroCopyV3) {
+            reqPreV3 = new RequestEnDeCoderPreV3(extensionRegistry, zeroCopyV2);
+            reqV3 = new RequestEnDecoderV3(extensionRegistry, zeroCopyV3);
             usingV3Protocol = true;
         }
 
@@ -579,10 +775,16 @@ public class BookieProtoEncoding {
     public static class ResponseEncoder extends ChannelOutboundHandlerAdapter {
         final EnDecoder repPreV3;
         final EnDecoder repV3;
+        final boolean zeroCopyV2;
 
         ResponseEncoder(ExtensionRegistry extensionRegistry) {
+            this(extensionRegistry, false, false);
+        }
+
+        ResponseEncoder(ExtensionRegistry extensionRegistry, boolean zeroCopyV2, boolean zeroCopyV3) {
             repPreV3 = new ResponseEnDeCoderPreV3(extensionRegistry);
-            repV3 = new ResponseEnDecoderV3(extensionRegistry);
+            repV3 = new ResponseEnDecoderV3(extensionRegistry, zeroCopyV3);
+            this.zeroCopyV2 = zeroCopyV2;
         }
 
         @Override
@@ -595,6 +797,11 @@ public class BookieProtoEncoding {
                 ctx.write(msg, promise);
             } else if (msg instanceof BookkeeperProtocol.Response) {
                 ctx.write(repV3.encode(msg, ctx.alloc()), promise);
+            } else if (zeroCopyV2 && msg instanceof BookieProtocol.ReadResponse) {
+                ResponseEnDeCoderPreV3.writeReadResponse(ctx, (BookieProtocol.ReadResponse) msg, promise);
+            } else if (zeroCopyV2 && msg instanceof BookieProtocol.BatchedReadResponse) {
+                ResponseEnDeCoderPreV3.writeBatchedReadResponse(ctx, (BookieProtocol.BatchedReadResponse) msg,
+                        promise);
             } else if (msg instanceof BookieProtocol.Response) {
                 ctx.write(repPreV3.encode(msg, ctx.alloc()), promise);
             } else {
@@ -494,15 +494,35 @@ public interface BookieProtocol {
      * A request that reads data.
      */
     class ReadResponse extends Response implements ReferenceCounted {
-        final ByteBuf data;
+        ByteBuf data;
+
+        static ReadResponse create(byte protocolVersion, int errorCode, long ledgerId, long entryId) {
+            return create(protocolVersion, errorCode, ledgerId, entryId, Unpooled.EMPTY_BUFFER);
+        }
+
+        static ReadResponse create(byte protocolVersion, int errorCode, long ledgerId, long entryId, ByteBuf data) {
+            ReadResponse response = RECYCLER.get();
+            response.init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
+            response.data = data;
+            return response;
+        }
 
-        ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId) {
-            this(protocolVersion, errorCode, ledgerId, entryId, Unpooled.EMPTY_BUFFER);
+        private final Handle<ReadResponse> recyclerHandle;
+        private ReadResponse(Handle<ReadResponse> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
         }
 
-        ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, ByteBuf data) {
-            init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
-            this.data = data;
+        private static final Recycler<ReadResponse> RECYCLER = new Recycler<ReadResponse>() {
+            @Override
+            protected ReadResponse newObject(Handle<ReadResponse> handle) {
+                return new ReadResponse(handle);
+            }
+        };
+
+        @Override
+        void recycle() {
+            data = null;
+            recyclerHandle.recycle(this);
         }
 
         boolean hasData() {
@@ -559,18 +579,40 @@ public interface BookieProtocol {
      */
     class BatchedReadResponse extends Response implements ReferenceCounted {
 
-        final long requestId;
-        final ByteBufList data;
+        long requestId;
+        ByteBufList data;
 
-        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, long requestId) {
-            this(protocolVersion, errorCode, ledgerId, entryId, requestId, ByteBufList.get());
+        static BatchedReadResponse create(byte protocolVersion, int errorCode, long ledgerId, long entryId,
+                long requestId) {
+            return create(protocolVersion, errorCode, ledgerId, entryId, requestId, ByteBufList.get());
         }
 
-        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, long requestId,
-                ByteBufList data) {
-            init(protocolVersion, BATCH_READ_ENTRY, errorCode, ledgerId, entryId);
-            this.requestId = requestId;
-            this.data = data;
+        static BatchedReadResponse create(byte protocolVersion, int errorCode, long ledgerId, long entryId,
+                long requestId, ByteBufList data) {
+            BatchedReadResponse response = RECYCLER.get();
+            response.init(protocolVersion, BATCH_READ_ENTRY, errorCode, ledgerId, entryId);
+            response.requestId = requestId;
+            response.data = data;
+            return response;
+        }
+
+        private final Handle<BatchedReadResponse> recyclerHandle;
+        private BatchedReadResponse(Handle<BatchedReadResponse> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<BatchedReadResponse> RECYCLER = new Recycler<BatchedReadResponse>() {
+            @Override
+            protected BatchedReadResponse newObject(Handle<BatchedReadResponse> handle) {
+                return new BatchedReadResponse(handle);
+            }
+        };
+
+        @Override
+        void recycle() {
+            requestId = -1;
+            data = null;
+            recyclerHandle.recycle(this);
         }
 
         ByteBufList getData() {
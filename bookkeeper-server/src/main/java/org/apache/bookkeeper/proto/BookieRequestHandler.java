@@ -21,11 +21,19 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.group.ChannelGroup;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.processor.RequestProcessor;
 
@@ -45,6 +53,12 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     private ByteBuf pendingSendResponses = null;
     private int maxPendingResponsesSize = DEFAULT_PENDING_RESPONSE_SIZE;
 
+    // Adds of the current read, processed together once the read completes
+    private List<WriteEntryProcessor> pendingAdds = new ArrayList<>();
+
+    // Tasks of the current read by worker thread pool and ordering key, executed once the read completes
+    private final Map<OrderedExecutor, Map<Long, RequestBatchProcessor>> pendingBatches = new LinkedHashMap<>();
+
     BookieRequestHandler(ServerConfiguration conf, RequestProcessor processor, ChannelGroup allChannels) {
         this.requestProcessor = processor;
         this.allChannels = allChannels;
@@ -69,6 +83,8 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         log.info("Channels disconnected: {}", ctx.channel());
+        processPendingAdds();
+        dispatchPendingBatches();
     }
 
     @Override
@@ -83,13 +99,79 @@ public class BookieRequestHandler extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (!(msg instanceof BookkeeperProtocol.Request || msg instanceof BookieProtocol.Request)) {
+        if (!(msg instanceof BookkeeperProtocol.Request || msg instanceof BookieProtocol.Request
+                || msg instanceof ParsedAddRequestV3)) {
             ctx.fireChannelRead(msg);
             return;
         }
+        if (!(msg instanceof BookieProtocol.ParsedAddRequest)) {
+            // Keep the order of the adds with the other requests
+            processPendingAdds();
+        }
         requestProcessor.processRequest(msg, this);
     }
 
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        processPendingAdds();
+        dispatchPendingBatches();
+        super.channelReadComplete(ctx);
+    }
+
+    /**
+     * Defer an add until the end of the current read, to add its entry to the journal with the other
+     * adds of the read.
+     */
+    void deferAdd(WriteEntryProcessor write) {
+        pendingAdds.add(write);
+    }
+
+    private void processPendingAdds() {
+        if (pendingAdds.isEmpty()) {
+            return;
+        }
+        List<WriteEntryProcessor> writes = pendingAdds;
+        pendingAdds = new ArrayList<>();
+        writes.get(0).requestProcessor.processAddBatch(writes, this);
+    }
+
+    /**
+     * Defer the task of a request until the end of the current read, to execute it on the worker thread
+     * of its ordering key with the other tasks of the read that have the same key.
+     *
+     * @param onRejected run instead of the task if the worker thread has too many pending tasks
+     */
+    void deferTask(BookieRequestProcessor processor, OrderedExecutor threadPool, long orderingKey, Runnable task,
+                   Runnable onRejected) {
+        pendingBatches.computeIfAbsent(threadPool, pool -> new LinkedHashMap<>())
+                .computeIfAbsent(orderingKey, key -> new RequestBatchProcessor(this, processor, threadPool, key))
+                .add(task, onRejected);
+    }
+
+    private void dispatchPendingBatches() {
+        if (pendingBatches.isEmpty()) {
+            return;
+        }
+        for (Map<Long, RequestBatchProcessor> batches : pendingBatches.values()) {
+            for (RequestBatchProcessor batch : batches.values()) {
+                batch.dispatch();
+            }
+        }
+        pendingBatches.clear();
+    }
+
+    /**
+     * Write a response to the channel. It is flushed right away, unless it is written while processing
+     * a batch of requests of the channel, which is flushed once at the end.
+     */
+    ChannelFuture writeResponse(Object response, ChannelPromise promise) {
+        Channel channel = ctx().channel();
+        if (RequestBatchProcessor.deferFlush(this)) {
+            return channel.write(response, promise);
+        }
+        return channel.writeAndFlush(response, promise);
+    }
+
     public synchronized void prepareSendResponseV2(int rc, BookieProtocol.ParsedAddRequest req) {
         if (pendingSendResponses == null) {
             pendingSendResponses = ctx().alloc().directBuffer(maxPendingResponsesSize);
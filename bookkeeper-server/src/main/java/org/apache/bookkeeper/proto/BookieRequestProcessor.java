@@ -28,6 +28,7 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.group.ChannelGroup;
@@ -35,6 +36,10 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
@@ -131,6 +136,15 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    // Whether the adds read together from a connection are added to the journal as one batch
+    private final boolean batchAdds;
+
+    // Whether the entries of v3 read responses point to the buffers they were read in
+    private final boolean zeroCopyV3Reads;
+
+    // Whether the requests read together from a connection are executed as one task per ordering key
+    private final boolean batchDispatch;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
                                   ChannelGroup allChannels) throws SecurityException {
@@ -141,6 +155,9 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.batchAdds = serverCfg.getJournalAddBatchingEnabled();
+        this.zeroCopyV3Reads = serverCfg.getServerZeroCopyV3CodecEnabled();
+        this.batchDispatch = serverCfg.getBatchRequestDispatchEnabled();
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -308,6 +325,16 @@ public class BookieRequestProcessor implements RequestProcessor {
     @Override
     public void processRequest(Object msg, BookieRequestHandler requestHandler) {
         Channel channel = requestHandler.ctx().channel();
+        if (msg instanceof ParsedAddRequestV3) {
+            ParsedAddRequestV3 add = (ParsedAddRequestV3) msg;
+            restoreMdcContextFromRequest(add.getRequest());
+            try {
+                processAddRequestV3(add.getRequest(), add.getEntry(), requestHandler);
+            } finally {
+                MDC.clear();
+            }
+            return;
+        }
         // If we can decode this packet as a Request protobuf packet, process
         // it as a version 3 packet. Else, just use the old protocol.
         if (msg instanceof BookkeeperProtocol.Request) {
@@ -317,7 +344,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                 BookkeeperProtocol.BKPacketHeader header = r.getHeader();
                 switch (header.getOperation()) {
                     case ADD_ENTRY:
-                        processAddRequestV3(r, requestHandler);
+                        processAddRequestV3(r, null, requestHandler);
                         break;
                     case READ_ENTRY:
                         processReadRequestV3(r, requestHandler);
@@ -426,7 +453,8 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == writeThreadPool) {
             writeLac.run();
         } else {
-            writeThreadPool.executeOrdered(r.getAddRequest().getLedgerId(), writeLac);
+            executeOrdered(writeThreadPool, r.getAddRequest().getLedgerId(), writeLac,
+                    () -> closeOnRejectedRequest(r, requestHandler), requestHandler);
         }
     }
 
@@ -436,12 +464,17 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == readThreadPool) {
             readLac.run();
         } else {
-            readThreadPool.executeOrdered(r.getAddRequest().getLedgerId(), readLac);
+            executeOrdered(readThreadPool, r.getAddRequest().getLedgerId(), readLac,
+                    () -> closeOnRejectedRequest(r, requestHandler), requestHandler);
         }
     }
 
-    private void processAddRequestV3(final BookkeeperProtocol.Request r, final BookieRequestHandler requestHandler) {
-        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, requestHandler, this);
+    /**
+     * @param entry the entry of the request, if it was decoded without copying it, or null
+     */
+    private void processAddRequestV3(final BookkeeperProtocol.Request r, final ByteBuf entry,
+                                     final BookieRequestHandler requestHandler) {
+        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, entry, requestHandler, this);
 
         final OrderedExecutor threadPool;
         if (RequestUtils.isHighPriority(r)) {
@@ -453,14 +486,13 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             write.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getAddRequest().getLedgerId(), write);
-            } catch (RejectedExecutionException e) {
+            executeOrdered(threadPool, r.getAddRequest().getLedgerId(), write, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests",
                               r.getAddRequest().getLedgerId(), r.getAddRequest().getEntryId());
                 }
                 getRequestStats().getAddEntryRejectedCounter().inc();
+                write.releaseEntry();
                 BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
                         .setLedgerId(r.getAddRequest().getLedgerId())
                         .setEntryId(r.getAddRequest().getEntryId())
@@ -471,7 +503,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                         .setAddResponse(addResponse);
                 BookkeeperProtocol.Response resp = response.build();
                 write.sendResponse(addResponse.getStatus(), resp, requestStats.getAddRequestStats());
-            }
+            }, requestHandler);
         }
     }
 
@@ -489,9 +521,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             forceLedger.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getForceLedgerRequest().getLedgerId(), forceLedger);
-            } catch (RejectedExecutionException e) {
+            executeOrdered(threadPool, r.getForceLedgerRequest().getLedgerId(), forceLedger, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to force ledger {}. Too many pending requests",
                               r.getForceLedgerRequest().getLedgerId());
@@ -509,7 +539,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                     forceLedgerResponse.getStatus(),
                     resp,
                     requestStats.getForceLedgerRequestStats());
-            }
+            }, requestHandler);
         }
     }
 
@@ -543,9 +573,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             read.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getReadRequest().getLedgerId(), read);
-            } catch (RejectedExecutionException e) {
+            executeOrdered(threadPool, r.getReadRequest().getLedgerId(), read, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests",
                               r.getReadRequest().getLedgerId(), r.getReadRequest().getEntryId());
@@ -562,7 +590,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                 BookkeeperProtocol.Response resp = response.build();
                 read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
                 onReadRequestFinish();
-            }
+            }, requestHandler);
         }
     }
 
@@ -653,6 +681,12 @@ public class BookieRequestProcessor implements RequestProcessor {
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final BookieRequestHandler requestHandler) {
         WriteEntryProcessor write = WriteEntryProcessor.create(r, requestHandler, this);
 
+        if (batchAdds && !r.isHighPriority() && !r.isRecoveryAdd()) {
+            // Processed with the other adds of the same read, see processAddBatch
+            requestHandler.deferAdd(write);
+            return;
+        }
+
         // If it's a high priority add (usually as part of recovery process), we want to make sure it gets
         // executed as fast as possible, so bypass the normal writeThreadPool and execute in highPriorityThreadPool
         final OrderedExecutor threadPool;
@@ -665,24 +699,51 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             write.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getLedgerId(), write);
-            } catch (RejectedExecutionException e) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests", r.ledgerId,
-                            r.entryId);
+            executeOrdered(threadPool, r.getLedgerId(), write, () -> rejectAddRequest(write), requestHandler);
+        }
+    }
+
+    /**
+     * Process adds read together from a connection. Their entries are added to the journal as one
+     * batch when they are processed by the same thread, otherwise as one batch per ledger.
+     */
+    void processAddBatch(List<WriteEntryProcessor> writes, BookieRequestHandler requestHandler) {
+        if (null == writeThreadPool) {
+            new WriteEntryBatchProcessor(requestHandler, writes).run();
+            return;
+        }
+
+        // Adds of the same ledger are processed in order, by the thread of the ledger
+        Map<Long, List<WriteEntryProcessor>> writesByLedger = new LinkedHashMap<>();
+        for (WriteEntryProcessor write : writes) {
+            writesByLedger.computeIfAbsent(write.request.getLedgerId(), ledgerId -> new ArrayList<>()).add(write);
+        }
+        for (Map.Entry<Long, List<WriteEntryProcessor>> ledgerWrites : writesByLedger.entrySet()) {
+            List<WriteEntryProcessor> batch = ledgerWrites.getValue();
+            Runnable task = batch.size() == 1 ? batch.get(0) : new WriteEntryBatchProcessor(requestHandler, batch);
+            executeOrdered(writeThreadPool, ledgerWrites.getKey(), task, () -> {
+                for (WriteEntryProcessor write : batch) {
+                    rejectAddRequest(write);
                 }
-                getRequestStats().getAddEntryRejectedCounter().inc();
+            }, requestHandler);
+        }
+    }
 
-                write.sendWriteReqResponse(
-                    BookieProtocol.ETOOMANYREQUESTS,
-                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
-                    requestStats.getAddRequestStats());
-                r.release();
-                r.recycle();
-                write.recycle();
-            }
+    private void rejectAddRequest(WriteEntryProcessor write) {
+        BookieProtocol.ParsedAddRequest r = write.request;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests", r.ledgerId,
+                    r.entryId);
         }
+        getRequestStats().getAddEntryRejectedCounter().inc();
+
+        write.sendWriteReqResponse(
+            BookieProtocol.ETOOMANYREQUESTS,
+            ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+            requestStats.getAddRequestStats());
+        r.release();
+        r.recycle();
+        write.recycle();
     }
 
     private void processReadRequest(final BookieProtocol.ReadRequest r, final BookieRequestHandler requestHandler) {
@@ -707,9 +768,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == threadPool) {
             read.run();
         } else {
-            try {
-                threadPool.executeOrdered(r.getLedgerId(), read);
-            } catch (RejectedExecutionException e) {
+            executeOrdered(threadPool, r.getLedgerId(), read, () -> {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Failed to process request to read entry at {}:{}. Too many pending requests", r.ledgerId,
                             r.entryId);
@@ -721,14 +780,45 @@ public class BookieRequestProcessor implements RequestProcessor {
                     requestStats.getReadRequestStats());
                 onReadRequestFinish();
                 read.recycle();
-            }
+            }, requestHandler);
+        }
+    }
+
+    /**
+     * Execute the task of a request on the worker thread of its ordering key. With batch dispatch, the
+     * task is deferred until the end of the current read of the connection, and executed with the other
+     * tasks of the read that have the same key, see {@link RequestBatchProcessor}.
+     *
+     * @param onRejected run instead of the task if the worker thread has too many pending tasks
+     */
+    private void executeOrdered(OrderedExecutor threadPool, long orderingKey, Runnable task, Runnable onRejected,
+                                BookieRequestHandler requestHandler) {
+        if (batchDispatch) {
+            requestHandler.deferTask(this, threadPool, orderingKey, task, onRejected);
+            return;
         }
+        try {
+            threadPool.executeOrdered(orderingKey, task);
+        } catch (RejectedExecutionException e) {
+            onRejected.run();
+        }
+    }
+
+    private void closeOnRejectedRequest(BookkeeperProtocol.Request r, BookieRequestHandler requestHandler) {
+        Channel channel = requestHandler.ctx().channel();
+        LOG.error("Failed to process request {} on {}. Too many pending requests, closing the channel",
+                r.getHeader().getOperation(), channel);
+        channel.close();
     }
 
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
 
+    boolean isZeroCopyV3Reads() {
+        return zeroCopyV3Reads;
+    }
+
     public void blacklistChannel(Channel channel) {
         blacklistedChannels
                 .ifPresent(x -> x.put(channel, true));
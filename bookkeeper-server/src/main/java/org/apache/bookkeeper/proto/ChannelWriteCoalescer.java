@@ -0,0 +1,140 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.PlatformDependent;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Coalesces the writes of requests to a channel.
+ *
+ * <p>Instead of one event loop task and one flush per request, the requests are queued and written by
+ * a single task of the event loop, which flushes the channel once they are all written, or once the
+ * configured number of requests or bytes is written, in which case the rest is written by the next
+ * task. An idle event loop runs the task right away,
+ * so a lone request is not delayed, while the requests sent while the event loop is busy are written
+ * together once it gets to the task.
+ */
+class ChannelWriteCoalescer implements Runnable {
+
+    private final Channel channel;
+    private final int maxOps;
+    private final long maxBytes;
+    private final OpStatsLogger writesPerFlush;
+
+    private final Queue<PendingWrite> pendingWrites = PlatformDependent.newMpscQueue();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    ChannelWriteCoalescer(Channel channel, int maxOps, long maxBytes, OpStatsLogger writesPerFlush) {
+        this.channel = channel;
+        this.maxOps = Math.max(maxOps, 1);
+        this.maxBytes = maxBytes;
+        this.writesPerFlush = writesPerFlush;
+    }
+
+    private static final class PendingWrite {
+        final Object msg;
+        final ChannelPromise promise;
+
+        PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+
+    Channel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Queue a request to be written and flushed with the other requests queued before the event loop
+     * writes them. Like a channel write, the request is released and the promise failed if it cannot
+     * be written.
+     */
+    void write(Object msg, ChannelPromise promise) {
+        pendingWrites.add(new PendingWrite(msg, promise));
+        if (!scheduled.get()) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            channel.eventLoop().execute(this);
+        } catch (Throwable t) {
+            // The event loop is shut down. Fail the next writes as well, which would be left in the queue
+            // if they found the task still scheduled
+            scheduled.set(false);
+            PendingWrite write;
+            while ((write = pendingWrites.poll()) != null) {
+                ReferenceCountUtil.release(write.msg);
+                write.promise.tryFailure(t);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        scheduled.set(false);
+        int ops = 0;
+        long bytes = 0;
+        PendingWrite write;
+        while ((write = pendingWrites.poll()) != null) {
+            bytes += sizeOf(write.msg);
+            channel.write(write.msg, write.promise);
+            if (++ops >= maxOps || bytes >= maxBytes) {
+                break;
+            }
+        }
+        if (ops > 0) {
+            flush(ops);
+        }
+        // Let the event loop handle its other tasks and the responses before writing more requests
+        if (!pendingWrites.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void flush(int ops) {
+        channel.flush();
+        writesPerFlush.registerSuccessfulValue(ops);
+    }
+
+    private static int sizeOf(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        } else if (msg instanceof ByteBufList) {
+            return ((ByteBufList) msg).readableBytes();
+        } else {
+            return 0;
+        }
+    }
+}
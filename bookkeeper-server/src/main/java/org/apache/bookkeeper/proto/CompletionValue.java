@@ -60,7 +60,7 @@ abstract class CompletionValue {
         }
     }
 
-    private long latency() {
+    long latency() {
         return MathUtils.elapsedNanos(startTime);
     }
 
@@ -54,6 +54,7 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     final AtomicInteger counter = new AtomicInteger(0);
     final AtomicLong errorCounter = new AtomicLong(0);
+    final BookieLatencyEstimator readLatencyEstimator;
 
     DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
                                       BookieId address,
@@ -62,6 +63,8 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         this.factory = factory;
         this.address = address;
         this.conf = conf;
+        this.readLatencyEstimator = new BookieLatencyEstimator(conf.getSpeculativeReadLatencyPercentile() > 0
+                ? conf.getSpeculativeReadLatencyWindowMs() : 0L);
 
         this.shFactory = SecurityProviderFactoryFactory.getSecurityProviderFactory(conf.getTLSProviderFactoryClass());
 
@@ -173,4 +176,9 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         }
         return numPending;
     }
+
+    @Override
+    public BookieLatencyEstimator getReadLatencyEstimator() {
+        return readLatencyEstimator;
+    }
 }
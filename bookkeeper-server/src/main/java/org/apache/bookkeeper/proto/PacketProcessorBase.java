@@ -132,7 +132,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
             } else {
                 promise = channel.voidPromise();
             }
-            channel.writeAndFlush(response, promise);
+            requestHandler.writeResponse(response, promise);
         } else {
             if (response instanceof BookieProtocol.Response) {
                 ((BookieProtocol.Response) response).release();
@@ -20,9 +20,11 @@
  */
 package org.apache.bookkeeper.proto;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.common.util.MathUtils;
@@ -44,6 +46,9 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
     final BookieRequestProcessor requestProcessor;
     final long enqueueNanos;
 
+    // Buffer the bytes fields of the next response point to, released once it is written
+    protected ByteBuf responseBody = null;
+
     public PacketProcessorBaseV3(Request request, BookieRequestHandler requestHandler,
                                  BookieRequestProcessor requestProcessor) {
         this.request = request;
@@ -54,6 +59,8 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
 
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
         final long writeNanos = MathUtils.nowInNano();
+        final ByteBuf body = responseBody;
+        responseBody = null;
 
         Channel channel = requestHandler.ctx().channel();
         final long timeOut = requestProcessor.getWaitTimeoutOnBackpressureMillis();
@@ -83,15 +90,17 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
                 statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                ReferenceCountUtil.release(body);
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
             }
         }
         if (channel.isActive()) {
-            channel.writeAndFlush(response).addListener(new ChannelFutureListener() {
+            requestHandler.writeResponse(response, channel.newPromise()).addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture future) throws Exception {
+                    ReferenceCountUtil.release(body);
                     long writeElapsedNanos = MathUtils.elapsedNanos(writeNanos);
                     if (!future.isSuccess()) {
                         requestProcessor.getRequestStats().getChannelWriteStats()
@@ -108,6 +117,7 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                 }
             });
         } else {
+            ReferenceCountUtil.release(body);
             log.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
         }
@@ -0,0 +1,52 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A v3 add request decoded without copying its entry, used when processing the request on the bookie side.
+ *
+ * <p>The bytes fields of the request, like its body and master key, point into the frame it was decoded
+ * from. The entry is a retained slice of that frame, which keeps them valid until it is released.
+ */
+class ParsedAddRequestV3 {
+
+    private final BookkeeperProtocol.Request request;
+    private final ByteBuf entry;
+
+    ParsedAddRequestV3(BookkeeperProtocol.Request request, ByteBuf entry) {
+        this.request = request;
+        this.entry = entry;
+    }
+
+    BookkeeperProtocol.Request getRequest() {
+        return request;
+    }
+
+    ByteBuf getEntry() {
+        return entry;
+    }
+
+    void release() {
+        entry.release();
+    }
+}
@@ -81,6 +81,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiPredicate;
 import javax.net.ssl.SSLException;
@@ -299,8 +300,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "the number of failed tls handshakes"
     )
     private final Counter failedTlsHandshakeCounter;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_WRITES_PER_FLUSH,
+        help = "the number of coalesced requests written to the channel per flush"
+    )
+    private final OpStatsLogger writesPerFlushLogger;
 
     private final boolean useV2WireProtocol;
+
+    // Whether the v2 adds and reads are coalesced, see ChannelWriteCoalescer
+    private final boolean coalesceWrites;
+    private final int coalesceMaxOps;
+    private final int coalesceMaxBytes;
+    private volatile ChannelWriteCoalescer writeCoalescer = null;
+    private static final AtomicReferenceFieldUpdater<PerChannelBookieClient, ChannelWriteCoalescer>
+            WRITE_COALESCER_UPDATER = AtomicReferenceFieldUpdater.newUpdater(PerChannelBookieClient.class,
+                    ChannelWriteCoalescer.class, "writeCoalescer");
     protected final boolean preserveMdcForTaskExecution;
 
     /**
@@ -388,6 +403,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        this.coalesceWrites = useV2WireProtocol && conf.getClientWriteCoalescingEnabled();
+        this.coalesceMaxOps = conf.getClientWriteCoalescingMaxOps();
+        this.coalesceMaxBytes = conf.getClientWriteCoalescingMaxBytes();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
 
         this.authProviderFactory = authProviderFactory;
@@ -427,6 +445,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         activeTlsChannelCounter = statsLogger.getCounter(BookKeeperClientStats.ACTIVE_TLS_CHANNEL_COUNTER);
         failedConnectionCounter = statsLogger.getCounter(BookKeeperClientStats.FAILED_CONNECTION_COUNTER);
         failedTlsHandshakeCounter = statsLogger.getCounter(BookKeeperClientStats.FAILED_TLS_HANDSHAKE_COUNTER);
+        writesPerFlushLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_WRITES_PER_FLUSH);
 
         this.pcbcPool = pcbcPool;
 
@@ -826,8 +845,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                               AddCompletion.acquireAddCompletion(completionKey,
                                                    cb, ctx, ledgerId, entryId, this));
         // addEntry times out on backpressure
+        boolean coalesce = (options & (BookieProtocol.FLAG_RECOVERY_ADD | BookieProtocol.FLAG_HIGH_PRIORITY)) == 0;
         writeAndFlush(channel, completionKey, request, allowFastFail, cleanupActionFailedBeforeWrite,
-                cleanupActionAfterWrite);
+                cleanupActionAfterWrite, coalesce);
     }
 
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
@@ -980,10 +1000,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId, this);
+        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId, this,
+                timeOutInMillis != null);
         putCompletionKeyValue(completionKey, readCompletion);
 
-        writeAndFlush(channel, completionKey, request, allowFastFail, null, null);
+        boolean coalesce = timeOutInMillis == null
+                && (flags & (BookieProtocol.FLAG_DO_FENCING | BookieProtocol.FLAG_HIGH_PRIORITY)) == 0;
+        writeAndFlush(channel, completionKey, request, allowFastFail, null, null, coalesce);
     }
 
     public void batchReadEntries(final long ledgerId,
@@ -1026,7 +1049,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 completionKey, cb, ctx, ledgerId, startEntryId, this);
         putCompletionKeyValue(completionKey, readCompletion);
 
-        writeAndFlush(channel, completionKey, request, allowFastFail, null, null);
+        boolean coalesce = (flags & (BookieProtocol.FLAG_DO_FENCING | BookieProtocol.FLAG_HIGH_PRIORITY)) == 0;
+        writeAndFlush(channel, completionKey, request, allowFastFail, null, null, coalesce);
     }
 
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
@@ -1151,11 +1175,24 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, key, request, false, null, null);
     }
 
+    private void writeAndFlush(final Channel channel,
+                               final CompletionKey key,
+                               final Object request,
+                               final boolean allowFastFail, final Runnable cleanupActionFailedBeforeWrite,
+                               final Runnable cleanupActionAfterWrite) {
+        writeAndFlush(channel, key, request, allowFastFail, cleanupActionFailedBeforeWrite, cleanupActionAfterWrite,
+                false);
+    }
+
+    /**
+     * @param coalesce whether the request may be written with the other requests sent before the event
+     *                 loop writes them, for v2 requests that are not latency critical
+     */
     private void writeAndFlush(final Channel channel,
                            final CompletionKey key,
                            final Object request,
                                final boolean allowFastFail, final Runnable cleanupActionFailedBeforeWrite,
-                               final Runnable cleanupActionAfterWrite) {
+                               final Runnable cleanupActionAfterWrite, final boolean coalesce) {
         if (channel == null) {
             LOG.warn("Operation {} failed: channel == null", StringUtils.requestToString(request));
             errorOut(key);
@@ -1203,7 +1240,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     }
                 }
             });
-            channel.writeAndFlush(request, promise);
+            if (coalesce && coalesceWrites) {
+                getWriteCoalescer(channel).write(request, promise);
+            } else {
+                channel.writeAndFlush(request, promise);
+            }
         } catch (Throwable e) {
             LOG.warn("Operation {} failed", StringUtils.requestToString(request), e);
             errorOut(key);
@@ -1213,6 +1254,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private ChannelWriteCoalescer getWriteCoalescer(Channel channel) {
+        while (true) {
+            ChannelWriteCoalescer coalescer = writeCoalescer;
+            if (coalescer != null && coalescer.getChannel() == channel) {
+                return coalescer;
+            }
+            // First write or the channel was reconnected. All the writers of the channel must use the same
+            // coalescer, so the one that installs it first wins
+            ChannelWriteCoalescer newCoalescer = new ChannelWriteCoalescer(channel, coalesceMaxOps,
+                    coalesceMaxBytes, writesPerFlushLogger);
+            if (WRITE_COALESCER_UPDATER.compareAndSet(this, coalescer, newCoalescer)) {
+                return newCoalescer;
+            }
+        }
+    }
+
     void errorOut(final CompletionKey key) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
@@ -1280,6 +1337,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * Record the latency of a read. The reads that failed quickly are not recorded, unlike the reads
+     * that timed out, which tell how slow the bookie is.
+     *
+     * @param opCode the read operation, as a {@link BookieProtocol} op code
+     */
+    void recordReadLatency(byte opCode, int rc, long latencyNanos) {
+        if (pcbcPool == null || (rc != BKException.Code.OK && rc != BKException.Code.TimeoutException)) {
+            return;
+        }
+        BookieLatencyEstimator estimator = pcbcPool.getReadLatencyEstimator();
+        if (estimator != null) {
+            estimator.record(opCode, latencyNanos);
+        }
+    }
+
     /**
      * If our channel has disconnected, we just error out the pending entries.
      */
@@ -1410,6 +1483,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         + " and ledger:entry : " + response.ledgerId + ":" + response.entryId);
             }
             response.release();
+            response.recycle();
         } else {
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey,
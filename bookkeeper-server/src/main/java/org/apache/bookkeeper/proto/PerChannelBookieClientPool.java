@@ -92,4 +92,11 @@ public interface PerChannelBookieClientPool {
      * Get the number of pending completion requests in the channel.
      */
     long getNumPendingCompletionRequests();
+
+    /**
+     * Get the estimate of the read latency of the bookie, or null if it is not tracked.
+     */
+    default BookieLatencyEstimator getReadLatencyEstimator() {
+        return null;
+    }
 }
@@ -35,12 +35,17 @@ class ReadCompletion extends CompletionValue {
                           final BookkeeperInternalCallbacks.ReadEntryCallback originalCallback,
                           final Object originalCtx,
                           long ledgerId, final long entryId,
-                          PerChannelBookieClient perChannelBookieClient) {
+                          PerChannelBookieClient perChannelBookieClient,
+                          boolean longPoll) {
         super("Read", originalCtx, ledgerId, entryId, perChannelBookieClient);
         this.opLogger = perChannelBookieClient.readEntryOpLogger;
         this.timeoutOpLogger = perChannelBookieClient.readTimeoutOpLogger;
         this.cb = (rc, ledgerId1, entryId1, buffer, ctx) -> {
             logOpResult(rc);
+            // The latency of a long poll read is the time the bookie waited for the entry
+            if (!longPoll) {
+                perChannelBookieClient.recordReadLatency(BookieProtocol.READENTRY, rc, latency());
+            }
             originalCallback.readEntryComplete(rc,
                     ledgerId1, entryId1,
                     buffer, originalCtx);
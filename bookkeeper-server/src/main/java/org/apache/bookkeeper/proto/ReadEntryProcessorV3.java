@@ -176,7 +176,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             return null;
         } else {
             try {
-                readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+                setBody(readResponseBuilder, entryBody);
                 if (readLACPiggyBack) {
                     readResponseBuilder.setEntryId(entryId);
                 } else {
@@ -192,6 +192,20 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         }
     }
 
+    /**
+     * Set the entry as the body of the response. With the zero copy v3 codec, the body points to the
+     * entry, which is then kept until the response is written.
+     */
+    private void setBody(ReadResponse.Builder readResponseBuilder, ByteBuf entryBody) {
+        if (requestProcessor.isZeroCopyV3Reads()) {
+            readResponseBuilder.setBody(ByteStringUtil.byteBufToByteString(entryBody));
+            ReferenceCountUtil.release(responseBody);
+            responseBody = entryBody.retain();
+        } else {
+            readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+        }
+    }
+
     protected ReadResponse getReadResponse() {
         final Stopwatch startTimeSw = Stopwatch.createStarted();
         final Channel channel = requestHandler.ctx().channel();
@@ -287,7 +301,7 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             registerFailedEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         } else {
             status = StatusCode.EOK;
-            readResponse.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+            setBody(readResponse, entryBody);
             registerSuccessfulEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         }
 
@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.common.util.MdcUtils;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.slf4j.MDC;
+
+/**
+ * Processes the requests read together from a connection that have the same ordering key, as one task
+ * of the worker thread of the key.
+ *
+ * <p>The responses written by the requests on the worker thread are flushed once, after the last
+ * request is processed. Responses written later by other threads, like the add responses written once
+ * the entries are journaled, are flushed as usual.
+ */
+@Slf4j
+class RequestBatchProcessor implements Runnable {
+
+    // Batch processed by the current thread
+    private static final ThreadLocal<RequestBatchProcessor> CURRENT_BATCH = new ThreadLocal<>();
+
+    private final BookieRequestHandler requestHandler;
+    private final BookieRequestProcessor requestProcessor;
+    private final OrderedExecutor threadPool;
+    private final long orderingKey;
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<Runnable> rejectHandlers = new ArrayList<>();
+    // MDC context of each request, when it is preserved for the task execution
+    private final List<Map<String, String>> mdcContexts;
+    private boolean flushPending = false;
+
+    RequestBatchProcessor(BookieRequestHandler requestHandler, BookieRequestProcessor requestProcessor,
+                          OrderedExecutor threadPool, long orderingKey) {
+        this.requestHandler = requestHandler;
+        this.requestProcessor = requestProcessor;
+        this.threadPool = threadPool;
+        this.orderingKey = orderingKey;
+        this.mdcContexts = requestProcessor.isPreserveMdcForTaskExecution() ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Add the task of a request to the batch.
+     *
+     * @param onRejected run instead of the task if the worker thread has too many pending tasks
+     */
+    void add(Runnable task, Runnable onRejected) {
+        tasks.add(task);
+        rejectHandlers.add(onRejected);
+        if (mdcContexts != null) {
+            mdcContexts.add(MDC.getCopyOfContextMap());
+        }
+    }
+
+    /**
+     * Submit the batch to the worker thread of its ordering key.
+     */
+    void dispatch() {
+        try {
+            threadPool.executeOrdered(orderingKey, this);
+        } catch (RejectedExecutionException e) {
+            for (Runnable onRejected : rejectHandlers) {
+                onRejected.run();
+            }
+            return;
+        }
+        RequestStats requestStats = requestProcessor.getRequestStats();
+        requestStats.getDispatchBatchSizeStats().registerSuccessfulValue(tasks.size());
+        requestStats.getDispatchTasksSavedCounter().addCount(tasks.size() - 1);
+    }
+
+    @Override
+    public void run() {
+        CURRENT_BATCH.set(this);
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                Runnable task = tasks.get(i);
+                if (mdcContexts != null) {
+                    MdcUtils.restoreContext(mdcContexts.get(i));
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // Process the next requests anyway, they would not get a response otherwise
+                    log.error("Failed to process request {} on {}", task, requestHandler.ctx().channel(), e);
+                } finally {
+                    if (mdcContexts != null) {
+                        MDC.clear();
+                    }
+                }
+            }
+        } finally {
+            CURRENT_BATCH.remove();
+            if (flushPending) {
+                requestHandler.ctx().channel().flush();
+            }
+        }
+    }
+
+    /**
+     * Check whether a response written to the channel of the given handler can be flushed later,
+     * because the current thread processes a batch of requests of the channel. The batch then flushes
+     * the channel once it is processed.
+     */
+    static boolean deferFlush(BookieRequestHandler requestHandler) {
+        RequestBatchProcessor batch = CURRENT_BATCH.get();
+        if (batch == null || batch.requestHandler != requestHandler
+                || !requestHandler.ctx().channel().isWritable()) {
+            return false;
+        }
+        batch.flushPending = true;
+        return true;
+    }
+}
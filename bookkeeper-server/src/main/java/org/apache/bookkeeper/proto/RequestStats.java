@@ -50,6 +50,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_SCHE
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAST_ENTRY_NOENTRY_ERROR;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_DISPATCH_BATCH_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.REQUEST_DISPATCH_TASKS_SAVED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC_REQUEST;
@@ -246,6 +248,16 @@ public class RequestStats {
             parent = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST
     )
     final OpStatsLogger getListOfEntriesOfLedgerStats;
+    @StatsDoc(
+            name = REQUEST_DISPATCH_BATCH_SIZE,
+            help = "The number of requests read together from a connection and executed as one worker task"
+    )
+    final OpStatsLogger dispatchBatchSizeStats;
+    @StatsDoc(
+            name = REQUEST_DISPATCH_TASKS_SAVED,
+            help = "The number of worker tasks saved by executing requests read together as one task"
+    )
+    final Counter dispatchTasksSavedCounter;
 
     public RequestStats(StatsLogger statsLogger) {
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
@@ -280,6 +292,8 @@ public class RequestStats {
         this.getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER);
         this.getListOfEntriesOfLedgerRequestStats =
                 statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST);
+        this.dispatchBatchSizeStats = statsLogger.getOpStatsLogger(REQUEST_DISPATCH_BATCH_SIZE);
+        this.dispatchTasksSavedCounter = statsLogger.getCounter(REQUEST_DISPATCH_TASKS_SAVED);
 
         statsLogger.registerGauge(ADD_ENTRY_IN_PROGRESS, new Gauge<Number>() {
             @Override
@@ -29,11 +29,11 @@ class ResponseBuilder {
             return BookieProtocol.AddResponse.create(r.getProtocolVersion(), errorCode,
                                                   r.getLedgerId(), r.getEntryId());
         } else if (r.getOpCode() == BookieProtocol.READENTRY) {
-            return new BookieProtocol.ReadResponse(r.getProtocolVersion(), errorCode,
+            return BookieProtocol.ReadResponse.create(r.getProtocolVersion(), errorCode,
                                                    r.getLedgerId(), r.getEntryId());
         } else {
             assert(r.getOpCode() == BookieProtocol.BATCH_READ_ENTRY);
-            return new BookieProtocol.BatchedReadResponse(r.getProtocolVersion(), errorCode,
+            return BookieProtocol.BatchedReadResponse.create(r.getProtocolVersion(), errorCode,
                     r.getLedgerId(), r.getEntryId(), ((BookieProtocol.BatchedReadRequest) r).getRequestId());
         }
     }
@@ -44,12 +44,12 @@ class ResponseBuilder {
     }
 
     static BookieProtocol.Response buildReadResponse(ByteBuf data, BookieProtocol.Request r) {
-        return new BookieProtocol.ReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
+        return BookieProtocol.ReadResponse.create(r.getProtocolVersion(), BookieProtocol.EOK,
                 r.getLedgerId(), r.getEntryId(), data);
     }
 
     static BookieProtocol.Response buildBatchedReadResponse(ByteBufList data, BookieProtocol.BatchedReadRequest r) {
-        return new BookieProtocol.BatchedReadResponse(r.getProtocolVersion(), BookieProtocol.EOK,
+        return BookieProtocol.BatchedReadResponse.create(r.getProtocolVersion(), BookieProtocol.EOK,
                 r.getLedgerId(), r.getEntryId(), r.getRequestId(), data);
     }
 }
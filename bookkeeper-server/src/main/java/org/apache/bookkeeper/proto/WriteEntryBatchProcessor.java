@@ -0,0 +1,76 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+
+/**
+ * Processes add entry requests that arrived together on a connection, adding their entries to the
+ * bookie as one batch.
+ */
+class WriteEntryBatchProcessor implements Runnable {
+
+    private final BookieRequestHandler requestHandler;
+    private final List<WriteEntryProcessor> writes;
+
+    WriteEntryBatchProcessor(BookieRequestHandler requestHandler, List<WriteEntryProcessor> writes) {
+        this.requestHandler = requestHandler;
+        this.writes = writes;
+    }
+
+    @Override
+    public void run() {
+        List<WriteEntryProcessor> batch = new ArrayList<>(writes.size());
+        for (WriteEntryProcessor write : writes) {
+            if (write.canBatchAdd()) {
+                batch.add(write);
+            } else {
+                write.run();
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<ByteBuf> entries = new ArrayList<>(batch.size());
+        List<WriteCallback> cbs = new ArrayList<>(batch.size());
+        List<byte[]> masterKeys = new ArrayList<>(batch.size());
+        for (WriteEntryProcessor write : batch) {
+            write.startBatchedAdd();
+            entries.add(write.request.getData());
+            cbs.add(write);
+            masterKeys.add(write.request.getMasterKey());
+        }
+
+        Exception[] failures = batch.get(0).requestProcessor.getBookie()
+                .addEntries(entries, cbs, masterKeys, false, requestHandler);
+        if (failures != null) {
+            for (int i = 0; i < failures.length; i++) {
+                if (failures[i] != null) {
+                    batch.get(i).failAdd(failures[i]);
+                }
+            }
+        }
+    }
+}
@@ -79,40 +79,77 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
                 requestProcessor.getBookie().addEntry(addData, false, this,
                         requestHandler, request.getMasterKey());
             }
-        } catch (OperationRejectedException e) {
+        } catch (Throwable t) {
+            rc = getFailureCode(t);
+        }
+
+        if (rc != BookieProtocol.EOK) {
+            failAdd(rc);
+        }
+    }
+
+    /**
+     * Whether the entry can be added as part of a batch, through {@link #startBatchedAdd()}. Otherwise
+     * the request is processed by {@link #run()}.
+     */
+    boolean canBatchAdd() {
+        return isVersionCompatible()
+                && !request.isRecoveryAdd()
+                && !request.isHighPriority()
+                && !requestProcessor.getBookie().isReadOnly();
+    }
+
+    /**
+     * Start processing the request as part of a batch, the entry being added to the bookie by the caller.
+     */
+    void startBatchedAdd() {
+        requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        startTimeNanos = MathUtils.nowInNano();
+    }
+
+    /**
+     * Respond to a request whose entry was not added.
+     */
+    void failAdd(Throwable t) {
+        failAdd(getFailureCode(t));
+    }
+
+    private int getFailureCode(Throwable t) {
+        if (t instanceof OperationRejectedException) {
             requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
             // Avoid to log each occurrence of this exception as this can happen when the ledger storage is
             // unable to keep up with the write rate.
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Operation rejected while writing {}", request, e);
+                LOG.debug("Operation rejected while writing {}", request, t);
             }
-            rc = BookieProtocol.ETOOMANYREQUESTS;
-        } catch (IOException e) {
-            LOG.error("Error writing {}", request, e);
-            rc = BookieProtocol.EIO;
-        } catch (BookieException.LedgerFencedException lfe) {
+            return BookieProtocol.ETOOMANYREQUESTS;
+        } else if (t instanceof IOException) {
+            LOG.error("Error writing {}", request, t);
+            return BookieProtocol.EIO;
+        } else if (t instanceof BookieException.LedgerFencedException) {
             LOG.warn("Write attempt on fenced ledger {} by client {}", request.getLedgerId(),
                     requestHandler.ctx().channel().remoteAddress());
-            rc = BookieProtocol.EFENCED;
-        } catch (BookieException e) {
-            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
-            rc = BookieProtocol.EUA;
-        } catch (Throwable t) {
+            return BookieProtocol.EFENCED;
+        } else if (t instanceof BookieException) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), t);
+            return BookieProtocol.EUA;
+        } else {
             LOG.error("Unexpected exception while writing {}@{} : {}",
                       request.ledgerId, request.entryId, t.getMessage(), t);
             // some bad request which cause unexpected exception
-            rc = BookieProtocol.EBADREQ;
+            return BookieProtocol.EBADREQ;
         }
+    }
 
-        if (rc != BookieProtocol.EOK) {
-            requestProcessor.getRequestStats().getAddEntryStats()
-                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
-            sendWriteReqResponse(rc,
-                         ResponseBuilder.buildErrorResponse(rc, request),
-                         requestProcessor.getRequestStats().getAddRequestStats());
-            request.recycle();
-            recycle();
-        }
+    private void failAdd(int rc) {
+        requestProcessor.getRequestStats().getAddEntryStats()
+            .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        sendWriteReqResponse(rc,
+                     ResponseBuilder.buildErrorResponse(rc, request),
+                     requestProcessor.getRequestStats().getAddRequestStats());
+        request.recycle();
+        recycle();
     }
 
     @Override
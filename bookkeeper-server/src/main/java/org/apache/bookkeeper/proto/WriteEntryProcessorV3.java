@@ -42,9 +42,22 @@ import org.slf4j.LoggerFactory;
 class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     private static final Logger logger = LoggerFactory.getLogger(WriteEntryProcessorV3.class);
 
+    // The entry of the request, when it was decoded without copying it
+    private ByteBuf entry;
+
     public WriteEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
                                  BookieRequestProcessor requestProcessor) {
+        this(request, null, requestHandler, requestProcessor);
+    }
+
+    /**
+     * @param entry the entry of the request if it was decoded without copying it, released by the
+     *              processor, or null to add the body of the request
+     */
+    WriteEntryProcessorV3(Request request, ByteBuf entry, BookieRequestHandler requestHandler,
+                          BookieRequestProcessor requestProcessor) {
         super(request, requestHandler, requestProcessor);
+        this.entry = entry;
         requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
     }
 
@@ -114,7 +127,13 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
         StatusCode status = null;
         byte[] masterKey = addRequest.getMasterKey().toByteArray();
-        ByteBuf entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
+        ByteBuf entryToAdd = entry;
+        if (entryToAdd == null) {
+            entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
+        }
+        // The bookie releases the entry once it is added, the journal retains it until it is written, so
+        // the bytes fields of the request must not be used after this point
+        entry = null;
         try {
             if (RequestUtils.hasFlag(addRequest, AddRequest.Flag.RECOVERY_ADD)) {
                 requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb,
@@ -129,7 +148,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
             // Avoid to log each occurrence of this exception as this can happen when the ledger storage is
             // unable to keep up with the write rate.
             if (logger.isDebugEnabled()) {
-                logger.debug("Operation rejected while writing {}", request, e);
+                logger.debug("Operation rejected while writing {}", this, e);
             }
             status = StatusCode.ETOOMANYREQUESTS;
         } catch (IOException e) {
@@ -164,7 +183,13 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     public void run() {
         requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
                 .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
-        AddResponse addResponse = getAddResponse();
+        AddResponse addResponse;
+        try {
+            addResponse = getAddResponse();
+        } finally {
+            // The entry is still owned by the processor if the request failed before adding it
+            releaseEntry();
+        }
         if (null != addResponse) {
             // This means there was an error and we should send this back.
             Response.Builder response = Response.newBuilder()
@@ -177,6 +202,17 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         }
     }
 
+    /**
+     * Release the entry of the request, if it was decoded without copying it. The request is not valid
+     * anymore once released.
+     */
+    void releaseEntry() {
+        if (entry != null) {
+            entry.release();
+            entry = null;
+        }
+    }
+
     @Override
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
         super.sendResponse(code, response, statsLogger);
@@ -20,9 +20,12 @@ package org.apache.bookkeeper.server.http.service;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.JournalReplayProgress;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.common.util.JsonUtil;
 import org.apache.bookkeeper.http.HttpServer;
@@ -41,7 +44,18 @@ import org.apache.bookkeeper.http.service.HttpServiceResponse;
  *  "running" : true,
  *  "readOnly" : false,
  *  "shuttingDown" : false,
- *  "availableForHighPriorityWrites" : true
+ *  "availableForHighPriorityWrites" : true,
+ *  "journalReplay" : [ {
+ *    "journalDirectory" : "/data/bookkeeper/journal/current",
+ *    "journalId" : 18956357215,
+ *    "journalFiles" : 2,
+ *    "replayedJournalFiles" : 2,
+ *    "readRecords" : 1832714,
+ *    "readBytes" : 1904329856,
+ *    "appliedRecords" : 1832714,
+ *    "completed" : true,
+ *    "elapsedMillis" : 41267
+ *  } ]
  *}
  * </code>
  * </pre>
@@ -64,6 +78,24 @@ public class BookieStateService implements HttpEndpointService {
         private boolean readOnly;
         private boolean shuttingDown;
         private boolean availableForHighPriorityWrites;
+        private List<JournalReplayState> journalReplay;
+    }
+
+    /**
+     * POJO definition for the replay progress of a journal.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class JournalReplayState {
+        private String journalDirectory;
+        private long journalId;
+        private int journalFiles;
+        private int replayedJournalFiles;
+        private long readRecords;
+        private long readBytes;
+        private long appliedRecords;
+        private boolean completed;
+        private long elapsedMillis;
     }
 
     @Override
@@ -82,6 +114,20 @@ public class BookieStateService implements HttpEndpointService {
         bs.readOnly = sm.isReadOnly();
         bs.shuttingDown = sm.isShuttingDown();
         bs.availableForHighPriorityWrites = sm.isAvailableForHighPriorityWrites();
+        bs.journalReplay = new ArrayList<>();
+        for (JournalReplayProgress progress : bookie.getJournalReplayProgress()) {
+            JournalReplayState state = new JournalReplayState();
+            state.journalDirectory = progress.getJournalDirectory().getPath();
+            state.journalId = progress.getJournalId();
+            state.journalFiles = progress.getJournalFiles();
+            state.replayedJournalFiles = progress.getReplayedJournalFiles();
+            state.readRecords = progress.getReadRecords();
+            state.readBytes = progress.getReadBytes();
+            state.appliedRecords = progress.getAppliedRecords();
+            state.completed = progress.isCompleted();
+            state.elapsedMillis = progress.getElapsedMillis();
+            bs.journalReplay.add(state);
+        }
 
         String jsonResponse = JsonUtil.toJson(bs);
         response.setBody(jsonResponse);
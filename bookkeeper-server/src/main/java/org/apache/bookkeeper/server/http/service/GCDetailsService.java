@@ -43,8 +43,18 @@ import org.slf4j.LoggerFactory;
  *           "lastMajorCompactionTime" : 1544578144944,
  *           "lastMinorCompactionTime" : 1544578144944,
  *           "majorCompactionCounter" : 1,
- *           "minorCompactionCounter" : 0
+ *           "minorCompactionCounter" : 0,
+ *           "ledgerDirs" : "/data/bookkeeper/ledgers/current",
+ *           "compactingEntryLogId" : 42,
+ *           "compactionCandidates" : 12,
+ *           "compactedEntryLogs" : 5,
+ *           "compactionReclaimedBytes" : 3221225472,
+ *           "activeCompactionWorkers" : 2,
+ *           "maxCompactionWorkers" : 2
  *         } ]
+ *
+ * <p>There is one element per garbage collector thread, that is per ledger directory for DbLedgerStorage,
+ * and the compaction fields report the progress of its compaction worker.
  */
 public class GCDetailsService implements HttpEndpointService {
 
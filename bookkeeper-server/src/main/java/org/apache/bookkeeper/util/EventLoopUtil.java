@@ -19,10 +19,12 @@ package org.apache.bookkeeper.util;
 
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SelectStrategy;
+import io.netty.channel.SelectStrategyFactory;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.incubator.channel.uring.IOUring;
 import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.util.IntSupplier;
 import java.util.concurrent.ThreadFactory;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
@@ -43,60 +45,118 @@ public class EventLoopUtil {
     private static final String ENABLE_IO_URING = "enable.io_uring";
 
     public static EventLoopGroup getClientEventLoopGroup(ClientConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.getBusyWaitSpinIterations(), conf.isIoUringEnabled());
     }
 
     public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.getBusyWaitSpinIterations(), conf.isIoUringEnabled());
     }
 
     public static EventLoopGroup getServerAcceptorGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumAcceptorThreads(), false);
+        return getEventLoopGroup(threadFactory, conf.getServerNumAcceptorThreads(), false, 0,
+                conf.isIoUringEnabled());
     }
 
     private static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory,
-            int numThreads, boolean enableBusyWait) {
+            int numThreads, boolean enableBusyWait, int spinIterations, boolean enableIoUring) {
         if (!SystemUtils.IS_OS_LINUX) {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
 
-        String enableIoUring = System.getProperty(ENABLE_IO_URING);
+        String enableIoUringProperty = System.getProperty(ENABLE_IO_URING);
 
         // By default, io_uring will not be enabled, even if available. The environment variable will be used:
         // enable.io_uring=1
-        if (StringUtils.equalsAnyIgnoreCase(enableIoUring, "1", "true")) {
+        if (StringUtils.equalsAnyIgnoreCase(enableIoUringProperty, "1", "true")) {
             // Throw exception if IOUring cannot be used
             IOUring.ensureAvailability();
-            return new IOUringEventLoopGroup(numThreads, threadFactory);
-        } else {
+            return newIOUringEventLoopGroup(threadFactory, numThreads, enableBusyWait);
+        }
+        if (enableIoUring) {
             try {
-                if (!enableBusyWait) {
-                    // Regular Epoll based event loop
-                    return new EpollEventLoopGroup(numThreads, threadFactory);
+                if (IOUring.isAvailable()) {
+                    return newIOUringEventLoopGroup(threadFactory, numThreads, enableBusyWait);
                 }
+                log.warn("Could not use Netty io_uring event loop: {}", IOUring.unavailabilityCause().getMessage());
+            } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
+                log.warn("Could not use Netty io_uring event loop: {}", e.getMessage());
+            }
+        }
+
+        try {
+            if (!enableBusyWait) {
+                // Regular Epoll based event loop
+                return new EpollEventLoopGroup(numThreads, threadFactory);
+            }
+
+            // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
+            // context switches
+            SelectStrategyFactory selectStrategyFactory = spinIterations > 0
+                    ? () -> new SpinThenParkSelectStrategy(spinIterations)
+                    : () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT;
+            EpollEventLoopGroup eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
+                    selectStrategyFactory);
+            acquireCores(eventLoopGroup, numThreads);
+            return eventLoopGroup;
+        } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
+            log.warn("Could not use Netty Epoll event loop: {}", e.getMessage());
+            return new NioEventLoopGroup(numThreads, threadFactory);
+        }
+    }
 
-                // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
-                // context switches
-                EpollEventLoopGroup eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
-                        () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
-
-                // Enable CPU affinity on IO threads
-                for (int i = 0; i < numThreads; i++) {
-                    eventLoopGroup.next().submit(() -> {
-                        try {
-                            CpuAffinity.acquireCore();
-                        } catch (Throwable t) {
-                            log.warn("Failed to acquire CPU core for thread {} err {} {}",
-                                    Thread.currentThread().getName(), t.getMessage(), t);
-                        }
-                    });
+    private static EventLoopGroup newIOUringEventLoopGroup(ThreadFactory threadFactory, int numThreads,
+                                                           boolean enableBusyWait) {
+        IOUringEventLoopGroup eventLoopGroup = new IOUringEventLoopGroup(numThreads, threadFactory);
+        if (enableBusyWait) {
+            // The io_uring event loops do not support busy-waiting, but still benefit from dedicated cores
+            acquireCores(eventLoopGroup, numThreads);
+        }
+        return eventLoopGroup;
+    }
+
+    /**
+     * Enable CPU affinity on IO threads.
+     */
+    private static void acquireCores(EventLoopGroup eventLoopGroup, int numThreads) {
+        for (int i = 0; i < numThreads; i++) {
+            eventLoopGroup.next().submit(() -> {
+                try {
+                    CpuAffinity.acquireCore();
+                } catch (Throwable t) {
+                    log.warn("Failed to acquire CPU core for thread {} err {} {}",
+                            Thread.currentThread().getName(), t.getMessage(), t);
                 }
+            });
+        }
+    }
 
-                return eventLoopGroup;
-            } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
-                log.warn("Could not use Netty Epoll event loop: {}", e.getMessage());
-                return new NioEventLoopGroup(numThreads, threadFactory);
+    /**
+     * Select strategy that polls for events without blocking, like the busy-wait strategy, until it gets
+     * no events for the given number of polls in a row. It then blocks until the next event, and spins
+     * again once it gets one.
+     */
+    static final class SpinThenParkSelectStrategy implements SelectStrategy {
+        private final int spinIterations;
+        private int emptyPolls = 0;
+
+        SpinThenParkSelectStrategy(int spinIterations) {
+            this.spinIterations = spinIterations;
+        }
+
+        @Override
+        public int calculateStrategy(IntSupplier selectSupplier, boolean hasTasks) throws Exception {
+            int ready = selectSupplier.get();
+            if (ready > 0 || hasTasks) {
+                emptyPolls = 0;
+                return ready;
+            }
+            if (++emptyPolls < spinIterations) {
+                return ready;
             }
+            emptyPolls = 0;
+            return SelectStrategy.SELECT;
         }
     }
 }
@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the compaction of the live entries of {@link AbstractLogCompactor}.
+ */
+public class AbstractLogCompactorTest {
+
+    private static final long ENTRY_LOG_ID = 5L;
+    private static final int ENTRY_SIZE = 100;
+
+    private final List<EntryLocation> indexLocations = new ArrayList<>();
+    private final List<ByteBuf> readEntries = new ArrayList<>();
+    private CompactableLedgerStorage ledgerStorage;
+    private EntryLogger entryLogger;
+    private EntryLogMetadata entryLogMeta;
+
+    private static class TestCompactor extends AbstractLogCompactor {
+        TestCompactor(ServerConfiguration conf) {
+            super(conf, entryLogId -> {});
+        }
+
+        @Override
+        public boolean compact(EntryLogMetadata entryLogMeta) {
+            return false;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ledgerStorage = mock(CompactableLedgerStorage.class);
+        when(ledgerStorage.supportsEntriesLocationsLookup()).thenReturn(true);
+        doAnswer(invocation -> {
+            long ledgerId = invocation.getArgument(1);
+            List<EntryLocation> locations = invocation.getArgument(2);
+            for (EntryLocation location : indexLocations) {
+                if (location.ledger == ledgerId) {
+                    locations.add(location);
+                }
+            }
+            return null;
+        }).when(ledgerStorage).getEntriesLocationsInEntryLog(eq(ENTRY_LOG_ID), anyLong(), any());
+
+        entryLogger = mock(EntryLogger.class);
+        when(entryLogger.readEntry(anyLong(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+            entry.writeLong(invocation.getArgument(0));
+            entry.writeLong(invocation.getArgument(1));
+            entry.writeZero(ENTRY_SIZE - 2 * Long.BYTES);
+            readEntries.add(entry);
+            return entry;
+        });
+
+        entryLogMeta = new EntryLogMetadata(ENTRY_LOG_ID);
+    }
+
+    // Add a live entry at the given offset of the entry log
+    private void addLiveEntry(long ledgerId, long entryId, long offset) {
+        indexLocations.add(new EntryLocation(ledgerId, entryId, (ENTRY_LOG_ID << 32) | offset));
+        entryLogMeta.addLedgerSize(ledgerId, ENTRY_SIZE + Integer.BYTES);
+    }
+
+    private static ServerConfiguration conf(boolean useEntryLocationIndex) {
+        return new ServerConfiguration().setCompactionUseEntryLocationIndex(useEntryLocationIndex);
+    }
+
+    @Test
+    public void testLiveEntryLocationsSortedByOffset() throws Exception {
+        addLiveEntry(1L, 0L, 1000L);
+        addLiveEntry(2L, 0L, 1104L);
+        addLiveEntry(1L, 1L, 1208L);
+        addLiveEntry(2L, 1L, 1312L);
+
+        TestCompactor compactor = new TestCompactor(conf(true));
+        List<EntryLocation> locations = compactor.getLiveEntryLocations(ledgerStorage, entryLogMeta);
+        long[] offsets = locations.stream().mapToLong(location -> location.location & 0xFFFFFFFFL).toArray();
+        assertArrayEquals(new long[] { 1000L, 1104L, 1208L, 1312L }, offsets);
+    }
+
+    @Test
+    public void testNoLiveEntryLocationsWhenDisabled() throws Exception {
+        addLiveEntry(1L, 0L, 1000L);
+
+        assertNull(new TestCompactor(conf(false)).getLiveEntryLocations(ledgerStorage, entryLogMeta));
+
+        when(ledgerStorage.supportsEntriesLocationsLookup()).thenReturn(false);
+        assertNull(new TestCompactor(conf(true)).getLiveEntryLocations(ledgerStorage, entryLogMeta));
+    }
+
+    @Test
+    public void testNoLiveEntryLocationsWhenLedgerMissingFromIndex() throws Exception {
+        addLiveEntry(1L, 0L, 1000L);
+        // A ledger with data in the entry log that the index does not know about
+        entryLogMeta.addLedgerSize(3L, ENTRY_SIZE + Integer.BYTES);
+
+        assertNull(new TestCompactor(conf(true)).getLiveEntryLocations(ledgerStorage, entryLogMeta));
+    }
+
+    @Test
+    public void testReadLiveEntries() throws Exception {
+        addLiveEntry(1L, 0L, 1000L);
+        addLiveEntry(2L, 0L, 1104L);
+        addLiveEntry(1L, 1L, 1208L);
+        TestCompactor compactor = new TestCompactor(conf(true));
+        List<EntryLocation> locations = compactor.getLiveEntryLocations(ledgerStorage, entryLogMeta);
+
+        List<long[]> processed = new ArrayList<>();
+        EntryLogScanner scanner = new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return true;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                assertEquals(ledgerId, entry.getLong(0));
+                processed.add(new long[] { ledgerId, entry.getLong(Long.BYTES), offset });
+            }
+        };
+
+        assertTrue(compactor.readLiveEntries(entryLogger, entryLogMeta, locations, scanner));
+        assertEquals(3, processed.size());
+        assertArrayEquals(new long[] { 1L, 0L, 1000L }, processed.get(0));
+        assertArrayEquals(new long[] { 2L, 0L, 1104L }, processed.get(1));
+        assertArrayEquals(new long[] { 1L, 1L, 1208L }, processed.get(2));
+        readEntries.forEach(entry -> assertEquals(0, entry.refCnt()));
+    }
+
+    @Test
+    public void testReadLiveEntriesMissingData() throws Exception {
+        addLiveEntry(1L, 0L, 1000L);
+        addLiveEntry(1L, 1L, 1104L);
+        // The index is missing an entry of the ledger, its live data is not all read
+        indexLocations.remove(1);
+        TestCompactor compactor = new TestCompactor(conf(true));
+        List<EntryLocation> locations = compactor.getLiveEntryLocations(ledgerStorage, entryLogMeta);
+        assertEquals(Arrays.asList(indexLocations.get(0)), locations);
+
+        EntryLogScanner scanner = mock(EntryLogScanner.class);
+        assertFalse(compactor.readLiveEntries(entryLogger, entryLogMeta, locations, scanner));
+        readEntries.forEach(entry -> assertEquals(0, entry.refCnt()));
+    }
+}
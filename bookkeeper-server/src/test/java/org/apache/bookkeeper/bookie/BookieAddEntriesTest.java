@@ -0,0 +1,200 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link BookieImpl#addEntries}.
+ */
+public class BookieAddEntriesTest {
+
+    private static final long FENCED_LEDGER = 1L;
+    private static final long LEDGER = 2L;
+    private static final long OTHER_LEDGER = 3L;
+    private static final byte[] MASTER_KEY = "master-key".getBytes(UTF_8);
+    private static final byte[] BAD_MASTER_KEY = "bad-master-key".getBytes(UTF_8);
+
+    @TempDir
+    File journalDir;
+    @TempDir
+    File ledgerDir;
+
+    private BookieImpl bookie;
+    private final Object ctx = new Object();
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private final List<WriteCallback> cbs = new ArrayList<>();
+    private final List<byte[]> masterKeys = new ArrayList<>();
+    // Result code of each acknowledged entry, by ledger and entry id
+    private final Map<String, Integer> acked = new ConcurrentHashMap<>();
+    private CountDownLatch ackLatch;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+
+        LedgerStorage storage = mock(LedgerStorage.class);
+        when(storage.isFenced(anyLong())).thenAnswer(invocation -> invocation.<Long>getArgument(0) == FENCED_LEDGER);
+        when(storage.addEntry(any(ByteBuf.class))).thenAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            return entry.getLong(entry.readerIndex() + Long.BYTES);
+        });
+
+        DiskChecker diskChecker = new DiskChecker(0.95f, 0.9f);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(), diskChecker);
+        bookie = BookieImpl.newBookieImpl(conf, null, storage, diskChecker, ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT, BookieServiceInfo.NO_INFO);
+        bookie.getJournals().forEach(Journal::start);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bookie.getJournals().forEach(Journal::shutdown);
+    }
+
+    private void add(long ledgerId, long entryId, byte[] masterKey) {
+        ByteBuf entry = Unpooled.buffer(3 * Long.BYTES);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(0L);
+        entries.add(entry);
+        cbs.add((rc, cbLedgerId, cbEntryId, addr, cbCtx) -> {
+            assertSame(ctx, cbCtx);
+            acked.put(cbLedgerId + ":" + cbEntryId, rc);
+            ackLatch.countDown();
+        });
+        masterKeys.add(masterKey);
+    }
+
+    private Exception[] addEntries(int expectedAcks) {
+        ackLatch = new CountDownLatch(expectedAcks);
+        return bookie.addEntries(new ArrayList<>(entries), new ArrayList<>(cbs), new ArrayList<>(masterKeys),
+                false, ctx);
+    }
+
+    private void assertReleased() {
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testAllEntriesAcked() throws Exception {
+        for (long entryId = 0; entryId < 10; entryId++) {
+            add(LEDGER, entryId, MASTER_KEY);
+            add(OTHER_LEDGER, entryId, MASTER_KEY);
+        }
+
+        assertNull(addEntries(20));
+        assertTrue(ackLatch.await(30, TimeUnit.SECONDS));
+        assertEquals(20, acked.size());
+        acked.values().forEach(rc -> assertEquals(0, (int) rc));
+        assertReleased();
+    }
+
+    @Test
+    public void testFailedEntriesDoNotFailBatch() throws Exception {
+        add(LEDGER, 0L, MASTER_KEY);
+        add(FENCED_LEDGER, 0L, MASTER_KEY);
+        add(OTHER_LEDGER, 0L, MASTER_KEY);
+        add(OTHER_LEDGER, 1L, BAD_MASTER_KEY);
+        add(LEDGER, 1L, MASTER_KEY);
+
+        Exception[] failures = addEntries(3);
+        assertNotNull(failures);
+        assertEquals(5, failures.length);
+        assertNull(failures[0]);
+        assertInstanceOf(BookieException.LedgerFencedException.class, failures[1]);
+        assertNull(failures[2]);
+        assertInstanceOf(BookieException.BookieUnauthorizedAccessException.class, failures[3]);
+        assertNull(failures[4]);
+
+        // Only the other entries are acknowledged, and all of them are released
+        assertTrue(ackLatch.await(30, TimeUnit.SECONDS));
+        assertEquals(3, acked.size());
+        assertEquals(0, (int) acked.get(LEDGER + ":0"));
+        assertEquals(0, (int) acked.get(OTHER_LEDGER + ":0"));
+        assertEquals(0, (int) acked.get(LEDGER + ":1"));
+        assertReleased();
+    }
+
+    @Test
+    public void testInterruptedBatchFailsItsEntries() throws Exception {
+        // The master key of the ledger is logged by a first add, so that the next adds only queue their batch
+        add(LEDGER, 0L, MASTER_KEY);
+        assertNull(addEntries(1));
+        assertTrue(ackLatch.await(30, TimeUnit.SECONDS));
+        entries.clear();
+        cbs.clear();
+        masterKeys.clear();
+        acked.clear();
+
+        add(LEDGER, 1L, MASTER_KEY);
+        add(LEDGER, 2L, MASTER_KEY);
+        Thread.currentThread().interrupt();
+        Exception[] failures;
+        try {
+            failures = addEntries(2);
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertNotNull(failures);
+        assertInstanceOf(InterruptedException.class, failures[0]);
+        assertInstanceOf(InterruptedException.class, failures[1]);
+        assertReleased();
+        assertEquals(0, bookie.getJournals().get(0).getJournalQueueLength());
+        assertTrue(acked.isEmpty());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link CompactionScheduler}.
+ */
+public class CompactionSchedulerTest {
+
+    @Test
+    public void testThrottlersAreIndependentByDefault() {
+        CompactionScheduler scheduler = new CompactionScheduler(
+                new ServerConfiguration().setCompactionRateByEntries(1));
+        AbstractLogCompactor.Throttler first = scheduler.newThrottler();
+        AbstractLogCompactor.Throttler second = scheduler.newThrottler();
+
+        assertTrue(first.tryAcquire(1, 0, TimeUnit.MILLISECONDS));
+        assertTrue(second.tryAcquire(1, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testGlobalThrottleSharesTheRate() {
+        CompactionScheduler scheduler = new CompactionScheduler(
+                new ServerConfiguration().setCompactionGlobalThrottle(true).setCompactionRateByEntries(1));
+        AbstractLogCompactor.Throttler first = scheduler.newThrottler();
+        AbstractLogCompactor.Throttler second = scheduler.newThrottler();
+
+        assertTrue(first.tryAcquire(1, 0, TimeUnit.MILLISECONDS));
+        assertFalse(second.tryAcquire(1, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testCancellingAThrottlerKeepsTheOthers() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(
+                new ServerConfiguration().setCompactionGlobalThrottle(true).setCompactionRateByEntries(1));
+        AbstractLogCompactor.Throttler first = scheduler.newThrottler();
+        AbstractLogCompactor.Throttler second = scheduler.newThrottler();
+
+        first.acquire(1);
+        // A directory shutting down stops waiting for the shared rate
+        first.cancelledAcquire();
+        assertThrows(IOException.class, () -> first.acquire(1));
+        // The other directories keep compacting at the shared rate
+        second.acquire(1);
+    }
+
+    @Test
+    public void testWorkerSlots() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(
+                new ServerConfiguration().setCompactionMaxConcurrentWorkers(1));
+        assertEquals(1, scheduler.getMaxWorkers());
+
+        assertTrue(scheduler.acquireWorker(() -> true));
+        assertEquals(1, scheduler.getActiveWorkers());
+        // A directory waiting for a slot gives up once it stops running
+        assertFalse(scheduler.acquireWorker(() -> false));
+
+        scheduler.releaseWorker();
+        assertEquals(0, scheduler.getActiveWorkers());
+        assertTrue(scheduler.acquireWorker(() -> false));
+        scheduler.releaseWorker();
+    }
+
+    @Test
+    public void testUnlimitedWorkers() throws Exception {
+        CompactionScheduler scheduler = new CompactionScheduler(new ServerConfiguration());
+        assertEquals(0, scheduler.getMaxWorkers());
+        assertTrue(scheduler.acquireWorker(() -> false));
+        assertTrue(scheduler.acquireWorker(() -> false));
+        assertEquals(2, scheduler.getActiveWorkers());
+    }
+
+    @Test
+    public void testCostBenefitScore() {
+        // Emptier and older logs are better victims
+        assertTrue(CompactionScheduler.costBenefitScore(0.1, 10) > CompactionScheduler.costBenefitScore(0.5, 10));
+        assertTrue(CompactionScheduler.costBenefitScore(0.5, 100) > CompactionScheduler.costBenefitScore(0.5, 10));
+        assertEquals(0.0, CompactionScheduler.costBenefitScore(1.0, 10));
+        assertEquals(CompactionScheduler.costBenefitScore(0.5, 1), CompactionScheduler.costBenefitScore(0.5, 0));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mockStatic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedStatic;
+
+/**
+ * Test the reads of entries from the memory mappings of the entry logs.
+ */
+public class DefaultEntryLoggerMmapTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 1000;
+    // With the 1KB header of the log, each log holds 3 entries
+    private static final int ENTRIES_PER_LOG = 3;
+    private static final int MAX_MAPPED_LOGS = 2;
+
+    @TempDir
+    Path tempDir;
+
+    private DefaultEntryLogger entryLogger;
+    private final List<Long> locations = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { tempDir.toFile().getAbsolutePath() });
+        conf.setEntryLogSizeLimit(4096);
+        conf.setEntryLogFilePreAllocationEnabled(false);
+        conf.setEntryLogMmapReadEnabled(true);
+        conf.setEntryLogMmapMaxMappedLogs(MAX_MAPPED_LOGS);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(0.95f, 0.9f));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+
+        // Fill 4 logs, which are sealed once the next one is created
+        for (int i = 0; i <= 4 * ENTRIES_PER_LOG; i++) {
+            locations.add(entryLogger.addEntry(LEDGER_ID, entry(i)));
+        }
+        entryLogger.flush();
+        for (int i = 0; i < 4; i++) {
+            assertEquals(logId(i * ENTRIES_PER_LOG), logId(i * ENTRIES_PER_LOG + ENTRIES_PER_LOG - 1));
+            assertNotEquals(logId(i * ENTRIES_PER_LOG), logId((i + 1) * ENTRIES_PER_LOG));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+    }
+
+    @Test
+    public void testReadFromMapping() throws Exception {
+        for (int i = 0; i < ENTRIES_PER_LOG; i++) {
+            assertEntry(i, entryLogger.readEntry(LEDGER_ID, i, locations.get(i)));
+        }
+        assertEquals(1, entryLogger.getMappedLogsCount());
+
+        // The log being written is never mapped
+        int lastEntry = 4 * ENTRIES_PER_LOG;
+        assertEntry(lastEntry, entryLogger.readEntry(LEDGER_ID, lastEntry, locations.get(lastEntry)));
+        assertEquals(1, entryLogger.getMappedLogsCount());
+    }
+
+    @Test
+    public void testMappedLogsAreBounded() throws Exception {
+        ByteBuf firstEntry = entryLogger.readEntry(LEDGER_ID, 0, locations.get(0));
+
+        for (int i = 0; i < 4 * ENTRIES_PER_LOG; i++) {
+            assertEntry(i, entryLogger.readEntry(LEDGER_ID, i, locations.get(i)));
+            assertEquals(Math.min(i / ENTRIES_PER_LOG + 1, MAX_MAPPED_LOGS), entryLogger.getMappedLogsCount());
+        }
+
+        // The entry read before its log was dropped from the mappings is still valid
+        assertEntry(0, firstEntry);
+
+        // The log is mapped again on the next read
+        assertEntry(0, entryLogger.readEntry(LEDGER_ID, 0, locations.get(0)));
+        assertEquals(MAX_MAPPED_LOGS, entryLogger.getMappedLogsCount());
+    }
+
+    @Test
+    public void testRemovedLogIsUnmapped() throws Exception {
+        ByteBuf firstEntry = entryLogger.readEntry(LEDGER_ID, 0, locations.get(0));
+        assertEquals(1, entryLogger.getMappedLogsCount());
+
+        entryLogger.removeEntryLog(logId(0));
+        assertEquals(0, entryLogger.getMappedLogsCount());
+        assertEntry(0, firstEntry);
+    }
+
+    @Test
+    public void testMapFailureFallsBackToChannel() throws Exception {
+        try (MockedStatic<MappedEntryLog> mappedEntryLog = mockStatic(MappedEntryLog.class)) {
+            mappedEntryLog.when(() -> MappedEntryLog.map(anyLong(), any(FileChannel.class)))
+                    .thenThrow(new IOException("Map failed"));
+
+            for (int i = 0; i < ENTRIES_PER_LOG; i++) {
+                assertEntry(i, entryLogger.readEntry(LEDGER_ID, i, locations.get(i)));
+            }
+            assertEquals(0, entryLogger.getMappedLogsCount());
+            // The log is not mapped again on each read
+            mappedEntryLog.verify(() -> MappedEntryLog.map(anyLong(), any(FileChannel.class)));
+        }
+
+        // The other logs are still mapped
+        assertEntry(ENTRIES_PER_LOG, entryLogger.readEntry(LEDGER_ID, ENTRIES_PER_LOG,
+                locations.get(ENTRIES_PER_LOG)));
+        assertEquals(1, entryLogger.getMappedLogsCount());
+    }
+
+    private long logId(int entryIdx) {
+        return DefaultEntryLogger.logIdForOffset(locations.get(entryIdx));
+    }
+
+    private static void assertEntry(long entryId, ByteBuf entry) {
+        try {
+            assertEquals(entry(entryId), entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+}
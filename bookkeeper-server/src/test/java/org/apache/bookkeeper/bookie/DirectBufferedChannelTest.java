@@ -0,0 +1,292 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.internal.PlatformDependent;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link DirectBufferedChannel}.
+ */
+public class DirectBufferedChannelTest {
+
+    private static final int FD = 42;
+    private static final int ALIGNMENT = DirectBufferedChannel.ALIGNMENT;
+
+    @TempDir
+    File tempDir;
+
+    private File file;
+    private FileChannel fc;
+    private FakeNativeIO nativeIO;
+
+    /**
+     * Direct writes into the file, through a channel of their own, that check the alignment of the writes.
+     */
+    private class FakeNativeIO implements NativeIO {
+        // Offset and length of each write
+        final List<long[]> writes = new ArrayList<>();
+        int closes = 0;
+        boolean failOpen = false;
+
+        @Override
+        public int open(String pathname, int flags, int mode) throws NativeIOException {
+            if (failOpen) {
+                throw new NativeIOException("open failed", 22);
+            }
+            assertEquals(file.getPath(), pathname);
+            assertEquals(NativeIO.O_WRONLY | NativeIO.O_DIRECT, flags);
+            return FD;
+        }
+
+        @Override
+        public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+            assertEquals(FD, fd);
+            assertEquals(0, pointer % ALIGNMENT);
+            assertEquals(0, count % ALIGNMENT);
+            assertEquals(0, offset % ALIGNMENT);
+            writes.add(new long[] { offset, count });
+            byte[] data = new byte[count];
+            PlatformDependent.copyMemory(pointer, data, 0, count);
+            try (FileChannel out = new RandomAccessFile(file, "rw").getChannel()) {
+                out.write(ByteBuffer.wrap(data), offset);
+            } catch (IOException e) {
+                throw new NativeIOException(e.getMessage());
+            }
+            return count;
+        }
+
+        @Override
+        public int close(int fd) {
+            assertEquals(FD, fd);
+            closes++;
+            return 0;
+        }
+
+        @Override
+        public int fsync(int fd) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int fallocate(int fd, int mode, long offset, long len) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int posix_fadvise(int fd, long offset, long len, int flag) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long posix_memalign(int alignment, int size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void free(long pointer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long lseek(int fd, long offset, int whence) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long pread(int fd, long pointer, long size, long offset) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // The direct writes need the memory address of the buffer
+        assumeTrue(PlatformDependent.hasUnsafe());
+        file = new File(tempDir, "journal.txn");
+        fc = new RandomAccessFile(file, "rw").getChannel();
+        nativeIO = new FakeNativeIO();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (fc != null) {
+            fc.close();
+        }
+    }
+
+    private DirectBufferedChannel open() throws IOException {
+        return DirectBufferedChannel.open(UnpooledByteBufAllocator.DEFAULT, nativeIO, file, fc, 4 * ALIGNMENT);
+    }
+
+    private static void write(BufferedChannel channel, int length, byte value) throws IOException {
+        byte[] data = new byte[length];
+        Arrays.fill(data, value);
+        ByteBuf buf = Unpooled.wrappedBuffer(data);
+        channel.write(buf);
+        buf.release();
+    }
+
+    private void assertWrites(long... offsetsAndLengths) {
+        assertEquals(offsetsAndLengths.length / 2, nativeIO.writes.size());
+        for (int i = 0; i < nativeIO.writes.size(); i++) {
+            assertArrayEquals(new long[] { offsetsAndLengths[2 * i], offsetsAndLengths[2 * i + 1] },
+                    nativeIO.writes.get(i));
+        }
+        nativeIO.writes.clear();
+    }
+
+    private void assertFileContent(long offset, int length, byte value) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        try (FileChannel in = new RandomAccessFile(file, "r").getChannel()) {
+            while (data.hasRemaining()) {
+                assertTrue(in.read(data, offset + data.position()) > 0);
+            }
+        }
+        byte[] expected = new byte[length];
+        Arrays.fill(expected, value);
+        assertArrayEquals(expected, data.array());
+    }
+
+    @Test
+    public void testPartialBlockRewritten() throws Exception {
+        DirectBufferedChannel channel = open();
+
+        // The partial block is written padded with zeros
+        write(channel, 100, (byte) 1);
+        channel.flush();
+        assertWrites(0, ALIGNMENT);
+        assertEquals(ALIGNMENT, file.length());
+        assertFileContent(0, 100, (byte) 1);
+        assertFileContent(100, ALIGNMENT - 100, (byte) 0);
+        assertEquals(100, channel.position());
+        assertEquals(0, channel.getFileChannelPosition());
+
+        // And written again with the next data
+        write(channel, 50, (byte) 2);
+        channel.flush();
+        assertWrites(0, ALIGNMENT);
+        assertFileContent(0, 100, (byte) 1);
+        assertFileContent(100, 50, (byte) 2);
+        assertFileContent(150, ALIGNMENT - 150, (byte) 0);
+
+        // Only the last partial block is kept for the next flush
+        write(channel, 5000, (byte) 3);
+        channel.flush();
+        assertWrites(0, 2 * ALIGNMENT);
+        assertEquals(ALIGNMENT, channel.getFileChannelPosition());
+
+        write(channel, 10, (byte) 4);
+        channel.flush();
+        assertWrites(ALIGNMENT, ALIGNMENT);
+        assertFileContent(0, 100, (byte) 1);
+        assertFileContent(100, 50, (byte) 2);
+        assertFileContent(150, 5000, (byte) 3);
+        assertFileContent(5150, 10, (byte) 4);
+        assertEquals(5160, channel.position());
+
+        // Nothing new to write
+        channel.flush();
+        assertWrites();
+
+        channel.close();
+        channel.close();
+        assertEquals(1, nativeIO.closes);
+        fc = null;
+    }
+
+    @Test
+    public void testAlignedDataNotRewritten() throws Exception {
+        DirectBufferedChannel channel = open();
+
+        write(channel, 2 * ALIGNMENT, (byte) 1);
+        channel.flush();
+        assertWrites(0, 2 * ALIGNMENT);
+        assertEquals(2 * ALIGNMENT, channel.getFileChannelPosition());
+
+        write(channel, 10, (byte) 2);
+        channel.flush();
+        assertWrites(2 * ALIGNMENT, ALIGNMENT);
+        assertFileContent(0, 2 * ALIGNMENT, (byte) 1);
+        assertFileContent(2 * ALIGNMENT, 10, (byte) 2);
+
+        // Data larger than the buffer is written as the buffer fills up
+        write(channel, 4 * ALIGNMENT, (byte) 3);
+        assertWrites(2 * ALIGNMENT, 4 * ALIGNMENT);
+        channel.flush();
+        assertWrites(6 * ALIGNMENT, ALIGNMENT);
+        assertFileContent(2 * ALIGNMENT + 10, 4 * ALIGNMENT, (byte) 3);
+
+        channel.close();
+        fc = null;
+    }
+
+    @Test
+    public void testOpenAtPositionInBlock() throws Exception {
+        byte[] existing = new byte[5000];
+        Arrays.fill(existing, (byte) 7);
+        fc.write(ByteBuffer.wrap(existing), 0);
+        fc.position(existing.length);
+
+        // The start of the block holding the position is written back unchanged
+        DirectBufferedChannel channel = open();
+        assertEquals(existing.length, channel.position());
+        assertEquals(ALIGNMENT, channel.getFileChannelPosition());
+        write(channel, 10, (byte) 8);
+        channel.flush();
+        assertWrites(ALIGNMENT, ALIGNMENT);
+        assertFileContent(0, existing.length, (byte) 7);
+        assertFileContent(existing.length, 10, (byte) 8);
+
+        channel.close();
+        fc = null;
+    }
+
+    @Test
+    public void testOpenFailure() throws Exception {
+        nativeIO.failOpen = true;
+        assertThrows(IOException.class, this::open);
+        assertEquals(0, nativeIO.closes);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link Journal.AddBatch} and {@link Journal#logAddEntries}.
+ */
+public class JournalAddBatchTest {
+
+    private static final int NUM_ENTRIES = 100;
+
+    @TempDir
+    File journalDir;
+    @TempDir
+    File ledgerDir;
+
+    private Journal journal;
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private final AtomicInteger acked = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        // Flush the entries of a batch together, even though there are more than the threshold
+        conf.setJournalBufferedEntriesThreshold(NUM_ENTRIES / 10);
+        File currentDir = BookieImpl.getCurrentDirectory(journalDir);
+        BookieImpl.checkDirectoryStructure(currentDir);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(0.95f, 0.9f));
+        journal = new Journal(0, currentDir, conf, ledgerDirsManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.shutdown();
+        }
+        entries.forEach(entry -> {
+            if (entry.refCnt() > 0) {
+                entry.release(entry.refCnt());
+            }
+        });
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(3 * Long.BYTES);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(ledgerId * NUM_ENTRIES + entryId);
+        return entry;
+    }
+
+    // A batch of entries of two ledgers, whose callbacks count the acknowledgements with the given context
+    private Journal.AddBatch batch(Object ctx, CountDownLatch done) {
+        Journal.AddBatch batch = Journal.AddBatch.create();
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            long ledgerId = i % 2;
+            long entryId = i / 2;
+            ByteBuf entry = entry(ledgerId, entryId);
+            entries.add(entry);
+            WriteCallback cb = (rc, cbLedgerId, cbEntryId, addr, cbCtx) -> {
+                assertEquals(0, rc);
+                assertEquals(ledgerId, cbLedgerId);
+                assertEquals(entryId, cbEntryId);
+                assertSame(ctx, cbCtx);
+                acked.incrementAndGet();
+                done.countDown();
+            };
+            batch.add(ledgerId, entryId, entry, cb);
+            // The batch holds its own reference until the entry is written
+            entry.release();
+        }
+        return batch;
+    }
+
+    @Test
+    public void testBatchAckedAndReleased() throws Exception {
+        journal.start();
+        Object ctx = new Object();
+        CountDownLatch done = new CountDownLatch(NUM_ENTRIES);
+        Journal.AddBatch batch = batch(ctx, done);
+        assertEquals(NUM_ENTRIES, batch.size());
+        journal.logAddEntries(batch, false, ctx);
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(NUM_ENTRIES, acked.get());
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+        journal.shutdown();
+
+        // The entries are written one after the other, as if they were added one by one
+        List<Long> written = new ArrayList<>();
+        for (long journalId : Journal.listJournalIds(journal.getJournalDirectory(), null)) {
+            journal.scanJournal(journalId, 0L, (journalVersion, offset, record) -> {
+                long ledgerId = record.getLong();
+                long entryId = record.getLong();
+                assertEquals(ledgerId * NUM_ENTRIES + entryId, record.getLong());
+                written.add(entryId * 2 + ledgerId);
+            }, false);
+        }
+        assertEquals(NUM_ENTRIES, written.size());
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            assertEquals(i, (long) written.get(i));
+        }
+    }
+
+    @Test
+    public void testReleasedBatchNotAcked() {
+        CountDownLatch done = new CountDownLatch(NUM_ENTRIES);
+        Journal.AddBatch batch = batch(null, done);
+        batch.release();
+
+        assertEquals(0, acked.get());
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testEmptyBatchNotQueued() throws Exception {
+        journal.logAddEntries(Journal.AddBatch.create(), false, null);
+        assertEquals(0, journal.getJournalQueueLength());
+    }
+
+    @Test
+    public void testInterruptedBatchNotQueued() {
+        CountDownLatch done = new CountDownLatch(NUM_ENTRIES);
+        Journal.AddBatch batch = batch(null, done);
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedException.class, () -> journal.logAddEntries(batch, false, null));
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(0, journal.getJournalQueueLength());
+
+        // The caller releases the batch, like BookieImpl#addEntries does
+        batch.release();
+        assertEquals(0, acked.get());
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.JournalGroupCommitController.UPDATE_INTERVAL_NANOS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link JournalGroupCommitController}.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long FSYNC_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private long now = 0L;
+
+    // Record the given number of arrivals in each of the next update intervals
+    private void arrive(JournalGroupCommitController controller, int perInterval, int intervals) {
+        for (int i = 0; i < intervals; i++) {
+            now += UPDATE_INTERVAL_NANOS;
+            controller.recordArrivals(perInterval, now);
+        }
+    }
+
+    @Test
+    public void testNoGroupingWithoutFsyncLatency() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 1000);
+        controller.recordArrivals(0, now);
+        arrive(controller, 10000, 5);
+
+        assertTrue(controller.getArrivalsPerSecond() > 0);
+        assertEquals(0L, controller.getGroupWaitNanos());
+        assertEquals(0L, controller.getBatchEntries());
+    }
+
+    @Test
+    public void testNoGroupingWhenDiskKeepsUp() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 1000);
+        controller.recordForceWrite(FSYNC_NANOS);
+        controller.recordArrivals(0, now);
+        // 100 entries per second, far less than one entry per fsync
+        arrive(controller, 1, 20);
+
+        assertEquals(0L, controller.getGroupWaitNanos());
+        assertEquals(0L, controller.getBatchEntries());
+    }
+
+    @Test
+    public void testSwitchBetweenGroupingAndNoGrouping() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 1000);
+        controller.recordForceWrite(FSYNC_NANOS);
+        controller.recordArrivals(0, now);
+
+        // 100 entries per millisecond, about 100 entries per fsync
+        arrive(controller, 1000, 30);
+        assertEquals(FSYNC_NANOS, controller.getGroupWaitNanos());
+        long expected = (long) Math.ceil(controller.getArrivalsPerSecond() * FSYNC_NANOS / TimeUnit.SECONDS.toNanos(1));
+        assertTrue(Math.abs(controller.getBatchEntries() - expected) <= 1,
+                "batch entries " + controller.getBatchEntries() + " expected " + expected);
+        assertTrue(controller.getBatchEntries() > 90 && controller.getBatchEntries() <= 101);
+
+        // The arrivals stop, grouping stops once less than one entry is expected per fsync
+        arrive(controller, 0, 30);
+        assertEquals(0L, controller.getGroupWaitNanos());
+        assertEquals(0L, controller.getBatchEntries());
+
+        // And resumes with the arrivals
+        arrive(controller, 1000, 30);
+        assertEquals(FSYNC_NANOS, controller.getGroupWaitNanos());
+        assertTrue(controller.getBatchEntries() > 0);
+    }
+
+    @Test
+    public void testNoGroupingForLoneEntryAfterIdle() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 1000);
+        controller.recordForceWrite(FSYNC_NANOS);
+        controller.recordArrivals(0, now);
+        arrive(controller, 1000, 30);
+        assertEquals(FSYNC_NANOS, controller.getGroupWaitNanos());
+
+        // Nothing is recorded while the journal waits for entries, then a single entry arrives
+        now += TimeUnit.SECONDS.toNanos(1);
+        controller.recordArrivals(1, now);
+
+        assertEquals(1.0d, controller.getArrivalsPerSecond(), 0.01d);
+        assertEquals(0L, controller.getGroupWaitNanos());
+        assertEquals(0L, controller.getBatchEntries());
+    }
+
+    @Test
+    public void testGroupWaitBoundedByMaxGroupWait() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 100000);
+        controller.recordForceWrite(TimeUnit.MILLISECONDS.toNanos(5));
+        controller.recordArrivals(0, now);
+        arrive(controller, 1000, 30);
+
+        assertEquals(MAX_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+        // About 100 entries per millisecond during the max group wait, rather than the fsync
+        assertTrue(controller.getBatchEntries() > 180 && controller.getBatchEntries() <= 201,
+                "batch entries " + controller.getBatchEntries());
+    }
+
+    @Test
+    public void testBatchEntriesBoundedByMaxBatchEntries() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 10);
+        controller.recordForceWrite(FSYNC_NANOS);
+        controller.recordArrivals(0, now);
+        arrive(controller, 1000, 30);
+
+        assertEquals(FSYNC_NANOS, controller.getGroupWaitNanos());
+        assertEquals(10L, controller.getBatchEntries());
+    }
+
+    @Test
+    public void testNoGroupingWithZeroMaxGroupWait() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(0L, 1000);
+        controller.recordForceWrite(FSYNC_NANOS);
+        controller.recordArrivals(0, now);
+        arrive(controller, 1000, 30);
+
+        assertEquals(0L, controller.getGroupWaitNanos());
+        assertEquals(0L, controller.getBatchEntries());
+    }
+
+    @Test
+    public void testArrivalsAccumulatedUntilUpdateInterval() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 1000);
+        controller.recordForceWrite(FSYNC_NANOS);
+        controller.recordArrivals(0, now);
+
+        // Not updated before an update interval elapsed
+        controller.recordArrivals(1000, now + UPDATE_INTERVAL_NANOS / 2);
+        assertEquals(0.0d, controller.getArrivalsPerSecond());
+        assertEquals(0L, controller.getGroupWaitNanos());
+
+        // Then updated with all the arrivals since the last update
+        now += UPDATE_INTERVAL_NANOS;
+        controller.recordArrivals(1000, now);
+        long perSecond = 2000 * TimeUnit.SECONDS.toNanos(1) / UPDATE_INTERVAL_NANOS;
+        assertEquals(0.3d * perSecond, controller.getArrivalsPerSecond(), 1.0d);
+        assertEquals(FSYNC_NANOS, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testFsyncLatencyMovingAverage() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, 1000);
+        assertEquals(-1L, controller.getFsyncNanos());
+
+        controller.recordForceWrite(1000000L);
+        assertEquals(1000000L, controller.getFsyncNanos());
+        controller.recordForceWrite(2000000L);
+        assertEquals(1200000.0d, controller.getFsyncNanos(), 1.0d);
+    }
+}
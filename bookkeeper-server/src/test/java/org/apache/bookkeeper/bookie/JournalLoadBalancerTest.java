@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.JournalLoadBalancer.Assignment;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+/**
+ * Unit tests for {@link JournalLoadBalancer}.
+ */
+public class JournalLoadBalancerTest {
+
+    private static final long IDLE_MILLIS = 1000L;
+    private static final long FSYNC_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private MockedStatic<MathUtils> mathUtils;
+    private long nowNanos = TimeUnit.HOURS.toNanos(1);
+    private Journal journal0;
+    private Journal journal1;
+    private Counter reassignments;
+    private JournalLoadBalancer balancer;
+
+    @BeforeEach
+    void setUp() {
+        mathUtils = mockStatic(MathUtils.class, CALLS_REAL_METHODS);
+        mathUtils.when(MathUtils::nowInNano).thenAnswer(invocation -> nowNanos);
+
+        journal0 = mockJournal();
+        journal1 = mockJournal();
+        reassignments = mock(Counter.class);
+        StatsLogger statsLogger = mock(StatsLogger.class);
+        when(statsLogger.getCounter(anyString())).thenReturn(reassignments);
+        balancer = new JournalLoadBalancer(Arrays.asList(journal0, journal1), IDLE_MILLIS, statsLogger);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mathUtils.close();
+    }
+
+    private static Journal mockJournal() {
+        Journal journal = mock(Journal.class);
+        when(journal.getJournalQueueLength()).thenReturn(0);
+        when(journal.getForceWriteLatencyNanos()).thenReturn(FSYNC_NANOS);
+        return journal;
+    }
+
+    private void idle() {
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+    }
+
+    @Test
+    public void testNewLedgersByIdWhenBalanced() {
+        assertEquals(0, balancer.assign(4L).getJournalIndex());
+        assertEquals(1, balancer.assign(3L).getJournalIndex());
+    }
+
+    @Test
+    public void testNewLedgerToLessLoadedJournal() {
+        when(journal0.getJournalQueueLength()).thenReturn(10);
+        assertEquals(1, balancer.assign(4L).getJournalIndex());
+    }
+
+    @Test
+    public void testNewLedgerStaysWhenSlightlyLessLoaded() {
+        // A load of 3 entries is not below 75% of a load of 4 entries
+        when(journal0.getJournalQueueLength()).thenReturn(3);
+        when(journal1.getJournalQueueLength()).thenReturn(2);
+        assertEquals(0, balancer.assign(4L).getJournalIndex());
+    }
+
+    @Test
+    public void testLoadAccountsForFsyncLatency() {
+        when(journal0.getForceWriteLatencyNanos()).thenReturn(10 * FSYNC_NANOS);
+        assertEquals(1, balancer.assign(4L).getJournalIndex());
+    }
+
+    @Test
+    public void testLedgerStaysOnJournalWhileWritten() {
+        Assignment assignment = balancer.assign(4L);
+        assertEquals(0, assignment.getJournalIndex());
+        assignment.setMasterKeyLogged();
+
+        when(journal0.getJournalQueueLength()).thenReturn(100);
+        for (int i = 0; i < 10; i++) {
+            nowNanos += TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS / 2);
+            assertSame(assignment, balancer.assign(4L));
+        }
+        assertTrue(assignment.isMasterKeyLogged());
+        verify(reassignments, never()).inc();
+    }
+
+    @Test
+    public void testIdleLedgerMovedToLessLoadedJournal() {
+        Assignment assignment = balancer.assign(4L);
+        assignment.setMasterKeyLogged();
+
+        when(journal0.getJournalQueueLength()).thenReturn(100);
+        idle();
+        Assignment moved = balancer.assign(4L);
+        assertNotSame(assignment, moved);
+        assertEquals(1, moved.getJournalIndex());
+        // The master key has to be logged to the new journal
+        assertFalse(moved.isMasterKeyLogged());
+        verify(reassignments).inc();
+    }
+
+    @Test
+    public void testIdleLedgerKeepsJournalWhenBalanced() {
+        Assignment assignment = balancer.assign(4L);
+        assignment.setMasterKeyLogged();
+
+        idle();
+        assertSame(assignment, balancer.assign(4L));
+        assertTrue(assignment.isMasterKeyLogged());
+        verify(reassignments, never()).inc();
+    }
+
+    @Test
+    public void testConcurrentAssignOfNewLedger() throws Exception {
+        // The least loaded journal changes every time the load is looked at
+        AtomicInteger loadReads = new AtomicInteger();
+        when(journal0.getJournalQueueLength()).thenAnswer(invocation -> loadReads.incrementAndGet() % 2 * 100);
+
+        int numThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (long ledgerId = 0; ledgerId < 100; ledgerId++) {
+                long ledger = ledgerId;
+                CyclicBarrier barrier = new CyclicBarrier(numThreads);
+                List<Future<Assignment>> futures = new ArrayList<>();
+                for (int i = 0; i < numThreads; i++) {
+                    futures.add(executor.submit(() -> {
+                        barrier.await();
+                        return balancer.assign(ledger);
+                    }));
+                }
+                Assignment assignment = futures.get(0).get(10, TimeUnit.SECONDS);
+                for (Future<Assignment> future : futures) {
+                    assertSame(assignment, future.get(10, TimeUnit.SECONDS));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(reassignments, never()).inc();
+    }
+}
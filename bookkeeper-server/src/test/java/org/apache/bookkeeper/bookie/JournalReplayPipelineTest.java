@@ -0,0 +1,170 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link JournalReplayPipeline}.
+ */
+public class JournalReplayPipelineTest {
+
+    private static final int NUM_LEDGERS = 10;
+
+    private JournalReplayProgress progress;
+    private JournalStats journalStats;
+    // Sequence numbers of the records applied, by ledger
+    private final Map<Long, List<Long>> applied = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        progress = new JournalReplayProgress(new File("journal"));
+        journalStats = new JournalStats(NullStatsLogger.INSTANCE, 0L, () -> 0L);
+    }
+
+    private void apply(int journalVersion, long offset, ByteBuffer record) {
+        List<Long> sequences = applied.computeIfAbsent(record.getLong(0), ledgerId -> new ArrayList<>());
+        // The records of a ledger are all applied by the same thread
+        synchronized (sequences) {
+            sequences.add(record.getLong(Long.BYTES));
+        }
+    }
+
+    // Replay the records through the given buffer, which is reused for each record like the journal scan does
+    private static void replay(JournalReplayPipeline pipeline, int numRecords) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES);
+        for (long sequence = 0; sequence < numRecords; sequence++) {
+            buffer.clear();
+            buffer.putLong(sequence % NUM_LEDGERS);
+            buffer.putLong(sequence);
+            buffer.flip();
+            pipeline.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, sequence * buffer.remaining(), buffer);
+        }
+    }
+
+    private void assertAppliedInOrder(int numRecords) {
+        assertEquals(NUM_LEDGERS, applied.size());
+        applied.forEach((ledgerId, sequences) -> {
+            assertEquals(numRecords / NUM_LEDGERS, sequences.size());
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(ledgerId + (long) i * NUM_LEDGERS, (long) sequences.get(i));
+            }
+        });
+        assertEquals(numRecords, progress.getReadRecords());
+        assertEquals(numRecords * 2L * Long.BYTES, progress.getReadBytes());
+        assertEquals(numRecords, progress.getAppliedRecords());
+    }
+
+    @Test
+    public void testApplyWithoutApplyThreads() throws Exception {
+        try (JournalReplayPipeline pipeline = new JournalReplayPipeline("test", this::apply, 0, 16, progress,
+                journalStats)) {
+            replay(pipeline, 100);
+            // Applied by the thread reading the journal
+            assertAppliedInOrder(100);
+            pipeline.awaitApplied();
+        }
+    }
+
+    @Test
+    public void testApplyInOrderPerLedger() throws Exception {
+        try (JournalReplayPipeline pipeline = new JournalReplayPipeline("test", this::apply, 4, 8, progress,
+                journalStats)) {
+            replay(pipeline, 10000);
+            pipeline.awaitApplied();
+            assertAppliedInOrder(10000);
+        }
+    }
+
+    @Test
+    public void testAwaitAppliedWaitsForQueuedRecords() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        JournalScanner applier = (version, offset, entry) -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            apply(version, offset, entry);
+        };
+        try (JournalReplayPipeline pipeline = new JournalReplayPipeline("test", applier, 2, 100, progress,
+                journalStats)) {
+            replay(pipeline, 20);
+            CompletableFuture<Void> awaited = CompletableFuture.runAsync(() -> {
+                try {
+                    pipeline.awaitApplied();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(awaited.isDone());
+            assertEquals(0, progress.getAppliedRecords());
+
+            blocked.countDown();
+            awaited.get(30, TimeUnit.SECONDS);
+            assertAppliedInOrder(20);
+        }
+    }
+
+    @Test
+    public void testApplyFailureFailsReplay() throws Exception {
+        IOException failure = new IOException("injected apply failure");
+        JournalScanner applier = (version, offset, entry) -> {
+            if (entry.getLong(Long.BYTES) == 5L) {
+                throw failure;
+            }
+            apply(version, offset, entry);
+        };
+        try (JournalReplayPipeline pipeline = new JournalReplayPipeline("test", applier, 2, 100, progress,
+                journalStats)) {
+            replay(pipeline, 20);
+            IOException e = assertThrows(IOException.class, pipeline::awaitApplied);
+            assertSame(failure, e.getCause());
+
+            // The records read after the failure are rejected
+            assertThrows(IOException.class, () -> replay(pipeline, 1));
+            assertTrue(progress.getAppliedRecords() < 20);
+        }
+    }
+}
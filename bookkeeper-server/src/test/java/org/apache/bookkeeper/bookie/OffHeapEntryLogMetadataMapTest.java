@@ -0,0 +1,240 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link OffHeapEntryLogMetadataMap}.
+ */
+public class OffHeapEntryLogMetadataMapTest {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    @TempDir
+    File spillDir;
+
+    private OffHeapEntryLogMetadataMap map;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (map != null) {
+            map.close();
+        }
+    }
+
+    private static EntryLogMetadata newMetadata(long entryLogId, int ledgers) {
+        EntryLogMetadata metadata = new EntryLogMetadata(entryLogId);
+        for (int i = 0; i < ledgers; i++) {
+            metadata.addLedgerSize(entryLogId * 1000 + i, 100 + i);
+        }
+        return metadata;
+    }
+
+    private void assertMetadata(long entryLogId, int ledgers) throws Exception {
+        boolean[] found = new boolean[1];
+        map.forKey(entryLogId, (id, metadata) -> {
+            found[0] = true;
+            assertEquals(entryLogId, (long) id);
+            assertEquals(entryLogId, metadata.getEntryLogId());
+            assertEquals(ledgers, metadata.getLedgersMap().size());
+            long size = 0;
+            for (int i = 0; i < ledgers; i++) {
+                assertEquals(100 + i, metadata.getLedgersMap().get(entryLogId * 1000 + i));
+                size += 100 + i;
+            }
+            assertEquals(size, metadata.getTotalSize());
+            assertEquals(size, metadata.getRemainingSize());
+        });
+        assertTrue(found[0]);
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        map = new OffHeapEntryLogMetadataMap(Long.MAX_VALUE, spillDir, CHUNK_SIZE);
+        for (long id = 1; id <= 10; id++) {
+            map.put(id, newMetadata(id, (int) id));
+        }
+        assertEquals(10, map.size());
+        for (long id = 1; id <= 10; id++) {
+            assertTrue(map.containsKey(id));
+            assertMetadata(id, (int) id);
+        }
+
+        map.remove(3);
+        assertFalse(map.containsKey(3));
+        assertEquals(9, map.size());
+        map.forKey(3, (id, metadata) -> assertNull(metadata));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(0, map.getMemorySize());
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+        map = new OffHeapEntryLogMetadataMap(Long.MAX_VALUE, spillDir, CHUNK_SIZE);
+        EntryLogMetadata metadata = newMetadata(1, 4);
+        map.put(1, metadata);
+
+        // Removing ledgers updates the record in place
+        metadata.removeLedgerIf(ledgerId -> ledgerId >= 1002);
+        map.put(1, metadata);
+        assertMetadataLedgers(1, 1000, 1001);
+
+        // Adding ledgers moves the record
+        map.put(1, newMetadata(1, 8));
+        assertMetadata(1, 8);
+        assertEquals(1, map.size());
+    }
+
+    private void assertMetadataLedgers(long entryLogId, long... ledgerIds) throws Exception {
+        map.forKey(entryLogId, (id, metadata) -> {
+            assertEquals(ledgerIds.length, metadata.getLedgersMap().size());
+            for (long ledgerId : ledgerIds) {
+                assertTrue(metadata.containsLedger(ledgerId));
+            }
+        });
+    }
+
+    @Test
+    public void testChunksAreCompacted() throws Exception {
+        map = new OffHeapEntryLogMetadataMap(Long.MAX_VALUE, spillDir, CHUNK_SIZE);
+        // Records of 64 bytes, 16 per chunk
+        for (long id = 0; id < 160; id++) {
+            map.put(id, newMetadata(id, 2));
+        }
+        long memorySize = map.getMemorySize();
+        assertTrue(memorySize >= 10 * CHUNK_SIZE);
+
+        // Keep one record of every 8, the chunks are compacted into fewer ones
+        for (long id = 0; id < 160; id++) {
+            if (id % 8 != 0) {
+                map.remove(id);
+            }
+        }
+        assertTrue(map.getMemorySize() < memorySize / 2, "memory size " + map.getMemorySize());
+        assertEquals(20, map.size());
+        for (long id = 0; id < 160; id += 8) {
+            assertMetadata(id, 2);
+        }
+    }
+
+    @Test
+    public void testOldestChunksAreSpilled() throws Exception {
+        map = new OffHeapEntryLogMetadataMap(2 * CHUNK_SIZE, spillDir, CHUNK_SIZE);
+        for (long id = 0; id < 160; id++) {
+            map.put(id, newMetadata(id, 2));
+        }
+        assertTrue(map.getMemorySize() <= 2 * CHUNK_SIZE);
+        assertTrue(map.getSpilledSize() >= 8 * CHUNK_SIZE);
+        File[] spillFiles = spillDir.listFiles();
+        assertEquals(1, spillFiles.length);
+
+        for (long id = 0; id < 160; id++) {
+            assertMetadata(id, 2);
+        }
+        // Spilled records are updated in place
+        EntryLogMetadata metadata = newMetadata(0, 2);
+        metadata.removeLedgerIf(ledgerId -> ledgerId == 1);
+        map.put(0, metadata);
+        assertMetadataLedgers(0, 0);
+
+        map.close();
+        map = null;
+        assertFalse(spillFiles[0].exists());
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        map = new OffHeapEntryLogMetadataMap(Long.MAX_VALUE, spillDir, CHUNK_SIZE);
+        for (long id = 1; id <= 50; id++) {
+            map.put(id, newMetadata(id, 1));
+        }
+        Set<Long> visited = new HashSet<>();
+        map.forEach((id, metadata) -> {
+            assertEquals((long) id, metadata.getEntryLogId());
+            visited.add(id);
+        });
+        assertEquals(50, visited.size());
+    }
+
+    @Test
+    public void testNestedForEachKeepsItsOwnIds() throws Exception {
+        map = new OffHeapEntryLogMetadataMap(Long.MAX_VALUE, spillDir, CHUNK_SIZE);
+        for (long id = 1; id <= 4; id++) {
+            map.put(id, newMetadata(id, 1));
+        }
+
+        List<Long> visited = new ArrayList<>();
+        List<Long> nestedVisited = new ArrayList<>();
+        map.forEach((id, metadata) -> {
+            visited.add(id);
+            if (visited.size() > 1) {
+                return;
+            }
+            try {
+                // Replace the other entry logs, then iterate again from within the action
+                for (long other = 1; other <= 4; other++) {
+                    if (other != id) {
+                        map.remove(other);
+                        map.put(100 + other, newMetadata(100 + other, 1));
+                    }
+                }
+                map.forEach((nestedId, nestedMetadata) -> nestedVisited.add(nestedId));
+            } catch (EntryLogMetadataMapException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // The outer iteration only visits the entry logs that were there when it started
+        assertEquals(1, visited.size());
+        assertEquals(4, nestedVisited.size());
+        assertTrue(nestedVisited.contains(visited.get(0)));
+    }
+
+    @Test
+    public void testClosedMap() throws Exception {
+        map = new OffHeapEntryLogMetadataMap(Long.MAX_VALUE, spillDir, CHUNK_SIZE);
+        map.put(1, newMetadata(1, 1));
+        map.close();
+        assertThrows(EntryLogMetadataMapException.class, () -> map.containsKey(1));
+        assertThrows(EntryLogMetadataMapException.class, () -> map.put(2, newMetadata(2, 1)));
+        assertThrows(EntryLogMetadataMapException.class, () -> map.forEach((id, metadata) -> { }));
+        // Closing again is harmless
+        map.close();
+        map = null;
+    }
+}
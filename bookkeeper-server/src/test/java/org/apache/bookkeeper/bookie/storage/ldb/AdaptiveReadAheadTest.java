@@ -0,0 +1,209 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.stats.Counter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link AdaptiveReadAhead}.
+ */
+public class AdaptiveReadAheadTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRY_SIZE = 24;
+    // Entries 0 to 9 are in a first entry log, and the next ones in a second entry log
+    private static final long ENTRIES_IN_FIRST_LOG = 10;
+    private static final long FIRST_LOG = 1L << 32;
+    private static final long SECOND_LOG = 2L << 32;
+
+    private final Map<Long, Long> locations = new HashMap<>();
+    private final Map<Long, Long> entriesAtLocation = new HashMap<>();
+    // Entry ids of the read cache
+    private final Set<Long> readCacheEntries = ConcurrentHashMap.newKeySet();
+    // Released once a prefetch is complete
+    private final Semaphore prefetches = new Semaphore(0);
+
+    private EntryLocationIndex entryLocationIndex;
+    private EntryLogger entryLogger;
+    private AdaptiveReadAhead readAhead;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (long entryId = 0; entryId < 30; entryId++) {
+            long location = entryId < ENTRIES_IN_FIRST_LOG
+                    ? FIRST_LOG + entryId * (4 + ENTRY_SIZE)
+                    : SECOND_LOG + (entryId - ENTRIES_IN_FIRST_LOG) * (4 + ENTRY_SIZE);
+            locations.put(entryId, location);
+            entriesAtLocation.put(location, entryId);
+        }
+
+        entryLocationIndex = mock(EntryLocationIndex.class);
+        when(entryLocationIndex.getLocation(eq(LEDGER_ID), anyLong()))
+                .thenAnswer(invocation -> locations.getOrDefault(invocation.<Long>getArgument(1), 0L));
+        entryLogger = mock(EntryLogger.class);
+        when(entryLogger.readEntry(anyLong())).thenAnswer(invocation -> {
+            Long entryId = entriesAtLocation.get(invocation.<Long>getArgument(0));
+            if (entryId == null) {
+                throw new IOException("No entry at location " + invocation.getArgument(0));
+            }
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+            entry.writeLong(LEDGER_ID);
+            entry.writeLong(entryId);
+            entry.writeLong(0L);
+            return entry;
+        });
+
+        EntryReadCache readCache = mock(EntryReadCache.class);
+        when(readCache.hasEntry(eq(LEDGER_ID), anyLong()))
+                .thenAnswer(invocation -> readCacheEntries.contains(invocation.<Long>getArgument(1)));
+        doAnswer(invocation -> readCacheEntries.add(invocation.getArgument(1)))
+                .when(readCache).put(eq(LEDGER_ID), anyLong(), any(ByteBuf.class));
+
+        DbLedgerStorageStats stats = mock(DbLedgerStorageStats.class, RETURNS_DEEP_STUBS);
+        Counter readAheadTime = mock(Counter.class);
+        doAnswer(invocation -> {
+            prefetches.release();
+            return null;
+        }).when(readAheadTime).addLatency(anyLong(), any(TimeUnit.class));
+        when(stats.getReadAheadTime()).thenReturn(readAheadTime);
+
+        readAhead = new AdaptiveReadAhead(readCache, entryLocationIndex, entryLogger, stats, 8, 2, 16, 1024 * 1024, 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        readAhead.shutdown();
+    }
+
+    private void miss(long entryId) {
+        readAhead.onCacheMiss(LEDGER_ID, entryId, locations.get(entryId) + 4 + ENTRY_SIZE);
+    }
+
+    private void awaitPrefetch() throws InterruptedException {
+        assertTrue(prefetches.tryAcquire(10, TimeUnit.SECONDS));
+    }
+
+    private void assertPrefetched(long firstEntryId, long lastEntryId) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertTrue(readCacheEntries.contains(entryId), "entry " + entryId + " not prefetched");
+        }
+        assertFalse(readCacheEntries.contains(lastEntryId + 1), "entry " + (lastEntryId + 1) + " prefetched");
+    }
+
+    @Test
+    void testNoPrefetchOnRandomReads() throws Exception {
+        miss(5);
+        miss(0);
+        miss(9);
+        miss(3);
+        readAhead.shutdown();
+
+        assertEquals(0, prefetches.availablePermits());
+        verify(entryLogger, never()).readEntry(anyLong());
+        assertTrue(readCacheEntries.isEmpty());
+    }
+
+    @Test
+    void testPrefetchAcrossEntryLogs() throws Exception {
+        miss(4);
+        miss(5);
+        miss(6);
+        awaitPrefetch();
+
+        // The initial window of 8 entries is prefetched after two sequential reads, crossing to the second
+        // entry log. The location of the next entry is only looked up in the index after the first entry log.
+        assertPrefetched(7, 14);
+        for (long entryId = 7; entryId < ENTRIES_IN_FIRST_LOG; entryId++) {
+            verify(entryLocationIndex, never()).getLocation(LEDGER_ID, entryId);
+        }
+        verify(entryLocationIndex).getLocation(LEDGER_ID, ENTRIES_IN_FIRST_LOG);
+        verify(entryLocationIndex, never()).getLocation(LEDGER_ID, ENTRIES_IN_FIRST_LOG + 1);
+    }
+
+    @Test
+    void testPrefetchStopsAtLastWrittenEntry() throws Exception {
+        miss(20);
+        miss(21);
+        miss(22);
+        awaitPrefetch();
+
+        // The prefetch of entries 23 to 30 stops at entry 30, which is not in the index
+        assertPrefetched(23, 29);
+        verify(entryLocationIndex).getLocation(LEDGER_ID, 30L);
+    }
+
+    @Test
+    void testWindowGrowsWhenReadFromCache() throws Exception {
+        miss(0);
+        miss(1);
+        awaitPrefetch();
+        assertPrefetched(2, 9);
+
+        // The reader consumes the window from the read cache, the next prefetch doubles the window
+        for (long entryId = 2; entryId <= 5; entryId++) {
+            readAhead.onCacheHit(LEDGER_ID, entryId);
+        }
+        awaitPrefetch();
+        assertPrefetched(2, 21);
+    }
+
+    @Test
+    void testWindowShrinksWhenEvicted() throws Exception {
+        miss(0);
+        miss(1);
+        awaitPrefetch();
+        assertPrefetched(2, 9);
+
+        // The prefetched entries are evicted before being read, the window shrinks down to the minimum
+        readCacheEntries.clear();
+        for (long entryId = 2; entryId <= 8; entryId++) {
+            miss(entryId);
+        }
+        awaitPrefetch();
+        assertPrefetched(10, 10);
+    }
+}
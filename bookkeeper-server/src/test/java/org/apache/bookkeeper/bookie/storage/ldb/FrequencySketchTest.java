@@ -0,0 +1,78 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link FrequencySketch}.
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        assertEquals(0, sketch.frequency(1, 1));
+
+        for (int i = 1; i <= 5; i++) {
+            sketch.increment(1, 1);
+            assertEquals(i, sketch.frequency(1, 1));
+        }
+
+        // Keys that were never incremented are not affected by a few other keys
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(2, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, sketch.frequency(3, i));
+        }
+    }
+
+    @Test
+    public void testMaxFrequency() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(1, 1);
+        }
+        assertEquals(15, sketch.frequency(1, 1));
+    }
+
+    @Test
+    public void testReset() {
+        // The smallest sketch has 16 slots and ages the counters every 160 additions
+        FrequencySketch sketch = new FrequencySketch(1);
+        for (int i = 0; i < 10; i++) {
+            sketch.increment(1, 1);
+        }
+
+        for (int i = 0; i < 149; i++) {
+            sketch.increment(2, i);
+        }
+        int frequency = sketch.frequency(1, 1);
+        assertTrue(frequency >= 10);
+
+        sketch.increment(2, 149);
+        assertEquals(frequency / 2, sketch.frequency(1, 1));
+    }
+}
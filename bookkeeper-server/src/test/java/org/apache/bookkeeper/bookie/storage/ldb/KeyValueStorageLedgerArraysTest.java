@@ -0,0 +1,297 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.stream.Stream;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for {@link KeyValueStorageLedgerArrays}.
+ */
+public class KeyValueStorageLedgerArraysTest {
+
+    @TempDir
+    File tempDir;
+
+    private KeyValueStorageLedgerArrays storage;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (storage != null) {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void testGetFloorAndCeil() throws Exception {
+        storage = open(new ServerConfiguration());
+        for (long entryId = 0; entryId < 10; entryId++) {
+            storage.put(key(1, entryId), value(100 + entryId));
+        }
+        storage.put(key(3, 5), value(305));
+        // Too far from the other entries of the ledger to be kept in the dense array
+        storage.put(key(3, 1_000_000), value(399));
+
+        assertEquals(12, storage.count());
+        assertArrayEquals(value(105), storage.get(key(1, 5)));
+        assertArrayEquals(value(399), storage.get(key(3, 1_000_000)));
+        assertNull(storage.get(key(1, 10)));
+        assertNull(storage.get(key(2, 0)));
+
+        assertNull(storage.getFloor(key(1, 0)));
+        assertEntry(1, 4, 104, storage.getFloor(key(1, 5)));
+        assertEntry(1, 9, 109, storage.getFloor(key(3, 5)));
+        assertEntry(3, 5, 305, storage.getFloor(key(3, 1_000_000)));
+        assertEntry(3, 1_000_000, 399, storage.getFloor(key(4, 0)));
+
+        assertEntry(1, 0, 100, storage.getCeil(key(0, 0)));
+        assertEntry(1, 9, 109, storage.getCeil(key(1, 9)));
+        assertEntry(3, 5, 305, storage.getCeil(key(1, 10)));
+        assertEntry(3, 1_000_000, 399, storage.getCeil(key(3, 6)));
+        assertNull(storage.getCeil(key(3, 1_000_001)));
+
+        storage.delete(key(1, 9));
+        assertEntry(1, 8, 108, storage.getFloor(key(2, 0)));
+        assertEquals(11, storage.count());
+    }
+
+    @Test
+    public void testWalReplay() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        storage = open(conf);
+        try (Batch batch = storage.newBatch()) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                batch.put(key(1, entryId), value(entryId + 1));
+            }
+            batch.put(key(2, 0), value(200));
+            batch.flush();
+        }
+        storage.delete(key(1, 50));
+        storage.put(key(1, 0), value(1000));
+        storage.close();
+
+        // The mutations are only in the write-ahead log
+        assertEquals(1, countFiles(KeyValueStorageLedgerArrays.SEGMENT_PREFIX));
+        assertEquals(0, countFiles(KeyValueStorageLedgerArrays.DELTA_PREFIX));
+
+        storage = open(conf);
+        assertEquals(100, storage.count());
+        assertArrayEquals(value(1000), storage.get(key(1, 0)));
+        assertNull(storage.get(key(1, 50)));
+        assertArrayEquals(value(100), storage.get(key(1, 99)));
+        assertArrayEquals(value(200), storage.get(key(2, 0)));
+    }
+
+    @Test
+    public void testWalCorruptedLastBatch() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        storage = open(conf);
+        storage.put(key(1, 0), value(10));
+        storage.put(key(1, 1), value(11));
+        storage.put(key(1, 2), value(12));
+        storage.close();
+
+        // Flip the last byte of the last batch, so that its checksum does not match
+        File wal = walFile();
+        try (RandomAccessFile file = new RandomAccessFile(wal, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xff);
+        }
+
+        storage = open(conf);
+        assertEquals(2, storage.count());
+        assertArrayEquals(value(10), storage.get(key(1, 0)));
+        assertArrayEquals(value(11), storage.get(key(1, 1)));
+        assertNull(storage.get(key(1, 2)));
+    }
+
+    @Test
+    public void testWalTruncatedLastBatch() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        storage = open(conf);
+        storage.put(key(1, 0), value(10));
+        storage.put(key(1, 1), value(11));
+        storage.close();
+
+        File wal = walFile();
+        try (RandomAccessFile file = new RandomAccessFile(wal, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        storage = open(conf);
+        assertEquals(1, storage.count());
+        assertArrayEquals(value(10), storage.get(key(1, 0)));
+        assertNull(storage.get(key(1, 1)));
+
+        // New mutations are appended after the replayed ones
+        storage.put(key(1, 1), value(21));
+        storage.close();
+        storage = open(conf);
+        assertEquals(2, storage.count());
+        assertArrayEquals(value(21), storage.get(key(1, 1)));
+    }
+
+    @Test
+    public void testDeltaSegments() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        // Write a delta segment after each mutation, and never merge them in the background
+        conf.setProperty(KeyValueStorageLedgerArrays.WAL_MAX_SIZE_MB, 0);
+        conf.setProperty(KeyValueStorageLedgerArrays.MAX_DELTA_SEGMENTS, 100);
+        storage = open(conf);
+        for (long entryId = 0; entryId < 5; entryId++) {
+            storage.put(key(1, entryId), value(10 + entryId));
+            storage.put(key(2, entryId), value(20 + entryId));
+        }
+        try (Batch batch = storage.newBatch()) {
+            batch.deleteRange(key(2, 0), key(3, 0));
+            batch.flush();
+        }
+        assertEquals(11, countFiles(KeyValueStorageLedgerArrays.DELTA_PREFIX));
+        assertEquals(1, countFiles(KeyValueStorageLedgerArrays.SEGMENT_PREFIX));
+        storage.close();
+
+        // The deleted ledger is still in the older delta segments
+        storage = open(conf);
+        assertEquals(5, storage.count());
+        assertNull(storage.getCeil(key(2, 0)));
+        for (long entryId = 0; entryId < 5; entryId++) {
+            assertArrayEquals(value(10 + entryId), storage.get(key(1, entryId)));
+        }
+
+        // Update a ledger loaded from a segment
+        storage.put(key(1, 1), value(100));
+        storage.delete(key(1, 2));
+        assertArrayEquals(value(100), storage.get(key(1, 1)));
+        assertNull(storage.get(key(1, 2)));
+
+        storage.compact();
+        assertEquals(0, countFiles(KeyValueStorageLedgerArrays.DELTA_PREFIX));
+        assertEquals(1, countFiles(KeyValueStorageLedgerArrays.SEGMENT_PREFIX));
+        assertEquals(4, storage.count());
+        assertArrayEquals(value(100), storage.get(key(1, 1)));
+        assertArrayEquals(value(14), storage.get(key(1, 4)));
+        storage.close();
+
+        storage = open(conf);
+        assertEquals(4, storage.count());
+        assertArrayEquals(value(10), storage.get(key(1, 0)));
+        assertArrayEquals(value(100), storage.get(key(1, 1)));
+        assertNull(storage.get(key(1, 2)));
+        assertNull(storage.getCeil(key(2, 0)));
+    }
+
+    @Test
+    public void testBackgroundMerge() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty(KeyValueStorageLedgerArrays.WAL_MAX_SIZE_MB, 0);
+        conf.setProperty(KeyValueStorageLedgerArrays.MAX_DELTA_SEGMENTS, 2);
+        storage = open(conf);
+        for (long ledgerId = 1; ledgerId <= 50; ledgerId++) {
+            storage.put(key(ledgerId, 0), value(ledgerId));
+            storage.put(key(ledgerId, 1), value(ledgerId + 1000));
+            assertArrayEquals(value(ledgerId), storage.get(key(ledgerId, 0)));
+        }
+        for (long ledgerId = 1; ledgerId <= 50; ledgerId += 2) {
+            storage.delete(key(ledgerId, 1));
+        }
+        storage.close();
+
+        storage = open(conf);
+        assertEquals(75, storage.count());
+        for (long ledgerId = 1; ledgerId <= 50; ledgerId++) {
+            assertArrayEquals(value(ledgerId), storage.get(key(ledgerId, 0)));
+            if (ledgerId % 2 == 0) {
+                assertArrayEquals(value(ledgerId + 1000), storage.get(key(ledgerId, 1)));
+            } else {
+                assertNull(storage.get(key(ledgerId, 1)));
+            }
+        }
+
+        storage.compact();
+        assertEquals(0, countFiles(KeyValueStorageLedgerArrays.DELTA_PREFIX));
+        assertEquals(1, countFiles(KeyValueStorageLedgerArrays.SEGMENT_PREFIX));
+        assertEquals(75, storage.count());
+    }
+
+    private KeyValueStorageLedgerArrays open(ServerConfiguration conf) throws IOException {
+        return new KeyValueStorageLedgerArrays(tempDir.getAbsolutePath(), "locations", DbConfigType.EntryLocation,
+                conf);
+    }
+
+    private Path dbPath() {
+        return tempDir.toPath().resolve("locations" + KeyValueStorageLedgerArrays.DIRECTORY_SUFFIX);
+    }
+
+    private long countFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dbPath())) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix)
+                    && f.getFileName().toString().endsWith(KeyValueStorageLedgerArrays.SEGMENT_SUFFIX)).count();
+        }
+    }
+
+    private File walFile() throws IOException {
+        try (Stream<Path> files = Files.list(dbPath())) {
+            File[] wals = files
+                    .filter(f -> f.getFileName().toString().startsWith(KeyValueStorageLedgerArrays.WAL_PREFIX))
+                    .map(Path::toFile)
+                    .toArray(File[]::new);
+            assertEquals(1, wals.length);
+            assertTrue(wals[0].length() > 0);
+            return wals[0];
+        }
+    }
+
+    private static byte[] key(long ledgerId, long entryId) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, entryId);
+        return key;
+    }
+
+    private static byte[] value(long location) {
+        byte[] value = new byte[8];
+        ArrayUtil.setLong(value, 0, location);
+        return value;
+    }
+
+    private static void assertEntry(long ledgerId, long entryId, long location, Entry<byte[], byte[]> entry) {
+        assertArrayEquals(key(ledgerId, entryId), entry.getKey());
+        assertArrayEquals(value(location), entry.getValue());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedConstruction;
+
+/**
+ * Test the failures of the pipelined flush of the write caches.
+ */
+public class PipelinedFlushTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    @TempDir
+    Path tempDir;
+
+    private SingleDirectoryDbLedgerStorage storage;
+    private EntryLocationIndex entryLocationIndex;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        File ledgerDir = tempDir.toFile();
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setProperty(DbLedgerStorage.PIPELINED_FLUSH, true);
+        // One chunk per entry, to have more chunks than the chunks allowed in flight
+        conf.setProperty(DbLedgerStorage.PIPELINED_FLUSH_CHUNK_SIZE, 1);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(0.95f, 0.9f));
+
+        AtomicLong nextLocation = new AtomicLong();
+        EntryLogger entryLogger = mock(EntryLogger.class);
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class))).thenAnswer(invocation -> nextLocation.addAndGet(1));
+
+        try (MockedConstruction<EntryLocationIndex> indexes = mockConstruction(EntryLocationIndex.class,
+                (index, context) -> when(index.newBatch()).thenAnswer(invocation -> mock(Batch.class)))) {
+            storage = new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                    ledgerDirsManager, entryLogger, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                    4 * 1024 * 1024, 4 * 1024 * 1024, 100, 1024 * 1024);
+            entryLocationIndex = indexes.constructed().get(0);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        storage.shutdown();
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writeBytes(new byte[100]);
+        return entry;
+    }
+
+    @Test
+    void testIndexWriteFailureFailsFlush() throws Exception {
+        for (long entryId = 0; entryId < 20; entryId++) {
+            storage.addEntry(entry(entryId));
+        }
+        doThrow(new IOException("injected index write failure"))
+                .when(entryLocationIndex).addLocation(any(Batch.class), anyLong(), anyLong(), anyLong());
+
+        IOException e = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> assertThrows(IOException.class, storage::flush));
+        assertEquals("injected index write failure", e.getMessage());
+        // The chunks after the failed one are not added to the index
+        verify(entryLocationIndex, times(1)).addLocation(any(Batch.class), anyLong(), anyLong(), anyLong());
+
+        // The entries are still in the write caches, and are flushed once the index can be written again
+        doNothing().when(entryLocationIndex).addLocation(any(Batch.class), anyLong(), anyLong(), anyLong());
+        assertTimeoutPreemptively(Duration.ofSeconds(30), storage::flush);
+        verify(entryLocationIndex, times(21)).addLocation(any(Batch.class), anyLong(), anyLong(), anyLong());
+    }
+}
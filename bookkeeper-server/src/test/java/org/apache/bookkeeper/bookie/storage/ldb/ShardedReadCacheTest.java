@@ -0,0 +1,217 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ShardedReadCache}.
+ */
+public class ShardedReadCacheTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int ENTRY_SIZE = 256;
+    private static final int ENTRIES_PER_SEGMENT = SEGMENT_SIZE / ENTRY_SIZE;
+
+    private ShardedReadCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testPutAndGet() {
+        cache = new ShardedReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * SEGMENT_SIZE, 1, SEGMENT_SIZE);
+        assertEquals(1, cache.getShardsCount());
+
+        cache.put(1, 0, entry(1, 0, ENTRY_SIZE));
+        cache.put(1, 1, entry(1, 1, 100));
+
+        assertTrue(cache.hasEntry(1, 0));
+        assertTrue(cache.hasEntry(1, 1));
+        assertFalse(cache.hasEntry(1, 2));
+        assertNull(cache.get(1, 2));
+        assertEquals(2, cache.count());
+        // Entries are aligned to 64 bytes in the segment
+        assertEquals(ENTRY_SIZE + 128, cache.size());
+
+        assertEntry(1, 0, ENTRY_SIZE);
+        assertEntry(1, 1, 100);
+    }
+
+    @Test
+    public void testEntryLargerThanSegment() {
+        cache = new ShardedReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * SEGMENT_SIZE, 1, SEGMENT_SIZE);
+
+        cache.put(1, 0, entry(1, 0, SEGMENT_SIZE + 1));
+
+        assertFalse(cache.hasEntry(1, 0));
+        assertEquals(1, cache.admissionRejectedCount());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRotation() {
+        cache = new ShardedReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * SEGMENT_SIZE, 1, SEGMENT_SIZE);
+
+        int entries = 4 * ENTRIES_PER_SEGMENT;
+        for (int i = 0; i < entries; i++) {
+            cache.put(1, i, entry(1, i, ENTRY_SIZE));
+        }
+
+        assertEquals(entries, cache.count());
+        assertEquals(4 * SEGMENT_SIZE, cache.size());
+        assertEquals(0, cache.evictionCount());
+
+        // All the segments are full, the next entry recycles the oldest one
+        cache.put(1, entries, entry(1, entries, ENTRY_SIZE));
+
+        assertEquals(ENTRIES_PER_SEGMENT, cache.evictionCount());
+        assertEquals(entries - ENTRIES_PER_SEGMENT + 1, cache.count());
+        for (int i = 0; i < ENTRIES_PER_SEGMENT; i++) {
+            assertFalse(cache.hasEntry(1, i));
+        }
+        assertEntry(1, ENTRIES_PER_SEGMENT, ENTRY_SIZE);
+        assertEntry(1, entries, ENTRY_SIZE);
+    }
+
+    @Test
+    public void testReferencedSegmentGetsSecondChance() {
+        cache = new ShardedReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * SEGMENT_SIZE, 1, SEGMENT_SIZE);
+
+        int entries = 4 * ENTRIES_PER_SEGMENT;
+        for (int i = 0; i < entries; i++) {
+            cache.put(1, i, entry(1, i, ENTRY_SIZE));
+        }
+
+        // Reading from the oldest segment makes the clock skip it and recycle the next one
+        assertEntry(1, 0, ENTRY_SIZE);
+        cache.put(1, entries, entry(1, entries, ENTRY_SIZE));
+
+        assertEquals(ENTRIES_PER_SEGMENT, cache.evictionCount());
+        for (int i = 0; i < ENTRIES_PER_SEGMENT; i++) {
+            assertTrue(cache.hasEntry(1, i));
+            assertFalse(cache.hasEntry(1, ENTRIES_PER_SEGMENT + i));
+        }
+        assertEntry(1, entries, ENTRY_SIZE);
+    }
+
+    @Test
+    public void testAdmission() {
+        cache = new ShardedReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * SEGMENT_SIZE, 1, SEGMENT_SIZE);
+
+        int entries = 4 * ENTRIES_PER_SEGMENT;
+        for (int i = 0; i < entries; i++) {
+            cache.put(1, i, entry(1, i, ENTRY_SIZE));
+        }
+
+        // Make all the segments that can be recycled hot
+        for (int i = 0; i < 15; i++) {
+            for (int segment = 0; segment < 3; segment++) {
+                assertEntry(1, segment * ENTRIES_PER_SEGMENT, ENTRY_SIZE);
+            }
+        }
+
+        // An entry that was never requested does not replace a hot segment
+        cache.put(2, 0, entry(2, 0, ENTRY_SIZE));
+        assertFalse(cache.hasEntry(2, 0));
+        assertEquals(1, cache.admissionRejectedCount());
+        assertEquals(0, cache.evictionCount());
+        assertEquals(entries, cache.count());
+
+        // Once it was requested, it is admitted
+        assertNull(cache.get(2, 0));
+        cache.put(2, 0, entry(2, 0, ENTRY_SIZE));
+        assertEquals(1, cache.admissionRejectedCount());
+        assertEquals(ENTRIES_PER_SEGMENT, cache.evictionCount());
+        assertEntry(2, 0, ENTRY_SIZE);
+    }
+
+    @Test
+    public void testRejectedEntriesDoNotMoveSegmentOffset() {
+        int segmentSize = 1024 * 1024;
+        int entrySize = 64;
+        int entriesPerSegment = segmentSize / entrySize;
+        cache = new ShardedReadCache(UnpooledByteBufAllocator.DEFAULT, 4 * segmentSize, 1, segmentSize);
+
+        int entries = 4 * entriesPerSegment;
+        for (int i = 0; i < entries; i++) {
+            cache.put(1, i, entry(1, i, entrySize));
+        }
+        assertEquals(4 * segmentSize, cache.size());
+
+        // Each rejected entry used to advance the offset of the full segment, until it overflowed and the
+        // next entry was written at a negative offset
+        ByteBuf largeEntry = entry(2, 0, segmentSize);
+        int rejections = 1500;
+        for (int i = 0; i < rejections; i++) {
+            for (int j = 0; j < 4; j++) {
+                for (int segment = 0; segment < 3; segment++) {
+                    assertEntry(1, segment * entriesPerSegment, entrySize);
+                }
+            }
+            cache.put(2, 0, largeEntry);
+        }
+
+        assertEquals(rejections, cache.admissionRejectedCount());
+        assertEquals(0, cache.evictionCount());
+        assertEquals(entries, cache.count());
+        assertEquals(4 * segmentSize, cache.size());
+        assertFalse(cache.hasEntry(2, 0));
+
+        // A small entry that is in demand is still accepted
+        assertNull(cache.get(3, 0));
+        cache.put(3, 0, entry(3, 0, entrySize));
+        assertEntry(3, 0, entrySize);
+        assertEquals(entriesPerSegment, cache.evictionCount());
+
+        largeEntry.release();
+    }
+
+    private void assertEntry(long ledgerId, long entryId, int size) {
+        ByteBuf res = cache.get(ledgerId, entryId);
+        try {
+            assertEquals(entry(ledgerId, entryId, size), res);
+        } finally {
+            res.release();
+        }
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        for (int i = 0; i < size; i++) {
+            entry.writeByte((int) (ledgerId * 31 + entryId + i));
+        }
+        return entry;
+    }
+}
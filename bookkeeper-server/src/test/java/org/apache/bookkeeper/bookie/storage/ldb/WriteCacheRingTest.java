@@ -0,0 +1,188 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.MockedConstruction;
+
+/**
+ * Test the ring of write caches of {@link SingleDirectoryDbLedgerStorage}.
+ */
+public class WriteCacheRingTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int RING_SIZE = 4;
+    // Entries of 124 bytes take 128 bytes in a write cache, so that each write cache holds 10 entries
+    private static final int ENTRIES_PER_WRITE_CACHE = 10;
+    private static final long WRITE_CACHE_SIZE = RING_SIZE * ENTRIES_PER_WRITE_CACHE * 128;
+
+    @TempDir
+    Path tempDir;
+
+    private SingleDirectoryDbLedgerStorage storage;
+    private final CountDownLatch entryLoggerBlocked = new CountDownLatch(1);
+    // Ids of the entries written into the entry logger, in order
+    private final List<Long> flushedEntries = Collections.synchronizedList(new ArrayList<>());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        File ledgerDir = tempDir.toFile();
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_RING_SIZE, RING_SIZE);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(0.95f, 0.9f));
+
+        AtomicLong nextLocation = new AtomicLong();
+        EntryLogger entryLogger = mock(EntryLogger.class);
+        when(entryLogger.addEntry(anyLong(), any(ByteBuf.class))).thenAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(1);
+            // The flushes wait until the test lets them write into the entry logger
+            entryLoggerBlocked.await();
+            flushedEntries.add(entry.getLong(entry.readerIndex() + Long.BYTES));
+            return nextLocation.addAndGet(1);
+        });
+
+        try (MockedConstruction<EntryLocationIndex> indexes = mockConstruction(EntryLocationIndex.class,
+                (index, context) -> when(index.newBatch()).thenAnswer(invocation -> mock(Batch.class)))) {
+            storage = new SingleDirectoryDbLedgerStorage(conf, mock(LedgerManager.class), ledgerDirsManager,
+                    ledgerDirsManager, entryLogger, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT,
+                    WRITE_CACHE_SIZE, 4 * 1024 * 1024, 100, 1024 * 1024);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        entryLoggerBlocked.countDown();
+        executor.shutdownNow();
+        storage.shutdown();
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(124);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writeBytes(new byte[100]);
+        return entry;
+    }
+
+    private void assertEntryInWriteCaches(long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(LEDGER_ID, entryId);
+        try {
+            assertEquals(LEDGER_ID, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + Long.BYTES));
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    void testAddsContinueWhileWriteCachesAreFlushed() throws Exception {
+        int entries = RING_SIZE * ENTRIES_PER_WRITE_CACHE;
+
+        // The flush of the first write cache is stuck, the adds continue into the other write caches of the ring
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            for (long entryId = 0; entryId < entries; entryId++) {
+                storage.addEntry(entry(entryId));
+            }
+        });
+        assertTrue(flushedEntries.isEmpty());
+        assertTrue(storage.isFlushRequired());
+
+        // All the entries are read from the write caches that are not flushed yet
+        for (long entryId = 0; entryId < entries; entryId++) {
+            assertEntryInWriteCaches(entryId);
+        }
+
+        // Once all the write caches of the ring are full, the adds wait for a write cache to be flushed
+        Future<?> throttledAdd = executor.submit(() -> {
+            storage.addEntry(entry(entries));
+            return null;
+        });
+        Thread.sleep(100);
+        assertFalse(throttledAdd.isDone());
+
+        entryLoggerBlocked.countDown();
+        throttledAdd.get(30, TimeUnit.SECONDS);
+        assertEntryInWriteCaches(entries);
+
+        // A checkpoint flushes all the write caches, oldest first
+        storage.flush();
+        assertFalse(storage.isFlushRequired());
+        assertEquals(entries + 1, flushedEntries.size());
+        for (int i = 0; i <= entries; i++) {
+            assertEquals(i, (long) flushedEntries.get(i));
+        }
+    }
+
+    @Test
+    void testCheckpointFlushesAllRotatedWriteCaches() throws Exception {
+        entryLoggerBlocked.countDown();
+        int entries = 2 * ENTRIES_PER_WRITE_CACHE + 5;
+        for (long entryId = 0; entryId < entries; entryId++) {
+            storage.addEntry(entry(entryId));
+        }
+
+        storage.flush();
+        assertFalse(storage.isFlushRequired());
+        assertEquals(entries, flushedEntries.size());
+        for (int i = 0; i < entries; i++) {
+            assertEquals(i, (long) flushedEntries.get(i));
+        }
+    }
+}
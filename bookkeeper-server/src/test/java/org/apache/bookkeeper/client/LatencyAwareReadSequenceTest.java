@@ -0,0 +1,183 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link LatencyAwareReadSequence}.
+ */
+public class LatencyAwareReadSequenceTest {
+
+    private static final int RUNS = 100;
+
+    private final List<BookieId> ensemble = new ArrayList<>();
+    private final Map<BookieId, Long> latencies = new HashMap<>();
+    private final Map<BookieId, Long> pendingRequests = new HashMap<>();
+    private final Map<BookieId, Long> failures = new HashMap<>();
+
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookie) {
+            return failures.getOrDefault(bookie, -1L);
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookie) {
+            return pendingRequests.getOrDefault(bookie, 0L);
+        }
+
+        @Override
+        public long getBookieReadLatencyNanos(BookieId bookie) {
+            return latencies.getOrDefault(bookie, -1L);
+        }
+    };
+
+    @Test
+    public void testFasterBookieReadFirst() {
+        newEnsemble(2);
+        latencies.put(ensemble.get(0), 2_000_000L);
+        latencies.put(ensemble.get(1), 1_000_000L);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(1, firstBookie(2));
+        }
+
+        latencies.put(ensemble.get(0), 500_000L);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(0, firstBookie(2));
+        }
+    }
+
+    @Test
+    public void testPendingRequestsWeighLatency() {
+        newEnsemble(2);
+        latencies.put(ensemble.get(0), 1_000_000L);
+        latencies.put(ensemble.get(1), 1_500_000L);
+        // 1ms with 3 pending requests is worse than 1.5ms with none
+        pendingRequests.put(ensemble.get(0), 3L);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(1, firstBookie(2));
+        }
+    }
+
+    @Test
+    public void testUnknownLatencyIsTried() {
+        newEnsemble(2);
+        latencies.put(ensemble.get(0), 1_000_000L);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(1, firstBookie(2));
+        }
+    }
+
+    @Test
+    public void testTieKeepsOrder() {
+        newEnsemble(3);
+        for (int i = 0; i < RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = writeSet(3);
+            LatencyAwareReadSequence.moveBestOfTwoFirst(ensemble, healthInfo, writeSet);
+            // The first of the two random choices stays in front of the other
+            assertTrue(writeSet.get(0) == 0 || writeSet.get(0) == 1);
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testNotWritableBookieNotReadFirst() {
+        newEnsemble(2);
+        latencies.put(ensemble.get(0), 1_000L);
+        latencies.put(ensemble.get(1), 1_000_000L);
+        pendingRequests.put(ensemble.get(0), BookieClient.PENDINGREQ_NOTWRITABLE_MASK);
+        for (int i = 0; i < RUNS; i++) {
+            assertEquals(1, firstBookie(2));
+        }
+    }
+
+    @Test
+    public void testFailedBookiesSkipped() {
+        newEnsemble(3);
+        latencies.put(ensemble.get(0), 3_000_000L);
+        latencies.put(ensemble.get(1), 2_000_000L);
+        latencies.put(ensemble.get(2), 1_000_000L);
+        // Only one bookie without failures, the sequence of the placement policy is kept
+        failures.put(ensemble.get(1), 1L);
+        failures.put(ensemble.get(2), 1L);
+        for (int i = 0; i < RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = writeSet(3);
+            LatencyAwareReadSequence.moveBestOfTwoFirst(ensemble, healthInfo, writeSet);
+            assertEquals(0, writeSet.get(0));
+            assertEquals(1, writeSet.get(1));
+            assertEquals(2, writeSet.get(2));
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testSlowestBookieNeverReadFirst() {
+        newEnsemble(3);
+        latencies.put(ensemble.get(0), 3_000_000L);
+        latencies.put(ensemble.get(1), 2_000_000L);
+        latencies.put(ensemble.get(2), 1_000_000L);
+        int fastestFirst = 0;
+        for (int i = 0; i < RUNS; i++) {
+            DistributionSchedule.WriteSet writeSet = writeSet(3);
+            LatencyAwareReadSequence.moveBestOfTwoFirst(ensemble, healthInfo, writeSet);
+            assertNotEquals(0, writeSet.get(0));
+            if (writeSet.get(0) == 2) {
+                fastestFirst++;
+            }
+            // The other bookies keep their relative order
+            assertTrue(writeSet.get(1) < writeSet.get(2));
+            writeSet.recycle();
+        }
+        // The fastest bookie wins whenever it is one of the two choices, 2 times out of 3
+        assertTrue(fastestFirst > 0 && fastestFirst < RUNS);
+    }
+
+    private void newEnsemble(int size) {
+        for (int i = 0; i < size; i++) {
+            ensemble.add(BookieId.parse("bookie-" + i + ":3181"));
+        }
+    }
+
+    private DistributionSchedule.WriteSet writeSet(int size) {
+        return new RoundRobinDistributionSchedule(size, size, size).getWriteSet(0);
+    }
+
+    private int firstBookie(int size) {
+        DistributionSchedule.WriteSet writeSet = writeSet(size);
+        try {
+            LatencyAwareReadSequence.moveBestOfTwoFirst(ensemble, healthInfo, writeSet);
+            return writeSet.get(0);
+        } finally {
+            writeSet.recycle();
+        }
+    }
+}
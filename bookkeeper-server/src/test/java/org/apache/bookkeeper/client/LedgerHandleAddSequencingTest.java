@@ -0,0 +1,272 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the sequencing of the adds of several threads to the same ledger handle.
+ */
+public class LedgerHandleAddSequencingTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int THREADS = 8;
+    private static final int ADDS_PER_THREAD = 2000;
+
+    private OrderedExecutor mainWorkerPool;
+    private OrderedScheduler scheduler;
+    private LedgerHandle lh;
+
+    // Entry id and result code of the add of each thread, indexed by thread * ADDS_PER_THREAD + add
+    private final AtomicLongArray entryIds = new AtomicLongArray(THREADS * ADDS_PER_THREAD);
+    private final AtomicIntegerArray results = new AtomicIntegerArray(THREADS * ADDS_PER_THREAD);
+    private final AtomicIntegerArray callbacks = new AtomicIntegerArray(THREADS * ADDS_PER_THREAD);
+    private final CountDownLatch completed = new CountDownLatch(THREADS * ADDS_PER_THREAD);
+    private final AddCallback recordResult = (rc, lh, entryId, ctx) -> {
+        int index = (Integer) ctx;
+        entryIds.set(index, entryId);
+        results.set(index, rc);
+        callbacks.incrementAndGet(index);
+        completed.countDown();
+    };
+
+    @BeforeEach
+    void setUp() throws Exception {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("test-worker").numThreads(1).build();
+        scheduler = OrderedScheduler.newSchedulerBuilder().name("test-scheduler").numThreads(1).build();
+
+        List<BookieId> ensemble = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ensemble.add(BookieId.parse("bookie-" + i + ":3181"));
+        }
+        byte[] password = new byte[0];
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .withPassword(password)
+                .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C)
+                .newEnsembleEntry(0L, ensemble)
+                .build();
+
+        // The bookies acknowledge the adds on the ordered thread of the ledger, like real responses
+        BookieClient bookieClient = mock(BookieClient.class);
+        when(bookieClient.isWritable(any(), anyLong())).thenReturn(true);
+        doAnswer(invocation -> {
+            BookieId address = invocation.getArgument(0);
+            long entryId = invocation.getArgument(3);
+            WriteCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            mainWorkerPool.executeOrdered(LEDGER_ID,
+                    () -> cb.writeComplete(BKException.Code.OK, LEDGER_ID, entryId, address, ctx));
+            return null;
+        }).when(bookieClient).addEntry(any(), eq(LEDGER_ID), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+
+        LedgerManager ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.writeLedgerMetadata(eq(LEDGER_ID), any(), any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(new Versioned<>(invocation.getArgument(1), new LongVersion(1L))));
+
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(new ClientConfiguration()));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getLedgerManager()).thenReturn(ledgerManager);
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getScheduler()).thenReturn(scheduler);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+
+        lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, password, EnumSet.noneOf(WriteFlag.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        mainWorkerPool.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testAddsSequencedInOrder() throws Exception {
+        List<Thread> threads = startAdding(null);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(completed.await(30, TimeUnit.SECONDS));
+
+        int total = THREADS * ADDS_PER_THREAD;
+        boolean[] assigned = new boolean[total];
+        for (int t = 0; t < THREADS; t++) {
+            long previous = -1;
+            for (int i = 0; i < ADDS_PER_THREAD; i++) {
+                int index = t * ADDS_PER_THREAD + i;
+                assertEquals(1, callbacks.get(index));
+                assertEquals(BKException.Code.OK, results.get(index));
+                long entryId = entryIds.get(index);
+                // The adds of a thread are sequenced in the order they were made
+                assertTrue(entryId > previous);
+                assertTrue(entryId < total && !assigned[(int) entryId]);
+                assigned[(int) entryId] = true;
+                previous = entryId;
+            }
+        }
+        assertEquals(total - 1, lh.getLastAddConfirmed());
+        assertEquals(total - 1, lh.getLastAddPushed());
+    }
+
+    @Test
+    public void testCloseWhileAdding() throws Exception {
+        CountDownLatch started = new CountDownLatch(THREADS * ADDS_PER_THREAD / 4);
+        List<Thread> threads = startAdding(started);
+        started.await();
+        lh.closeAsync().get(30, TimeUnit.SECONDS);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(completed.await(30, TimeUnit.SECONDS));
+
+        long lastEntryId = lh.getLedgerMetadata().getLastEntryId();
+        assertEquals(lastEntryId, lh.getLastAddConfirmed());
+        boolean[] acknowledged = new boolean[(int) lastEntryId + 1];
+        for (int t = 0; t < THREADS; t++) {
+            boolean failed = false;
+            for (int i = 0; i < ADDS_PER_THREAD; i++) {
+                int index = t * ADDS_PER_THREAD + i;
+                assertEquals(1, callbacks.get(index));
+                if (results.get(index) == BKException.Code.OK) {
+                    // Once an add of a thread failed, the next ones are not acknowledged either
+                    assertFalse(failed);
+                    long entryId = entryIds.get(index);
+                    assertTrue(entryId <= lastEntryId && !acknowledged[(int) entryId]);
+                    acknowledged[(int) entryId] = true;
+                } else {
+                    failed = true;
+                }
+            }
+        }
+        // The closed ledger holds exactly the acknowledged adds
+        for (boolean entry : acknowledged) {
+            assertTrue(entry);
+        }
+
+        // The adds after the close fail right away
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        lh.asyncAddEntry(new byte[10], (rc, lh, entryId, ctx) -> result.complete(rc), null);
+        assertEquals(BKException.Code.LedgerClosedException, result.get(30, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    public void testAddRacingClose() throws Exception {
+        // The ordered thread of the ledger holds the handle lock, so that a first add waits for it while
+        // sequencing the adds, and a second add returns before its entry id is assigned
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch unlock = new CountDownLatch(1);
+        mainWorkerPool.executeOrdered(LEDGER_ID, () -> {
+            synchronized (lh) {
+                locked.countDown();
+                try {
+                    unlock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        locked.await();
+        Thread sequencing = new Thread(() -> lh.asyncAddEntry(new byte[100], recordResult, 0), "sequencing");
+        sequencing.start();
+        while (sequencing.getState() != Thread.State.BLOCKED) {
+            Thread.sleep(1);
+        }
+        lh.asyncAddEntry(new byte[100], recordResult, 1);
+
+        // The close runs on the ordered thread once the lock is released, racing with the sequencing thread
+        AtomicInteger addsCompletedBeforeClose = new AtomicInteger(-1);
+        CompletableFuture<Integer> closed = new CompletableFuture<>();
+        lh.asyncClose((rc, handle, ctx) -> {
+            addsCompletedBeforeClose.set(callbacks.get(0) + callbacks.get(1));
+            closed.complete(rc);
+        }, null);
+        unlock.countDown();
+        sequencing.join();
+
+        assertEquals(BKException.Code.OK, closed.get(30, TimeUnit.SECONDS).intValue());
+        // Both adds were made before the close, so they are completed before it, like the pending adds
+        assertEquals(2, addsCompletedBeforeClose.get());
+        assertEquals(BKException.Code.LedgerClosedException, results.get(0));
+        assertEquals(BKException.Code.LedgerClosedException, results.get(1));
+        assertEquals(-1L, lh.getLedgerMetadata().getLastEntryId());
+    }
+
+    private List<Thread> startAdding(CountDownLatch started) {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < ADDS_PER_THREAD; i++) {
+                    lh.asyncAddEntry(new byte[100], recordResult, thread * ADDS_PER_THREAD + i);
+                    if (started != null) {
+                        started.countDown();
+                    }
+                }
+            }, "adder-" + t));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        return threads;
+    }
+}
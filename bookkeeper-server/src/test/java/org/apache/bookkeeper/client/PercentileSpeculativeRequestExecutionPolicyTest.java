@@ -0,0 +1,184 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PercentileSpeculativeRequestExecutionPolicy}.
+ */
+public class PercentileSpeculativeRequestExecutionPolicyTest {
+
+    private static final int FIRST_TIMEOUT_MS = 10;
+    private static final int MAX_TIMEOUT_MS = 100;
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<Long> delaysMicros = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MICROSECONDS)))
+                .thenAnswer(invocation -> {
+                    tasks.add(invocation.getArgument(0));
+                    delaysMicros.add(invocation.getArgument(1));
+                    return null;
+                });
+    }
+
+    private PercentileSpeculativeRequestExecutionPolicy newPolicy(double maxPercent, boolean useObservedLatency) {
+        return new PercentileSpeculativeRequestExecutionPolicy(99, FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2.0f,
+                maxPercent, useObservedLatency);
+    }
+
+    private int runTasks() {
+        List<Runnable> toRun = new ArrayList<>(tasks);
+        tasks.clear();
+        toRun.forEach(Runnable::run);
+        return toRun.size();
+    }
+
+    @Test
+    public void testFirstTimeout() {
+        FakeRequestExecutor executor = new FakeRequestExecutor();
+
+        // Without a percentile, the tail latency is only used when asked
+        newPolicy(10, false).initiateSpeculativeRequest(scheduler, executor);
+        executor.tailLatencyNanos = TimeUnit.MILLISECONDS.toNanos(3);
+        newPolicy(10, false).initiateSpeculativeRequest(scheduler, executor);
+        newPolicy(10, true).initiateSpeculativeRequest(scheduler, executor);
+
+        // The percentile takes precedence over the tail latency, and is capped by the max timeout
+        executor.percentileLatencyNanos = TimeUnit.MILLISECONDS.toNanos(5);
+        newPolicy(10, true).initiateSpeculativeRequest(scheduler, executor);
+        executor.percentileLatencyNanos = TimeUnit.SECONDS.toNanos(1);
+        newPolicy(10, true).initiateSpeculativeRequest(scheduler, executor);
+
+        assertEquals(Arrays.asList(10000L, 10000L, 3001L, 5001L, 100000L), delaysMicros);
+        assertEquals(99.0, executor.requestedPercentile);
+    }
+
+    @Test
+    public void testBackoff() {
+        FakeRequestExecutor executor = new FakeRequestExecutor();
+        executor.result = Futures.immediateFuture(true);
+        PercentileSpeculativeRequestExecutionPolicy policy = newPolicy(10, false);
+
+        policy.initiateSpeculativeRequest(scheduler, executor);
+        for (int i = 0; i < 4; i++) {
+            runTasks();
+        }
+        assertEquals(Arrays.asList(10000L, 20000L, 40000L, 80000L, 100000L), delaysMicros);
+        assertEquals(4, executor.issued);
+    }
+
+    @Test
+    public void testBurstIsCapped() {
+        FakeRequestExecutor executor = new FakeRequestExecutor();
+        PercentileSpeculativeRequestExecutionPolicy policy = newPolicy(0, false);
+
+        for (int i = 0; i < 2 * PercentileSpeculativeRequestExecutionPolicy.MAX_BURST; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runTasks();
+        assertEquals(PercentileSpeculativeRequestExecutionPolicy.MAX_BURST, executor.issued);
+    }
+
+    @Test
+    public void testTokensAreEarnedByRequests() {
+        FakeRequestExecutor executor = new FakeRequestExecutor();
+        PercentileSpeculativeRequestExecutionPolicy policy = newPolicy(10, false);
+
+        for (int i = 0; i < PercentileSpeculativeRequestExecutionPolicy.MAX_BURST; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runTasks();
+        assertEquals(PercentileSpeculativeRequestExecutionPolicy.MAX_BURST, executor.issued);
+
+        // With 10%, 10 requests earn a speculative request
+        for (int i = 0; i < 9; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runTasks();
+        assertEquals(PercentileSpeculativeRequestExecutionPolicy.MAX_BURST, executor.issued);
+
+        for (int i = 0; i < 10; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runTasks();
+        assertEquals(PercentileSpeculativeRequestExecutionPolicy.MAX_BURST + 1, executor.issued);
+    }
+
+    @Test
+    public void testTokenIsReturnedWhenNothingIsIssued() {
+        FakeRequestExecutor executor = new FakeRequestExecutor();
+        executor.result = Futures.immediateFuture(false);
+        PercentileSpeculativeRequestExecutionPolicy policy = newPolicy(0, false);
+
+        for (int i = 0; i < 2 * PercentileSpeculativeRequestExecutionPolicy.MAX_BURST; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+            runTasks();
+        }
+        assertEquals(2 * PercentileSpeculativeRequestExecutionPolicy.MAX_BURST, executor.issued);
+    }
+
+    private static final class FakeRequestExecutor implements SpeculativeRequestExecutor {
+        long percentileLatencyNanos = -1L;
+        long tailLatencyNanos = -1L;
+        double requestedPercentile;
+        ListenableFuture<Boolean> result = SettableFuture.create();
+        int issued;
+
+        @Override
+        public ListenableFuture<Boolean> issueSpeculativeRequest() {
+            issued++;
+            return result;
+        }
+
+        @Override
+        public long getObservedTailLatencyNanos() {
+            return tailLatencyNanos;
+        }
+
+        @Override
+        public long getObservedLatencyNanos(double percentile) {
+            requestedPercentile = percentile;
+            return percentileLatencyNanos;
+        }
+    }
+}
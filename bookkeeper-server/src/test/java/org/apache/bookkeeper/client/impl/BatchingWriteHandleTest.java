@@ -0,0 +1,295 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.CreateBuilder;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link BatchingWriteHandle}.
+ */
+public class BatchingWriteHandleTest {
+
+    private static final long MAX_DELAY_MICROS = 1000L;
+
+    private final List<ByteBuf> appended = new ArrayList<>();
+    private final List<CompletableFuture<Long>> appendFutures = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private WriteHandle delegate;
+    private ScheduledExecutorService scheduler;
+    private CompletableFuture<Void> delegateClose;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(WriteHandle.class);
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getCustomMetadata()).thenReturn(UnbatchingReadHandle.batchedMetadata(null));
+        when(delegate.getLedgerMetadata()).thenReturn(metadata);
+        when(delegate.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+            appended.add(invocation.getArgument(0));
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            appendFutures.add(future);
+            return future;
+        });
+        delegateClose = new CompletableFuture<>();
+        when(delegate.closeAsync()).thenReturn(delegateClose);
+
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            assertEquals(MAX_DELAY_MICROS, (long) invocation.getArgument(1));
+            assertEquals(TimeUnit.MICROSECONDS, invocation.getArgument(2));
+            scheduled.add(invocation.getArgument(0));
+            return null;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        appended.forEach(ByteBuf::release);
+    }
+
+    private static ByteBuf record(String data) {
+        return Unpooled.copiedBuffer(data, UTF_8);
+    }
+
+    // Returns the records packed in an appended entry
+    private List<String> records(int append) {
+        ByteBuf entry = appended.get(append);
+        LedgerEntry ledgerEntry = LedgerEntryImpl.create(1L, append, entry.readableBytes(), entry.retain());
+        List<String> records = new ArrayList<>();
+        for (LedgerEntry record : RecordBatchCodec.unpack(ledgerEntry)) {
+            records.add(record.getEntryBuffer().toString(UTF_8));
+            record.close();
+        }
+        ledgerEntry.close();
+        return records;
+    }
+
+    @Test
+    public void testFlushOnMaxRecords() throws Exception {
+        BatchingWriteHandle handle = new BatchingWriteHandle(delegate, 3, 1024 * 1024, MAX_DELAY_MICROS, scheduler);
+
+        List<CompletableFuture<RecordPosition>> positions = new ArrayList<>();
+        positions.add(handle.appendRecordAsync(record("a")));
+        positions.add(handle.appendRecordAsync(record("b")));
+        assertTrue(appended.isEmpty());
+        assertEquals(1, scheduled.size());
+        positions.add(handle.appendRecordAsync(record("c")));
+
+        assertEquals(1, appended.size());
+        assertEquals(Arrays.asList("a", "b", "c"), records(0));
+        positions.forEach(position -> assertFalse(position.isDone()));
+
+        appendFutures.get(0).complete(5L);
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals(new RecordPosition(5L, i), positions.get(i).get());
+        }
+
+        // The next record starts a new batch
+        CompletableFuture<Long> entryId = handle.appendAsync(record("d"));
+        assertEquals(1, appended.size());
+        assertEquals(2, scheduled.size());
+        handle.flush();
+        assertEquals(2, appended.size());
+        assertEquals(Arrays.asList("d"), records(1));
+        appendFutures.get(1).complete(6L);
+        assertEquals(6L, entryId.get());
+    }
+
+    @Test
+    public void testFlushOnMaxBytes() throws Exception {
+        // Room for two records of 10 bytes, each taking its length in the header
+        int maxBytes = RecordBatchCodec.headerSize(2) + 20;
+        BatchingWriteHandle handle = new BatchingWriteHandle(delegate, 100, maxBytes, MAX_DELAY_MICROS, scheduler);
+
+        handle.appendRecordAsync(record("0123456789"));
+        assertTrue(appended.isEmpty());
+        handle.appendRecordAsync(record("abcdefghij"));
+        assertEquals(1, appended.size());
+        assertEquals(Arrays.asList("0123456789", "abcdefghij"), records(0));
+
+        // A record that does not fit appends the batch before it
+        handle.appendRecordAsync(record("0123456789"));
+        handle.appendRecordAsync(record("abcdefghijk"));
+        assertEquals(2, appended.size());
+        assertEquals(Arrays.asList("0123456789"), records(1));
+
+        // A record larger than a batch is appended alone
+        handle.appendRecordAsync(record("a record larger than a batch of records"));
+        assertEquals(4, appended.size());
+        assertEquals(Arrays.asList("abcdefghijk"), records(2));
+        assertEquals(Arrays.asList("a record larger than a batch of records"), records(3));
+    }
+
+    @Test
+    public void testFlushOnMaxDelay() throws Exception {
+        BatchingWriteHandle handle = new BatchingWriteHandle(delegate, 100, 1024 * 1024, MAX_DELAY_MICROS, scheduler);
+
+        // The delay starts with the first record of a batch
+        CompletableFuture<RecordPosition> first = handle.appendRecordAsync(record("a"));
+        CompletableFuture<RecordPosition> second = handle.appendRecordAsync(record("b"));
+        assertEquals(1, scheduled.size());
+        assertTrue(appended.isEmpty());
+
+        scheduled.get(0).run();
+        assertEquals(1, appended.size());
+        assertEquals(Arrays.asList("a", "b"), records(0));
+        appendFutures.get(0).complete(0L);
+        assertEquals(new RecordPosition(0L, 0), first.get());
+        assertEquals(new RecordPosition(0L, 1), second.get());
+
+        // A delayed flush of a batch already appended does not append the next batch
+        handle.appendRecordAsync(record("c"));
+        assertEquals(2, scheduled.size());
+        handle.flush();
+        assertEquals(2, appended.size());
+        handle.appendRecordAsync(record("d"));
+        assertEquals(3, scheduled.size());
+        scheduled.get(1).run();
+        assertEquals(2, appended.size());
+        scheduled.get(2).run();
+        assertEquals(3, appended.size());
+        assertEquals(Arrays.asList("d"), records(2));
+    }
+
+    @Test
+    public void testNoDelayAppendsEachRecord() {
+        BatchingWriteHandle handle = new BatchingWriteHandle(delegate, 100, 1024 * 1024, 0L, scheduler);
+
+        handle.appendRecordAsync(record("a"));
+        handle.appendRecordAsync(record("b"));
+        assertEquals(2, appended.size());
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void testFailedAppendFailsRecords() throws Exception {
+        BatchingWriteHandle handle = new BatchingWriteHandle(delegate, 2, 1024 * 1024, MAX_DELAY_MICROS, scheduler);
+        CompletableFuture<RecordPosition> first = handle.appendRecordAsync(record("a"));
+        CompletableFuture<RecordPosition> second = handle.appendRecordAsync(record("b"));
+
+        appendFutures.get(0).completeExceptionally(new BKException.BKNotEnoughBookiesException());
+        ExecutionException e = assertThrows(ExecutionException.class, first::get);
+        assertInstanceOf(BKException.BKNotEnoughBookiesException.class, e.getCause());
+        e = assertThrows(ExecutionException.class, second::get);
+        assertInstanceOf(BKException.BKNotEnoughBookiesException.class, e.getCause());
+    }
+
+    @Test
+    public void testCloseAppendsBatchAndWaitsForIt() throws Exception {
+        BatchingWriteHandle handle = new BatchingWriteHandle(delegate, 100, 1024 * 1024, MAX_DELAY_MICROS, scheduler);
+        CompletableFuture<RecordPosition> position = handle.appendRecordAsync(record("a"));
+
+        CompletableFuture<Void> closed = handle.closeAsync();
+        assertEquals(1, appended.size());
+        verify(delegate, never()).closeAsync();
+
+        appendFutures.get(0).complete(0L);
+        assertEquals(new RecordPosition(0L, 0), position.get());
+        verify(delegate).closeAsync();
+        assertFalse(closed.isDone());
+        delegateClose.complete(null);
+        closed.get();
+
+        // Records appended after close are rejected and released
+        ByteBuf data = record("b");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> handle.appendRecordAsync(data).get());
+        assertInstanceOf(BKException.BKLedgerClosedException.class, e.getCause());
+        assertEquals(0, data.refCnt());
+        assertEquals(1, appended.size());
+    }
+
+    @Test
+    public void testForceAppendsBatch() {
+        when(delegate.force()).thenReturn(CompletableFuture.completedFuture(null));
+        BatchingWriteHandle handle = new BatchingWriteHandle(delegate, 100, 1024 * 1024, MAX_DELAY_MICROS, scheduler);
+        handle.appendRecordAsync(record("a"));
+
+        handle.force();
+        assertEquals(1, appended.size());
+        verify(delegate).force();
+    }
+
+    @Test
+    public void testCreateMarksLedger() throws Exception {
+        CreateBuilder builder = mock(CreateBuilder.class);
+        List<Map<String, byte[]>> customMetadata = new ArrayList<>();
+        when(builder.withCustomMetadata(any())).thenAnswer(invocation -> {
+            customMetadata.add(invocation.getArgument(0));
+            return builder;
+        });
+        when(builder.execute()).thenReturn(CompletableFuture.completedFuture(delegate));
+
+        Map<String, byte[]> appMetadata = Collections.singletonMap("application", "value".getBytes(UTF_8));
+        BatchingWriteHandle handle = BatchingWriteHandle.create(builder, appMetadata, 100, 1024 * 1024,
+                MAX_DELAY_MICROS, scheduler).get();
+
+        assertEquals(1, customMetadata.size());
+        assertTrue(customMetadata.get(0).containsKey(UnbatchingReadHandle.BATCHED_METADATA_KEY));
+        assertSame(appMetadata.get("application"), customMetadata.get(0).get("application"));
+        handle.appendRecordAsync(record("a"));
+        handle.flush();
+        assertEquals(1, appended.size());
+    }
+
+    @Test
+    public void testRejectsLedgerNotMarkedForBatching() {
+        WriteHandle unbatched = mock(WriteHandle.class);
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getCustomMetadata()).thenReturn(Collections.emptyMap());
+        when(unbatched.getLedgerMetadata()).thenReturn(metadata);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new BatchingWriteHandle(unbatched, 100, 1024 * 1024, MAX_DELAY_MICROS, scheduler));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerEntryStream;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link LedgerEntryStreamImpl}.
+ */
+public class LedgerEntryStreamImplTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final long LAST_ADD_CONFIRMED = 99L;
+    private static final long MAX_BATCH_READ_SIZE = 1024 * 1024;
+
+    /**
+     * Read sent by the stream, completed by the test.
+     */
+    private static class Read {
+        final long firstEntry;
+        final long lastEntry;
+        final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+
+        Read(long firstEntry, long lastEntry) {
+            this.firstEntry = firstEntry;
+            this.lastEntry = lastEntry;
+        }
+    }
+
+    private final List<Read> reads = new ArrayList<>();
+    private final List<ByteBuf> buffers = new ArrayList<>();
+    private ReadHandle handle;
+
+    @BeforeEach
+    void setUp() {
+        handle = mock(ReadHandle.class);
+        when(handle.getLastAddConfirmed()).thenReturn(LAST_ADD_CONFIRMED);
+        when(handle.batchReadAsync(anyLong(), anyInt(), anyLong())).thenAnswer(invocation -> {
+            long firstEntry = invocation.getArgument(0);
+            int maxCount = invocation.getArgument(1);
+            assertEquals(MAX_BATCH_READ_SIZE, (long) invocation.getArgument(2));
+            Read read = new Read(firstEntry, firstEntry + maxCount - 1);
+            reads.add(read);
+            return read.future;
+        });
+        when(handle.readAsync(anyLong(), anyLong())).thenAnswer(invocation -> {
+            Read read = new Read(invocation.getArgument(0), invocation.getArgument(1));
+            reads.add(read);
+            return read.future;
+        });
+    }
+
+    @Test
+    public void testEntriesReturnedInOrder() throws Exception {
+        LedgerEntryStream stream = new LedgerEntryStreamImpl(handle, 0, 7, 8, MAX_BATCH_READ_SIZE);
+
+        // The window is read in chunks of a quarter of the window
+        assertEquals(4, reads.size());
+        List<CompletableFuture<LedgerEntry>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            assertTrue(stream.hasNext());
+            results.add(stream.nextAsync());
+        }
+        assertFalse(stream.hasNext());
+
+        // Complete the reads out of order
+        for (int i = reads.size() - 1; i > 0; i--) {
+            complete(reads.get(i));
+        }
+        results.forEach(result -> assertFalse(result.isDone()));
+        complete(reads.get(0));
+
+        for (int i = 0; i < 8; i++) {
+            assertEntry(i, results.get(i).get());
+        }
+        assertEquals(4, reads.size());
+        assertInstanceOf(NoSuchElementException.class, failure(stream.nextAsync()));
+        stream.close();
+        assertReleased();
+    }
+
+    @Test
+    public void testWindowBackPressure() throws Exception {
+        LedgerEntryStream stream = new LedgerEntryStreamImpl(handle, 0, LAST_ADD_CONFIRMED, 8, MAX_BATCH_READ_SIZE);
+        assertEquals(4, reads.size());
+
+        // The entries that were read but not returned fill the window
+        for (Read read : new ArrayList<>(reads)) {
+            complete(read);
+        }
+        assertEquals(4, reads.size());
+
+        // Returning one chunk of entries leaves room for the next chunk
+        assertEntry(0, stream.nextAsync().get());
+        assertEquals(4, reads.size());
+        assertEntry(1, stream.nextAsync().get());
+        assertEquals(5, reads.size());
+        assertEquals(8, reads.get(4).firstEntry);
+        assertEquals(9, reads.get(4).lastEntry);
+
+        stream.close();
+        complete(reads.get(4));
+        assertReleased();
+    }
+
+    @Test
+    public void testPartialBatchRead() throws Exception {
+        LedgerEntryStream stream = new LedgerEntryStreamImpl(handle, 0, 3, 8, MAX_BATCH_READ_SIZE);
+        assertEquals(2, reads.size());
+
+        // The size limit of the batch read only returned the first entry of the chunk
+        complete(reads.get(0), 0, 0);
+        assertEquals(3, reads.size());
+        assertEquals(1, reads.get(2).firstEntry);
+        assertEquals(1, reads.get(2).lastEntry);
+        complete(reads.get(1));
+        complete(reads.get(2));
+
+        for (int i = 0; i < 4; i++) {
+            assertEntry(i, stream.nextAsync().get());
+        }
+        assertFalse(stream.hasNext());
+        stream.close();
+        assertReleased();
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        LedgerEntryStream stream = new LedgerEntryStreamImpl(handle, 0, 7, 8, MAX_BATCH_READ_SIZE);
+        CompletableFuture<LedgerEntry> first = stream.nextAsync();
+        CompletableFuture<LedgerEntry> second = stream.nextAsync();
+        CompletableFuture<LedgerEntry> third = stream.nextAsync();
+
+        complete(reads.get(0));
+        BKException cause = new BKException.BKReadException();
+        reads.get(1).future.completeExceptionally(cause);
+
+        assertEntry(0, first.get());
+        assertEntry(1, second.get());
+        assertSame(cause, failure(third));
+        assertSame(cause, failure(stream.nextAsync()));
+        stream.close();
+        assertReleased();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        LedgerEntryStream stream = new LedgerEntryStreamImpl(handle, 0, 7, 8, MAX_BATCH_READ_SIZE);
+        complete(reads.get(0));
+        complete(reads.get(2));
+        assertEntry(0, stream.nextAsync().get());
+        assertEntry(1, stream.nextAsync().get());
+
+        // The second chunk was not read yet
+        CompletableFuture<LedgerEntry> waiting = stream.nextAsync();
+        assertFalse(waiting.isDone());
+
+        // The entries of the third chunk are released by the close
+        stream.close();
+        assertFalse(stream.hasNext());
+        assertInstanceOf(CancellationException.class, failure(waiting));
+        assertInstanceOf(CancellationException.class, failure(stream.nextAsync()));
+
+        // The reads that complete once the stream is closed are released
+        complete(reads.get(1));
+        complete(reads.get(3));
+        assertReleased();
+    }
+
+    @Test
+    public void testInvalidRange() throws Exception {
+        LedgerEntryStream stream = new LedgerEntryStreamImpl(handle, 0, LAST_ADD_CONFIRMED + 1, 8,
+                MAX_BATCH_READ_SIZE);
+        assertTrue(reads.isEmpty());
+        assertInstanceOf(BKException.BKReadException.class, failure(stream.nextAsync()));
+        stream.close();
+    }
+
+    @Test
+    public void testDefaultStreamUsesRangeReads() throws Exception {
+        when(handle.readStream(anyLong(), anyLong(), anyInt())).thenCallRealMethod();
+        LedgerEntryStream stream = handle.readStream(0, 3, 4);
+
+        assertEquals(4, reads.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, reads.get(i).firstEntry);
+            assertEquals(i, reads.get(i).lastEntry);
+            complete(reads.get(i));
+            assertEntry(i, stream.nextAsync().get());
+        }
+        verify(handle, never()).batchReadAsync(anyLong(), anyInt(), anyLong());
+        stream.close();
+        assertReleased();
+    }
+
+    private void complete(Read read) {
+        complete(read, read.firstEntry, read.lastEntry);
+    }
+
+    private void complete(Read read, long firstEntry, long lastEntry) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+            ByteBuf buffer = Unpooled.buffer(Long.BYTES).writeLong(entryId);
+            buffers.add(buffer);
+            entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, Long.BYTES, buffer));
+        }
+        read.future.complete(LedgerEntriesImpl.create(entries));
+    }
+
+    private static void assertEntry(long entryId, LedgerEntry entry) {
+        try {
+            assertEquals(entryId, entry.getEntryId());
+            assertEquals(entryId, entry.getEntryBuffer().getLong(0));
+        } finally {
+            entry.close();
+        }
+    }
+
+    private void assertReleased() {
+        buffers.forEach(buffer -> assertEquals(0, buffer.refCnt()));
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            throw new AssertionError("The future did not fail");
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (CancellationException e) {
+            return e;
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
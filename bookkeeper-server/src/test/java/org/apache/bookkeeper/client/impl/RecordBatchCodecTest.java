@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RecordBatchCodec}.
+ */
+public class RecordBatchCodecTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final long ENTRY_ID = 7L;
+
+    private static ByteBuf buffer(String data) {
+        return Unpooled.copiedBuffer(data, UTF_8);
+    }
+
+    // Unpack the given entry, and return the content of its records after closing them and the entry
+    private static List<byte[]> unpackBytes(ByteBuf buf) {
+        LedgerEntry entry = LedgerEntryImpl.create(LEDGER_ID, ENTRY_ID, buf.readableBytes(), buf);
+        List<byte[]> contents = new ArrayList<>();
+        try {
+            for (LedgerEntry record : RecordBatchCodec.unpack(entry)) {
+                assertEquals(LEDGER_ID, record.getLedgerId());
+                assertEquals(ENTRY_ID, record.getEntryId());
+                assertEquals(record.getEntryBuffer().readableBytes(), record.getLength());
+                contents.add(ByteBufUtil.getBytes(record.getEntryBuffer()));
+                record.close();
+            }
+        } finally {
+            entry.close();
+        }
+        return contents;
+    }
+
+    private static List<String> unpack(ByteBuf buf) {
+        List<String> contents = new ArrayList<>();
+        for (byte[] record : unpackBytes(buf)) {
+            contents.add(new String(record, UTF_8));
+        }
+        return contents;
+    }
+
+    @Test
+    public void testPackUnpackRoundTrip() {
+        List<ByteBuf> records = Arrays.asList(buffer("first"), buffer(""), buffer("third record"));
+        ByteBuf entry = RecordBatchCodec.pack(ByteBufAllocator.DEFAULT, records);
+
+        assertEquals(RecordBatchCodec.headerSize(3) + 5 + 12, entry.readableBytes());
+        assertEquals(RecordBatchCodec.MAGIC, entry.getInt(entry.readerIndex()));
+        assertEquals(3, entry.getInt(entry.readerIndex() + Integer.BYTES));
+
+        assertEquals(Arrays.asList("first", "", "third record"), unpack(entry));
+        assertEquals(0, entry.refCnt());
+        records.forEach(record -> assertEquals(0, record.refCnt()));
+    }
+
+    @Test
+    public void testPackUnpackSingleRecord() {
+        ByteBuf entry = RecordBatchCodec.pack(ByteBufAllocator.DEFAULT, Arrays.asList(buffer("record")));
+
+        assertEquals(Arrays.asList("record"), unpack(entry));
+        assertEquals(0, entry.refCnt());
+    }
+
+    @Test
+    public void testUnpackFromReaderIndex() {
+        ByteBuf packed = RecordBatchCodec.pack(ByteBufAllocator.DEFAULT, Arrays.asList(buffer("a"), buffer("bc")));
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeLong(-1L);
+        entry.writeBytes(packed);
+        packed.release();
+        entry.skipBytes(Long.BYTES);
+
+        assertEquals(Arrays.asList("a", "bc"), unpack(entry));
+    }
+
+    @Test
+    public void testNotABatchReadAsSingleRecord() {
+        assertEquals(Arrays.asList("not a batch of records"), unpack(buffer("not a batch of records")));
+        assertEquals(Arrays.asList(""), unpack(Unpooled.buffer()));
+    }
+
+    @Test
+    public void testInconsistentHeaderReadAsSingleRecord() {
+        // Shorter than a header
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeInt(RecordBatchCodec.MAGIC);
+        assertEquals(1, unpackCount(entry));
+
+        // Negative record count
+        entry = Unpooled.buffer();
+        entry.writeInt(RecordBatchCodec.MAGIC);
+        entry.writeInt(-1);
+        assertEquals(1, unpackCount(entry));
+
+        // More records than lengths in the entry
+        entry = Unpooled.buffer();
+        entry.writeInt(RecordBatchCodec.MAGIC);
+        entry.writeInt(100);
+        entry.writeInt(0);
+        assertEquals(1, unpackCount(entry));
+
+        // Negative record length
+        entry = Unpooled.buffer();
+        entry.writeInt(RecordBatchCodec.MAGIC);
+        entry.writeInt(2);
+        entry.writeInt(-1);
+        entry.writeInt(1);
+        assertEquals(1, unpackCount(entry));
+
+        // Record lengths not adding up to the entry length
+        entry = Unpooled.buffer();
+        entry.writeInt(RecordBatchCodec.MAGIC);
+        entry.writeInt(1);
+        entry.writeInt(5);
+        entry.writeBytes("abc".getBytes(UTF_8));
+        assertEquals(1, unpackCount(entry));
+    }
+
+    @Test
+    public void testUnbatchedEntryWithBatchHeaderSplit() {
+        // The codec cannot tell an entry with a consistent header apart from a batch
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeInt(RecordBatchCodec.MAGIC);
+        entry.writeInt(2);
+        entry.writeInt(1);
+        entry.writeInt(2);
+        entry.writeBytes("abc".getBytes(UTF_8));
+
+        assertEquals(Arrays.asList("a", "bc"), unpack(entry));
+    }
+
+    private static int unpackCount(ByteBuf buf) {
+        byte[] expected = ByteBufUtil.getBytes(buf);
+        List<byte[]> records = unpackBytes(buf);
+        assertArrayEquals(expected, records.get(0));
+        return records.size();
+    }
+}
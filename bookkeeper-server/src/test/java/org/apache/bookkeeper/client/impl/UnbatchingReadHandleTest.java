@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link UnbatchingReadHandle}.
+ */
+public class UnbatchingReadHandleTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    // An entry packing the records "a" and "bc", whatever ledger it is read from
+    private static ByteBuf batchLookingEntry() {
+        return RecordBatchCodec.pack(ByteBufAllocator.DEFAULT, Arrays.asList(
+                Unpooled.copiedBuffer("a", UTF_8), Unpooled.copiedBuffer("bc", UTF_8)));
+    }
+
+    // A handle on a ledger with the given custom metadata, whose reads return the given entry
+    private static ReadHandle ledger(Map<String, byte[]> customMetadata, ByteBuf entry) {
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getCustomMetadata()).thenReturn(customMetadata);
+        ReadHandle delegate = mock(ReadHandle.class);
+        when(delegate.getLedgerMetadata()).thenReturn(metadata);
+        List<LedgerEntry> entries = new ArrayList<>();
+        entries.add(LedgerEntryImpl.create(LEDGER_ID, 0L, entry.readableBytes(), entry));
+        when(delegate.readAsync(0L, 0L)).thenReturn(CompletableFuture.completedFuture(
+                LedgerEntriesImpl.create(entries)));
+        return delegate;
+    }
+
+    private static List<byte[]> read(ReadHandle handle) throws Exception {
+        List<byte[]> contents = new ArrayList<>();
+        try (LedgerEntries entries = handle.readAsync(0L, 0L).get()) {
+            for (LedgerEntry entry : entries) {
+                assertEquals(0L, entry.getEntryId());
+                contents.add(entry.getEntryBytes());
+            }
+        }
+        return contents;
+    }
+
+    @Test
+    public void testBatchedLedgerIsUnpacked() throws Exception {
+        ByteBuf entry = batchLookingEntry();
+        UnbatchingReadHandle handle = new UnbatchingReadHandle(
+                ledger(UnbatchingReadHandle.batchedMetadata(null), entry));
+
+        List<byte[]> records = read(handle);
+        assertEquals(2, records.size());
+        assertArrayEquals("a".getBytes(UTF_8), records.get(0));
+        assertArrayEquals("bc".getBytes(UTF_8), records.get(1));
+        assertEquals(0, entry.refCnt());
+    }
+
+    @Test
+    public void testUnbatchedLedgerWithBatchLookingEntryIsUnchanged() throws Exception {
+        ByteBuf entry = batchLookingEntry();
+        byte[] written = ByteBufUtil.getBytes(entry);
+        UnbatchingReadHandle handle = new UnbatchingReadHandle(ledger(Collections.emptyMap(), entry));
+
+        List<byte[]> records = read(handle);
+        assertEquals(1, records.size());
+        assertArrayEquals(written, records.get(0));
+        assertEquals(0, entry.refCnt());
+
+        // The entries read outside of the handle are not split either
+        ByteBuf buf = batchLookingEntry();
+        LedgerEntry ledgerEntry = LedgerEntryImpl.create(LEDGER_ID, 0L, buf.readableBytes(), buf);
+        List<LedgerEntry> unpacked = handle.unpack(ledgerEntry);
+        assertEquals(1, unpacked.size());
+        assertArrayEquals(written, unpacked.get(0).getEntryBytes());
+        unpacked.get(0).close();
+        ledgerEntry.close();
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    public void testBatchedMetadata() {
+        Map<String, byte[]> appMetadata = Collections.singletonMap("application", "value".getBytes(UTF_8));
+        Map<String, byte[]> metadata = UnbatchingReadHandle.batchedMetadata(appMetadata);
+        assertTrue(metadata.containsKey(UnbatchingReadHandle.BATCHED_METADATA_KEY));
+        assertArrayEquals("value".getBytes(UTF_8), metadata.get("application"));
+        assertFalse(appMetadata.containsKey(UnbatchingReadHandle.BATCHED_METADATA_KEY));
+    }
+}
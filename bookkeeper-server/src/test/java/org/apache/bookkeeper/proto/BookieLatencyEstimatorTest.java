@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mockStatic;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+/**
+ * Unit tests for {@link BookieLatencyEstimator}.
+ */
+public class BookieLatencyEstimatorTest {
+
+    private MockedStatic<MathUtils> mathUtils;
+    private long nowNanos = TimeUnit.HOURS.toNanos(1);
+
+    @BeforeEach
+    void setUp() {
+        mathUtils = mockStatic(MathUtils.class);
+        mathUtils.when(MathUtils::nowInNano).thenAnswer(invocation -> nowNanos);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mathUtils.close();
+    }
+
+    @Test
+    public void testUnknownWithoutSamples() {
+        BookieLatencyEstimator estimator = new BookieLatencyEstimator();
+        assertEquals(-1L, estimator.getAverageNanos());
+        assertEquals(-1L, estimator.getTailNanos());
+    }
+
+    @Test
+    public void testMovingAverageAndDeviation() {
+        BookieLatencyEstimator estimator = new BookieLatencyEstimator();
+        // The first sample sets the average, and half of it as deviation
+        estimator.record(1000);
+        assertEquals(1000, estimator.getAverageNanos());
+        assertEquals(3000, estimator.getTailNanos());
+
+        // deviation = 500 + (1000 - 500) / 4, average = 1000 + 1000 / 8
+        estimator.record(2000);
+        assertEquals(1125, estimator.getAverageNanos());
+        assertEquals(1125 + 4 * 625, estimator.getTailNanos());
+
+        // Constant latencies make the deviation decay
+        for (int i = 0; i < 200; i++) {
+            estimator.record(1000);
+        }
+        assertEquals(1000, estimator.getAverageNanos());
+        assertEquals(1000, estimator.getTailNanos());
+    }
+
+    @Test
+    public void testExpiry() {
+        BookieLatencyEstimator estimator = new BookieLatencyEstimator();
+        estimator.record(1000);
+
+        nowNanos += TimeUnit.SECONDS.toNanos(30);
+        assertEquals(1000, estimator.getAverageNanos());
+
+        nowNanos += 1;
+        assertEquals(-1L, estimator.getAverageNanos());
+        assertEquals(-1L, estimator.getTailNanos());
+
+        // The estimate starts over instead of moving from the expired one
+        estimator.record(8000);
+        assertEquals(8000, estimator.getAverageNanos());
+        assertEquals(8000 + 4 * 4000, estimator.getTailNanos());
+    }
+
+    @Test
+    public void testReadLatencyPercentiles() {
+        BookieLatencyEstimator estimator = new BookieLatencyEstimator(10000);
+        for (int i = 1; i <= 100; i++) {
+            estimator.record(BookieProtocol.READENTRY, TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        // 99 ms falls in the bucket [98304, 102399] us
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(102399),
+                estimator.getLatencyAtPercentileNanos(BookieProtocol.READENTRY, 99));
+        // The batch reads have their own distribution, the moving estimate gets all the reads
+        assertEquals(-1L, estimator.getLatencyAtPercentileNanos(BookieProtocol.BATCH_READ_ENTRY, 99));
+        assertTrue(estimator.getAverageNanos() > TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testNoPercentilesWithoutWindow() {
+        BookieLatencyEstimator estimator = new BookieLatencyEstimator();
+        for (int i = 1; i <= 100; i++) {
+            estimator.record(BookieProtocol.READENTRY, 1000);
+        }
+        assertEquals(-1L, estimator.getLatencyAtPercentileNanos(BookieProtocol.READENTRY, 99));
+        assertEquals(1000, estimator.getAverageNanos());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mockStatic;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+/**
+ * Unit tests for {@link BookieLatencySketch}.
+ */
+public class BookieLatencySketchTest {
+
+    private static final long MAX_VALUE_MICROS = (1L << 32) - 1;
+    private static final long WINDOW_MILLIS = 10000;
+
+    private MockedStatic<MathUtils> mathUtils;
+    private long nowNanos = TimeUnit.HOURS.toNanos(1);
+
+    @BeforeEach
+    void setUp() {
+        mathUtils = mockStatic(MathUtils.class);
+        mathUtils.when(MathUtils::nowInNano).thenAnswer(invocation -> nowNanos);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mathUtils.close();
+    }
+
+    @Test
+    public void testSmallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, BookieLatencySketch.bucketOf(value));
+            assertEquals(value, BookieLatencySketch.highestValueOf(value));
+        }
+        assertEquals(31, BookieLatencySketch.bucketOf(31));
+        assertEquals(31, BookieLatencySketch.highestValueOf(31));
+        // From 32, the buckets are two values wide
+        assertEquals(33, BookieLatencySketch.bucketOf(34));
+        assertEquals(33, BookieLatencySketch.bucketOf(35));
+        assertEquals(35, BookieLatencySketch.highestValueOf(33));
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        int lastBucket = BookieLatencySketch.bucketOf(MAX_VALUE_MICROS);
+        assertEquals(MAX_VALUE_MICROS, BookieLatencySketch.highestValueOf(lastBucket));
+
+        long lowest = 0;
+        for (int bucket = 0; bucket <= lastBucket; bucket++) {
+            long highest = BookieLatencySketch.highestValueOf(bucket);
+            assertEquals(bucket, BookieLatencySketch.bucketOf(lowest));
+            assertEquals(bucket, BookieLatencySketch.bucketOf(highest));
+            // A bucket is at most 1/16th of its values wide
+            assertTrue((highest - lowest) * 16 <= Math.max(lowest, 15), "bucket " + bucket);
+            lowest = highest + 1;
+        }
+    }
+
+    @Test
+    public void testPercentileNeedsEnoughSamples() {
+        BookieLatencySketch sketch = new BookieLatencySketch(WINDOW_MILLIS);
+        for (int i = 1; i < BookieLatencySketch.MIN_SAMPLES; i++) {
+            sketch.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        assertEquals(-1L, sketch.getLatencyAtPercentileNanos(50));
+
+        // The percentiles are cached for a short time
+        sketch.record(TimeUnit.MICROSECONDS.toNanos(BookieLatencySketch.MIN_SAMPLES));
+        assertEquals(-1L, sketch.getLatencyAtPercentileNanos(50));
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(100);
+        // 50 us falls in the bucket [50, 51] us
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(51), sketch.getLatencyAtPercentileNanos(50));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(3), sketch.getLatencyAtPercentileNanos(3));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(103), sketch.getLatencyAtPercentileNanos(100));
+    }
+
+    @Test
+    public void testLatenciesAreCapped() {
+        BookieLatencySketch sketch = new BookieLatencySketch(WINDOW_MILLIS);
+        for (int i = 0; i < BookieLatencySketch.MIN_SAMPLES; i++) {
+            sketch.record(Long.MAX_VALUE);
+        }
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(MAX_VALUE_MICROS), sketch.getLatencyAtPercentileNanos(99));
+    }
+
+    @Test
+    public void testSamplesExpireAfterTwoWindows() {
+        BookieLatencySketch sketch = new BookieLatencySketch(WINDOW_MILLIS);
+        for (int i = 0; i < BookieLatencySketch.MIN_SAMPLES; i++) {
+            sketch.record(TimeUnit.MICROSECONDS.toNanos(10));
+        }
+
+        // The samples of the previous window still count
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(10), sketch.getLatencyAtPercentileNanos(99));
+        for (int i = 0; i < BookieLatencySketch.MIN_SAMPLES; i++) {
+            sketch.record(TimeUnit.MICROSECONDS.toNanos(1000));
+        }
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(100);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(10), sketch.getLatencyAtPercentileNanos(50));
+
+        // Once a window is dropped, only the latest samples are left
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1023), sketch.getLatencyAtPercentileNanos(50));
+
+        // After a long idle time, nothing is left
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(2 * WINDOW_MILLIS);
+        assertEquals(-1L, sketch.getLatencyAtPercentileNanos(50));
+    }
+}
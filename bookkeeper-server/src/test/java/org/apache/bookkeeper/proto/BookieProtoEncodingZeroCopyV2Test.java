@@ -0,0 +1,255 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the zero copy encoding of the v2 read responses and the master key reuse of the v2
+ * request decoder in {@link BookieProtoEncoding}.
+ */
+public class BookieProtoEncodingZeroCopyV2Test {
+
+    private static final long LEDGER_ID = 1L;
+    private static final long ENTRY_ID = 2L;
+    private static final long REQUEST_ID = 3L;
+
+    private EmbeddedChannel zeroCopyChannel;
+    private EmbeddedChannel copyChannel;
+
+    @BeforeEach
+    void setUp() {
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        zeroCopyChannel = new EmbeddedChannel(new BookieProtoEncoding.ResponseEncoder(registry, true, false));
+        copyChannel = new EmbeddedChannel(new BookieProtoEncoding.ResponseEncoder(registry, false, false));
+    }
+
+    @AfterEach
+    void tearDown() {
+        zeroCopyChannel.finishAndReleaseAll();
+        copyChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    void testLargeReadResponseWritesEntryWithoutCopy() {
+        int size = BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD + 1;
+        ByteBuf data = entry(size, 7);
+        BookieProtocol.ReadResponse response = readResponse(data);
+
+        zeroCopyChannel.writeOutbound(response);
+
+        List<Object> written = readOutbound(zeroCopyChannel);
+        assertEquals(2, written.size());
+        assertSame(data, written.get(1));
+        // the response goes back to its recycler once written, the entry stays with the channel
+        assertNull(response.getData());
+        assertEquals(1, data.refCnt());
+
+        assertArrayEquals(encodeWithCopy(readResponse(entry(size, 7))), toBytes(written));
+        assertEquals(0, data.refCnt());
+    }
+
+    @Test
+    void testSmallReadResponseMatchesCopyEncoding() {
+        ByteBuf data = entry(100, 3);
+
+        zeroCopyChannel.writeOutbound(readResponse(data));
+
+        List<Object> written = readOutbound(zeroCopyChannel);
+        assertEquals(2, written.size());
+        assertArrayEquals(encodeWithCopy(readResponse(entry(100, 3))), toBytes(written));
+        assertEquals(0, data.refCnt());
+    }
+
+    @Test
+    void testEmptyReadResponseWritesOnlyHeaders() {
+        ByteBuf data = Unpooled.buffer(0);
+
+        zeroCopyChannel.writeOutbound(readResponse(data));
+
+        List<Object> written = readOutbound(zeroCopyChannel);
+        assertEquals(1, written.size());
+        assertEquals(0, data.refCnt());
+        assertArrayEquals(encodeWithCopy(readResponse(Unpooled.buffer(0))), toBytes(written));
+    }
+
+    @Test
+    void testBatchedReadResponseWritesEntriesWithoutCopy() {
+        int size = BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD;
+        ByteBuf first = entry(size, 1);
+        ByteBuf second = entry(10, 2);
+        BookieProtocol.BatchedReadResponse response = batchedReadResponse(first, second);
+
+        zeroCopyChannel.writeOutbound(response);
+
+        List<Object> written = readOutbound(zeroCopyChannel);
+        // headers, then the length and the data of each entry
+        assertEquals(5, written.size());
+        assertSame(first, written.get(2));
+        assertSame(second, written.get(4));
+        assertNull(response.getData());
+        assertEquals(1, first.refCnt());
+        assertEquals(1, second.refCnt());
+
+        assertArrayEquals(encodeWithCopy(batchedReadResponse(entry(size, 1), entry(10, 2))), toBytes(written));
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+    }
+
+    @Test
+    void testEmptyBatchedReadResponseWritesOnlyHeaders() {
+        zeroCopyChannel.writeOutbound(batchedReadResponse());
+
+        List<Object> written = readOutbound(zeroCopyChannel);
+        assertEquals(1, written.size());
+        assertArrayEquals(encodeWithCopy(batchedReadResponse()), toBytes(written));
+    }
+
+    @Test
+    void testDecoderReusesSameMasterKey() throws Exception {
+        BookieProtoEncoding.RequestEnDeCoderPreV3 decoder =
+                new BookieProtoEncoding.RequestEnDeCoderPreV3(ExtensionRegistry.newInstance(), true);
+        byte[] key = masterKey(1);
+
+        byte[] first = decodeAddMasterKey(decoder, key, 0);
+        byte[] second = decodeAddMasterKey(decoder, key.clone(), 1);
+        assertArrayEquals(key, first);
+        assertSame(first, second);
+
+        byte[] other = decodeAddMasterKey(decoder, masterKey(2), 2);
+        assertArrayEquals(masterKey(2), other);
+        assertNotSame(first, other);
+        assertSame(other, decodeAddMasterKey(decoder, masterKey(2), 3));
+    }
+
+    @Test
+    void testDecoderCopiesMasterKeyWithoutReuse() throws Exception {
+        BookieProtoEncoding.RequestEnDeCoderPreV3 decoder =
+                new BookieProtoEncoding.RequestEnDeCoderPreV3(ExtensionRegistry.newInstance(), false);
+        byte[] key = masterKey(1);
+
+        byte[] first = decodeAddMasterKey(decoder, key, 0);
+        byte[] second = decodeAddMasterKey(decoder, key, 1);
+        assertArrayEquals(key, first);
+        assertArrayEquals(key, second);
+        assertNotSame(first, second);
+    }
+
+    private static BookieProtocol.ReadResponse readResponse(ByteBuf data) {
+        return BookieProtocol.ReadResponse.create(BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.EOK,
+                LEDGER_ID, ENTRY_ID, data);
+    }
+
+    private static BookieProtocol.BatchedReadResponse batchedReadResponse(ByteBuf... entries) {
+        ByteBufList data = ByteBufList.get();
+        for (ByteBuf entry : entries) {
+            data.add(entry);
+        }
+        return BookieProtocol.BatchedReadResponse.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                BookieProtocol.EOK, LEDGER_ID, ENTRY_ID, REQUEST_ID, data);
+    }
+
+    private static ByteBuf entry(int size, int seed) {
+        ByteBuf entry = Unpooled.buffer(size);
+        for (int i = 0; i < size; i++) {
+            entry.writeByte(seed + i);
+        }
+        return entry;
+    }
+
+    private static byte[] masterKey(int seed) {
+        byte[] key = new byte[BookieProtocol.MASTER_KEY_LENGTH];
+        Arrays.fill(key, (byte) seed);
+        return key;
+    }
+
+    private static byte[] decodeAddMasterKey(BookieProtoEncoding.RequestEnDeCoderPreV3 decoder, byte[] masterKey,
+                                             long entryId) throws Exception {
+        ByteBuf packet = Unpooled.buffer();
+        packet.writeInt(PacketHeader.toInt(BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.ADDENTRY,
+                (short) 0));
+        packet.writeBytes(masterKey);
+        packet.writeLong(LEDGER_ID);
+        packet.writeLong(entryId);
+        packet.writeBytes(new byte[16]);
+
+        BookieProtocol.ParsedAddRequest request = (BookieProtocol.ParsedAddRequest) decoder.decode(packet);
+        assertEquals(entryId, request.getEntryId());
+        byte[] decoded = request.getMasterKey();
+        request.release();
+        request.recycle();
+        packet.release();
+        return decoded;
+    }
+
+    private byte[] encodeWithCopy(Object response) {
+        copyChannel.writeOutbound(response);
+        return toBytes(readOutbound(copyChannel));
+    }
+
+    private static List<Object> readOutbound(EmbeddedChannel channel) {
+        List<Object> written = new ArrayList<>();
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            written.add(msg);
+        }
+        return written;
+    }
+
+    private static byte[] toBytes(List<Object> written) {
+        ByteBuf all = Unpooled.buffer();
+        for (Object msg : written) {
+            if (msg instanceof ByteBufList) {
+                ByteBufList list = (ByteBufList) msg;
+                for (int i = 0; i < list.size(); i++) {
+                    ByteBuf buf = list.getBuffer(i);
+                    all.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+                }
+            } else {
+                ByteBuf buf = (ByteBuf) msg;
+                all.writeBytes(buf, buf.readerIndex(), buf.readableBytes());
+            }
+            ReferenceCountUtil.release(msg);
+        }
+        byte[] bytes = new byte[all.readableBytes()];
+        all.readBytes(bytes);
+        all.release();
+        return bytes;
+    }
+}
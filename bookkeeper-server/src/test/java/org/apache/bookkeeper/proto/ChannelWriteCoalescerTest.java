@@ -0,0 +1,176 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+/**
+ * Unit tests for {@link ChannelWriteCoalescer}.
+ */
+public class ChannelWriteCoalescerTest {
+
+    private Channel channel;
+    private EventLoop eventLoop;
+    private OpStatsLogger writesPerFlush;
+    // Tasks submitted to the event loop, run by the tests
+    private List<Runnable> tasks;
+
+    @BeforeEach
+    void setUp() {
+        tasks = new ArrayList<>();
+        eventLoop = mock(EventLoop.class);
+        doAnswer(invocation -> tasks.add(invocation.getArgument(0))).when(eventLoop).execute(any(Runnable.class));
+        channel = mock(Channel.class);
+        when(channel.eventLoop()).thenReturn(eventLoop);
+        writesPerFlush = mock(OpStatsLogger.class);
+    }
+
+    @Test
+    void testWritesQueuedBeforeTaskFlushedTogether() {
+        ChannelWriteCoalescer coalescer = new ChannelWriteCoalescer(channel, 10, Long.MAX_VALUE, writesPerFlush);
+        List<ChannelPromise> promises = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ChannelPromise promise = mock(ChannelPromise.class);
+            promises.add(promise);
+            coalescer.write("request-" + i, promise);
+        }
+        assertEquals(1, tasks.size());
+        verify(channel, never()).write(any(), any());
+
+        runTasks();
+
+        InOrder inOrder = inOrder(channel);
+        for (int i = 0; i < 3; i++) {
+            inOrder.verify(channel).write("request-" + i, promises.get(i));
+        }
+        inOrder.verify(channel).flush();
+        verify(channel, times(1)).flush();
+        verify(writesPerFlush).registerSuccessfulValue(3);
+    }
+
+    @Test
+    void testWriteAfterTaskRanSchedulesAnotherTask() {
+        ChannelWriteCoalescer coalescer = new ChannelWriteCoalescer(channel, 10, Long.MAX_VALUE, writesPerFlush);
+
+        coalescer.write("request-0", mock(ChannelPromise.class));
+        runTasks();
+        coalescer.write("request-1", mock(ChannelPromise.class));
+        assertEquals(1, tasks.size());
+        runTasks();
+
+        verify(eventLoop, times(2)).execute(coalescer);
+        verify(channel, times(2)).flush();
+        verify(writesPerFlush, times(2)).registerSuccessfulValue(1);
+    }
+
+    @Test
+    void testMaxOpsSplitsWrites() {
+        ChannelWriteCoalescer coalescer = new ChannelWriteCoalescer(channel, 2, Long.MAX_VALUE, writesPerFlush);
+        for (int i = 0; i < 5; i++) {
+            coalescer.write("request-" + i, mock(ChannelPromise.class));
+        }
+
+        assertEquals(3, runTasks());
+
+        verify(channel, times(5)).write(any(), any());
+        verify(channel, times(3)).flush();
+        verify(writesPerFlush, times(2)).registerSuccessfulValue(2);
+        verify(writesPerFlush).registerSuccessfulValue(1);
+    }
+
+    @Test
+    void testMaxBytesSplitsWrites() {
+        ChannelWriteCoalescer coalescer = new ChannelWriteCoalescer(channel, 10, 100, writesPerFlush);
+        for (int i = 0; i < 3; i++) {
+            coalescer.write(Unpooled.buffer(60).writeZero(60), mock(ChannelPromise.class));
+        }
+
+        // the write that reaches the limit is the last one of its flush
+        assertEquals(2, runTasks());
+
+        verify(channel, times(3)).write(any(), any());
+        verify(writesPerFlush).registerSuccessfulValue(2);
+        verify(writesPerFlush).registerSuccessfulValue(1);
+    }
+
+    @Test
+    void testWritesFailedWhenEventLoopShutDown() {
+        RejectedExecutionException rejected = new RejectedExecutionException("shut down");
+        doThrow(rejected).when(eventLoop).execute(any(Runnable.class));
+        ChannelWriteCoalescer coalescer = new ChannelWriteCoalescer(channel, 10, Long.MAX_VALUE, writesPerFlush);
+
+        for (int i = 0; i < 2; i++) {
+            ByteBuf request = Unpooled.buffer(8).writeLong(i);
+            ChannelPromise promise = mock(ChannelPromise.class);
+            coalescer.write(request, promise);
+
+            assertEquals(0, request.refCnt());
+            verify(promise).tryFailure(rejected);
+        }
+        verify(channel, never()).write(any(), any());
+    }
+
+    @Test
+    void testAtLeastOneWritePerFlush() {
+        ChannelWriteCoalescer coalescer = new ChannelWriteCoalescer(channel, 0, 0, writesPerFlush);
+
+        coalescer.write("request-0", mock(ChannelPromise.class));
+        coalescer.write("request-1", mock(ChannelPromise.class));
+        assertEquals(2, runTasks());
+        verify(writesPerFlush, times(2)).registerSuccessfulValue(1);
+    }
+
+    /**
+     * Run the tasks submitted to the event loop, including the ones submitted by the tasks.
+     *
+     * @return the number of tasks run
+     */
+    private int runTasks() {
+        int count = 0;
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+            count++;
+        }
+        return count;
+    }
+}
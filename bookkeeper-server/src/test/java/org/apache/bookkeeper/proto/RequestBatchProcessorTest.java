@@ -0,0 +1,191 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link RequestBatchProcessor}.
+ */
+public class RequestBatchProcessorTest {
+
+    private static final long ORDERING_KEY = 5L;
+
+    private BookieRequestHandler requestHandler;
+    private BookieRequestProcessor requestProcessor;
+    private OrderedExecutor threadPool;
+    private Channel channel;
+    private OpStatsLogger batchSizeStats;
+    private Counter tasksSavedCounter;
+    private List<String> events;
+
+    @BeforeEach
+    void setUp() {
+        requestHandler = newRequestHandler();
+        channel = requestHandler.ctx().channel();
+
+        batchSizeStats = mock(OpStatsLogger.class);
+        tasksSavedCounter = mock(Counter.class);
+        RequestStats requestStats = mock(RequestStats.class);
+        when(requestStats.getDispatchBatchSizeStats()).thenReturn(batchSizeStats);
+        when(requestStats.getDispatchTasksSavedCounter()).thenReturn(tasksSavedCounter);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getRequestStats()).thenReturn(requestStats);
+
+        // run the batches on the calling thread
+        threadPool = mock(OrderedExecutor.class);
+        doAnswer(invocation -> {
+            invocation.getArgument(1, Runnable.class).run();
+            return null;
+        }).when(threadPool).executeOrdered(anyLong(), any(Runnable.class));
+
+        events = new ArrayList<>();
+    }
+
+    @Test
+    void testTasksRunInOrderAsOneTask() {
+        RequestBatchProcessor batch = new RequestBatchProcessor(requestHandler, requestProcessor, threadPool,
+                ORDERING_KEY);
+        for (int i = 0; i < 3; i++) {
+            batch.add(record("task-" + i), record("rejected-" + i));
+        }
+
+        batch.dispatch();
+
+        assertEquals(Arrays.asList("task-0", "task-1", "task-2"), events);
+        verify(threadPool, times(1)).executeOrdered(eq(ORDERING_KEY), any(Runnable.class));
+        verify(batchSizeStats).registerSuccessfulValue(3);
+        verify(tasksSavedCounter).addCount(2);
+        // no response was written by the tasks
+        verify(channel, never()).flush();
+    }
+
+    @Test
+    void testRejectedBatchRunsRejectHandlers() {
+        doThrow(new RejectedExecutionException()).when(threadPool).executeOrdered(anyLong(), any(Runnable.class));
+        RequestBatchProcessor batch = new RequestBatchProcessor(requestHandler, requestProcessor, threadPool,
+                ORDERING_KEY);
+        batch.add(record("task-0"), record("rejected-0"));
+        batch.add(record("task-1"), record("rejected-1"));
+
+        batch.dispatch();
+
+        assertEquals(Arrays.asList("rejected-0", "rejected-1"), events);
+        verify(batchSizeStats, never()).registerSuccessfulValue(anyLong());
+        verify(tasksSavedCounter, never()).addCount(anyLong());
+    }
+
+    @Test
+    void testResponsesFlushedOnceAfterBatch() {
+        RequestBatchProcessor batch = new RequestBatchProcessor(requestHandler, requestProcessor, threadPool,
+                ORDERING_KEY);
+        for (int i = 0; i < 3; i++) {
+            batch.add(() -> {
+                assertTrue(RequestBatchProcessor.deferFlush(requestHandler));
+                verify(channel, never()).flush();
+            }, record("rejected"));
+        }
+
+        batch.dispatch();
+
+        verify(channel, times(1)).flush();
+        // outside of the batch the responses are flushed as usual
+        assertFalse(RequestBatchProcessor.deferFlush(requestHandler));
+    }
+
+    @Test
+    void testFlushNotDeferredForOtherChannel() {
+        BookieRequestHandler otherHandler = newRequestHandler();
+        RequestBatchProcessor batch = new RequestBatchProcessor(requestHandler, requestProcessor, threadPool,
+                ORDERING_KEY);
+        batch.add(() -> assertFalse(RequestBatchProcessor.deferFlush(otherHandler)), record("rejected"));
+
+        batch.dispatch();
+
+        verify(channel, never()).flush();
+    }
+
+    @Test
+    void testFlushNotDeferredForUnwritableChannel() {
+        when(channel.isWritable()).thenReturn(false);
+        RequestBatchProcessor batch = new RequestBatchProcessor(requestHandler, requestProcessor, threadPool,
+                ORDERING_KEY);
+        batch.add(() -> assertFalse(RequestBatchProcessor.deferFlush(requestHandler)), record("rejected"));
+
+        batch.dispatch();
+
+        verify(channel, never()).flush();
+    }
+
+    @Test
+    void testFailedTaskDoesNotStopBatch() {
+        RequestBatchProcessor batch = new RequestBatchProcessor(requestHandler, requestProcessor, threadPool,
+                ORDERING_KEY);
+        batch.add(() -> {
+            RequestBatchProcessor.deferFlush(requestHandler);
+            throw new IllegalStateException("failed");
+        }, record("rejected-0"));
+        batch.add(record("task-1"), record("rejected-1"));
+
+        batch.dispatch();
+
+        assertEquals(Arrays.asList("task-1"), events);
+        verify(channel, times(1)).flush();
+    }
+
+    private Runnable record(String event) {
+        return () -> events.add(event);
+    }
+
+    private static BookieRequestHandler newRequestHandler() {
+        Channel channel = mock(Channel.class);
+        when(channel.isWritable()).thenReturn(true);
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        return requestHandler;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.group.ChannelGroup;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the batched adds of a connection, from {@link BookieRequestHandler} through
+ * {@link BookieRequestProcessor#processAddBatch} to {@link WriteEntryBatchProcessor}.
+ */
+public class WriteEntryBatchProcessorTest {
+
+    private static final byte[] MASTER_KEY = "master-key".getBytes(UTF_8);
+    private static final long FENCED_LEDGER = 100L;
+    private static final long BLOCKING_LEDGER = 200L;
+
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+    private BookieRequestHandler requestHandler;
+    private ChannelHandlerContext ctx;
+    // Entries added to the bookie, and responses sent, as "ledger:entry" and "ledger:entry:rc"
+    private final List<String> added = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> responses = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    private void setUp(int numAddWorkerThreads, int maxPendingAddRequests) throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalAddBatchingEnabled(true);
+        conf.setNumAddWorkerThreads(numAddWorkerThreads);
+        conf.setMaxPendingAddRequestPerThread(maxPendingAddRequests);
+
+        // The bookie acknowledges the entries right away, and fails the ones of the fenced ledger
+        bookie = mock(Bookie.class);
+        when(bookie.addEntries(anyList(), anyList(), anyList(), anyBoolean(), any())).thenAnswer(invocation -> {
+            List<ByteBuf> entries = invocation.getArgument(0);
+            List<WriteCallback> cbs = invocation.getArgument(1);
+            if (entries.get(0).getLong(0) == BLOCKING_LEDGER) {
+                blocked.countDown();
+                unblock.await();
+            }
+            Exception[] failures = null;
+            for (int i = 0; i < entries.size(); i++) {
+                ByteBuf entry = entries.get(i);
+                long ledgerId = entry.getLong(0);
+                long entryId = entry.getLong(Long.BYTES);
+                entry.release();
+                if (ledgerId == FENCED_LEDGER) {
+                    if (failures == null) {
+                        failures = new Exception[entries.size()];
+                    }
+                    failures[i] = BookieException.create(BookieException.Code.LedgerFencedException);
+                } else {
+                    added.add(ledgerId + ":" + entryId);
+                    cbs.get(i).writeComplete(BookieProtocol.EOK, ledgerId, entryId, null, invocation.getArgument(4));
+                }
+            }
+            ((BookieRequestHandler) invocation.getArgument(4)).flushPendingResponse();
+            return failures;
+        });
+
+        requestProcessor = new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE, null,
+                UnpooledByteBufAllocator.DEFAULT, mock(ChannelGroup.class));
+
+        // The acknowledgements are flushed through the context, the errors through the channel
+        Channel channel = mock(Channel.class);
+        when(channel.isActive()).thenReturn(true);
+        when(channel.isWritable()).thenReturn(true);
+        when(channel.writeAndFlush(any(), any())).thenAnswer(invocation -> {
+            BookieProtocol.Response response = invocation.getArgument(0);
+            responses.add(response.getLedgerId() + ":" + response.getEntryId() + ":" + response.getErrorCode());
+            response.release();
+            return null;
+        });
+        ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        when(ctx.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(ctx.writeAndFlush(any(), any())).thenAnswer(invocation -> {
+            ByteBuf buf = invocation.getArgument(0);
+            while (buf.isReadable()) {
+                // frame size and header, then the result, the ledger and the entry
+                buf.skipBytes(2 * Integer.BYTES);
+                int rc = buf.readInt();
+                responses.add(buf.readLong() + ":" + buf.readLong() + ":" + rc);
+            }
+            buf.release();
+            return null;
+        });
+
+        requestHandler = new BookieRequestHandler(conf, requestProcessor, mock(ChannelGroup.class));
+        requestHandler.channelActive(ctx);
+    }
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        if (requestProcessor != null) {
+            requestProcessor.close();
+        }
+    }
+
+    // Deliver the adds of one network read of the connection
+    private void read(long[]... adds) throws Exception {
+        for (long[] add : adds) {
+            channelRead(add[0], add[1]);
+        }
+        requestHandler.channelReadComplete(ctx);
+    }
+
+    private void channelRead(long ledgerId, long entryId) throws Exception {
+        ByteBuf data = Unpooled.buffer(3 * Long.BYTES);
+        data.writeLong(ledgerId);
+        data.writeLong(entryId);
+        data.writeLong(0L);
+        requestHandler.channelRead(ctx, BookieProtocol.ParsedAddRequest.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, entryId, BookieProtocol.FLAG_NONE, MASTER_KEY,
+                data));
+        data.release();
+    }
+
+    private static long[] add(long ledgerId, long entryId) {
+        return new long[] { ledgerId, entryId };
+    }
+
+    private void awaitResponses(int numResponses) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (responses.size() < numResponses && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(numResponses, responses.size());
+    }
+
+    // The responses of the given ledger, in the order they were sent
+    private List<String> responses(long ledgerId) {
+        List<String> ledgerResponses = new ArrayList<>();
+        synchronized (responses) {
+            for (String response : responses) {
+                if (response.startsWith(ledgerId + ":")) {
+                    ledgerResponses.add(response);
+                }
+            }
+        }
+        return ledgerResponses;
+    }
+
+    @Test
+    public void testAddsKeepLedgerOrder() throws Exception {
+        setUp(4, 10000);
+        int numReads = 10;
+        int numLedgers = 8;
+        for (int r = 0; r < numReads; r++) {
+            List<long[]> adds = new ArrayList<>();
+            for (long entryId = 2L * r; entryId < 2L * r + 2; entryId++) {
+                for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+                    adds.add(add(ledgerId, entryId));
+                }
+            }
+            read(adds.toArray(new long[0][]));
+        }
+
+        awaitResponses(numReads * numLedgers * 2);
+        for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+            List<String> expected = new ArrayList<>();
+            for (long entryId = 0; entryId < numReads * 2; entryId++) {
+                expected.add(ledgerId + ":" + entryId + ":" + BookieProtocol.EOK);
+            }
+            assertEquals(expected, responses(ledgerId));
+        }
+    }
+
+    @Test
+    public void testAddsDeferredUntilReadComplete() throws Exception {
+        setUp(0, 0);
+        channelRead(1L, 0L);
+        verify(bookie, never()).addEntries(anyList(), anyList(), anyList(), anyBoolean(), any());
+
+        // Without add worker thread, the adds of the read are added together by the I/O thread
+        read(add(1L, 1L), add(2L, 0L));
+        assertEquals(Arrays.asList("1:0", "1:1", "2:0"), added);
+        assertEquals(Arrays.asList("1:0:0", "1:1:0", "2:0:0"), responses);
+    }
+
+    @Test
+    public void testFailedAddDoesNotFailBatch() throws Exception {
+        setUp(0, 0);
+        read(add(1L, 0L), add(FENCED_LEDGER, 0L), add(1L, 1L));
+
+        assertEquals(Arrays.asList("1:0", "1:1"), added);
+        assertEquals(Arrays.asList("1:0:" + BookieProtocol.EOK, "1:1:" + BookieProtocol.EOK), responses(1L));
+        assertEquals(Arrays.asList(FENCED_LEDGER + ":0:" + BookieProtocol.EFENCED), responses(FENCED_LEDGER));
+    }
+
+    @Test
+    public void testAddsRejectedWhenThreadPoolFull() throws Exception {
+        // Room for the running task and two queued ones
+        setUp(1, 3);
+        // The add thread is kept busy by a first batch, so that the next ones wait in its queue
+        read(add(BLOCKING_LEDGER, 0L), add(BLOCKING_LEDGER, 1L));
+        assertTrue(blocked.await(30, TimeUnit.SECONDS));
+
+        // One task per ledger: the first two are queued, the others are rejected
+        read(add(1L, 0L), add(2L, 0L), add(3L, 0L), add(4L, 0L), add(1L, 1L), add(2L, 1L), add(3L, 1L),
+                add(4L, 1L));
+        awaitResponses(4);
+        assertEquals(Arrays.asList("3:0:" + BookieProtocol.ETOOMANYREQUESTS,
+                "3:1:" + BookieProtocol.ETOOMANYREQUESTS), responses(3L));
+        assertEquals(Arrays.asList("4:0:" + BookieProtocol.ETOOMANYREQUESTS,
+                "4:1:" + BookieProtocol.ETOOMANYREQUESTS), responses(4L));
+
+        unblock.countDown();
+        awaitResponses(10);
+        assertEquals(Arrays.asList(BLOCKING_LEDGER + ":0:0", BLOCKING_LEDGER + ":1:0"), responses(BLOCKING_LEDGER));
+        assertEquals(Arrays.asList("1:0:0", "1:1:0"), responses(1L));
+        assertEquals(Arrays.asList("2:0:0", "2:1:0"), responses(2L));
+        assertEquals(Arrays.asList(BLOCKING_LEDGER + ":0", BLOCKING_LEDGER + ":1", "1:0", "1:1", "2:0", "2:1"),
+                added);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the ownership of the entries of v3 add requests decoded without copying them.
+ */
+public class WriteEntryProcessorV3ZeroCopyTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final long ENTRY_ID = 2L;
+    private static final byte[] MASTER_KEY = "master-key".getBytes();
+
+    private static ResourceLeakDetector.Level leakDetectionLevel;
+
+    private Bookie bookie;
+    private BookieRequestProcessor processor;
+    private BookieRequestHandler requestHandler;
+    private EmbeddedChannel channel;
+    private List<Response> responses;
+    // Entries retained by the bookie until they are journaled
+    private List<ByteBuf> journaled;
+    private List<WriteCallback> callbacks;
+
+    @BeforeAll
+    static void enableParanoidLeakDetection() {
+        leakDetectionLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+    }
+
+    @AfterAll
+    static void restoreLeakDetection() {
+        ResourceLeakDetector.setLevel(leakDetectionLevel);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setNumAddWorkerThreads(0);
+        conf.setNumReadWorkerThreads(0);
+        conf.setNumLongPollWorkerThreads(0);
+        conf.setNumHighPriorityWorkerThreads(0);
+        conf.setServerZeroCopyV3CodecEnabled(true);
+
+        journaled = new ArrayList<>();
+        callbacks = new ArrayList<>();
+        bookie = mock(Bookie.class);
+        // Like the bookie, retain the entry for the journal and release the reference of the caller
+        doAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            try {
+                journaled.add(entry.retain());
+                callbacks.add(invocation.getArgument(2));
+            } finally {
+                ReferenceCountUtil.release(entry);
+            }
+            return null;
+        }).when(bookie).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(), any());
+
+        processor = new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE, null,
+                UnpooledByteBufAllocator.DEFAULT, new DefaultChannelGroup(GlobalEventExecutor.INSTANCE));
+
+        channel = new EmbeddedChannel();
+        responses = new ArrayList<>();
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(channel);
+        requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(ctx);
+        when(requestHandler.writeResponse(any(), any(ChannelPromise.class))).thenAnswer(invocation -> {
+            responses.add(invocation.getArgument(0));
+            return ((ChannelPromise) invocation.getArgument(1)).setSuccess();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.close();
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * Encode and decode an add request like the bookie does, the frame being released once decoded.
+     */
+    private ParsedAddRequestV3 decodeAddRequest(byte[] body, ByteBuf[] frame) throws Exception {
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.ADD_ENTRY)
+                        .setTxnId(3L))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(LEDGER_ID)
+                        .setEntryId(ENTRY_ID)
+                        .setMasterKey(ByteString.copyFrom(MASTER_KEY))
+                        .setBody(ByteString.copyFrom(body)))
+                .build();
+        ByteBuf packet = PooledByteBufAllocator.DEFAULT.directBuffer(request.getSerializedSize());
+        try (ByteBufOutputStream out = new ByteBufOutputStream(packet)) {
+            request.writeTo(out);
+        }
+        frame[0] = packet;
+        Object decoded = new BookieProtoEncoding.RequestEnDecoderV3(ExtensionRegistry.newInstance(), true)
+                .decode(packet);
+        packet.release();
+        return assertInstanceOf(ParsedAddRequestV3.class, decoded);
+    }
+
+    @Test
+    void testEntryKeptUntilJournaled() throws Exception {
+        byte[] body = new byte[1024];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        ByteBuf[] frame = new ByteBuf[1];
+        ParsedAddRequestV3 add = decodeAddRequest(body, frame);
+
+        processor.processRequest(add, requestHandler);
+
+        // The processor handed its reference to the bookie, only the journal keeps the frame
+        assertEquals(1, journaled.size());
+        assertEquals(1, frame[0].refCnt());
+        ByteBuf entry = journaled.get(0);
+        byte[] journaledBody = new byte[entry.readableBytes()];
+        entry.getBytes(entry.readerIndex(), journaledBody);
+        assertArrayEquals(body, journaledBody);
+        verify(bookie).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(),
+                eq(MASTER_KEY));
+        assertEquals(0, responses.size());
+
+        // The journal writes the entry, then the add completes
+        entry.release();
+        callbacks.get(0).writeComplete(BookieProtocol.EOK, LEDGER_ID, ENTRY_ID, null, null);
+        assertEquals(0, frame[0].refCnt());
+        assertEquals(1, responses.size());
+        assertEquals(StatusCode.EOK, responses.get(0).getStatus());
+    }
+
+    @Test
+    void testEntryReleasedWhenNotAdded() throws Exception {
+        when(bookie.isReadOnly()).thenReturn(true);
+        ByteBuf[] frame = new ByteBuf[1];
+        ParsedAddRequestV3 add = decodeAddRequest(new byte[128], frame);
+
+        processor.processRequest(add, requestHandler);
+
+        verify(bookie, never()).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(), any());
+        assertEquals(0, frame[0].refCnt());
+        assertEquals(1, responses.size());
+        assertEquals(StatusCode.EREADONLY, responses.get(0).getStatus());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.netty.channel.SelectStrategy;
+import io.netty.util.IntSupplier;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.util.EventLoopUtil.SpinThenParkSelectStrategy;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link SpinThenParkSelectStrategy}.
+ */
+public class SpinThenParkSelectStrategyTest {
+
+    private final AtomicInteger readyEvents = new AtomicInteger();
+    private final AtomicInteger polls = new AtomicInteger();
+    private final IntSupplier selectNow = () -> {
+        polls.incrementAndGet();
+        return readyEvents.get();
+    };
+
+    @Test
+    void testParksAfterSpinIterationsWithoutEvents() throws Exception {
+        SpinThenParkSelectStrategy strategy = new SpinThenParkSelectStrategy(3);
+
+        for (int round = 0; round < 2; round++) {
+            assertEquals(0, strategy.calculateStrategy(selectNow, false));
+            assertEquals(0, strategy.calculateStrategy(selectNow, false));
+            assertEquals(SelectStrategy.SELECT, strategy.calculateStrategy(selectNow, false));
+        }
+        // every call polls without blocking first
+        assertEquals(6, polls.get());
+    }
+
+    @Test
+    void testReadyEventsRestartSpinning() throws Exception {
+        SpinThenParkSelectStrategy strategy = new SpinThenParkSelectStrategy(3);
+
+        assertEquals(0, strategy.calculateStrategy(selectNow, false));
+        assertEquals(0, strategy.calculateStrategy(selectNow, false));
+        readyEvents.set(2);
+        assertEquals(2, strategy.calculateStrategy(selectNow, false));
+        readyEvents.set(0);
+        assertEquals(0, strategy.calculateStrategy(selectNow, false));
+        assertEquals(0, strategy.calculateStrategy(selectNow, false));
+        assertEquals(SelectStrategy.SELECT, strategy.calculateStrategy(selectNow, false));
+    }
+
+    @Test
+    void testPendingTasksRestartSpinning() throws Exception {
+        SpinThenParkSelectStrategy strategy = new SpinThenParkSelectStrategy(2);
+
+        assertEquals(0, strategy.calculateStrategy(selectNow, false));
+        // never parks while tasks are pending
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, strategy.calculateStrategy(selectNow, true));
+        }
+        assertEquals(0, strategy.calculateStrategy(selectNow, false));
+        assertEquals(SelectStrategy.SELECT, strategy.calculateStrategy(selectNow, false));
+    }
+
+    @Test
+    void testSingleSpinIterationParksOnFirstEmptyPoll() throws Exception {
+        SpinThenParkSelectStrategy strategy = new SpinThenParkSelectStrategy(1);
+
+        assertEquals(SelectStrategy.SELECT, strategy.calculateStrategy(selectNow, false));
+        readyEvents.set(1);
+        assertEquals(1, strategy.calculateStrategy(selectNow, false));
+        readyEvents.set(0);
+        assertEquals(SelectStrategy.SELECT, strategy.calculateStrategy(selectNow, false));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.nativeio.IoUring;
+import org.apache.bookkeeper.common.util.nativeio.IoUringNativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare random O_DIRECT reads issued by concurrent threads through blocking pread calls and
+ * through io_uring, as done by the direct entry logger read threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class DirectReadBenchmark {
+
+    private static final int ALIGNMENT = 4096;
+
+    @State(Scope.Benchmark)
+    public static class FileState {
+
+        @Param({"blocking", "ioUring"})
+        private String backend;
+
+        @Param({"4096", "65536"})
+        private int readSize;
+
+        @Param({"1024"})
+        private int fileSizeMb;
+
+        private NativeIO nativeIO;
+        private IoUring ioUring;
+        private File file;
+        private int fd;
+        private long blocks;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            NativeIO blocking = new NativeIOImpl();
+            if ("ioUring".equals(backend)) {
+                if (!IoUring.isAvailable()) {
+                    throw new IOException("io_uring is not available", IoUring.unavailabilityCause());
+                }
+                ioUring = new IoUring(128);
+                nativeIO = new IoUringNativeIO(blocking, ioUring);
+            } else {
+                nativeIO = blocking;
+            }
+
+            file = Files.createTempFile("direct-read-benchmark", ".log").toFile();
+            int writeSize = 1024 * 1024;
+            long buffer = blocking.posix_memalign(ALIGNMENT, writeSize);
+            try {
+                int writeFd = blocking.open(file.toString(),
+                        NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_TRUNC | NativeIO.O_DIRECT, 00644);
+                for (long offset = 0; offset < fileSizeMb * (long) writeSize; offset += writeSize) {
+                    blocking.pwrite(writeFd, buffer, writeSize, offset);
+                }
+                blocking.fsync(writeFd);
+                blocking.close(writeFd);
+            } finally {
+                blocking.free(buffer);
+            }
+
+            fd = blocking.open(file.toString(), NativeIO.O_RDONLY | NativeIO.O_DIRECT, 00644);
+            blocks = fileSizeMb * (long) writeSize / readSize;
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            nativeIO.close(fd);
+            if (ioUring != null) {
+                ioUring.close();
+            }
+            if (!file.delete()) {
+                throw new IOException("Failed to delete " + file);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private NativeIO nativeIO;
+        private long buffer;
+
+        @Setup(Level.Trial)
+        public void setup(FileState s) throws IOException {
+            nativeIO = s.nativeIO;
+            buffer = nativeIO.posix_memalign(ALIGNMENT, s.readSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            nativeIO.free(buffer);
+        }
+    }
+
+    @Benchmark
+    public long randomRead(FileState s, ThreadState t) throws IOException {
+        long offset = ThreadLocalRandom.current().nextLong(s.blocks) * s.readSize;
+        return s.nativeIO.pread(s.fd, t.buffer, s.readSize, offset);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageLedgerArrays;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageRocksDB;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the entry location lookups in the RocksDB storage and in the ledger arrays storage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EntryLocationStorageBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class StorageState {
+
+        @Param({"rocksdb", "ledgerArrays"})
+        private String storage;
+
+        @Param({"1000"})
+        private int ledgers;
+
+        @Param({"10000"})
+        private int entriesPerLedger;
+
+        private File dir;
+        private KeyValueStorage kv;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("entry-location-benchmark").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+            if ("rocksdb".equals(storage)) {
+                kv = new KeyValueStorageRocksDB(dir.toString(), "locations", DbConfigType.EntryLocation, conf);
+            } else {
+                kv = new KeyValueStorageLedgerArrays(dir.toString(), "locations", DbConfigType.EntryLocation, conf);
+            }
+
+            byte[] key = new byte[16];
+            byte[] value = new byte[8];
+            try (KeyValueStorage.Batch batch = kv.newBatch()) {
+                for (int ledgerId = 0; ledgerId < ledgers; ledgerId++) {
+                    for (int entryId = 0; entryId < entriesPerLedger; entryId++) {
+                        setLong(key, 0, ledgerId);
+                        setLong(key, 8, entryId);
+                        setLong(value, 0, location(ledgerId, entryId));
+                        batch.put(key, value);
+                    }
+                    batch.flush();
+                }
+            }
+            kv.compact();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            kv.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final byte[] key = new byte[16];
+        private final byte[] value = new byte[8];
+        private long ledgerId;
+        private long entryId;
+
+        @Setup(Level.Iteration)
+        public void setup(StorageState s) {
+            ledgerId = ThreadLocalRandom.current().nextInt(s.ledgers);
+            entryId = 0;
+        }
+    }
+
+    private static long location(long ledgerId, long entryId) {
+        return (ledgerId << 32) | (entryId + 1);
+    }
+
+    // Keys and values are stored as big-endian longs
+    private static void setLong(byte[] array, int index, long value) {
+        for (int i = 7; i >= 0; i--) {
+            array[index + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] array, int index) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (array[index + i] & 0xff);
+        }
+        return value;
+    }
+
+    @Benchmark
+    public long randomLookup(StorageState s, ThreadState t) throws IOException {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        setLong(t.key, 0, r.nextInt(s.ledgers));
+        setLong(t.key, 8, r.nextInt(s.entriesPerLedger));
+        s.kv.get(t.key, t.value);
+        return getLong(t.value, 0);
+    }
+
+    @Benchmark
+    public long sequentialLookup(StorageState s, ThreadState t) throws IOException {
+        // Scan the entries of one ledger in order, as a catch-up reader does
+        if (++t.entryId == s.entriesPerLedger) {
+            t.entryId = 0;
+            t.ledgerId = (t.ledgerId + 1) % s.ledgers;
+        }
+        setLong(t.key, 0, t.ledgerId);
+        setLong(t.key, 8, t.entryId);
+        s.kv.get(t.key, t.value);
+        return getLong(t.value, 0);
+    }
+
+    @Benchmark
+    public long lastEntryLookup(StorageState s, ThreadState t) throws IOException {
+        setLong(t.key, 0, ThreadLocalRandom.current().nextInt(s.ledgers));
+        setLong(t.key, 8, Long.MAX_VALUE);
+        return s.kv.getFloor(t.key).getValue().length;
+    }
+}
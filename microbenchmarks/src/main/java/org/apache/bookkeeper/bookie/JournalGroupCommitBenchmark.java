@@ -0,0 +1,253 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Simulation of the journal group commit, comparing the static flush thresholds with the
+ * {@link JournalGroupCommitController}.
+ *
+ * <p>Entries arrive as a Poisson process. The journal thread spends a fixed time per entry and per
+ * flush, and decides when to flush like {@link Journal}. The force write thread syncs all the flushed
+ * batches at once, each fsync taking the configured latency with some jitter. The add latencies of
+ * the simulated entries are reported as secondary results, in simulated microseconds.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class JournalGroupCommitBenchmark {
+
+    private static final int ENTRIES = 200_000;
+    private static final int ENTRY_SIZE = 1024;
+    private static final long ENTRY_NANOS = 1_000;
+    private static final long FLUSH_NANOS = 20_000;
+
+    // Defaults of the static configuration
+    private static final long MAX_GROUP_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long BUFFERED_WRITES_THRESHOLD = 512 * 1024;
+    private static final int JOURNAL_QUEUE_SIZE = 10_000;
+
+    @State(Scope.Thread)
+    public static class TestState {
+
+        @Param({ "1000", "10000", "100000" })
+        private int entriesPerSecond;
+
+        @Param({ "100", "2000" })
+        private int fsyncMicros;
+
+        @Param({ "static", "adaptive" })
+        private String policy;
+
+        private long[] arrivals;
+        private long[] latencies;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Random r = new Random(1);
+            arrivals = new long[ENTRIES];
+            double meanGapNanos = (double) TimeUnit.SECONDS.toNanos(1) / entriesPerSecond;
+            double t = 0;
+            for (int i = 0; i < ENTRIES; i++) {
+                t += -Math.log(1 - r.nextDouble()) * meanGapNanos;
+                arrivals[i] = (long) t;
+            }
+            latencies = new long[ENTRIES];
+        }
+    }
+
+    /**
+     * Latencies of the last simulation, reported by JMH next to the time spent simulating.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Latencies {
+        public long p50Micros;
+        public long p99Micros;
+        public long p999Micros;
+        public long flushes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            p50Micros = 0;
+            p99Micros = 0;
+            p999Micros = 0;
+            flushes = 0;
+        }
+    }
+
+    @Benchmark
+    public void groupCommit(TestState s, Latencies l) {
+        JournalGroupCommitController controller = "adaptive".equals(s.policy)
+                ? new JournalGroupCommitController(MAX_GROUP_WAIT_NANOS, JOURNAL_QUEUE_SIZE) : null;
+        Simulation simulation = new Simulation(s.arrivals, s.latencies,
+                TimeUnit.MICROSECONDS.toNanos(s.fsyncMicros), controller);
+        simulation.run();
+
+        long[] sorted = Arrays.copyOf(s.latencies, s.latencies.length);
+        Arrays.sort(sorted);
+        l.p50Micros = TimeUnit.NANOSECONDS.toMicros(sorted[(int) (sorted.length * 0.5)]);
+        l.p99Micros = TimeUnit.NANOSECONDS.toMicros(sorted[(int) (sorted.length * 0.99)]);
+        l.p999Micros = TimeUnit.NANOSECONDS.toMicros(sorted[(int) (sorted.length * 0.999)]);
+        l.flushes = simulation.numBatches;
+    }
+
+    private static final class Simulation {
+        private final long[] arrivals;
+        private final long[] latencies;
+        private final long fsyncNanos;
+        private final JournalGroupCommitController controller;
+        private final Random random = new Random(2);
+
+        // Batches flushed by the journal thread: the time they are flushed and their last entry, exclusive
+        private final long[] batchReady;
+        private final int[] batchEnd;
+        private int numBatches = 0;
+
+        // Journal thread
+        private long now = 0;
+        private int next = 0;
+        private int pendingStart = 0;
+        private int pendingCount = 0;
+
+        // Force write thread
+        private long forceWriteFree = 0;
+        private int nextBatch = 0;
+        private int syncedEntries = 0;
+
+        Simulation(long[] arrivals, long[] latencies, long fsyncNanos, JournalGroupCommitController controller) {
+            this.arrivals = arrivals;
+            this.latencies = latencies;
+            this.fsyncNanos = fsyncNanos;
+            this.controller = controller;
+            this.batchReady = new long[arrivals.length];
+            this.batchEnd = new int[arrivals.length];
+        }
+
+        void run() {
+            while (next < arrivals.length || pendingCount > 0) {
+                syncUntil(now);
+                if (pendingCount == 0) {
+                    now = Math.max(now, arrivals[next]);
+                    dequeue();
+                    continue;
+                }
+
+                long groupWait = MAX_GROUP_WAIT_NANOS;
+                long entriesThreshold = BUFFERED_WRITES_THRESHOLD / ENTRY_SIZE;
+                boolean flushOnEmptyQueue = false;
+                if (controller != null) {
+                    groupWait = controller.getGroupWaitNanos();
+                    entriesThreshold = controller.getBatchEntries();
+                    flushOnEmptyQueue = groupWait <= 0;
+                }
+
+                long oldest = arrivals[pendingStart];
+                boolean queued = next < arrivals.length && arrivals[next] <= now;
+                if ((entriesThreshold > 0 && pendingCount > entriesThreshold)
+                        || (groupWait > 0 && now - oldest >= groupWait)
+                        || (!queued && (flushOnEmptyQueue || next >= arrivals.length))) {
+                    flush();
+                    continue;
+                }
+
+                if (!queued) {
+                    // Poll the queue until the next entry or the group wait expires
+                    long wakeup = arrivals[next];
+                    if (groupWait > 0) {
+                        wakeup = Math.min(wakeup, oldest + groupWait);
+                    }
+                    now = Math.max(now, wakeup);
+                }
+                dequeue();
+            }
+            syncUntil(Long.MAX_VALUE);
+        }
+
+        private void dequeue() {
+            int count = 0;
+            while (next < arrivals.length && arrivals[next] <= now) {
+                next++;
+                count++;
+            }
+            pendingCount += count;
+            now += count * ENTRY_NANOS;
+            if (controller != null) {
+                controller.recordArrivals(count, now);
+            }
+        }
+
+        private void flush() {
+            now += FLUSH_NANOS;
+            batchReady[numBatches] = now;
+            batchEnd[numBatches] = pendingStart + pendingCount;
+            numBatches++;
+            pendingStart += pendingCount;
+            pendingCount = 0;
+        }
+
+        /**
+         * Run the fsyncs that start before the given time.
+         */
+        private void syncUntil(long time) {
+            while (nextBatch < numBatches) {
+                long start = Math.max(forceWriteFree, batchReady[nextBatch]);
+                if (start > time) {
+                    return;
+                }
+                // Sync all the batches flushed so far at once
+                int end = syncedEntries;
+                while (nextBatch < numBatches && batchReady[nextBatch] <= start) {
+                    end = batchEnd[nextBatch++];
+                }
+                long latency = (long) (fsyncNanos * (0.75 + 0.5 * random.nextDouble()));
+                long completion = start + latency;
+                for (int i = syncedEntries; i < end; i++) {
+                    latencies[i] = completion - arrivals[i];
+                }
+                syncedEntries = end;
+                forceWriteFree = completion;
+                if (controller != null) {
+                    controller.recordForceWrite(latency);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmark of the adds of many threads to the same ledger handle.
+ *
+ * <p>The bookie client acknowledges the adds on the ordered thread of the ledger, like the responses
+ * of real bookies, so the benchmark measures the client side of the add path: the sequencing of the
+ * adds, the digests and the acknowledgements.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerAddBenchmark {
+
+    private static final long LEDGER_ID = 1L;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"1024"})
+        private int entrySize;
+
+        @Param({"1000"})
+        private int maxOutstandingAdds;
+
+        private OrderedExecutor mainWorkerPool;
+        private OrderedScheduler scheduler;
+        private LedgerHandle lh;
+        private Semaphore outstandingAdds;
+        private byte[] data;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            mainWorkerPool = OrderedExecutor.newBuilder().name("benchmark-worker").numThreads(1).build();
+            scheduler = OrderedScheduler.newSchedulerBuilder().name("benchmark-scheduler").numThreads(1).build();
+
+            List<BookieId> ensemble = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                ensemble.add(BookieId.parse("bookie-" + i + ":3181"));
+            }
+            byte[] password = new byte[0];
+            LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                    .withId(LEDGER_ID)
+                    .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                    .withPassword(password)
+                    .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32C)
+                    .newEnsembleEntry(0L, ensemble)
+                    .build();
+
+            ClientContext clientCtx = new BenchmarkClientContext(
+                    ClientInternalConf.fromConfig(new ClientConfiguration()),
+                    new AckingBookieClient(mainWorkerPool), mainWorkerPool, scheduler);
+            lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                    BookKeeper.DigestType.CRC32C, password, EnumSet.noneOf(WriteFlag.class));
+            outstandingAdds = new Semaphore(maxOutstandingAdds);
+            data = new byte[entrySize];
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            // Wait for the outstanding adds before shutting down the threads that complete them
+            outstandingAdds.acquire(maxOutstandingAdds);
+            mainWorkerPool.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void asyncAddEntry(TestState s) throws Exception {
+        s.outstandingAdds.acquire();
+        s.lh.asyncAddEntry(s.data, (rc, lh, entryId, ctx) -> s.outstandingAdds.release(), null);
+    }
+
+    private static class BenchmarkClientContext implements ClientContext {
+        private final ClientInternalConf conf;
+        private final BookieClient bookieClient;
+        private final OrderedExecutor mainWorkerPool;
+        private final OrderedScheduler scheduler;
+        private final BookKeeperClientStats clientStats;
+
+        BenchmarkClientContext(ClientInternalConf conf, BookieClient bookieClient,
+                               OrderedExecutor mainWorkerPool, OrderedScheduler scheduler) {
+            this.conf = conf;
+            this.bookieClient = bookieClient;
+            this.mainWorkerPool = mainWorkerPool;
+            this.scheduler = scheduler;
+            this.clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        }
+
+        @Override
+        public ClientInternalConf getConf() {
+            return conf;
+        }
+
+        @Override
+        public LedgerManager getLedgerManager() {
+            return null;
+        }
+
+        @Override
+        public BookieWatcher getBookieWatcher() {
+            return null;
+        }
+
+        @Override
+        public EnsemblePlacementPolicy getPlacementPolicy() {
+            return null;
+        }
+
+        @Override
+        public BookieClient getBookieClient() {
+            return bookieClient;
+        }
+
+        @Override
+        public ByteBufAllocator getByteBufAllocator() {
+            return UnpooledByteBufAllocator.DEFAULT;
+        }
+
+        @Override
+        public OrderedExecutor getMainWorkerPool() {
+            return mainWorkerPool;
+        }
+
+        @Override
+        public OrderedScheduler getScheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public BookKeeperClientStats getClientStats() {
+            return clientStats;
+        }
+
+        @Override
+        public boolean isClientClosed() {
+            return false;
+        }
+    }
+
+    /**
+     * Bookie client that acknowledges the adds right away, on the ordered thread of the ledger.
+     */
+    private static class AckingBookieClient implements BookieClient {
+        private final OrderedExecutor executor;
+
+        AckingBookieClient(OrderedExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void addEntry(BookieId address, long ledgerId, byte[] masterKey, long entryId,
+                             ReferenceCounted toSend, WriteCallback cb, Object ctx, int options,
+                             boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.writeComplete(BKException.Code.OK, ledgerId, entryId, address, ctx));
+        }
+
+        @Override
+        public List<BookieId> getFaultyBookies() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isWritable(BookieId address, long ledgerId) {
+            return true;
+        }
+
+        @Override
+        public long getNumPendingRequests(BookieId address, long ledgerId) {
+            return 0;
+        }
+
+        @Override
+        public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeLac(BookieId address, long ledgerId, byte[] masterKey, long lac, ByteBufList toSend,
+                             WriteLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntry(BookieId address, long ledgerId, long entryId, ReadEntryCallback cb, Object ctx,
+                              int flags, byte[] masterKey, boolean allowFastFail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount,
+                                     long maxSize, BatchedReadEntryCallback cb, Object ctx, int flags,
+                                     byte[] masterKey, boolean allowFastFail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                              long timeOutInMillis, boolean piggyBackEntry,
+                                              ReadEntryCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                          long ledgerId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -22,18 +22,24 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.util.ReferenceCountUtil;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.EnDecoder;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDeCoderPreV3;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.ResponseEncoder;
+import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.checksum.MacDigestManager;
+import org.apache.bookkeeper.util.ByteBufList;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Mode;
@@ -42,10 +48,15 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.slf4j.MDC;
 
 /**
  * Benchmarking serialization and deserialization.
+ *
+ * <p>Run with {@code -prof gc} to get the bytes allocated per operation, reported as
+ * {@code gc.alloc.rate.norm}. The v2 benchmarks compare the default codec with the zero copy one, see
+ * {@code serverZeroCopyV2CodecEnabled}.
  */
 @BenchmarkMode({Mode.Throughput})
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
@@ -62,9 +73,14 @@ public class ProtocolBenchmark {
     short flags;
     EnDecoder reqEnDeV2;
     EnDecoder reqEnDeV3;
+    EnDecoder reqEnDeV2ZeroCopy;
+    ByteBuf addEntryV2;
+    ByteBuf readEntry;
+    EmbeddedChannel respChannelV2;
+    EmbeddedChannel respChannelV2ZeroCopy;
 
     @Setup
-    public void prepare() {
+    public void prepare() throws Exception {
         this.masterKey = "test-benchmark-key".getBytes(UTF_8);
         byte[] data = new byte[this.size];
         ThreadLocalRandom.current().nextBytes(data);
@@ -76,6 +92,67 @@ public class ProtocolBenchmark {
         // prepare the encoder
         this.reqEnDeV2 = new RequestEnDeCoderPreV3(null);
         this.reqEnDeV3 = new RequestEnDecoderV3(null);
+        this.reqEnDeV2ZeroCopy = new RequestEnDeCoderPreV3(null, true);
+
+        // a v2 add request, as received by the bookie after the frame size
+        this.addEntryV2 = Unpooled.buffer();
+        this.addEntryV2.writeInt(PacketHeader.toInt(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                BookieProtocol.ADDENTRY, BookieProtocol.FLAG_NONE));
+        this.addEntryV2.writeBytes(MacDigestManager.genDigest("ledger", masterKey));
+        this.addEntryV2.writeLong(ledgerId);
+        this.addEntryV2.writeLong(entryId);
+        this.addEntryV2.writeBytes(data);
+
+        // the entry returned by a v2 read, in a pooled buffer like the entries read by the bookie
+        this.readEntry = PooledByteBufAllocator.DEFAULT.directBuffer(size);
+        this.readEntry.writeBytes(data);
+        this.respChannelV2 = new EmbeddedChannel(ByteBufList.ENCODER, new ResponseEncoder(null, false, false));
+        this.respChannelV2ZeroCopy = new EmbeddedChannel(ByteBufList.ENCODER, new ResponseEncoder(null, true, false));
+    }
+
+    @TearDown
+    public void teardown() {
+        this.respChannelV2.finishAndReleaseAll();
+        this.respChannelV2ZeroCopy.finishAndReleaseAll();
+        this.readEntry.release();
+    }
+
+    @Benchmark
+    public void testAddEntryV2Decode() throws Exception {
+        decodeAddEntryV2(reqEnDeV2);
+    }
+
+    @Benchmark
+    public void testAddEntryV2DecodeZeroCopy() throws Exception {
+        decodeAddEntryV2(reqEnDeV2ZeroCopy);
+    }
+
+    private void decodeAddEntryV2(EnDecoder decoder) throws Exception {
+        addEntryV2.readerIndex(0);
+        BookieProtocol.ParsedAddRequest request = (BookieProtocol.ParsedAddRequest) decoder.decode(addEntryV2);
+        request.release();
+        request.recycle();
+    }
+
+    @Benchmark
+    public void testReadEntryV2Response() {
+        writeReadResponseV2(respChannelV2);
+    }
+
+    @Benchmark
+    public void testReadEntryV2ResponseZeroCopy() {
+        writeReadResponseV2(respChannelV2ZeroCopy);
+    }
+
+    private void writeReadResponseV2(EmbeddedChannel channel) {
+        BookieProtocol.ReadResponse response = BookieProtocol.ReadResponse.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.EOK, ledgerId, entryId,
+                readEntry.retainedSlice());
+        channel.writeAndFlush(response, channel.voidPromise());
+        Object buf;
+        while ((buf = channel.readOutbound()) != null) {
+            ReferenceCountUtil.release(buf);
+        }
     }
 
     @Benchmark
@@ -0,0 +1,481 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Asynchronous reads, writes and fsyncs through a linux io_uring instance.
+ *
+ * <p>Operations are handed to the kernel in batches. A thread that finds another thread submitting
+ * leaves its operation to that thread, so concurrent callers share a single io_uring_enter call.
+ * Completions are reaped by a dedicated thread, which completes the futures returned to the callers,
+ * so callers should not run long tasks on these futures.
+ *
+ * <p>At most {@code queueDepth} operations are in flight, callers block when the limit is reached.
+ * The memory passed to an operation must stay valid until its future completes.
+ *
+ * <p>If the ring fails to submit operations, the operations waiting to be submitted fail with
+ * the same error, and so do the operations submitted later.
+ */
+public class IoUring implements AutoCloseable {
+
+    // These constants are mapped to the kernel values in JNI code
+    static final int OP_NOP = 0;
+    static final int OP_READ = 1;
+    static final int OP_WRITE = 2;
+    static final int OP_FSYNC = 3;
+
+    static final int FSYNC_DATASYNC = 0x01;
+
+    private static final long WAKEUP_USER_DATA = -1L;
+    private static final int EINTR = 4;
+    private static final int ESHUTDOWN = 108;
+
+    private final Ring ring;
+    private final int queueDepth;
+
+    private final AtomicReferenceArray<Operation> inflight;
+    private final Semaphore freeSlots;
+    // Operations handed to the kernel and not reaped yet, the completion thread waits for them on close
+    private final AtomicInteger submittedOps = new AtomicInteger();
+    private final Queue<Operation> pending = new ConcurrentLinkedQueue<>();
+
+    // Guards the submission queue of the ring, which only supports a single producer
+    private final ReentrantLock submitLock = new ReentrantLock();
+    // Operations written in the submission queue that the kernel has not consumed yet, in order
+    private final ArrayDeque<Operation> prepared = new ArrayDeque<>();
+    private boolean closed = false;
+    // Set when the ring cannot be used anymore
+    private NativeIOException failure = null;
+    private boolean completionStopped = false;
+
+    private final Thread completionThread;
+
+    /**
+     * Create a ring with the given queue depth.
+     *
+     * @throws NativeIOException if io_uring is not supported by the platform
+     */
+    public IoUring(int queueDepth) throws NativeIOException {
+        this(new NativeRing(checkQueueDepth(queueDepth)), queueDepth);
+    }
+
+    IoUring(Ring ring, int queueDepth) {
+        this.ring = ring;
+        this.queueDepth = queueDepth;
+        this.inflight = new AtomicReferenceArray<>(queueDepth);
+        this.freeSlots = new Semaphore(queueDepth);
+
+        this.completionThread = new Thread(this::reapCompletions, "io-uring-completion");
+        this.completionThread.setDaemon(true);
+        this.completionThread.start();
+    }
+
+    private static int checkQueueDepth(int queueDepth) {
+        if (queueDepth <= 0) {
+            throw new IllegalArgumentException("Queue depth must be positive: " + queueDepth);
+        }
+        return queueDepth;
+    }
+
+    private static long setup(int queueDepth) throws NativeIOException {
+        try {
+            return NativeIOJni.ioUringSetup(queueDepth);
+        } catch (NativeIOException e) {
+            throw e;
+        } catch (Throwable t) {
+            // The native library could not be loaded
+            throw new NativeIOException("io_uring is not available: " + t.getMessage());
+        }
+    }
+
+    /**
+     * Whether io_uring can be used on this platform. When it cannot, callers should fall back
+     * to the synchronous calls of {@link NativeIO}.
+     */
+    public static boolean isAvailable() {
+        return Availability.CAUSE == null;
+    }
+
+    /**
+     * The reason why io_uring cannot be used, or null if it is available.
+     */
+    public static Throwable unavailabilityCause() {
+        return Availability.CAUSE;
+    }
+
+    public int queueDepth() {
+        return queueDepth;
+    }
+
+    public CompletableFuture<Integer> read(int fd, long pointer, int count, long offset) {
+        return submit(new Operation(OP_READ, fd, pointer, count, offset, 0));
+    }
+
+    public CompletableFuture<Integer> write(int fd, long pointer, int count, long offset) {
+        return submit(new Operation(OP_WRITE, fd, pointer, count, offset, 0));
+    }
+
+    /**
+     * Sync a file to the device.
+     *
+     * @param dataOnly whether to only sync the data and the metadata needed to read it back, like fdatasync
+     */
+    public CompletableFuture<Integer> fsync(int fd, boolean dataOnly) {
+        return submit(new Operation(OP_FSYNC, fd, 0L, 0, 0L, dataOnly ? FSYNC_DATASYNC : 0));
+    }
+
+    private CompletableFuture<Integer> submit(Operation op) {
+        try {
+            freeSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            op.completeExceptionally(new NativeIOException("Interrupted while waiting for an io_uring slot", EINTR));
+            return op;
+        }
+
+        // A free slot is guaranteed by the semaphore
+        int slot = (int) (Thread.currentThread().getId() % queueDepth);
+        while (!inflight.compareAndSet(slot, null, op)) {
+            slot = (slot + 1) % queueDepth;
+        }
+        op.slot = slot;
+
+        pending.add(op);
+        flushPending();
+        return op;
+    }
+
+    /**
+     * Write the pending operations to the submission queue and submit them. If another thread is
+     * already submitting, it looks at the pending operations again once it releases the lock, so
+     * every thread that takes the lock must call this method after releasing it. When the kernel
+     * does not take any operation, the completion thread retries after the next completion.
+     */
+    private void flushPending() {
+        boolean progress = true;
+        while (progress && !pending.isEmpty() && submitLock.tryLock()) {
+            progress = false;
+            try {
+                Operation op;
+                while ((op = pending.peek()) != null) {
+                    if (closed || failure != null) {
+                        pending.poll();
+                        fail(op, failure != null ? failure : new NativeIOException("io_uring is closed", ESHUTDOWN));
+                        progress = true;
+                        continue;
+                    }
+                    if (!ring.prepare(op.op, op.fd, op.pointer, op.count, op.offset, op.flags, op.slot)) {
+                        // Submission queue full, the completion thread will resubmit
+                        break;
+                    }
+                    pending.poll();
+                    prepared.add(op);
+                    progress = true;
+                }
+                progress |= submitPrepared();
+            } catch (NativeIOException e) {
+                failQueued(e);
+            } finally {
+                submitLock.unlock();
+            }
+        }
+    }
+
+    private boolean submitPrepared() {
+        if (prepared.isEmpty() || failure != null) {
+            return false;
+        }
+        try {
+            // The kernel consumes the submission queue in order
+            int submitted = ring.enter(prepared.size(), 0);
+            for (int i = 0; i < submitted; i++) {
+                if (prepared.poll().op != OP_NOP) {
+                    submittedOps.incrementAndGet();
+                }
+            }
+            return submitted > 0;
+        } catch (NativeIOException e) {
+            // Interrupted and busy submissions return 0, anything else leaves the ring unusable
+            failQueued(e);
+            return true;
+        }
+    }
+
+    /**
+     * Fail the operations that were not handed to the kernel, and the operations submitted later.
+     * Must be called with the submit lock held.
+     */
+    private void failQueued(NativeIOException e) {
+        if (failure == null) {
+            failure = e;
+        }
+        Operation op;
+        while ((op = prepared.poll()) != null) {
+            fail(op, failure);
+        }
+        while ((op = pending.poll()) != null) {
+            fail(op, failure);
+        }
+    }
+
+    private void reapCompletions() {
+        long[] userData = new long[queueDepth + 1];
+        int[] results = new int[queueDepth + 1];
+        boolean closing = false;
+
+        // The operations holding a slot that were not submitted fail without a completion
+        while (!closing || submittedOps.get() > 0) {
+            try {
+                ring.enter(0, 1);
+                int count = ring.reap(userData, results);
+                for (int i = 0; i < count; i++) {
+                    if (userData[i] == WAKEUP_USER_DATA) {
+                        closing = true;
+                    } else {
+                        complete((int) userData[i], results[i]);
+                    }
+                }
+            } catch (NativeIOException e) {
+                stopCompletions(e);
+                return;
+            }
+
+            if (submitLock.tryLock()) {
+                try {
+                    submitPrepared();
+                } finally {
+                    submitLock.unlock();
+                }
+            }
+            flushPending();
+        }
+    }
+
+    /**
+     * The completions cannot be reaped anymore, fail all the operations.
+     */
+    private void stopCompletions(NativeIOException e) {
+        submitLock.lock();
+        try {
+            failQueued(e);
+            completionStopped = true;
+        } finally {
+            submitLock.unlock();
+        }
+        // Fail the operations queued while the lock was held
+        flushPending();
+        for (int slot = 0; slot < queueDepth; slot++) {
+            Operation op = inflight.getAndSet(slot, null);
+            if (op != null) {
+                freeSlots.release();
+                op.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void complete(int slot, int result) {
+        submittedOps.decrementAndGet();
+        Operation op = inflight.getAndSet(slot, null);
+        if (op == null) {
+            return;
+        }
+        freeSlots.release();
+        if (result < 0) {
+            op.completeExceptionally(new NativeIOException(op.failureMessage(), -result));
+        } else {
+            op.complete(result);
+        }
+    }
+
+    private void fail(Operation op, NativeIOException e) {
+        // The slot may already have been released when the completions were stopped
+        if (op.slot >= 0 && inflight.compareAndSet(op.slot, op, null)) {
+            freeSlots.release();
+        }
+        op.completeExceptionally(e);
+    }
+
+    /**
+     * Close the ring, after waiting for the completion of the operations in flight. Operations
+     * submitted once the ring is closed fail.
+     *
+     * <p>A ring that failed to submit operations cannot wake up its completion thread. Such a ring
+     * is not released, since the completion thread may still be waiting on it, and the failure
+     * is thrown.
+     */
+    @Override
+    public void close() throws NativeIOException {
+        submitLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            Operation op;
+            while ((op = pending.poll()) != null) {
+                fail(op, new NativeIOException("io_uring is closed", ESHUTDOWN));
+            }
+
+            if (failure == null) {
+                // Wake up the completion thread, the submission queue always has room for it since
+                // the number of operations in flight is bounded by the size of the ring
+                try {
+                    ring.prepare(OP_NOP, -1, 0L, 0, 0L, 0, WAKEUP_USER_DATA);
+                    prepared.add(new Operation(OP_NOP, -1, 0L, 0, 0L, 0));
+                } catch (NativeIOException e) {
+                    failQueued(e);
+                }
+                while (!prepared.isEmpty()) {
+                    submitPrepared();
+                }
+            }
+            if (failure != null && !completionStopped) {
+                throw failure;
+            }
+        } finally {
+            submitLock.unlock();
+            // Fail the operations queued while the lock was held, the completion thread waits for them
+            flushPending();
+        }
+
+        try {
+            completionThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeIOException("Interrupted while closing io_uring", EINTR);
+        }
+        ring.close();
+    }
+
+    private static final class Operation extends CompletableFuture<Integer> {
+        final int op;
+        final int fd;
+        final long pointer;
+        final int count;
+        final long offset;
+        final int flags;
+        int slot = -1;
+
+        Operation(int op, int fd, long pointer, int count, long offset, int flags) {
+            this.op = op;
+            this.fd = fd;
+            this.pointer = pointer;
+            this.count = count;
+            this.offset = offset;
+            this.flags = flags;
+        }
+
+        String failureMessage() {
+            switch (op) {
+            case OP_READ:
+                return "Failed to read from file";
+            case OP_WRITE:
+                return "Failed to write on file";
+            case OP_FSYNC:
+                return "Failed to fsync";
+            default:
+                return "Failed io_uring operation";
+            }
+        }
+    }
+
+    /**
+     * The native ring, behind an interface so that the submission logic can be tested without io_uring.
+     */
+    interface Ring {
+        /**
+         * Write an operation in the submission queue.
+         *
+         * @return false if the submission queue is full
+         */
+        boolean prepare(int op, int fd, long pointer, int count, long offset, int flags, long userData)
+                throws NativeIOException;
+
+        /**
+         * Submit the first operations of the submission queue and wait for completions.
+         *
+         * @return the number of operations submitted
+         */
+        int enter(int toSubmit, int minComplete) throws NativeIOException;
+
+        /**
+         * Move the available completions to the given arrays.
+         *
+         * @return the number of completions
+         */
+        int reap(long[] userData, int[] results) throws NativeIOException;
+
+        void close() throws NativeIOException;
+    }
+
+    private static final class NativeRing implements Ring {
+        private final long ring;
+
+        NativeRing(int queueDepth) throws NativeIOException {
+            this.ring = setup(queueDepth);
+        }
+
+        @Override
+        public boolean prepare(int op, int fd, long pointer, int count, long offset, int flags, long userData)
+                throws NativeIOException {
+            return NativeIOJni.ioUringPrepare(ring, op, fd, pointer, count, offset, flags, userData);
+        }
+
+        @Override
+        public int enter(int toSubmit, int minComplete) throws NativeIOException {
+            return NativeIOJni.ioUringEnter(ring, toSubmit, minComplete);
+        }
+
+        @Override
+        public int reap(long[] userData, int[] results) throws NativeIOException {
+            return NativeIOJni.ioUringReap(ring, userData, results);
+        }
+
+        @Override
+        public void close() throws NativeIOException {
+            NativeIOJni.ioUringClose(ring);
+        }
+    }
+
+    private static final class Availability {
+        static final Throwable CAUSE = probe();
+
+        private static Throwable probe() {
+            try {
+                NativeIOJni.ioUringClose(NativeIOJni.ioUringSetup(2));
+                return null;
+            } catch (Throwable t) {
+                return t;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * NativeIO that performs reads, writes and fsyncs through an {@link IoUring}.
+ *
+ * <p>Each call still blocks the calling thread until the operation completes, but the operations
+ * issued concurrently by several threads reach the device in a single submission. The other calls
+ * are delegated.
+ */
+public class IoUringNativeIO implements NativeIO {
+    private final NativeIO delegate;
+    private final IoUring ioUring;
+
+    public IoUringNativeIO(NativeIO delegate, IoUring ioUring) {
+        this.delegate = delegate;
+        this.ioUring = ioUring;
+    }
+
+    public IoUring getIoUring() {
+        return ioUring;
+    }
+
+    @Override
+    public int open(String pathname, int flags, int mode) throws NativeIOException {
+        return delegate.open(pathname, flags, mode);
+    }
+
+    @Override
+    public int fsync(int fd) throws NativeIOException {
+        return await(ioUring.fsync(fd, false));
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+        return delegate.fallocate(fd, mode, offset, len);
+    }
+
+    @Override
+    public int posix_fadvise(int fd, long offset, long len, int flag) throws NativeIOException {
+        return delegate.posix_fadvise(fd, offset, len, flag);
+    }
+
+    @Override
+    public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+        return await(ioUring.write(fd, pointer, count, offset));
+    }
+
+    @Override
+    public long posix_memalign(int alignment, int size) throws NativeIOException {
+        return delegate.posix_memalign(alignment, size);
+    }
+
+    @Override
+    public void free(long pointer) throws NativeIOException {
+        delegate.free(pointer);
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) throws NativeIOException {
+        return delegate.lseek(fd, offset, whence);
+    }
+
+    @Override
+    public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+        // A single io_uring read is limited to an int count, like a single pwrite
+        int count = (int) Math.min(size, Integer.MAX_VALUE);
+        return await(ioUring.read(fd, pointer, count, offset));
+    }
+
+    @Override
+    public int close(int fd) throws NativeIOException {
+        return delegate.close(fd);
+    }
+
+    private static int await(CompletableFuture<Integer> future) throws NativeIOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    // The memory of the operation must not be released before it completes,
+                    // so keep waiting when interrupted
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof NativeIOException) {
+                        throw (NativeIOException) e.getCause();
+                    }
+                    throw new NativeIOException(String.valueOf(e.getCause()));
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
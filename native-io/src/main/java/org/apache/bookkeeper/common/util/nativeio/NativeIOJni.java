@@ -49,6 +49,21 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    /**
+     * io_uring is a linux-only interface, available since 5.6 for the operations used here, so
+     * callers must handle the possibility that it does not exist.
+     */
+    static native long ioUringSetup(int entries) throws NativeIOException;
+
+    static native boolean ioUringPrepare(long ring, int op, int fd, long pointer, int len, long offset,
+                                         int flags, long userData) throws NativeIOException;
+
+    static native int ioUringEnter(long ring, int toSubmit, int minComplete) throws NativeIOException;
+
+    static native int ioUringReap(long ring, long[] userData, int[] results) throws NativeIOException;
+
+    static native void ioUringClose(long ring) throws NativeIOException;
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
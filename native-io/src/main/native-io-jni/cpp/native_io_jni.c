@@ -26,6 +26,15 @@
 #include <string.h>
 #include <unistd.h>
 
+#if defined(__linux__) && defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#define HAVE_IO_URING 1
+#include <linux/io_uring.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#endif
+#endif
+
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
 #ifdef _WIN32
@@ -311,3 +320,299 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+
+#ifdef HAVE_IO_URING
+
+// Java side operation codes, mapped to the io_uring opcodes of the kernel headers
+#define BK_IORING_OP_NOP 0
+#define BK_IORING_OP_READ 1
+#define BK_IORING_OP_WRITE 2
+#define BK_IORING_OP_FSYNC 3
+
+#define BK_IORING_FSYNC_DATASYNC 0x01
+
+struct bk_io_uring {
+    int ring_fd;
+    unsigned sq_entries;
+
+    unsigned *sq_head;
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+    struct io_uring_sqe *sqes;
+
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_cqe *cqes;
+
+    void *sq_ptr;
+    size_t sq_size;
+    void *cq_ptr;
+    size_t cq_size;
+    size_t sqes_size;
+};
+
+static void bk_io_uring_unmap(struct bk_io_uring *ring) {
+    if (ring->sqes != NULL && ring->sqes != MAP_FAILED) {
+        munmap(ring->sqes, ring->sqes_size);
+    }
+    if (ring->cq_ptr != NULL && ring->cq_ptr != MAP_FAILED && ring->cq_ptr != ring->sq_ptr) {
+        munmap(ring->cq_ptr, ring->cq_size);
+    }
+    if (ring->sq_ptr != NULL && ring->sq_ptr != MAP_FAILED) {
+        munmap(ring->sq_ptr, ring->sq_size);
+    }
+}
+
+static int bk_io_uring_probe(int ring_fd) {
+    size_t probe_size = sizeof(struct io_uring_probe) + 256 * sizeof(struct io_uring_probe_op);
+    struct io_uring_probe *probe = calloc(1, probe_size);
+    if (probe == NULL) {
+        errno = ENOMEM;
+        return -1;
+    }
+
+    // Probing is only available since 5.6, which is also the first release with IORING_OP_READ/WRITE
+    int res = syscall(__NR_io_uring_register, ring_fd, IORING_REGISTER_PROBE, probe, 256);
+    if (res == 0) {
+        int ops[] = { IORING_OP_NOP, IORING_OP_READ, IORING_OP_WRITE, IORING_OP_FSYNC };
+        for (size_t i = 0; i < sizeof(ops) / sizeof(ops[0]); i++) {
+            if (ops[i] > probe->last_op || !(probe->ops[ops[i]].flags & IO_URING_OP_SUPPORTED)) {
+                errno = EOPNOTSUPP;
+                res = -1;
+                break;
+            }
+        }
+    }
+    free(probe);
+    return res;
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringSetup
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringSetup
+    (JNIEnv* env, jclass clazz, jint entries) {
+#ifdef HAVE_IO_URING
+    struct io_uring_params params;
+    memset(&params, 0, sizeof(params));
+
+    int ring_fd = syscall(__NR_io_uring_setup, entries, &params);
+    if (ring_fd < 0) {
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        return 0;
+    }
+
+    if (bk_io_uring_probe(ring_fd) != 0) {
+        int saved_errno = errno;
+        close(ring_fd);
+        errno = saved_errno;
+        throwExceptionWithErrno(env, "io_uring does not support the required operations");
+        return 0;
+    }
+
+    struct bk_io_uring *ring = calloc(1, sizeof(struct bk_io_uring));
+    if (ring == NULL) {
+        close(ring_fd);
+        errno = ENOMEM;
+        throwExceptionWithErrno(env, "Failed to allocate io_uring");
+        return 0;
+    }
+    ring->ring_fd = ring_fd;
+    ring->sq_entries = params.sq_entries;
+
+    ring->sq_size = params.sq_off.array + params.sq_entries * sizeof(unsigned);
+    ring->cq_size = params.cq_off.cqes + params.cq_entries * sizeof(struct io_uring_cqe);
+    if (params.features & IORING_FEAT_SINGLE_MMAP) {
+        if (ring->cq_size > ring->sq_size) {
+            ring->sq_size = ring->cq_size;
+        }
+        ring->cq_size = ring->sq_size;
+    }
+
+    ring->sq_ptr = mmap(NULL, ring->sq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                        ring_fd, IORING_OFF_SQ_RING);
+    if (ring->sq_ptr == MAP_FAILED) {
+        goto fail;
+    }
+
+    if (params.features & IORING_FEAT_SINGLE_MMAP) {
+        ring->cq_ptr = ring->sq_ptr;
+    } else {
+        ring->cq_ptr = mmap(NULL, ring->cq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                            ring_fd, IORING_OFF_CQ_RING);
+        if (ring->cq_ptr == MAP_FAILED) {
+            goto fail;
+        }
+    }
+
+    ring->sqes_size = params.sq_entries * sizeof(struct io_uring_sqe);
+    ring->sqes = mmap(NULL, ring->sqes_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                      ring_fd, IORING_OFF_SQES);
+    if (ring->sqes == MAP_FAILED) {
+        goto fail;
+    }
+
+    ring->sq_head = (unsigned *) ((char *) ring->sq_ptr + params.sq_off.head);
+    ring->sq_tail = (unsigned *) ((char *) ring->sq_ptr + params.sq_off.tail);
+    ring->sq_mask = (unsigned *) ((char *) ring->sq_ptr + params.sq_off.ring_mask);
+    ring->sq_array = (unsigned *) ((char *) ring->sq_ptr + params.sq_off.array);
+    ring->cq_head = (unsigned *) ((char *) ring->cq_ptr + params.cq_off.head);
+    ring->cq_tail = (unsigned *) ((char *) ring->cq_ptr + params.cq_off.tail);
+    ring->cq_mask = (unsigned *) ((char *) ring->cq_ptr + params.cq_off.ring_mask);
+    ring->cqes = (struct io_uring_cqe *) ((char *) ring->cq_ptr + params.cq_off.cqes);
+
+    return (jlong) ring;
+
+fail:
+    {
+        int saved_errno = errno;
+        bk_io_uring_unmap(ring);
+        close(ring_fd);
+        free(ring);
+        errno = saved_errno;
+        throwExceptionWithErrno(env, "Failed to map io_uring");
+        return 0;
+    }
+#else
+    throwException(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringPrepare
+ * Signature: (JIIJIJIJ)Z
+ */
+JNIEXPORT jboolean JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringPrepare
+    (JNIEnv* env, jclass clazz, jlong ringPtr, jint op, jint fd, jlong pointer, jint len, jlong offset,
+     jint javaFlags, jlong userData) {
+#ifdef HAVE_IO_URING
+    struct bk_io_uring *ring = (struct bk_io_uring *) ringPtr;
+
+    // The submission queue has a single producer, serialized by the caller
+    unsigned tail = *ring->sq_tail;
+    unsigned head = __atomic_load_n(ring->sq_head, __ATOMIC_ACQUIRE);
+    if (tail - head >= ring->sq_entries) {
+        return JNI_FALSE;
+    }
+
+    unsigned index = tail & *ring->sq_mask;
+    struct io_uring_sqe *sqe = &ring->sqes[index];
+    memset(sqe, 0, sizeof(*sqe));
+    sqe->fd = fd;
+    sqe->addr = (unsigned long) pointer;
+    sqe->len = len;
+    sqe->off = offset;
+    sqe->user_data = userData;
+
+    switch (op) {
+    case BK_IORING_OP_READ:
+        sqe->opcode = IORING_OP_READ;
+        break;
+    case BK_IORING_OP_WRITE:
+        sqe->opcode = IORING_OP_WRITE;
+        break;
+    case BK_IORING_OP_FSYNC:
+        sqe->opcode = IORING_OP_FSYNC;
+        if (javaFlags & BK_IORING_FSYNC_DATASYNC) {
+            sqe->fsync_flags = IORING_FSYNC_DATASYNC;
+        }
+        break;
+    default:
+        sqe->opcode = IORING_OP_NOP;
+        sqe->fd = -1;
+        break;
+    }
+
+    ring->sq_array[index] = index;
+    __atomic_store_n(ring->sq_tail, tail + 1, __ATOMIC_RELEASE);
+    return JNI_TRUE;
+#else
+    throwException(env, "io_uring is not available");
+    return JNI_FALSE;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringEnter
+ * Signature: (JII)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringEnter
+    (JNIEnv* env, jclass clazz, jlong ringPtr, jint toSubmit, jint minComplete) {
+#ifdef HAVE_IO_URING
+    struct bk_io_uring *ring = (struct bk_io_uring *) ringPtr;
+    unsigned flags = minComplete > 0 ? IORING_ENTER_GETEVENTS : 0;
+
+    int res = syscall(__NR_io_uring_enter, ring->ring_fd, toSubmit, minComplete, flags, NULL, 0);
+    if (res < 0) {
+        if (errno == EINTR || errno == EAGAIN || errno == EBUSY) {
+            // Nothing was consumed, the caller will try again
+            return 0;
+        }
+        throwExceptionWithErrno(env, "Failed to enter io_uring");
+    }
+    return res;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringReap
+ * Signature: (J[J[I)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringReap
+    (JNIEnv* env, jclass clazz, jlong ringPtr, jlongArray userDataArray, jintArray resultArray) {
+#ifdef HAVE_IO_URING
+    struct bk_io_uring *ring = (struct bk_io_uring *) ringPtr;
+    jsize max = (*env)->GetArrayLength(env, userDataArray);
+
+    jlong *userData = (*env)->GetPrimitiveArrayCritical(env, userDataArray, NULL);
+    jint *results = (*env)->GetPrimitiveArrayCritical(env, resultArray, NULL);
+
+    // The completion queue has a single consumer, the completion thread of the ring
+    unsigned head = *ring->cq_head;
+    unsigned tail = __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE);
+    jint count = 0;
+    while (head != tail && count < max) {
+        struct io_uring_cqe *cqe = &ring->cqes[head & *ring->cq_mask];
+        userData[count] = (jlong) cqe->user_data;
+        results[count] = cqe->res;
+        head++;
+        count++;
+    }
+    __atomic_store_n(ring->cq_head, head, __ATOMIC_RELEASE);
+
+    (*env)->ReleasePrimitiveArrayCritical(env, resultArray, results, 0);
+    (*env)->ReleasePrimitiveArrayCritical(env, userDataArray, userData, 0);
+    return count;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringClose
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringClose
+    (JNIEnv* env, jclass clazz, jlong ringPtr) {
+#ifdef HAVE_IO_URING
+    struct bk_io_uring *ring = (struct bk_io_uring *) ringPtr;
+    bk_io_uring_unmap(ring);
+    close(ring->ring_fd);
+    free(ring);
+#endif
+}
@@ -0,0 +1,409 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.common.util.nativeio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link IoUring}, driven through a fake ring.
+ */
+public class IoUringTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void testOperationsComplete() throws Exception {
+        FakeRing fake = new FakeRing(8);
+        IoUring ring = new IoUring(fake, 4);
+
+        assertEquals(512, (int) ring.read(3, 1000L, 512, 4096L).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1024, (int) ring.write(3, 2000L, 1024, 0L).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, (int) ring.fsync(3, true).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(IoUring.OP_READ, fake.submitted(0).op);
+        assertEquals(IoUring.OP_WRITE, fake.submitted(1).op);
+        assertEquals(IoUring.OP_FSYNC, fake.submitted(2).op);
+        assertEquals(IoUring.FSYNC_DATASYNC, fake.submitted(2).flags);
+
+        ring.close();
+        assertTrue(fake.isClosed());
+    }
+
+    @Test
+    public void testNegativeResultFails() throws Exception {
+        FakeRing fake = new FakeRing(8);
+        fake.setAutoComplete(false);
+        IoUring ring = new IoUring(fake, 4);
+
+        CompletableFuture<Integer> read = ring.read(3, 1000L, 512, 0L);
+        fake.awaitSubmitted(1);
+        fake.complete(fake.submitted(0).userData, -5);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(NativeIOException.class, e.getCause());
+        assertEquals(5, ((NativeIOException) e.getCause()).getErrno());
+
+        ring.close();
+        assertTrue(fake.isClosed());
+    }
+
+    @Test
+    public void testOperationsLeftInQueueAreSubmittedInOrder() throws Exception {
+        FakeRing fake = new FakeRing(1);
+        fake.setSubmitLimit(0);
+        IoUring ring = new IoUring(fake, 4);
+
+        // The first operation is prepared but not consumed, the second one does not fit in the queue
+        CompletableFuture<Integer> first = ring.write(1, 1000L, 10, 0L);
+        CompletableFuture<Integer> second = ring.write(2, 1000L, 20, 0L);
+        assertEquals(0, fake.submittedCount());
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        fake.setSubmitLimit(Integer.MAX_VALUE);
+        CompletableFuture<Integer> third = ring.write(3, 1000L, 30, 0L);
+        assertEquals(10, (int) first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(20, (int) second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(30, (int) third.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(1, fake.submitted(0).fd);
+        assertEquals(2, fake.submitted(1).fd);
+        assertEquals(3, fake.submitted(2).fd);
+
+        ring.close();
+    }
+
+    @Test
+    public void testSubmitFailureFailsQueuedOperations() throws Exception {
+        FakeRing fake = new FakeRing(1);
+        fake.setSubmitLimit(0);
+        IoUring ring = new IoUring(fake, 4);
+
+        CompletableFuture<Integer> prepared = ring.write(1, 1000L, 10, 0L);
+        CompletableFuture<Integer> pending = ring.write(2, 1000L, 20, 0L);
+
+        NativeIOException failure = new NativeIOException("Failed to submit", 22);
+        fake.setSubmitFailure(failure);
+        CompletableFuture<Integer> failed = ring.write(3, 1000L, 30, 0L);
+        CompletableFuture<Integer> later = ring.read(4, 1000L, 40, 0L);
+
+        for (CompletableFuture<Integer> op : Arrays.asList(prepared, pending, failed, later)) {
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> op.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(0, fake.submittedCount());
+
+        // The completion thread cannot be woken up through the failed ring
+        assertSame(failure, assertThrows(NativeIOException.class, ring::close));
+        assertFalse(fake.isClosed());
+        fake.failCompletions(new NativeIOException("Stopped", 9));
+    }
+
+    @Test
+    public void testCompletionFailureFailsOperationsInFlight() throws Exception {
+        FakeRing fake = new FakeRing(8);
+        fake.setAutoComplete(false);
+        IoUring ring = new IoUring(fake, 4);
+
+        CompletableFuture<Integer> read = ring.read(3, 1000L, 512, 0L);
+        fake.awaitSubmitted(1);
+        NativeIOException failure = new NativeIOException("Failed to reap", 14);
+        fake.failCompletions(failure);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+
+        CompletableFuture<Integer> later = ring.read(3, 1000L, 512, 0L);
+        e = assertThrows(ExecutionException.class, () -> later.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(failure, e.getCause());
+
+        // The completion thread has stopped, so the ring can be released
+        ring.close();
+        assertTrue(fake.isClosed());
+    }
+
+    @Test
+    public void testClosedRingFailsOperations() throws Exception {
+        FakeRing fake = new FakeRing(8);
+        IoUring ring = new IoUring(fake, 4);
+        ring.close();
+        ring.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> ring.fsync(3, false).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(NativeIOException.class, e.getCause());
+        assertEquals(108, ((NativeIOException) e.getCause()).getErrno());
+    }
+
+    @Test
+    public void testConcurrentSubmittersComplete() throws Exception {
+        // A small submission queue and ring, so that the submitters contend for the submit lock and the slots
+        FakeRing fake = new FakeRing(2);
+        IoUring ring = new IoUring(fake, 4);
+        int numThreads = 8;
+        int opsPerThread = 500;
+
+        List<List<CompletableFuture<Integer>>> futures = submitConcurrently(ring, numThreads, opsPerThread, null);
+        for (List<CompletableFuture<Integer>> threadFutures : futures) {
+            for (int i = 0; i < opsPerThread; i++) {
+                assertEquals(i, (int) threadFutures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(numThreads * opsPerThread, fake.submittedCount());
+
+        ring.close();
+        assertTrue(fake.isClosed());
+    }
+
+    @Test
+    public void testSubmittersRacingClose() throws Exception {
+        FakeRing fake = new FakeRing(2);
+        IoUring ring = new IoUring(fake, 4);
+        int opsPerThread = 500;
+
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService closer = Executors.newSingleThreadExecutor();
+        Future<Void> closed;
+        List<List<CompletableFuture<Integer>>> futures;
+        try {
+            closed = closer.submit(() -> {
+                started.await();
+                ring.close();
+                return null;
+            });
+            futures = submitConcurrently(ring, 4, opsPerThread, started);
+            closed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            closer.shutdownNow();
+        }
+
+        // Every operation either completed before the close or failed because of it
+        for (List<CompletableFuture<Integer>> threadFutures : futures) {
+            for (int i = 0; i < opsPerThread; i++) {
+                try {
+                    assertEquals(i, (int) threadFutures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertInstanceOf(NativeIOException.class, e.getCause());
+                    assertEquals(108, ((NativeIOException) e.getCause()).getErrno());
+                }
+            }
+        }
+        assertTrue(fake.isClosed());
+    }
+
+    /**
+     * Submit writes from concurrent threads, the count of each write being its index in its thread.
+     *
+     * @param started counted down once the threads submitted their first writes, if not null
+     */
+    private static List<List<CompletableFuture<Integer>>> submitConcurrently(IoUring ring, int numThreads,
+            int opsPerThread, CountDownLatch started) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            CountDownLatch ready = new CountDownLatch(numThreads);
+            List<Future<List<CompletableFuture<Integer>>>> submitters = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                int fd = t;
+                submitters.add(executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    List<CompletableFuture<Integer>> threadFutures = new ArrayList<>();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        threadFutures.add(ring.write(fd, 1000L, i, 0L));
+                        if (i == 10 && started != null) {
+                            started.countDown();
+                        }
+                    }
+                    return threadFutures;
+                }));
+            }
+            List<List<CompletableFuture<Integer>>> futures = new ArrayList<>();
+            for (Future<List<CompletableFuture<Integer>>> submitter : submitters) {
+                futures.add(submitter.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+            return futures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class Entry {
+        final int op;
+        final int fd;
+        final int count;
+        final int flags;
+        final long userData;
+
+        Entry(int op, int fd, int count, int flags, long userData) {
+            this.op = op;
+            this.fd = fd;
+            this.count = count;
+            this.flags = flags;
+            this.userData = userData;
+        }
+    }
+
+    /**
+     * A ring completing the operations in memory. Wakeup operations always complete on submission,
+     * the others complete with their count when auto completion is set.
+     */
+    private static final class FakeRing implements IoUring.Ring {
+        private final int submissionQueueSize;
+        private final ArrayDeque<Entry> submissionQueue = new ArrayDeque<>();
+        private final List<Entry> submitted = new ArrayList<>();
+        private final ArrayDeque<long[]> completionQueue = new ArrayDeque<>();
+        private boolean autoComplete = true;
+        private int submitLimit = Integer.MAX_VALUE;
+        private NativeIOException submitFailure;
+        private NativeIOException completionFailure;
+        private boolean closed;
+
+        FakeRing(int submissionQueueSize) {
+            this.submissionQueueSize = submissionQueueSize;
+        }
+
+        @Override
+        public synchronized boolean prepare(int op, int fd, long pointer, int count, long offset, int flags,
+                                            long userData) {
+            if (submissionQueue.size() == submissionQueueSize) {
+                return false;
+            }
+            submissionQueue.add(new Entry(op, fd, count, flags, userData));
+            return true;
+        }
+
+        @Override
+        public synchronized int enter(int toSubmit, int minComplete) throws NativeIOException {
+            int count = 0;
+            if (toSubmit > 0) {
+                if (submitFailure != null) {
+                    throw submitFailure;
+                }
+                count = Math.min(toSubmit, submitLimit);
+                for (int i = 0; i < count; i++) {
+                    Entry entry = submissionQueue.poll();
+                    if (entry.op == IoUring.OP_NOP) {
+                        completionQueue.add(new long[] {entry.userData, 0});
+                    } else {
+                        submitted.add(entry);
+                        if (autoComplete) {
+                            completionQueue.add(new long[] {entry.userData, entry.count});
+                        }
+                    }
+                }
+                notifyAll();
+            }
+            while (completionQueue.size() < minComplete) {
+                if (completionFailure != null) {
+                    throw completionFailure;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NativeIOException("Interrupted", 4);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized int reap(long[] userData, int[] results) {
+            int count = 0;
+            long[] completion;
+            while (count < userData.length && (completion = completionQueue.poll()) != null) {
+                userData[count] = completion[0];
+                results[count] = (int) completion[1];
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+        }
+
+        synchronized void setAutoComplete(boolean autoComplete) {
+            this.autoComplete = autoComplete;
+        }
+
+        synchronized void setSubmitLimit(int submitLimit) {
+            this.submitLimit = submitLimit;
+        }
+
+        synchronized void setSubmitFailure(NativeIOException submitFailure) {
+            this.submitFailure = submitFailure;
+        }
+
+        synchronized void failCompletions(NativeIOException completionFailure) {
+            this.completionFailure = completionFailure;
+            notifyAll();
+        }
+
+        synchronized void complete(long userData, int result) {
+            completionQueue.add(new long[] {userData, result});
+            notifyAll();
+        }
+
+        synchronized void awaitSubmitted(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (submitted.size() < count) {
+                long remaining = deadline - System.nanoTime();
+                assertTrue(remaining > 0, "Operations were not submitted");
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+
+        synchronized int submittedCount() {
+            return submitted.size();
+        }
+
+        synchronized Entry submitted(int index) {
+            return submitted.get(index);
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+    }
+}